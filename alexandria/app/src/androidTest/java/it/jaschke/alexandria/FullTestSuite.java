@@ -1,15 +1,26 @@
 package it.jaschke.alexandria;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.test.suitebuilder.TestSuiteBuilder;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import it.jaschke.alexandria.util.MainThreadWatchdog;
+
 /**
  * Created by saj on 23/12/14.
  */
 public class FullTestSuite extends TestSuite {
     public static Test suite() {
+        // Fail the run if the app touches the disk or the network on the main thread
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                MainThreadWatchdog.setFailOnViolation(true);
+            }
+        });
         return new TestSuiteBuilder(FullTestSuite.class)
                 .includeAllPackagesUnderHere().build();
     }
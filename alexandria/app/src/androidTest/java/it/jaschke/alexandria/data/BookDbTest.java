@@ -1,6 +1,7 @@
 package it.jaschke.alexandria.data;
 
 import android.content.ContentValues;
+import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
@@ -36,6 +37,8 @@ public class BookDbTest extends AndroidTestCase {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
 
         ContentValues values = getBookValues();
+        // The description is kept in its own table
+        values.remove(BookContract.BookEntry.COLUMN_DESCRIPTION);
 
         long retEan = db.insert(BookContract.BookEntry.TABLE_NAME, null, values);
         assertEquals(ean, retEan);
@@ -44,8 +47,7 @@ public class BookDbTest extends AndroidTestCase {
                 BookContract.BookEntry._ID,
                 BookContract.BookEntry.COLUMN_TITLE,
                 BookContract.BookEntry.COLUMN_COVER_IMAGE_URL,
-                BookContract.BookEntry.COLUMN_SUBTITLE,
-                BookContract.BookEntry.COLUMN_DESCRIPTION
+                BookContract.BookEntry.COLUMN_SUBTITLE
         };
 
         // A cursor is your primary interface to the query results.
@@ -108,6 +110,68 @@ public class BookDbTest extends AndroidTestCase {
 
     }
 
+    public void testUpgradeKeepsBooks() {
+        mContext.deleteDatabase(BookDbHelper.DATABASE_NAME);
+        SQLiteDatabase db = mContext.openOrCreateDatabase(BookDbHelper.DATABASE_NAME
+                , Context.MODE_PRIVATE, null);
+        // The book table of version 3
+        db.execSQL("CREATE TABLE book (_id INTEGER PRIMARY KEY, title TEXT NOT NULL,"
+                + " subtitle TEXT, description TEXT, cover_image_url TEXT, display_title TEXT,"
+                + " UNIQUE (_id) ON CONFLICT IGNORE);");
+        db.execSQL("CREATE TABLE author (_id INTEGER PRIMARY KEY, book_id INTEGER NOT NULL,"
+                + " name TEXT, FOREIGN KEY (book_id) REFERENCES book (_id) ON DELETE CASCADE,"
+                + " UNIQUE (book_id, name) ON CONFLICT REPLACE);");
+        db.execSQL("CREATE TABLE categories (_id INTEGER PRIMARY KEY,"
+                + " book_id INTEGER NOT NULL, name TEXT,"
+                + " FOREIGN KEY (book_id) REFERENCES book (_id) ON DELETE CASCADE,"
+                + " UNIQUE (book_id, name) ON CONFLICT REPLACE);");
+        db.insert(BookContract.BookEntry.TABLE_NAME, null, getBookValues());
+        db.insert(BookContract.AuthorEntry.TABLE_NAME, null, getAuthorValues());
+        db.setVersion(3);
+        db.close();
+
+        BookDbHelper dbHelper = new BookDbHelper(mContext);
+        db = dbHelper.getWritableDatabase();
+        Cursor cursor = db.query(BookContract.BookEntry.TABLE_NAME
+                , new String[] {BookContract.BookEntry._ID
+                        , BookContract.BookEntry.COLUMN_FETCHED_AT
+                        , BookContract.BookEntry.COLUMN_DELETED_AT
+                        , BookContract.BookEntry.COLUMN_MODIFIED_AT
+                        , BookContract.BookEntry.COLUMN_SYNCED_AT
+                        , BookContract.BookEntry.COLUMN_TITLE_SORT}
+                , null, null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(ean, cursor.getLong(0));
+        assertTrue(cursor.isNull(1));
+        assertTrue(cursor.isNull(2));
+        assertEquals(0L, cursor.getLong(3));
+        assertTrue(cursor.isNull(4));
+        assertEquals(title, cursor.getString(5));
+        cursor.close();
+        // The authors already in the database are counted
+        cursor = db.query(BookContract.AuthorFacetEntry.TABLE_NAME
+                , new String[] {BookContract.AuthorFacetEntry.COLUMN_NAME
+                        , BookContract.AuthorFacetEntry.COLUMN_BOOK_COUNT}
+                , null, null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(author, cursor.getString(0));
+        assertEquals(1, cursor.getInt(1));
+        cursor.close();
+        // The books already in the database are indexed
+        assertTrue(SearchIndex.search(db, title, null, null).containsKey(ean));
+        assertTrue(SearchIndex.search(db, author, null, null).containsKey(ean));
+        cursor = db.query(BookContract.BookDetailEntry.TABLE_NAME
+                , new String[] {BookContract.BookDetailEntry.COLUMN_BOOK_ID
+                        , BookContract.BookDetailEntry.COLUMN_DESCRIPTION}
+                , null, null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(ean, cursor.getLong(0));
+        assertEquals(desc, cursor.getString(1));
+        cursor.close();
+        dbHelper.close();
+        mContext.deleteDatabase(BookDbHelper.DATABASE_NAME);
+    }
+
     static void validateCursor(Cursor valueCursor, ContentValues expectedValues) {
 
         assertTrue(valueCursor.moveToFirst());
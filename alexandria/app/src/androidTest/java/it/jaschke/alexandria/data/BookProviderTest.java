@@ -6,6 +6,8 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.test.AndroidTestCase;
 
+import org.apache.commons.lang3.StringUtils;
+
 /**
  * Created by saj on 23/12/14.
  */
@@ -86,6 +88,20 @@ public class BookProviderTest extends AndroidTestCase {
         type = mContext.getContentResolver().getType(BookContract.CategoryEntry.buildCategoryUri(id));
         assertEquals(BookContract.CategoryEntry.CONTENT_ITEM_TYPE, type);
 
+        type = mContext.getContentResolver().getType(
+                BookContract.ChangeEntry.buildChangesSinceUri(id));
+        assertEquals(BookContract.ChangeEntry.CONTENT_TYPE, type);
+
+        type = mContext.getContentResolver().getType(BookContract.AuthorFacetEntry.CONTENT_URI);
+        assertEquals(BookContract.AuthorFacetEntry.CONTENT_TYPE, type);
+
+        type = mContext.getContentResolver().getType(BookContract.CategoryFacetEntry.CONTENT_URI);
+        assertEquals(BookContract.CategoryFacetEntry.CONTENT_TYPE, type);
+
+        type = mContext.getContentResolver().getType(
+                BookContract.BookEntry.buildSearchUri("tolkien"));
+        assertEquals(BookContract.BookEntry.CONTENT_TYPE, type);
+
     }
 
     public void testInsertRead(){
@@ -182,4 +198,434 @@ public class BookProviderTest extends AndroidTestCase {
 
     }
 
-}
\ No newline at end of file
+    public void testDisplayTitle() {
+        ContentValues bookValues = BookDbTest.getBookValues();
+        mContext.getContentResolver().insert(BookContract.BookEntry.CONTENT_URI, bookValues);
+        String[] projection = {BookContract.BookEntry.COLUMN_DISPLAY_TITLE};
+
+        Cursor cursor = mContext.getContentResolver().query(
+                BookContract.BookEntry.buildBookUri(BookDbTest.ean),
+                projection,
+                null, // cols for "where" clause
+                null, // values for "where" clause
+                null  // sort order
+        );
+        assertTrue(cursor.moveToFirst());
+        assertEquals(BookDbTest.title + ": " + BookDbTest.subtitle, cursor.getString(0));
+        cursor.close();
+
+        ContentValues update = new ContentValues();
+        update.putNull(BookContract.BookEntry.COLUMN_SUBTITLE);
+        mContext.getContentResolver().update(
+                BookContract.BookEntry.CONTENT_URI,
+                update,
+                BookContract.BookEntry._ID + " = ?",
+                new String[] {Long.toString(BookDbTest.ean)});
+
+        cursor = mContext.getContentResolver().query(
+                BookContract.BookEntry.buildBookUri(BookDbTest.ean),
+                projection,
+                null, // cols for "where" clause
+                null, // values for "where" clause
+                null  // sort order
+        );
+        assertTrue(cursor.moveToFirst());
+        assertEquals(BookDbTest.title, cursor.getString(0));
+        cursor.close();
+    }
+
+    public void testTitleSort() {
+        ContentValues bookValues = BookDbTest.getBookValues();
+        bookValues.put(BookContract.BookEntry.COLUMN_TITLE, "  «" + BookDbTest.title + "»");
+        mContext.getContentResolver().insert(BookContract.BookEntry.CONTENT_URI, bookValues);
+        String[] projection = {BookContract.BookEntry.COLUMN_TITLE_SORT};
+
+        Cursor cursor = mContext.getContentResolver().query(
+                BookContract.BookEntry.buildBookUri(BookDbTest.ean),
+                projection,
+                null, // cols for "where" clause
+                null, // values for "where" clause
+                BookContract.BookEntry.SORT_ORDER_TITLE
+        );
+        assertTrue(cursor.moveToFirst());
+        assertEquals(BookDbTest.title + "»", cursor.getString(0));
+        cursor.close();
+    }
+
+    public void testCachedQuery() {
+        ContentValues bookValues = BookDbTest.getBookValues();
+        mContext.getContentResolver().insert(BookContract.BookEntry.CONTENT_URI, bookValues);
+        Uri uri = BookContract.buildCachedUri(BookContract.BookEntry.CONTENT_URI);
+
+        int hits = getCacheHits();
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+        cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        BookDbTest.validateCursor(cursor, bookValues);
+        assertEquals(hits + 1, getCacheHits());
+
+        // Writes invalidate the cached results
+        mContext.getContentResolver().delete(BookContract.BookEntry.CONTENT_URI, null, null);
+        cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+        assertEquals(hits + 1, getCacheHits());
+    }
+
+    public void testCachedQueryCascade() {
+        mContext.getContentResolver().insert(
+                BookContract.BookEntry.CONTENT_URI, BookDbTest.getBookValues());
+        mContext.getContentResolver().insert(
+                BookContract.AuthorEntry.CONTENT_URI, BookDbTest.getAuthorValues());
+        Uri uri = BookContract.buildCachedUri(
+                BookContract.BookEntry.buildBookAuthorsUri(BookDbTest.ean));
+
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+
+        // Deleting the book deletes its authors too
+        mContext.getContentResolver().delete(BookContract.BookEntry.CONTENT_URI, null, null);
+        cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testCachedFacetQuery() {
+        mContext.getContentResolver().insert(
+                BookContract.BookEntry.CONTENT_URI, BookDbTest.getBookValues());
+        Uri uri = BookContract.buildCachedUri(
+                BookContract.BookEntry.buildBooksByAuthorUri(BookDbTest.author));
+
+        Cursor cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+
+        // The authors are written after their book, the cached books of the facet are stale
+        mContext.getContentResolver().insert(
+                BookContract.AuthorEntry.CONTENT_URI, BookDbTest.getAuthorValues());
+        cursor = mContext.getContentResolver().query(uri, null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testLongDescription() {
+        ContentValues bookValues = BookDbTest.getBookValues();
+        String description = StringUtils.repeat(BookDbTest.desc, 10);
+        bookValues.put(BookContract.BookEntry.COLUMN_DESCRIPTION, description);
+        mContext.getContentResolver().insert(BookContract.BookEntry.CONTENT_URI, bookValues);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                BookContract.BookEntry.buildBookUri(BookDbTest.ean),
+                null, // all columns
+                null, // cols for "where" clause
+                null, // values for "where" clause
+                null  // sort order
+        );
+        BookDbTest.validateCursor(cursor, bookValues);
+
+        ContentValues update = new ContentValues();
+        update.put(BookContract.BookEntry.COLUMN_DESCRIPTION, BookDbTest.desc);
+        assertEquals(1, mContext.getContentResolver().update(
+                BookContract.BookEntry.CONTENT_URI,
+                update,
+                BookContract.BookEntry._ID + " = ?",
+                new String[] {Long.toString(BookDbTest.ean)}));
+        cursor = mContext.getContentResolver().query(
+                BookContract.BookEntry.buildBookUri(BookDbTest.ean),
+                new String[] {BookContract.BookEntry.COLUMN_DESCRIPTION},
+                null, // cols for "where" clause
+                null, // values for "where" clause
+                null  // sort order
+        );
+        BookDbTest.validateCursor(cursor, update);
+    }
+
+    public void testDeletedBook() {
+        ContentValues bookValues = BookDbTest.getBookValues();
+        mContext.getContentResolver().insert(BookContract.BookEntry.CONTENT_URI, bookValues);
+        mContext.getContentResolver().insert(
+                BookContract.AuthorEntry.CONTENT_URI, BookDbTest.getAuthorValues());
+        Uri authorsUri = BookContract.buildCachedUri(
+                BookContract.BookEntry.buildBookAuthorsUri(BookDbTest.ean));
+        Cursor cursor = mContext.getContentResolver().query(authorsUri, null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+
+        ContentValues deletion = new ContentValues();
+        deletion.put(BookContract.BookEntry.COLUMN_DELETED_AT, System.currentTimeMillis());
+        assertEquals(1, mContext.getContentResolver().update(
+                BookContract.BookEntry.CONTENT_URI,
+                deletion,
+                BookContract.BookEntry._ID + " = ?",
+                new String[] {Long.toString(BookDbTest.ean)}));
+
+        // Neither the book nor its authors are returned, not even from the cache
+        cursor = mContext.getContentResolver().query(
+                BookContract.BookEntry.buildBookUri(BookDbTest.ean), null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+        cursor = mContext.getContentResolver().query(authorsUri, null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+        cursor = mContext.getContentResolver().query(
+                BookContract.buildIncludeDeletedUri(BookContract.BookEntry.CONTENT_URI),
+                null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+
+        // Adding it again replaces it
+        mContext.getContentResolver().insert(BookContract.BookEntry.CONTENT_URI, bookValues);
+        cursor = mContext.getContentResolver().query(
+                BookContract.BookEntry.buildBookUri(BookDbTest.ean), null, null, null, null);
+        BookDbTest.validateCursor(cursor, bookValues);
+        cursor = mContext.getContentResolver().query(authorsUri, null, null, null, null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testFacets() {
+        mContext.getContentResolver().insert(
+                BookContract.BookEntry.CONTENT_URI, BookDbTest.getBookValues());
+        mContext.getContentResolver().insert(
+                BookContract.AuthorEntry.CONTENT_URI, BookDbTest.getAuthorValues());
+        mContext.getContentResolver().insert(
+                BookContract.CategoryEntry.CONTENT_URI, BookDbTest.getCategoryValues());
+        ContentValues otherBook = BookDbTest.getBookValues();
+        otherBook.put(BookContract.BookEntry._ID, BookDbTest.ean + 1);
+        mContext.getContentResolver().insert(BookContract.BookEntry.CONTENT_URI, otherBook);
+        ContentValues otherAuthor = BookDbTest.getAuthorValues();
+        otherAuthor.put(BookContract.AuthorEntry.COLUMN_BOOK_ID, BookDbTest.ean + 1);
+        mContext.getContentResolver().insert(BookContract.AuthorEntry.CONTENT_URI, otherAuthor);
+
+        assertFacet(BookContract.AuthorFacetEntry.CONTENT_URI, BookDbTest.author, 2);
+        assertFacet(BookContract.CategoryFacetEntry.CONTENT_URI, BookDbTest.category, 1);
+        Cursor cursor = mContext.getContentResolver().query(
+                BookContract.BookEntry.buildBooksByCategoryUri(BookDbTest.category),
+                new String[] {BookContract.BookEntry._ID}, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1, cursor.getCount());
+        assertEquals(BookDbTest.ean, cursor.getLong(0));
+        cursor.close();
+
+        // Deleted books are not counted, restored ones are again
+        ContentValues deletion = new ContentValues();
+        deletion.put(BookContract.BookEntry.COLUMN_DELETED_AT, System.currentTimeMillis());
+        String[] idArgs = {Long.toString(BookDbTest.ean)};
+        mContext.getContentResolver().update(BookContract.BookEntry.CONTENT_URI, deletion,
+                BookContract.BookEntry._ID + " = ?", idArgs);
+        assertFacet(BookContract.AuthorFacetEntry.CONTENT_URI, BookDbTest.author, 1);
+        assertFacet(BookContract.CategoryFacetEntry.CONTENT_URI, BookDbTest.category, 0);
+        deletion.putNull(BookContract.BookEntry.COLUMN_DELETED_AT);
+        mContext.getContentResolver().update(BookContract.BookEntry.CONTENT_URI, deletion,
+                BookContract.BookEntry._ID + " = ?", idArgs);
+        assertFacet(BookContract.AuthorFacetEntry.CONTENT_URI, BookDbTest.author, 2);
+
+        // Removing a book for good discounts it once
+        mContext.getContentResolver().delete(BookContract.BookEntry.CONTENT_URI,
+                BookContract.BookEntry._ID + " = ?", idArgs);
+        assertFacet(BookContract.AuthorFacetEntry.CONTENT_URI, BookDbTest.author, 1);
+        assertFacet(BookContract.CategoryFacetEntry.CONTENT_URI, BookDbTest.category, 0);
+    }
+
+    private void assertFacet(Uri uri, String name, int bookCount) {
+        Cursor cursor = mContext.getContentResolver().query(uri,
+                new String[] {BookContract.AuthorFacetEntry.COLUMN_BOOK_COUNT},
+                BookContract.AuthorFacetEntry.COLUMN_NAME + " = ?", new String[] {name}, null);
+        if (bookCount == 0) {
+            assertEquals(0, cursor.getCount());
+        } else {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(bookCount, cursor.getInt(0));
+        }
+        cursor.close();
+    }
+
+    public void testFuzzySearch() {
+        mContext.getContentResolver().insert(
+                BookContract.BookEntry.CONTENT_URI, BookDbTest.getBookValues());
+        mContext.getContentResolver().insert(
+                BookContract.AuthorEntry.CONTENT_URI, BookDbTest.getAuthorValues());
+        ContentValues otherBook = BookDbTest.getBookValues();
+        otherBook.put(BookContract.BookEntry._ID, BookDbTest.ean + 1);
+        otherBook.put(BookContract.BookEntry.COLUMN_TITLE, "Artificial Life");
+        otherBook.putNull(BookContract.BookEntry.COLUMN_SUBTITLE);
+        mContext.getContentResolver().insert(BookContract.BookEntry.CONTENT_URI, otherBook);
+
+        // Typos, accents and case are tolerated, the most similar book comes first
+        assertSearch("Inteligence", BookDbTest.ean);
+        assertSearch("ÁRTIFICIAL intelligense", BookDbTest.ean, BookDbTest.ean + 1);
+        assertSearch("Artifical Life", BookDbTest.ean + 1, BookDbTest.ean);
+        assertSearch("artif", BookDbTest.ean, BookDbTest.ean + 1);
+        assertSearch("Rusel", BookDbTest.ean);
+        assertSearch("Tolkien");
+
+        // Changes to the titles and authors are indexed
+        ContentValues values = new ContentValues();
+        values.put(BookContract.BookEntry.COLUMN_TITLE, "The Hobbit");
+        String[] idArgs = {Long.toString(BookDbTest.ean + 1)};
+        mContext.getContentResolver().update(BookContract.BookEntry.CONTENT_URI, values,
+                BookContract.BookEntry._ID + " = ?", idArgs);
+        assertSearch("Artifical Life", BookDbTest.ean);
+        values = new ContentValues();
+        values.put(BookContract.AuthorEntry.COLUMN_BOOK_ID, BookDbTest.ean + 1);
+        values.put(BookContract.AuthorEntry.COLUMN_NAME, "J. R. R. Tolkien");
+        mContext.getContentResolver().insert(BookContract.AuthorEntry.CONTENT_URI, values);
+        assertSearch("Tolkein", BookDbTest.ean + 1);
+        mContext.getContentResolver().delete(BookContract.AuthorEntry.CONTENT_URI,
+                BookContract.AuthorEntry.COLUMN_BOOK_ID + " = ?", idArgs);
+        assertSearch("Tolkein");
+
+        // Deleted books are not found
+        values = new ContentValues();
+        values.put(BookContract.BookEntry.COLUMN_DELETED_AT, System.currentTimeMillis());
+        mContext.getContentResolver().update(BookContract.BookEntry.CONTENT_URI, values,
+                BookContract.BookEntry._ID + " = ?", new String[] {Long.toString(BookDbTest.ean)});
+        assertSearch("Inteligence");
+    }
+
+    public void testFuzzySearchWithinFacet() {
+        // More books outside the category, and more similar, than a search returns
+        ContentValues[] books = new ContentValues[SearchIndex.MAX_RESULTS];
+        for (int i = 0; i < books.length; i++) {
+            books[i] = new ContentValues();
+            books[i].put(BookContract.BookEntry._ID, BookDbTest.ean + 1 + i);
+            books[i].put(BookContract.BookEntry.COLUMN_TITLE, BookDbTest.title);
+        }
+        mContext.getContentResolver().bulkInsert(BookContract.BookEntry.CONTENT_URI, books);
+        ContentValues book = BookDbTest.getBookValues();
+        book.put(BookContract.BookEntry.COLUMN_TITLE, "Artificial Life");
+        book.putNull(BookContract.BookEntry.COLUMN_SUBTITLE);
+        mContext.getContentResolver().insert(BookContract.BookEntry.CONTENT_URI, book);
+        mContext.getContentResolver().insert(
+                BookContract.CategoryEntry.CONTENT_URI, BookDbTest.getCategoryValues());
+
+        Cursor cursor = mContext.getContentResolver().query(
+                BookContract.BookEntry.buildSearchUri(BookDbTest.title).buildUpon()
+                        .appendQueryParameter(BookContract.QUERY_PARAMETER_CATEGORY
+                                , BookDbTest.category).build(),
+                new String[] {BookContract.BookEntry._ID}, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1, cursor.getCount());
+        assertEquals(BookDbTest.ean, cursor.getLong(0));
+        cursor.close();
+    }
+
+    private void assertSearch(String text, long... expectedIds) {
+        Cursor cursor = mContext.getContentResolver().query(
+                BookContract.BookEntry.buildSearchUri(text),
+                new String[] {BookContract.BookEntry._ID}, null, null, null);
+        assertEquals(text, expectedIds.length, cursor.getCount());
+        for (long expectedId : expectedIds) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(text, expectedId, cursor.getLong(0));
+        }
+        cursor.close();
+    }
+
+    public void testChanges() {
+        final long seq = getLastChange();
+        mContext.getContentResolver().insert(
+                BookContract.BookEntry.CONTENT_URI, BookDbTest.getBookValues());
+        mContext.getContentResolver().insert(
+                BookContract.AuthorEntry.CONTENT_URI, BookDbTest.getAuthorValues());
+        ContentValues deletion = new ContentValues();
+        deletion.put(BookContract.BookEntry.COLUMN_DELETED_AT, System.currentTimeMillis());
+        mContext.getContentResolver().update(BookContract.BookEntry.CONTENT_URI, deletion,
+                BookContract.BookEntry._ID + " = ?",
+                new String[] {Long.toString(BookDbTest.ean)});
+
+        Cursor cursor = mContext.getContentResolver().query(
+                BookContract.ChangeEntry.buildChangesSinceUri(seq),
+                new String[] {BookContract.ChangeEntry.COLUMN_TABLE,
+                        BookContract.ChangeEntry.COLUMN_BOOK_ID,
+                        BookContract.ChangeEntry.COLUMN_OPERATION},
+                null, null, null);
+        // The book's description is logged as an update of the book
+        assertEquals(4, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(BookContract.BookEntry.TABLE_NAME, cursor.getString(0));
+        assertEquals(BookDbTest.ean, cursor.getLong(1));
+        assertEquals(BookContract.ChangeEntry.OPERATION_INSERT, cursor.getInt(2));
+        assertTrue(cursor.moveToPosition(2));
+        assertEquals(BookContract.AuthorEntry.TABLE_NAME, cursor.getString(0));
+        assertEquals(BookContract.ChangeEntry.OPERATION_INSERT, cursor.getInt(2));
+        assertTrue(cursor.moveToLast());
+        assertEquals(BookContract.BookEntry.TABLE_NAME, cursor.getString(0));
+        assertEquals(BookContract.ChangeEntry.OPERATION_DELETE, cursor.getInt(2));
+        cursor.close();
+
+        // Only the last change of each row is kept
+        mContext.getContentResolver().call(BookContract.BASE_CONTENT_URI,
+                BookContract.METHOD_COMPACT_CHANGES, null, null);
+        cursor = mContext.getContentResolver().query(
+                BookContract.ChangeEntry.buildChangesSinceUri(seq), null, null, null, null);
+        assertEquals(2, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testModifiedAt() {
+        final long before = System.currentTimeMillis();
+        mContext.getContentResolver().insert(
+                BookContract.BookEntry.CONTENT_URI, BookDbTest.getBookValues());
+        final long inserted = getModifiedAt();
+        assertTrue(inserted >= before);
+
+        // Marking the book as synced does not modify it
+        ContentValues synced = new ContentValues();
+        synced.put(BookContract.BookEntry.COLUMN_SYNCED_AT, inserted);
+        updateBook(synced);
+        assertEquals(inserted, getModifiedAt());
+
+        ContentValues title = new ContentValues();
+        title.put(BookContract.BookEntry.COLUMN_TITLE, "Another title");
+        updateBook(title);
+        assertTrue(getModifiedAt() >= inserted);
+
+        // Books downloaded from the sync server keep their version
+        title.put(BookContract.BookEntry.COLUMN_MODIFIED_AT, 1L);
+        updateBook(title);
+        assertEquals(1L, getModifiedAt());
+    }
+
+    private void updateBook(ContentValues values) {
+        assertEquals(1, mContext.getContentResolver().update(
+                BookContract.BookEntry.CONTENT_URI, values,
+                BookContract.BookEntry._ID + " = ?",
+                new String[] {Long.toString(BookDbTest.ean)}));
+    }
+
+    private long getModifiedAt() {
+        Cursor cursor = mContext.getContentResolver().query(
+                BookContract.BookEntry.buildBookUri(BookDbTest.ean),
+                new String[] {BookContract.BookEntry.COLUMN_MODIFIED_AT},
+                null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long getLastChange() {
+        Cursor cursor = mContext.getContentResolver().query(
+                BookContract.ChangeEntry.CONTENT_URI,
+                new String[] {BookContract.ChangeEntry._ID},
+                null, null, BookContract.ChangeEntry._ID + " DESC");
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0L;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int getCacheHits() {
+        return mContext.getContentResolver().call(BookContract.BASE_CONTENT_URI
+                , BookContract.METHOD_GET_CACHE_STATS, null, null)
+                .getInt(BookContract.KEY_CACHE_HITS);
+    }
+
+}
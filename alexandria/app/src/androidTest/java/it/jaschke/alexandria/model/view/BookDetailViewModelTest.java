@@ -0,0 +1,70 @@
+package it.jaschke.alexandria.model.view;
+
+import android.test.InstrumentationTestCase;
+import android.test.UiThreadTest;
+import android.util.Log;
+import android.widget.LinearLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import it.jaschke.alexandria.model.domain.Author;
+
+/**
+ * Measures the views inflated by the binding adapters of
+ * {@link BookDetailViewModel} when a book's details are bound several times,
+ * as happens while its loaders deliver their results.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class BookDetailViewModelTest extends InstrumentationTestCase {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = BookDetailViewModelTest.class.getSimpleName();
+
+    @UiThreadTest
+    public void testAuthorViewsAreRecycled() {
+        LinearLayout container =
+                new LinearLayout(getInstrumentation().getTargetContext());
+        int initialCount = BookDetailViewModel.getInflatedItemCount();
+
+        // A detail open binds the authors up to three times
+        List<Author> authors = newAuthors(3);
+        BookDetailViewModel.loadAuthorViews(container, authors);
+        BookDetailViewModel.loadAuthorViews(container, authors);
+        BookDetailViewModel.loadAuthorViews(container, newAuthors(3));
+        int inflated = BookDetailViewModel.getInflatedItemCount() - initialCount;
+        Log.i(LOG_TAG, "Author views inflated per detail open: " + inflated);
+        assertEquals(3, inflated);
+        assertEquals(3, container.getChildCount());
+
+        BookDetailViewModel.loadAuthorViews(container, newAuthors(1));
+        assertEquals(1, container.getChildCount());
+        BookDetailViewModel.loadAuthorViews(container, newAuthors(2));
+        assertEquals(2, container.getChildCount());
+        assertEquals(4, BookDetailViewModel.getInflatedItemCount() - initialCount);
+
+        BookDetailViewModel.loadAuthorViews(container, null);
+        assertEquals(0, container.getChildCount());
+    }
+
+    /**
+     * Returns a new list with the specified number of authors.
+     *
+     * @param count the number of authors.
+     * @return a new list with {@code count} authors.
+     */
+    private static List<Author> newAuthors(int count) {
+        List<Author> authors = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Author author = new Author();
+            author.setId(i);
+            author.setName("Author " + i);
+            authors.add(author);
+        }
+        return authors;
+    }
+
+}
@@ -0,0 +1,97 @@
+package it.jaschke.alexandria.receiver;
+
+import android.content.Intent;
+import android.test.InstrumentationTestCase;
+import android.test.UiThreadTest;
+
+import org.parceler.Parcels;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.greenrobot.event.EventBus;
+import it.jaschke.alexandria.model.domain.Book;
+import it.jaschke.alexandria.model.event.BookAdditionEvent;
+import it.jaschke.alexandria.service.BookService;
+
+/**
+ * Verifies that {@link NotificationBroadcastReceiver} batches the
+ * notifications that arrive in quick succession.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class NotificationBroadcastReceiverTest extends InstrumentationTestCase {
+
+    /**
+     * Number of notifications received in quick succession.
+     */
+    private static final int NOTIFICATION_COUNT = 200;
+
+    /**
+     * The {@link BookAdditionEvent}s published during the test.
+     */
+    private final List<BookAdditionEvent> mEvents = new ArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        EventBus.getDefault().register(this);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        EventBus.getDefault().unregister(this);
+        super.tearDown();
+    }
+
+    /**
+     * Records the {@link BookAdditionEvent}s published.
+     *
+     * @param event the book addition event.
+     */
+    public void onEvent(BookAdditionEvent event) {
+        mEvents.add(event);
+    }
+
+    @UiThreadTest
+    public void testNotificationsAreBatched() {
+        NotificationBroadcastReceiver receiver =
+                new NotificationBroadcastReceiver(getInstrumentation().getTargetContext());
+
+        // The first notification is handled right away
+        receiver.onReceive(null, newNotification(BookService.CATEGORY_SUCCESSFULLY_ADDED, 0));
+        assertEquals(1, mEvents.size());
+
+        for (int i = 1; i <= NOTIFICATION_COUNT; i++) {
+            final String category = i % 2 == 0
+                    ? BookService.CATEGORY_SUCCESSFULLY_ADDED
+                    : BookService.CATEGORY_NO_RESULT;
+            receiver.onReceive(null, newNotification(category, i));
+        }
+        assertEquals("The rest wait for the batch window to end", 1, mEvents.size());
+
+        receiver.flush();
+        assertEquals("Only the last book added is published", 2, mEvents.size());
+        assertEquals(NOTIFICATION_COUNT, mEvents.get(1).getAddedBook().getId());
+
+        receiver.flush();
+        assertEquals(2, mEvents.size());
+    }
+
+    /**
+     * Creates a notification like those broadcasted by {@link BookService}.
+     *
+     * @param category the notification's category.
+     * @param bookId the id of the book notified about.
+     * @return the notification.
+     */
+    private static Intent newNotification(String category, long bookId) {
+        Book book = new Book();
+        book.setId(bookId);
+        Intent intent = new Intent(BookService.ACTION_NOTIFY);
+        intent.addCategory(category);
+        intent.putExtra(BookService.EXTRA_BOOK, Parcels.wrap(book));
+        return intent;
+    }
+
+}
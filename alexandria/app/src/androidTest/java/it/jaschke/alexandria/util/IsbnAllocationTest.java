@@ -0,0 +1,39 @@
+package it.jaschke.alexandria.util;
+
+import android.os.Debug;
+import android.test.InstrumentationTestCase;
+
+/**
+ * Verifies that {@link Isbn} validates numbers without allocating objects,
+ * as it does for every character entered in the book addition view.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class IsbnAllocationTest extends InstrumentationTestCase {
+
+    /**
+     * Number of validations performed while counting allocations.
+     */
+    private static final int VALIDATIONS = 1000;
+
+    @SuppressWarnings("deprecation") // Allocation counting is only for tests
+    public void testValidationDoesNotAllocate() {
+        final StringBuilder code = new StringBuilder("9780306406157");
+        final long number = 9780306406157L;
+        // Warm up, so class loading is not counted
+        Isbn.isValidIsbn13(code);
+        Isbn.isValidIsbn13(number);
+        Isbn.isValidIsbn10(code);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < VALIDATIONS; i++) {
+            Isbn.isValidIsbn13(code);
+            Isbn.isValidIsbn13(number);
+            Isbn.isValidIsbn10(code);
+        }
+        Debug.stopAllocCounting();
+        assertEquals(0, Debug.getThreadAllocCount());
+    }
+
+}
@@ -0,0 +1,48 @@
+package it.jaschke.alexandria.view.adapter;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.os.Debug;
+import android.test.InstrumentationTestCase;
+import android.test.UiThreadTest;
+import android.view.View;
+
+import it.jaschke.alexandria.data.BookDbTest;
+
+/**
+ * Verifies that {@link BookListAdapter} does not allocate objects when binding
+ * views to data that has not changed, as happens while scrolling back and
+ * forth through the list.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class BookListAdapterTest extends InstrumentationTestCase {
+
+    /**
+     * Number of times a view is bound while counting allocations.
+     */
+    private static final int BIND_COUNT = 100;
+
+    @UiThreadTest
+    @SuppressWarnings("deprecation") // Allocation counting is only for tests
+    public void testSteadyStateBindingDoesNotAllocate() {
+        Context context = getInstrumentation().getTargetContext();
+        MatrixCursor cursor = new MatrixCursor(BookListAdapter.PROJECTION_BOOK_LIST);
+        cursor.addRow(new Object[] {BookDbTest.ean, BookDbTest.title, BookDbTest.imgUrl
+                , BookDbTest.title, BookDbTest.subtitle});
+        assertTrue(cursor.moveToFirst());
+        BookListAdapter adapter = new BookListAdapter(context, cursor, 0);
+        View view = adapter.newView(context, cursor, null);
+        adapter.bindView(view, context, cursor); // first bind may allocate
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < BIND_COUNT; i++) {
+            adapter.bindView(view, context, cursor);
+        }
+        Debug.stopAllocCounting();
+        assertEquals(0, Debug.getThreadAllocCount());
+        cursor.close();
+    }
+
+}
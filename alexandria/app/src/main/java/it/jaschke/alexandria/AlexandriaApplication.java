@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria;
+
+import android.app.Application;
+import android.content.Context;
+
+import it.jaschke.alexandria.util.MainThreadWatchdog;
+import it.jaschke.alexandria.util.StartupTrace;
+
+/**
+ * The application. Marks the start of the process, so the startup work can be
+ * measured relative to it. It must not do any other work at startup, as it
+ * delays the first frame; that work belongs after the first draw instead. The
+ * only exception is the {@link MainThreadWatchdog}, installed in debug builds,
+ * whose report is logged whenever the user interface is hidden.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see StartupTrace
+ */
+public class AlexandriaApplication extends Application {
+
+    @Override
+    protected void attachBaseContext(Context base) {
+        // Runs before any ContentProvider is created
+        StartupTrace.onProcessStart();
+        super.attachBaseContext(base);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        MainThreadWatchdog.install();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (BuildConfig.DEBUG && level == TRIM_MEMORY_UI_HIDDEN) {
+            MainThreadWatchdog.logReport();
+        }
+    }
+
+}
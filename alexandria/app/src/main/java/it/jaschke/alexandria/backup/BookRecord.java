@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.backup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A book as stored in a library backup. Instances are meant to be reused
+ * while a backup is written or read, so the memory used does not depend on
+ * the size of the library.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see LibraryWriter
+ * @see LibraryReader
+ */
+public class BookRecord {
+
+    /**
+     * The book's ISBN-13.
+     */
+    private long mId;
+
+    /**
+     * The book's title.
+     */
+    private String mTitle;
+
+    /**
+     * The book's subtitle, possibly {@code null}.
+     */
+    private String mSubtitle;
+
+    /**
+     * The book's description, possibly {@code null}.
+     */
+    private String mDescription;
+
+    /**
+     * The URL of the book's cover, possibly {@code null}.
+     */
+    private String mCoverUrl;
+
+    /**
+     * The encoded image of the book's cover, possibly {@code null}.
+     */
+    private byte[] mCover;
+
+    /**
+     * The names of the book's authors.
+     */
+    private final List<String> mAuthors = new ArrayList<>();
+
+    /**
+     * The names of the book's categories.
+     */
+    private final List<String> mCategories = new ArrayList<>();
+
+    /**
+     * When the book was last modified, in milliseconds since the epoch. Used
+     * as the book's version to resolve sync conflicts.
+     */
+    private long mModifiedAt;
+
+    /**
+     * When the book was deleted, in milliseconds since the epoch, or
+     * {@code 0} if it was not.
+     */
+    private long mDeletedAt;
+
+    public long getId() {
+        return mId;
+    }
+
+    public void setId(long id) {
+        mId = id;
+    }
+
+    public String getTitle() {
+        return mTitle;
+    }
+
+    public void setTitle(String title) {
+        mTitle = title;
+    }
+
+    public String getSubtitle() {
+        return mSubtitle;
+    }
+
+    public void setSubtitle(String subtitle) {
+        mSubtitle = subtitle;
+    }
+
+    public String getDescription() {
+        return mDescription;
+    }
+
+    public void setDescription(String description) {
+        mDescription = description;
+    }
+
+    public String getCoverUrl() {
+        return mCoverUrl;
+    }
+
+    public void setCoverUrl(String coverUrl) {
+        mCoverUrl = coverUrl;
+    }
+
+    public byte[] getCover() {
+        return mCover;
+    }
+
+    public void setCover(byte[] cover) {
+        mCover = cover;
+    }
+
+    public long getModifiedAt() {
+        return mModifiedAt;
+    }
+
+    public void setModifiedAt(long modifiedAt) {
+        mModifiedAt = modifiedAt;
+    }
+
+    public long getDeletedAt() {
+        return mDeletedAt;
+    }
+
+    public void setDeletedAt(long deletedAt) {
+        mDeletedAt = deletedAt;
+    }
+
+    /**
+     * Returns the names of the book's authors. The list is modifiable.
+     *
+     * @return the names of the book's authors.
+     */
+    public List<String> getAuthors() {
+        return mAuthors;
+    }
+
+    /**
+     * Returns the names of the book's categories. The list is modifiable.
+     *
+     * @return the names of the book's categories.
+     */
+    public List<String> getCategories() {
+        return mCategories;
+    }
+
+    /**
+     * Clears all the fields, so the instance can be reused for another book.
+     */
+    public void clear() {
+        mId = 0L;
+        mTitle = null;
+        mSubtitle = null;
+        mDescription = null;
+        mCoverUrl = null;
+        mCover = null;
+        mAuthors.clear();
+        mCategories.clear();
+        mModifiedAt = 0L;
+        mDeletedAt = 0L;
+    }
+
+}
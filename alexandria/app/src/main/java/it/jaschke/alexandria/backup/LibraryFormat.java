@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.backup;
+
+/**
+ * Constants that define the library backup format. A backup starts with
+ * {@link #MAGIC} and the {@link #VERSION} of the format, uncompressed,
+ * followed by a GZIP stream of records. Each record starts with a tag:
+ * {@link #TAG_BOOK} is followed by a book's fields, {@link #TAG_END} by the
+ * number of books in the backup, and closes it. Strings are written as their
+ * length in UTF-8 bytes, or {@code -1} for {@code null}, followed by the
+ * bytes. Covers are written in the same way. Since {@link #VERSION_SYNC},
+ * the fields of a book end with its modification and deletion times, used
+ * by the sync engine.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+final class LibraryFormat {
+
+    /**
+     * Identifies library backups.
+     */
+    static final int MAGIC = 0x414c584c; // "ALXL"
+
+    /**
+     * Version of the format written. Readers reject newer versions.
+     */
+    static final int VERSION = 2;
+
+    /**
+     * First version whose books include their modification and deletion
+     * times. Older backups are read as if both were {@code 0}.
+     */
+    static final int VERSION_SYNC = 2;
+
+    /**
+     * Tag of the record that closes the backup.
+     */
+    static final int TAG_END = 0;
+
+    /**
+     * Tag of the records that hold a book.
+     */
+    static final int TAG_BOOK = 1;
+
+    /**
+     * Length written for {@code null} strings and covers.
+     */
+    static final int NULL_LENGTH = -1;
+
+    /**
+     * Longest string accepted when reading, in bytes, so corrupt backups do
+     * not exhaust the memory.
+     */
+    static final int MAX_STRING_LENGTH = 1024 * 1024;
+
+    /**
+     * Largest cover accepted when reading, in bytes.
+     */
+    static final int MAX_COVER_LENGTH = 4 * 1024 * 1024;
+
+    /**
+     * Largest number of authors or categories accepted for a book.
+     */
+    static final int MAX_NAMES = 1024;
+
+    /**
+     * Size of the buffers used to write and read the backups, in bytes.
+     */
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * The class only provides constants.
+     */
+    private LibraryFormat() {
+        // Empty constructor
+    }
+
+}
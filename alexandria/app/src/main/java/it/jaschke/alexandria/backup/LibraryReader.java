@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.backup;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a library backup one book at a time, so the memory used does not
+ * depend on the size of the library.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see LibraryWriter
+ */
+public class LibraryReader implements Closeable {
+
+    /**
+     * Encoding of the strings.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Provides the uncompressed records.
+     */
+    private final DataInputStream mInput;
+
+    /**
+     * Version of the format of the backup being read.
+     */
+    private final int mVersion;
+
+    /**
+     * Holds the bytes of the string being read. Grows as needed.
+     */
+    private byte[] mStringBuffer = new byte[LibraryFormat.BUFFER_SIZE];
+
+    /**
+     * Number of books read.
+     */
+    private int mBookCount;
+
+    /**
+     * Indicates if the record that closes the backup was read.
+     */
+    private boolean mFinished;
+
+    /**
+     * Creates a new {@link LibraryReader} and reads the header of the backup.
+     *
+     * @param input the backup. Closed by {@link #close()}.
+     * @throws IOException if the header cannot be read, or it does not
+     *     belong to a backup in a supported version.
+     */
+    public LibraryReader(InputStream input) throws IOException {
+        DataInputStream header = new DataInputStream(input);
+        if (header.readInt() != LibraryFormat.MAGIC) {
+            throw new IOException("Not a library backup.");
+        }
+        mVersion = header.readUnsignedByte();
+        if (mVersion > LibraryFormat.VERSION) {
+            throw new IOException("Unsupported library backup version " + mVersion);
+        }
+        mInput = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(input, LibraryFormat.BUFFER_SIZE)
+                , LibraryFormat.BUFFER_SIZE));
+    }
+
+    /**
+     * Reads the next book into the record passed as argument.
+     *
+     * @param book where the book is read into. Cleared first.
+     * @return {@code true} if a book was read, {@code false} if there are no
+     *     more books.
+     * @throws IOException if the book cannot be read, or the backup is
+     *     corrupt or truncated.
+     */
+    public boolean readBook(BookRecord book) throws IOException {
+        if (mFinished) {
+            return false;
+        }
+        final int tag = mInput.readUnsignedByte();
+        if (tag == LibraryFormat.TAG_END) {
+            final int expectedCount = mInput.readInt();
+            if (expectedCount != mBookCount) {
+                throw new IOException("Expected " + expectedCount
+                        + " books, but read " + mBookCount);
+            }
+            mFinished = true;
+            return false;
+        } else if (tag != LibraryFormat.TAG_BOOK) {
+            throw new IOException("Unknown record " + tag);
+        }
+        book.clear();
+        book.setId(mInput.readLong());
+        book.setTitle(readString());
+        book.setSubtitle(readString());
+        book.setDescription(readString());
+        book.setCoverUrl(readString());
+        readStrings(book.getAuthors());
+        readStrings(book.getCategories());
+        book.setCover(readCover());
+        if (mVersion >= LibraryFormat.VERSION_SYNC) {
+            book.setModifiedAt(mInput.readLong());
+            book.setDeletedAt(mInput.readLong());
+        }
+        mBookCount++;
+        return true;
+    }
+
+    /**
+     * Returns the number of books read so far.
+     *
+     * @return the number of books read so far.
+     */
+    public int getBookCount() {
+        return mBookCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInput.close();
+    }
+
+    /**
+     * Reads a list of strings, preceded by its size.
+     *
+     * @param strings where the strings are added.
+     * @throws IOException if the strings cannot be read.
+     */
+    private void readStrings(List<String> strings) throws IOException {
+        final int count = mInput.readInt();
+        if (count < 0 || count > LibraryFormat.MAX_NAMES) {
+            throw new IOException("Invalid number of names " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            strings.add(readString());
+        }
+    }
+
+    /**
+     * Reads a string, possibly {@code null}, encoded as UTF-8.
+     *
+     * @return the string read.
+     * @throws IOException if the string cannot be read.
+     */
+    private String readString() throws IOException {
+        final int length = readLength(LibraryFormat.MAX_STRING_LENGTH);
+        if (length == LibraryFormat.NULL_LENGTH) {
+            return null;
+        }
+        if (mStringBuffer.length < length) {
+            mStringBuffer = new byte[length];
+        }
+        mInput.readFully(mStringBuffer, 0, length);
+        return new String(mStringBuffer, 0, length, UTF_8);
+    }
+
+    /**
+     * Reads a cover, possibly {@code null}.
+     *
+     * @return the encoded image of the cover.
+     * @throws IOException if the cover cannot be read.
+     */
+    private byte[] readCover() throws IOException {
+        final int length = readLength(LibraryFormat.MAX_COVER_LENGTH);
+        if (length == LibraryFormat.NULL_LENGTH) {
+            return null;
+        }
+        byte[] cover = new byte[length];
+        mInput.readFully(cover);
+        return cover;
+    }
+
+    /**
+     * Reads the length of a string or cover.
+     *
+     * @param maxLength the largest length accepted.
+     * @return the length read, or {@link LibraryFormat#NULL_LENGTH}.
+     * @throws IOException if the length cannot be read or is invalid.
+     */
+    private int readLength(int maxLength) throws IOException {
+        final int length = mInput.readInt();
+        if (length < LibraryFormat.NULL_LENGTH || length > maxLength) {
+            throw new IOException("Invalid length " + length);
+        }
+        return length;
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.backup;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a library backup one book at a time, so the memory used does not
+ * depend on the size of the library. {@link #finish()} must be called after
+ * the last book, otherwise the backup is considered truncated when read.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see LibraryReader
+ */
+public class LibraryWriter implements Closeable {
+
+    /**
+     * Encoding of the strings.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Receives the compressed records.
+     */
+    private final DataOutputStream mOutput;
+
+    /**
+     * Number of books written.
+     */
+    private int mBookCount;
+
+    /**
+     * Creates a new {@link LibraryWriter} and writes the header of the backup.
+     *
+     * @param output where the backup is written. Closed by {@link #close()}.
+     * @throws IOException if the header cannot be written.
+     */
+    public LibraryWriter(OutputStream output) throws IOException {
+        DataOutputStream header = new DataOutputStream(output);
+        header.writeInt(LibraryFormat.MAGIC);
+        header.writeByte(LibraryFormat.VERSION);
+        header.flush();
+        mOutput = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(output, LibraryFormat.BUFFER_SIZE)
+                , LibraryFormat.BUFFER_SIZE));
+    }
+
+    /**
+     * Writes a book.
+     *
+     * @param book the book to write.
+     * @throws IOException if the book cannot be written.
+     */
+    public void writeBook(BookRecord book) throws IOException {
+        mOutput.writeByte(LibraryFormat.TAG_BOOK);
+        mOutput.writeLong(book.getId());
+        writeString(book.getTitle());
+        writeString(book.getSubtitle());
+        writeString(book.getDescription());
+        writeString(book.getCoverUrl());
+        writeStrings(book.getAuthors());
+        writeStrings(book.getCategories());
+        writeBytes(book.getCover());
+        mOutput.writeLong(book.getModifiedAt());
+        mOutput.writeLong(book.getDeletedAt());
+        mBookCount++;
+    }
+
+    /**
+     * Returns the number of books written so far.
+     *
+     * @return the number of books written so far.
+     */
+    public int getBookCount() {
+        return mBookCount;
+    }
+
+    /**
+     * Writes the record that closes the backup and flushes it. No more books
+     * may be written afterwards.
+     *
+     * @throws IOException if the record cannot be written.
+     */
+    public void finish() throws IOException {
+        mOutput.writeByte(LibraryFormat.TAG_END);
+        mOutput.writeInt(mBookCount);
+        mOutput.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mOutput.close();
+    }
+
+    /**
+     * Writes a list of strings, preceded by its size.
+     *
+     * @param strings the strings to write.
+     * @throws IOException if the strings cannot be written.
+     */
+    private void writeStrings(List<String> strings) throws IOException {
+        mOutput.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(string);
+        }
+    }
+
+    /**
+     * Writes a string, possibly {@code null}, encoded as UTF-8.
+     *
+     * @param string the string to write.
+     * @throws IOException if the string cannot be written.
+     */
+    private void writeString(String string) throws IOException {
+        writeBytes(string != null ? string.getBytes(UTF_8) : null);
+    }
+
+    /**
+     * Writes an array of bytes, possibly {@code null}, preceded by its length.
+     *
+     * @param bytes the bytes to write.
+     * @throws IOException if the bytes cannot be written.
+     */
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes == null) {
+            mOutput.writeInt(LibraryFormat.NULL_LENGTH);
+            return;
+        }
+        mOutput.writeInt(bytes.length);
+        mOutput.write(bytes);
+    }
+
+}
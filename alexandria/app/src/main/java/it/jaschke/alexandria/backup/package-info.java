@@ -0,0 +1,25 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Provides the classes that write and read library backups, a compressed
+ * binary format holding books with their authors, categories and,
+ * optionally, covers. They do not depend on the Android framework, so they
+ * can be tested on the JVM.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+package it.jaschke.alexandria.backup;
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.data;
+
+import android.util.LruCache;
+
+import java.util.List;
+
+import it.jaschke.alexandria.model.domain.Author;
+import it.jaschke.alexandria.model.domain.Book;
+import it.jaschke.alexandria.model.domain.Category;
+
+/**
+ * Process-wide, size-bounded cache of {@link Book}s, keyed by their id
+ * (ISBN-13). Lets views keep only the book's id in their saved state and
+ * present the book's data right away when they are recreated, while the
+ * {@code ContentProvider} is queried again. The size of each entry is
+ * estimated by the number of characters of its text.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public final class BookCache {
+
+    /**
+     * Maximum number of characters held by the cache.
+     */
+    private static final int MAX_SIZE = 256 * 1024;
+
+    /**
+     * Size added to each entry to account for the objects themselves.
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /**
+     * The single instance of the cache.
+     */
+    private static final BookCache INSTANCE = new BookCache();
+
+    /**
+     * Holds the cached books.
+     */
+    private final LruCache<Long, Book> mBooks = new LruCache<Long, Book>(MAX_SIZE) {
+        @Override
+        protected int sizeOf(Long key, Book book) {
+            return estimateSize(book);
+        }
+    };
+
+    /**
+     * Only the single instance may be created.
+     *
+     * @see #getInstance()
+     */
+    private BookCache() {
+        // Empty constructor
+    }
+
+    /**
+     * Returns the process-wide instance of {@link BookCache}.
+     *
+     * @return the process-wide instance of {@link BookCache}.
+     */
+    public static BookCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the cached {@link Book} with the specified id, or {@code null}
+     * if it is not in the cache.
+     *
+     * @param id the book's id (ISBN-13).
+     * @return the cached {@link Book} or {@code null} if not available.
+     */
+    public Book get(long id) {
+        return mBooks.get(id);
+    }
+
+    /**
+     * Adds the {@link Book} to the cache, replacing any previous entry with
+     * the same id. The book should be added again whenever its data changes,
+     * so its size is estimated again. {@code null} is ignored.
+     *
+     * @param book the {@link Book} to add.
+     */
+    public void put(Book book) {
+        if (book != null) {
+            mBooks.put(book.getId(), book);
+        }
+    }
+
+    /**
+     * Adds the {@link Book} to the cache only if there is no entry with the
+     * same id, which may hold more data. {@code null} is ignored.
+     *
+     * @param book the {@link Book} to add.
+     */
+    public void putIfAbsent(Book book) {
+        if (book != null && mBooks.get(book.getId()) == null) {
+            mBooks.put(book.getId(), book);
+        }
+    }
+
+    /**
+     * Removes the {@link Book} with the specified id from the cache, if present.
+     *
+     * @param id the book's id (ISBN-13).
+     */
+    public void remove(long id) {
+        mBooks.remove(id);
+    }
+
+    /**
+     * Returns an estimate of the memory used by the {@link Book}, as a
+     * number of characters.
+     *
+     * @param book the {@link Book}.
+     * @return the estimated size of the {@link Book}.
+     */
+    private static int estimateSize(Book book) {
+        int size = ENTRY_OVERHEAD
+                + length(book.getTitle())
+                + length(book.getSubtitle())
+                + length(book.getDescription());
+        if (book.getCoverUri() != null) {
+            size += book.getCoverUri().toString().length();
+        }
+        List<Author> authors = book.getAuthors();
+        if (authors != null) {
+            for (Author author : authors) {
+                size += ENTRY_OVERHEAD + length(author.getName());
+            }
+        }
+        List<Category> categories = book.getCategories();
+        if (categories != null) {
+            for (Category category : categories) {
+                size += ENTRY_OVERHEAD + length(category.getName());
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the length of the text, zero if {@code null}.
+     *
+     * @param text the text.
+     * @return the length of the text, zero if {@code null}.
+     */
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+}
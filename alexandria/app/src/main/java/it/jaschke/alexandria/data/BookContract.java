@@ -39,6 +39,103 @@ public final class BookContract {
      */
     public static final String PATH_BOOK_CATEGORY = "category";
 
+    /**
+     * Path for the facets the books can be browsed by, followed by
+     * {@link #PATH_BOOK_AUTHOR} or {@link #PATH_BOOK_CATEGORY}.
+     */
+    public static final String PATH_FACET = "facet";
+
+    /**
+     * Path segment that precedes the text searched for among the books.
+     *
+     * @see BookEntry#buildSearchUri(String)
+     */
+    public static final String PATH_SEARCH = "search";
+
+    /**
+     * Path for the log of changes to the book data.
+     */
+    public static final String PATH_CHANGE = "change";
+
+    /**
+     * Path segment that precedes the sequence number from which changes are
+     * listed.
+     *
+     * @see ChangeEntry#buildChangesSinceUri(long)
+     */
+    public static final String PATH_SINCE = "since";
+
+    /**
+     * Query parameter that, set to {@code true}, lets the content provider
+     * serve the query from its result cache.
+     *
+     * @see #buildCachedUri(Uri)
+     */
+    public static final String QUERY_PARAMETER_CACHED = "cached";
+
+    /**
+     * Query parameter that, set to {@code true}, makes queries for books
+     * return those deleted too, whose {@link BookEntry#COLUMN_DELETED_AT} is
+     * set.
+     *
+     * @see #buildIncludeDeletedUri(Uri)
+     */
+    public static final String QUERY_PARAMETER_INCLUDE_DELETED = "include_deleted";
+
+    /**
+     * Query parameter that limits the books returned by queries for books to
+     * those by the author with the name it is set to.
+     *
+     * @see BookEntry#buildBooksByAuthorUri(String)
+     */
+    public static final String QUERY_PARAMETER_AUTHOR = "author";
+
+    /**
+     * Query parameter that limits the books returned by queries for books to
+     * those of the category with the name it is set to.
+     *
+     * @see BookEntry#buildBooksByCategoryUri(String)
+     */
+    public static final String QUERY_PARAMETER_CATEGORY = "category";
+
+    /**
+     * Method passed to {@link android.content.ContentResolver#call} to get
+     * the statistics of the content provider's result cache, in a
+     * {@link android.os.Bundle} with {@link #KEY_CACHE_HITS} and
+     * {@link #KEY_CACHE_MISSES}.
+     */
+    public static final String METHOD_GET_CACHE_STATS = "getCacheStats";
+
+    /**
+     * Method passed to {@link android.content.ContentResolver#call} to get
+     * where the time is spent while fetching books, in the
+     * {@link android.os.Bundle} described by
+     * {@link it.jaschke.alexandria.service.FetchStats#toBundle()}.
+     */
+    public static final String METHOD_GET_FETCH_STATS = "getFetchStats";
+
+    /**
+     * Method passed to {@link android.content.ContentResolver#call} to
+     * compact the log of changes, as described in {@link ChangeEntry}.
+     */
+    public static final String METHOD_COMPACT_CHANGES = "compactChanges";
+
+    /**
+     * Key of the number of queries served from the result cache.
+     */
+    public static final String KEY_CACHE_HITS = "cacheHits";
+
+    /**
+     * Key of the number of cacheable queries not served from the result cache.
+     */
+    public static final String KEY_CACHE_MISSES = "cacheMisses";
+
+    /**
+     * Key of the number of changes discarded by
+     * {@link #METHOD_COMPACT_CHANGES}.
+     */
+    public static final String KEY_CHANGES_DISCARDED = "changesDiscarded";
+
     /**
      * The class only provides constants and utility methods.
      */
@@ -46,6 +143,34 @@ public final class BookContract {
         // Empty constructor
     }
 
+    /**
+     * Returns the URI with {@link #QUERY_PARAMETER_CACHED} set, so that the
+     * query is served from the content provider's result cache when
+     * possible. Meant for the queries repeated as the user navigates, whose
+     * results are small.
+     *
+     * @param uri a content URI of this contract.
+     * @return the URI with {@link #QUERY_PARAMETER_CACHED} set.
+     */
+    public static Uri buildCachedUri(Uri uri) {
+        return uri.buildUpon()
+                .appendQueryParameter(QUERY_PARAMETER_CACHED, Boolean.TRUE.toString())
+                .build();
+    }
+
+    /**
+     * Returns the URI with {@link #QUERY_PARAMETER_INCLUDE_DELETED} set, so
+     * that queries for books also return those deleted but not yet purged.
+     *
+     * @param uri a content URI of this contract.
+     * @return the URI with {@link #QUERY_PARAMETER_INCLUDE_DELETED} set.
+     */
+    public static Uri buildIncludeDeletedUri(Uri uri) {
+        return uri.buildUpon()
+                .appendQueryParameter(QUERY_PARAMETER_INCLUDE_DELETED, Boolean.TRUE.toString())
+                .build();
+    }
+
     /**
      * Defines the contents of the table holding book data.
      *
@@ -88,7 +213,9 @@ public final class BookContract {
         public static final String COLUMN_SUBTITLE = "subtitle";
 
         /**
-         * A description of the book's contents.
+         * A description of the book's contents. Kept in
+         * {@link BookDetailEntry#TABLE_NAME}, it is only read when it is part
+         * of the projection.
          */
         public static final String COLUMN_DESCRIPTION = "description";
 
@@ -97,6 +224,74 @@ public final class BookContract {
          */
         public static final String COLUMN_COVER_IMAGE_URL = "cover_image_url";
 
+        /**
+         * The book's title as presented in lists, including the subtitle if
+         * the book has one. Computed by the {@code ContentProvider} whenever
+         * {@link #COLUMN_TITLE} or {@link #COLUMN_SUBTITLE} are written, so
+         * it should not be set by clients.
+         */
+        public static final String COLUMN_DISPLAY_TITLE = "display_title";
+
+        /**
+         * The key books are sorted by title with, built from
+         * {@link #COLUMN_TITLE} by {@link it.jaschke.alexandria.util.SortKey}.
+         * Computed by the {@code ContentProvider} whenever
+         * {@link #COLUMN_TITLE} is written, so it should not be set by
+         * clients. Indexed with the {@code LOCALIZED} collation, so it must
+         * be sorted with {@link #SORT_ORDER_TITLE} for the index to be used.
+         */
+        public static final String COLUMN_TITLE_SORT = "title_sort";
+
+        /**
+         * Sorts the books by title, as collated in the user's locale, using
+         * the index of {@link #COLUMN_TITLE_SORT}.
+         */
+        public static final String SORT_ORDER_TITLE = COLUMN_TITLE_SORT
+                + " COLLATE LOCALIZED, " + TABLE_NAME + "." + _ID;
+
+        /**
+         * When the book's data was last downloaded, or found to be up to
+         * date, in milliseconds since the epoch. {@code null} if unknown
+         * (e.g. the book was imported from a backup).
+         */
+        public static final String COLUMN_FETCHED_AT = "fetched_at";
+
+        /**
+         * The entity tag of the response the book's data was downloaded from,
+         * used to make conditional requests when it is refreshed. Possibly
+         * {@code null}.
+         */
+        public static final String COLUMN_ETAG = "etag";
+
+        /**
+         * When the book was deleted by the user, in milliseconds since the
+         * epoch, or {@code null} if it was not. Deleted books are kept for a
+         * while, so that the deletion can be undone and adding the book again
+         * does not download it again. Queries leave them out, with their
+         * authors and categories, unless
+         * {@link BookContract#QUERY_PARAMETER_INCLUDE_DELETED} is set.
+         * Deleting books through the {@code ContentProvider} removes them for
+         * good.
+         */
+        public static final String COLUMN_DELETED_AT = "deleted_at";
+
+        /**
+         * When the book's data was last modified, in milliseconds since the
+         * epoch, used as its version when the library is synced: the most
+         * recent modification of a book wins. Set by the
+         * {@code ContentProvider} whenever a book is inserted, or its title,
+         * subtitle, description, cover or {@link #COLUMN_DELETED_AT} are
+         * updated, unless the values written include it.
+         */
+        public static final String COLUMN_MODIFIED_AT = "modified_at";
+
+        /**
+         * The {@link #COLUMN_MODIFIED_AT} of the book's data last exchanged
+         * with the sync server, or {@code null} if it never was. The book has
+         * to be uploaded while it differs from {@link #COLUMN_MODIFIED_AT}.
+         */
+        public static final String COLUMN_SYNCED_AT = "synced_at";
+
         /**
          * Returns the URI for a particular book's basic data given its id.
          *
@@ -132,6 +327,61 @@ public final class BookContract {
                     .appendPath(PATH_BOOK_CATEGORY).build();
         }
 
+        /**
+         * Returns the URI for the books by an author, the one listed by
+         * {@link AuthorFacetEntry} with the name passed.
+         *
+         * @param name the author's name.
+         * @return the URI for the books by the author.
+         */
+        public static Uri buildBooksByAuthorUri(String name) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_AUTHOR, name).build();
+        }
+
+        /**
+         * Returns the URI for the books of a category, the one listed by
+         * {@link CategoryFacetEntry} with the name passed.
+         *
+         * @param name the category's name.
+         * @return the URI for the books of the category.
+         */
+        public static Uri buildBooksByCategoryUri(String name) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_CATEGORY, name).build();
+        }
+
+        /**
+         * Returns the URI for a fuzzy search of the books whose titles,
+         * subtitles or authors contain words similar to those of a text,
+         * tolerating typos and ignoring accents and case. The books are
+         * returned ranked by how similar they are, the most similar first,
+         * unless a sort order is passed. Deleted books are never returned.
+         * {@link BookContract#QUERY_PARAMETER_AUTHOR} and
+         * {@link BookContract#QUERY_PARAMETER_CATEGORY} can be added to the
+         * URI to search only the books of a facet.
+         *
+         * @param text the text searched for.
+         * @return the URI for the search.
+         * @see SearchIndexEntry
+         */
+        public static Uri buildSearchUri(String text) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_SEARCH)
+                    .appendPath(text).build();
+        }
+
+        /**
+         * Extracts the text searched for from a URI built by
+         * {@link #buildSearchUri(String)}.
+         *
+         * @param uri the URI from which the text will be extracted.
+         * @return the text searched for.
+         */
+        public static String getSearchTextFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
+
         /**
          * Extracts the book's id from a book authors URI or book categories URI.
          *
@@ -146,6 +396,42 @@ public final class BookContract {
 
     }
 
+    /**
+     * Defines the contents of the table holding the large fields of the books,
+     * kept apart so that scanning the books' table does not read them. It has
+     * no URIs of its own, its columns are read and written as those of
+     * {@link BookEntry}.
+     *
+     * @author Jesús Adolfo García Pasquel
+     */
+    public static final class BookDetailEntry {
+
+        /**
+         * Name of the table containing the large fields of the books.
+         */
+        public static final String TABLE_NAME = "book_detail";
+
+        /**
+         * Identifier of the book the fields belong to.
+         */
+        public static final String COLUMN_BOOK_ID = "book_id";
+
+        /**
+         * The book's description. Stored as text, or as a deflated UTF-8
+         * blob when that saves space.
+         *
+         * @see BookEntry#COLUMN_DESCRIPTION
+         */
+        public static final String COLUMN_DESCRIPTION = BookEntry.COLUMN_DESCRIPTION;
+
+        /**
+         * The class only provides constants.
+         */
+        private BookDetailEntry() {
+            // Empty constructor
+        }
+    }
+
     /**
      * Defines the contents of the table holding author data.
      *
@@ -251,4 +537,295 @@ public final class BookContract {
         }
 
     }
+
+    /**
+     * Defines the contents of the tables of the index used by the fuzzy
+     * searches of {@link BookEntry#buildSearchUri(String)}: the distinct
+     * words of the titles, subtitles and authors of the books, folded by
+     * {@link it.jaschke.alexandria.util.Trigrams}, the trigrams of each
+     * word and the books each word appears in. The index is kept up to date
+     * by the {@code ContentProvider} and has no URIs of its own.
+     *
+     * @author Jesús Adolfo García Pasquel
+     */
+    public static final class SearchIndexEntry implements BaseColumns {
+
+        /**
+         * Name of the table containing the words, whose {@code _id} is
+         * referenced by the other tables.
+         */
+        public static final String TABLE_WORD = "search_word";
+
+        /**
+         * Name of the table containing the trigrams of each word.
+         */
+        public static final String TABLE_TRIGRAM = "search_trigram";
+
+        /**
+         * Name of the table containing the books each word appears in.
+         */
+        public static final String TABLE_POSTING = "search_posting";
+
+        /**
+         * The folded word, unique in {@link #TABLE_WORD}.
+         */
+        public static final String COLUMN_WORD = "word";
+
+        /**
+         * The number of distinct trigrams of the word, in {@link #TABLE_WORD}.
+         */
+        public static final String COLUMN_TRIGRAM_COUNT = "trigram_count";
+
+        /**
+         * A trigram of the word, in {@link #TABLE_TRIGRAM}.
+         */
+        public static final String COLUMN_TRIGRAM = "trigram";
+
+        /**
+         * Identifier of the word, in {@link #TABLE_TRIGRAM} and
+         * {@link #TABLE_POSTING}.
+         */
+        public static final String COLUMN_WORD_ID = "word_id";
+
+        /**
+         * Identifier of the book the word appears in, in
+         * {@link #TABLE_POSTING}.
+         */
+        public static final String COLUMN_BOOK_ID = "book_id";
+
+        /**
+         * The class only provides constants.
+         */
+        private SearchIndexEntry() {
+            // Empty constructor
+        }
+    }
+
+    /**
+     * Defines the contents of the table holding the names of the authors of
+     * the books not deleted, each with the number of books by the author.
+     * The table is kept up to date by the database itself, as authors and
+     * books are written, so it is read-only and listing it does not count
+     * the authors again.
+     *
+     * @author Jesús Adolfo García Pasquel
+     */
+    public static final class AuthorFacetEntry implements BaseColumns {
+
+        /**
+         * Base URI for the authors' facet.
+         */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_FACET).appendPath(PATH_BOOK_AUTHOR).build();
+
+        /**
+         * Type for {@code content:} URIs with directories of the authors'
+         * facet.
+         */
+        public static final String CONTENT_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY + "/" + PATH_FACET + "." + PATH_BOOK_AUTHOR;
+
+        /**
+         * Name of the table containing the authors' facet.
+         */
+        public static final String TABLE_NAME = "author_facet";
+
+        /**
+         * The author's name, unique in the table.
+         */
+        public static final String COLUMN_NAME = "name";
+
+        /**
+         * The number of books not deleted by the author, always positive.
+         */
+        public static final String COLUMN_BOOK_COUNT = "book_count";
+
+        /**
+         * Sorts the authors by name, as collated in the user's locale, using
+         * an index. The default order.
+         */
+        public static final String SORT_ORDER_NAME = COLUMN_NAME + " COLLATE LOCALIZED";
+
+        /**
+         * The class only provides constants.
+         */
+        private AuthorFacetEntry() {
+            // Empty constructor
+        }
+    }
+
+    /**
+     * Defines the contents of the table holding the names of the categories
+     * of the books not deleted, each with the number of books of the
+     * category. Kept up to date like {@link AuthorFacetEntry}.
+     *
+     * @author Jesús Adolfo García Pasquel
+     */
+    public static final class CategoryFacetEntry implements BaseColumns {
+
+        /**
+         * Base URI for the categories' facet.
+         */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_FACET).appendPath(PATH_BOOK_CATEGORY).build();
+
+        /**
+         * Type for {@code content:} URIs with directories of the categories'
+         * facet.
+         */
+        public static final String CONTENT_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY + "/" + PATH_FACET + "." + PATH_BOOK_CATEGORY;
+
+        /**
+         * Name of the table containing the categories' facet.
+         */
+        public static final String TABLE_NAME = "category_facet";
+
+        /**
+         * The category's name, unique in the table.
+         */
+        public static final String COLUMN_NAME = "name";
+
+        /**
+         * The number of books not deleted of the category, always positive.
+         */
+        public static final String COLUMN_BOOK_COUNT = "book_count";
+
+        /**
+         * Sorts the categories by name, as collated in the user's locale,
+         * using an index. The default order.
+         */
+        public static final String SORT_ORDER_NAME = COLUMN_NAME + " COLLATE LOCALIZED";
+
+        /**
+         * The class only provides constants.
+         */
+        private CategoryFacetEntry() {
+            // Empty constructor
+        }
+    }
+
+    /**
+     * Defines the contents of the append-only log of the changes to the book
+     * data, kept so that consumers can apply the changes since they last
+     * read the data instead of reading it all again. The log is written by
+     * the database itself, whatever the {@code ContentProvider} operation
+     * or batch that made the change.
+     * <p>
+     * A consumer reads the sequence number of the last change, then the
+     * data, and from then on the changes since the last sequence number
+     * applied, using {@link #buildChangesSinceUri(long)}. Applying a change
+     * twice is harmless: {@link #OPERATION_INSERT} and
+     * {@link #OPERATION_UPDATE} both mean the row should be read again, and
+     * {@link #OPERATION_DELETE} that it is gone. Inserting, deleting or
+     * restoring a book is logged for the book only, not for its authors and
+     * categories. Books deleted by the user are logged as
+     * {@link #OPERATION_DELETE}, and restoring them as
+     * {@link #OPERATION_INSERT}.
+     * </p>
+     * <p>
+     * Compacting the log keeps only the last change of each row, and at most
+     * a bounded number of changes. If older changes have to be discarded, an
+     * {@link #OPERATION_RESET} entry takes the place of the newest one
+     * discarded: a consumer that finds it must read all the data again.
+     * </p>
+     *
+     * @author Jesús Adolfo García Pasquel
+     */
+    public static final class ChangeEntry implements BaseColumns {
+
+        /**
+         * Base URI for the log of changes.
+         */
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_CHANGE).build();
+
+        /**
+         * Type for {@code content:} URIs with directories of changes.
+         */
+        public static final String CONTENT_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY + "/" + PATH_CHANGE;
+
+        /**
+         * Name of the table containing the log of changes. Its
+         * {@link #_ID} is the change's sequence number, which only grows.
+         */
+        public static final String TABLE_NAME = "change_log";
+
+        /**
+         * Name of the table changed, one of the {@code TABLE_NAME} constants
+         * of this contract, or {@code null} for {@link #OPERATION_RESET}.
+         * Changes to {@link BookDetailEntry#TABLE_NAME} are logged as
+         * changes to {@link BookEntry#TABLE_NAME}.
+         */
+        public static final String COLUMN_TABLE = "table_name";
+
+        /**
+         * The {@code _ID} of the row changed.
+         */
+        public static final String COLUMN_ROW_ID = "row_id";
+
+        /**
+         * Identifier of the book the row changed belongs to, or is, so that
+         * consumers of a single book can pick its changes.
+         */
+        public static final String COLUMN_BOOK_ID = "book_id";
+
+        /**
+         * The change made, one of the {@code OPERATION_*} constants.
+         */
+        public static final String COLUMN_OPERATION = "operation";
+
+        /**
+         * The row was inserted.
+         */
+        public static final int OPERATION_INSERT = 1;
+
+        /**
+         * The row was updated.
+         */
+        public static final int OPERATION_UPDATE = 2;
+
+        /**
+         * The row was deleted.
+         */
+        public static final int OPERATION_DELETE = 3;
+
+        /**
+         * The changes up to this one were discarded.
+         */
+        public static final int OPERATION_RESET = 4;
+
+        /**
+         * The class only provides constants and utility methods.
+         */
+        private ChangeEntry() {
+            // Empty constructor
+        }
+
+        /**
+         * Returns the URI for the changes made after the one with the
+         * specified sequence number, in the order they were made.
+         *
+         * @param seq the sequence number of the last change applied by the
+         *     consumer, {@code 0} for all.
+         * @return the URI for the changes made after {@code seq}.
+         */
+        public static Uri buildChangesSinceUri(long seq) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath(PATH_SINCE)
+                    .appendPath(Long.toString(seq)).build();
+        }
+
+        /**
+         * Extracts the sequence number from a URI built by
+         * {@link #buildChangesSinceUri(long)}.
+         *
+         * @param uri the URI from which the sequence number will be extracted.
+         * @return the sequence number.
+         */
+        public static long getSeqFromUri(Uri uri) {
+            return Long.parseLong(uri.getPathSegments().get(2));
+        }
+    }
 }
@@ -1,12 +1,25 @@
 package it.jaschke.alexandria.data;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import java.util.Locale;
+
+import it.jaschke.alexandria.util.SortKey;
+import it.jaschke.alexandria.util.StartupTrace;
+
 import static it.jaschke.alexandria.data.BookContract.AuthorEntry;
+import static it.jaschke.alexandria.data.BookContract.AuthorFacetEntry;
+import static it.jaschke.alexandria.data.BookContract.BookDetailEntry;
 import static it.jaschke.alexandria.data.BookContract.BookEntry;
 import static it.jaschke.alexandria.data.BookContract.CategoryEntry;
+import static it.jaschke.alexandria.data.BookContract.CategoryFacetEntry;
+import static it.jaschke.alexandria.data.BookContract.ChangeEntry;
+import static it.jaschke.alexandria.data.BookContract.SearchIndexEntry;
 
 /**
  * Manages the creation and maintenance of the local book database.
@@ -19,24 +32,122 @@ public class BookDbHelper extends SQLiteOpenHelper {
     /**
      * Version number of the dabase.
      */
-    public static final int DATABASE_VERSION = 2;
+    public static final int DATABASE_VERSION = 11;
 
     /**
      * Name of the SQLite database file.
      */
     public static final String DATABASE_NAME = "alexandria.db";
 
+    /**
+     * Version of the database that introduced
+     * {@link BookEntry#COLUMN_DISPLAY_TITLE}. Older databases are not
+     * upgraded, but dropped.
+     */
+    private static final int VERSION_DISPLAY_TITLE = 3;
+
+    /**
+     * Version of the database that introduced
+     * {@link BookEntry#COLUMN_FETCHED_AT} and {@link BookEntry#COLUMN_ETAG}.
+     */
+    private static final int VERSION_FETCHED_AT = 4;
+
+    /**
+     * Version of the database that moved {@link BookEntry#COLUMN_DESCRIPTION}
+     * to {@link BookDetailEntry#TABLE_NAME}.
+     */
+    private static final int VERSION_BOOK_DETAIL = 5;
+
+    /**
+     * Version of the database that introduced
+     * {@link BookEntry#COLUMN_DELETED_AT}.
+     */
+    private static final int VERSION_DELETED_AT = 6;
+
+    /**
+     * Version of the database that introduced {@link ChangeEntry#TABLE_NAME}.
+     */
+    private static final int VERSION_CHANGE_LOG = 7;
+
+    /**
+     * Version of the database that introduced
+     * {@link BookEntry#COLUMN_MODIFIED_AT} and {@link BookEntry#COLUMN_SYNCED_AT}.
+     */
+    private static final int VERSION_MODIFIED_AT = 8;
+
+    /**
+     * Version of the database that introduced {@link BookEntry#COLUMN_TITLE_SORT}.
+     */
+    private static final int VERSION_TITLE_SORT = 9;
+
+    /**
+     * Version of the database that introduced {@link AuthorFacetEntry#TABLE_NAME}
+     * and {@link CategoryFacetEntry#TABLE_NAME}.
+     */
+    private static final int VERSION_FACETS = 10;
+
+    /**
+     * Version of the database that introduced the tables of
+     * {@link SearchIndexEntry}.
+     */
+    private static final int VERSION_SEARCH_INDEX = 11;
+
+    /**
+     * Maximum number of changes kept by {@link #compactChanges(SQLiteDatabase)}.
+     */
+    static final int MAX_CHANGES = 5000;
+
+    /**
+     * Name of the table the books are copied to while the books' table is
+     * rebuilt during an upgrade.
+     */
+    private static final String TABLE_BOOK_REBUILT = BookEntry.TABLE_NAME + "_rebuilt";
+
+    /**
+     * The columns of the books' table as of {@link #VERSION_BOOK_DETAIL},
+     * except the key.
+     */
+    private static final String BOOK_COLUMNS = BookEntry.COLUMN_TITLE + ", "
+            + BookEntry.COLUMN_SUBTITLE + ", "
+            + BookEntry.COLUMN_COVER_IMAGE_URL + ", "
+            + BookEntry.COLUMN_DISPLAY_TITLE + ", "
+            + BookEntry.COLUMN_FETCHED_AT + ", "
+            + BookEntry.COLUMN_ETAG;
+
     /**
      * Statement used to create the table that holds the book data.
      */
     private static final String SQL_CREATE_BOOK_TABLE =
-            "CREATE TABLE " + BookEntry.TABLE_NAME + " ("
-            + BookEntry._ID + " INTEGER PRIMARY KEY,"
-            + BookEntry.COLUMN_TITLE + " TEXT NOT NULL,"
-            + BookEntry.COLUMN_SUBTITLE + " TEXT ,"
-            + BookEntry.COLUMN_DESCRIPTION + " TEXT ,"
-            + BookEntry.COLUMN_COVER_IMAGE_URL + " TEXT, "
-            + "UNIQUE (" + BookEntry._ID + ") ON CONFLICT IGNORE"
+            buildCreateBookTable(BookEntry.TABLE_NAME);
+
+    /**
+     * Statement used to create the index used to find the books whose data
+     * has not been refreshed for the longest time.
+     */
+    private static final String SQL_CREATE_BOOK_FETCHED_AT_INDEX =
+            "CREATE INDEX " + BookEntry.TABLE_NAME + "_" + BookEntry.COLUMN_FETCHED_AT
+            + " ON " + BookEntry.TABLE_NAME + " (" + BookEntry.COLUMN_FETCHED_AT + ");";
+
+    /**
+     * Statement used to create the index that lists the books sorted by
+     * title without sorting them, collated like {@link BookEntry#SORT_ORDER_TITLE}.
+     * SQLite rebuilds it when the user's locale changes.
+     */
+    private static final String SQL_CREATE_BOOK_TITLE_SORT_INDEX =
+            "CREATE INDEX " + BookEntry.TABLE_NAME + "_" + BookEntry.COLUMN_TITLE_SORT
+            + " ON " + BookEntry.TABLE_NAME + " (" + BookEntry.COLUMN_TITLE_SORT
+            + " COLLATE LOCALIZED);";
+
+    /**
+     * Statement used to create the table that holds the large fields of the
+     * books.
+     */
+    private static final String SQL_CREATE_BOOK_DETAIL_TABLE =
+            "CREATE TABLE " + BookDetailEntry.TABLE_NAME + " ("
+            + BookDetailEntry.COLUMN_BOOK_ID + " INTEGER PRIMARY KEY, "
+            + BookDetailEntry.COLUMN_DESCRIPTION + " TEXT, "
+            + " FOREIGN KEY (" + BookDetailEntry.COLUMN_BOOK_ID + ") REFERENCES "
+            + BookEntry.TABLE_NAME + " (" + BookEntry._ID + ") ON DELETE CASCADE"
             + ");";
 
     /**
@@ -67,6 +178,137 @@ public class BookDbHelper extends SQLiteOpenHelper {
             + CategoryEntry.COLUMN_NAME + ") ON CONFLICT REPLACE"
             + ");";
 
+    /**
+     * Statements used to create the indexes used to find the books of an
+     * author or category by its name.
+     */
+    private static final String[] SQL_CREATE_NAME_INDEXES = {
+        "CREATE INDEX " + AuthorEntry.TABLE_NAME + "_" + AuthorEntry.COLUMN_NAME
+                + " ON " + AuthorEntry.TABLE_NAME + " (" + AuthorEntry.COLUMN_NAME + ");"
+        , "CREATE INDEX " + CategoryEntry.TABLE_NAME + "_" + CategoryEntry.COLUMN_NAME
+                + " ON " + CategoryEntry.TABLE_NAME + " (" + CategoryEntry.COLUMN_NAME + ");"
+    };
+
+    /**
+     * Statements used to create the tables of the index of the fuzzy
+     * searches. The trigrams are keyed by their text, so that the words
+     * that have one are read from the key's index alone.
+     */
+    private static final String[] SQL_CREATE_SEARCH_INDEX = {
+        "CREATE TABLE " + SearchIndexEntry.TABLE_WORD + " ("
+                + SearchIndexEntry._ID + " INTEGER PRIMARY KEY, "
+                + SearchIndexEntry.COLUMN_WORD + " TEXT NOT NULL UNIQUE, "
+                + SearchIndexEntry.COLUMN_TRIGRAM_COUNT + " INTEGER NOT NULL"
+                + ");"
+        , "CREATE TABLE " + SearchIndexEntry.TABLE_TRIGRAM + " ("
+                + SearchIndexEntry.COLUMN_TRIGRAM + " TEXT NOT NULL, "
+                + SearchIndexEntry.COLUMN_WORD_ID + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + SearchIndexEntry.COLUMN_TRIGRAM + ", "
+                + SearchIndexEntry.COLUMN_WORD_ID + ")"
+                + ");"
+        , "CREATE TABLE " + SearchIndexEntry.TABLE_POSTING + " ("
+                + SearchIndexEntry.COLUMN_WORD_ID + " INTEGER NOT NULL, "
+                + SearchIndexEntry.COLUMN_BOOK_ID + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + SearchIndexEntry.COLUMN_WORD_ID + ", "
+                + SearchIndexEntry.COLUMN_BOOK_ID + "),"
+                + " FOREIGN KEY (" + SearchIndexEntry.COLUMN_BOOK_ID + ") REFERENCES "
+                + BookEntry.TABLE_NAME + " (" + BookEntry._ID + ") ON DELETE CASCADE"
+                + ");"
+        , "CREATE INDEX " + SearchIndexEntry.TABLE_POSTING + "_"
+                + SearchIndexEntry.COLUMN_BOOK_ID + " ON " + SearchIndexEntry.TABLE_POSTING
+                + " (" + SearchIndexEntry.COLUMN_BOOK_ID + ");"
+    };
+
+    /**
+     * Statement used to create the log of changes. {@code AUTOINCREMENT}
+     * keeps the sequence numbers of the changes discarded from being used
+     * again.
+     */
+    private static final String SQL_CREATE_CHANGE_TABLE =
+            "CREATE TABLE " + ChangeEntry.TABLE_NAME + " ("
+            + ChangeEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + ChangeEntry.COLUMN_TABLE + " TEXT, "
+            + ChangeEntry.COLUMN_ROW_ID + " INTEGER, "
+            + ChangeEntry.COLUMN_BOOK_ID + " INTEGER, "
+            + ChangeEntry.COLUMN_OPERATION + " INTEGER NOT NULL"
+            + ");";
+
+    /**
+     * Operation logged when a book is updated: setting
+     * {@link BookEntry#COLUMN_DELETED_AT} deletes it, and clearing it
+     * inserts it again.
+     */
+    private static final String SQL_BOOK_UPDATE_OPERATION = "CASE"
+            + " WHEN OLD." + BookEntry.COLUMN_DELETED_AT + " IS NULL AND NEW."
+            + BookEntry.COLUMN_DELETED_AT + " IS NOT NULL THEN " + ChangeEntry.OPERATION_DELETE
+            + " WHEN OLD." + BookEntry.COLUMN_DELETED_AT + " IS NOT NULL AND NEW."
+            + BookEntry.COLUMN_DELETED_AT + " IS NULL THEN " + ChangeEntry.OPERATION_INSERT
+            + " ELSE " + ChangeEntry.OPERATION_UPDATE + " END";
+
+    /**
+     * Statements used to create the triggers that write the log of changes.
+     */
+    private static final String[] SQL_CREATE_CHANGE_TRIGGERS = {
+        buildCreateChangeTrigger(BookEntry.TABLE_NAME, "INSERT", BookEntry.TABLE_NAME
+                , "NEW." + BookEntry._ID, "NEW." + BookEntry._ID
+                , Integer.toString(ChangeEntry.OPERATION_INSERT))
+        , buildCreateChangeTrigger(BookEntry.TABLE_NAME, "UPDATE", BookEntry.TABLE_NAME
+                , "NEW." + BookEntry._ID, "NEW." + BookEntry._ID
+                , SQL_BOOK_UPDATE_OPERATION)
+        , buildCreateChangeTrigger(BookEntry.TABLE_NAME, "DELETE", BookEntry.TABLE_NAME
+                , "OLD." + BookEntry._ID, "OLD." + BookEntry._ID
+                , Integer.toString(ChangeEntry.OPERATION_DELETE))
+        // Descriptions are replaced, deleting and inserting their rows
+        , buildCreateChangeTrigger(BookDetailEntry.TABLE_NAME, "INSERT", BookEntry.TABLE_NAME
+                , "NEW." + BookDetailEntry.COLUMN_BOOK_ID
+                , "NEW." + BookDetailEntry.COLUMN_BOOK_ID
+                , Integer.toString(ChangeEntry.OPERATION_UPDATE))
+        , buildCreateChangeTrigger(BookDetailEntry.TABLE_NAME, "UPDATE", BookEntry.TABLE_NAME
+                , "NEW." + BookDetailEntry.COLUMN_BOOK_ID
+                , "NEW." + BookDetailEntry.COLUMN_BOOK_ID
+                , Integer.toString(ChangeEntry.OPERATION_UPDATE))
+        , buildCreateChangeTrigger(AuthorEntry.TABLE_NAME, "INSERT", AuthorEntry.TABLE_NAME
+                , "NEW." + AuthorEntry._ID, "NEW." + AuthorEntry.COLUMN_BOOK_ID
+                , Integer.toString(ChangeEntry.OPERATION_INSERT))
+        , buildCreateChangeTrigger(AuthorEntry.TABLE_NAME, "UPDATE", AuthorEntry.TABLE_NAME
+                , "NEW." + AuthorEntry._ID, "NEW." + AuthorEntry.COLUMN_BOOK_ID
+                , Integer.toString(ChangeEntry.OPERATION_UPDATE))
+        , buildCreateChangeTrigger(AuthorEntry.TABLE_NAME, "DELETE", AuthorEntry.TABLE_NAME
+                , "OLD." + AuthorEntry._ID, "OLD." + AuthorEntry.COLUMN_BOOK_ID
+                , Integer.toString(ChangeEntry.OPERATION_DELETE))
+        , buildCreateChangeTrigger(CategoryEntry.TABLE_NAME, "INSERT", CategoryEntry.TABLE_NAME
+                , "NEW." + CategoryEntry._ID, "NEW." + CategoryEntry.COLUMN_BOOK_ID
+                , Integer.toString(ChangeEntry.OPERATION_INSERT))
+        , buildCreateChangeTrigger(CategoryEntry.TABLE_NAME, "UPDATE", CategoryEntry.TABLE_NAME
+                , "NEW." + CategoryEntry._ID, "NEW." + CategoryEntry.COLUMN_BOOK_ID
+                , Integer.toString(ChangeEntry.OPERATION_UPDATE))
+        , buildCreateChangeTrigger(CategoryEntry.TABLE_NAME, "DELETE", CategoryEntry.TABLE_NAME
+                , "OLD." + CategoryEntry._ID, "OLD." + CategoryEntry.COLUMN_BOOK_ID
+                , Integer.toString(ChangeEntry.OPERATION_DELETE))
+    };
+
+    /**
+     * Statements used to create the table of the authors' facet, its index
+     * and the triggers that keep it up to date.
+     */
+    private static final String[] SQL_CREATE_AUTHOR_FACET = buildCreateFacet(
+            AuthorFacetEntry.TABLE_NAME, AuthorEntry.TABLE_NAME);
+
+    /**
+     * Statements used to create the table of the categories' facet, its
+     * index and the triggers that keep it up to date.
+     */
+    private static final String[] SQL_CREATE_CATEGORY_FACET = buildCreateFacet(
+            CategoryFacetEntry.TABLE_NAME, CategoryEntry.TABLE_NAME);
+
+    /**
+     * Statement used to discard the changes of the rows changed again since.
+     */
+    private static final String SQL_COALESCE_CHANGES = "DELETE FROM " + ChangeEntry.TABLE_NAME
+            + " WHERE " + ChangeEntry._ID + " NOT IN (SELECT MAX(" + ChangeEntry._ID + ") FROM "
+            + ChangeEntry.TABLE_NAME + " GROUP BY " + ChangeEntry.COLUMN_TABLE + ", "
+            + ChangeEntry.COLUMN_ROW_ID + ")";
+
     /**
      * Creates a new instance of {@link BookDbHelper}.
      *
@@ -76,26 +318,448 @@ public class BookDbHelper extends SQLiteOpenHelper {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
+    /**
+     * Returns the statement used to create a table that holds the book data.
+     *
+     * @param tableName the name of the table.
+     * @return the statement used to create the table.
+     */
+    private static String buildCreateBookTable(String tableName) {
+        return "CREATE TABLE " + tableName + " ("
+                + BookEntry._ID + " INTEGER PRIMARY KEY,"
+                + BookEntry.COLUMN_TITLE + " TEXT NOT NULL,"
+                + BookEntry.COLUMN_SUBTITLE + " TEXT ,"
+                + BookEntry.COLUMN_COVER_IMAGE_URL + " TEXT, "
+                + BookEntry.COLUMN_DISPLAY_TITLE + " TEXT, "
+                + BookEntry.COLUMN_FETCHED_AT + " INTEGER, "
+                + BookEntry.COLUMN_ETAG + " TEXT, "
+                + BookEntry.COLUMN_DELETED_AT + " INTEGER, "
+                + BookEntry.COLUMN_MODIFIED_AT + " INTEGER, "
+                + BookEntry.COLUMN_SYNCED_AT + " INTEGER, "
+                + BookEntry.COLUMN_TITLE_SORT + " TEXT, "
+                + "UNIQUE (" + BookEntry._ID + ") ON CONFLICT IGNORE"
+                + ");";
+    }
+
+    /**
+     * Returns the statement used to create a trigger that logs the changes
+     * of a kind made to a table in {@link ChangeEntry#TABLE_NAME}.
+     *
+     * @param tableName the name of the table whose changes are logged.
+     * @param event the kind of change: {@code INSERT}, {@code UPDATE} or
+     *     {@code DELETE}.
+     * @param loggedTable the name of the table logged as changed.
+     * @param rowId expression of the id of the row changed.
+     * @param bookId expression of the id of the book the row belongs to.
+     * @param operation expression of the operation logged.
+     * @return the statement used to create the trigger.
+     */
+    private static String buildCreateChangeTrigger(String tableName
+            , String event
+            , String loggedTable
+            , String rowId
+            , String bookId
+            , String operation) {
+        return "CREATE TRIGGER " + tableName + "_log_" + event.toLowerCase(Locale.US)
+                + " AFTER " + event + " ON " + tableName + " BEGIN INSERT INTO "
+                + ChangeEntry.TABLE_NAME + " (" + ChangeEntry.COLUMN_TABLE + ", "
+                + ChangeEntry.COLUMN_ROW_ID + ", " + ChangeEntry.COLUMN_BOOK_ID + ", "
+                + ChangeEntry.COLUMN_OPERATION + ") VALUES ('" + loggedTable + "', "
+                + rowId + ", " + bookId + ", " + operation + "); END;";
+    }
+
+    /**
+     * Returns the statements used to create the table of a facet, the index
+     * that lists it by name and the triggers that keep its counts up to
+     * date, one name at a time, as the rows of the source table or the
+     * books are inserted, updated, deleted or restored. Counting all the
+     * names again would read the whole source table on each change.
+     * <p>
+     * The rows of the source table count only while their book exists and
+     * is not deleted. When a book is removed for good, its rows are
+     * discounted before it is, the rows deleted by the cascade afterwards
+     * no longer have a book.
+     * </p>
+     *
+     * @param facetTable the name of the table of the facet, whose columns
+     *     are those of {@link AuthorFacetEntry}.
+     * @param sourceTable the name of the table with the names counted,
+     *     whose columns are those of {@link AuthorEntry}.
+     * @return the statements used to create the facet.
+     */
+    private static String[] buildCreateFacet(String facetTable, String sourceTable) {
+        final String name = AuthorFacetEntry.COLUMN_NAME;
+        final String bookId = AuthorEntry.COLUMN_BOOK_ID;
+        final String deletedAt = BookEntry.COLUMN_DELETED_AT;
+        final String newName = "SELECT NEW." + name
+                + " WHERE " + buildBookNotDeleted("NEW." + bookId);
+        final String oldName = "SELECT OLD." + name
+                + " WHERE " + buildBookNotDeleted("OLD." + bookId);
+        final String namesOfBook = "SELECT " + AuthorEntry.COLUMN_NAME + " FROM "
+                + sourceTable + " WHERE " + bookId + " = ";
+        return new String[] {
+            "CREATE TABLE " + facetTable + " ("
+                    + AuthorFacetEntry._ID + " INTEGER PRIMARY KEY, "
+                    + name + " TEXT NOT NULL UNIQUE, "
+                    + AuthorFacetEntry.COLUMN_BOOK_COUNT + " INTEGER NOT NULL"
+                    + ");"
+            , "CREATE INDEX " + facetTable + "_" + name + " ON " + facetTable
+                    + " (" + name + " COLLATE LOCALIZED);"
+            , "CREATE TRIGGER " + facetTable + "_insert AFTER INSERT ON " + sourceTable
+                    + " BEGIN " + buildCountUp(facetTable, newName) + " END;"
+            , "CREATE TRIGGER " + facetTable + "_delete AFTER DELETE ON " + sourceTable
+                    + " BEGIN " + buildCountDown(facetTable, oldName) + " END;"
+            , "CREATE TRIGGER " + facetTable + "_update AFTER UPDATE OF " + name + ", "
+                    + bookId + " ON " + sourceTable
+                    + " WHEN OLD." + name + " IS NOT NEW." + name
+                    + " OR OLD." + bookId + " IS NOT NEW." + bookId + " BEGIN "
+                    + buildCountDown(facetTable, oldName)
+                    + buildCountUp(facetTable, newName) + " END;"
+            , "CREATE TRIGGER " + facetTable + "_book_delete AFTER UPDATE OF " + deletedAt
+                    + " ON " + BookEntry.TABLE_NAME
+                    + " WHEN OLD." + deletedAt + " IS NULL AND NEW." + deletedAt
+                    + " IS NOT NULL BEGIN "
+                    + buildCountDown(facetTable, namesOfBook + "NEW." + BookEntry._ID)
+                    + " END;"
+            , "CREATE TRIGGER " + facetTable + "_book_restore AFTER UPDATE OF " + deletedAt
+                    + " ON " + BookEntry.TABLE_NAME
+                    + " WHEN OLD." + deletedAt + " IS NOT NULL AND NEW." + deletedAt
+                    + " IS NULL BEGIN "
+                    + buildCountUp(facetTable, namesOfBook + "NEW." + BookEntry._ID)
+                    + " END;"
+            , "CREATE TRIGGER " + facetTable + "_book_purge BEFORE DELETE ON "
+                    + BookEntry.TABLE_NAME + " WHEN OLD." + deletedAt + " IS NULL BEGIN "
+                    + buildCountDown(facetTable, namesOfBook + "OLD." + BookEntry._ID)
+                    + " END;"
+        };
+    }
+
+    /**
+     * Returns the condition met while a book exists and is not deleted.
+     *
+     * @param bookId expression of the id of the book.
+     * @return the condition.
+     */
+    private static String buildBookNotDeleted(String bookId) {
+        return "EXISTS (SELECT 1 FROM " + BookEntry.TABLE_NAME + " WHERE "
+                + BookEntry._ID + " = " + bookId + " AND "
+                + BookEntry.COLUMN_DELETED_AT + " IS NULL)";
+    }
+
+    /**
+     * Returns the statements, for the body of a trigger, that add one to the
+     * counts of some names of a facet, adding the names missing from it.
+     * {@code null} names are ignored.
+     *
+     * @param facetTable the name of the table of the facet.
+     * @param names query that returns the names counted.
+     * @return the statements.
+     */
+    private static String buildCountUp(String facetTable, String names) {
+        final String count = AuthorFacetEntry.COLUMN_BOOK_COUNT;
+        return "INSERT OR IGNORE INTO " + facetTable + " (" + AuthorFacetEntry.COLUMN_NAME
+                + ", " + count + ") SELECT *, 0 FROM (" + names + "); "
+                + "UPDATE " + facetTable + " SET " + count + " = " + count + " + 1 WHERE "
+                + AuthorFacetEntry.COLUMN_NAME + " IN (" + names + "); ";
+    }
+
+    /**
+     * Returns the statements, for the body of a trigger, that subtract one
+     * from the counts of some names of a facet, removing the names no longer
+     * counted from it.
+     *
+     * @param facetTable the name of the table of the facet.
+     * @param names query that returns the names discounted.
+     * @return the statements.
+     */
+    private static String buildCountDown(String facetTable, String names) {
+        final String count = AuthorFacetEntry.COLUMN_BOOK_COUNT;
+        return "UPDATE " + facetTable + " SET " + count + " = " + count + " - 1 WHERE "
+                + AuthorFacetEntry.COLUMN_NAME + " IN (" + names + "); "
+                + "DELETE FROM " + facetTable + " WHERE " + count + " <= 0 AND "
+                + AuthorFacetEntry.COLUMN_NAME + " IN (" + names + "); ";
+    }
+
+    /**
+     * Compacts the log of changes: discards every change of a row but the
+     * last one and, if more than {@link #MAX_CHANGES} are left, the oldest,
+     * putting an {@link ChangeEntry#OPERATION_RESET} change in the place of
+     * the newest discarded. Should run in a transaction.
+     *
+     * @param db the database.
+     * @return the number of changes discarded.
+     */
+    static int compactChanges(SQLiteDatabase db) {
+        final long before = DatabaseUtils.queryNumEntries(db, ChangeEntry.TABLE_NAME);
+        db.execSQL(SQL_COALESCE_CHANGES);
+        Cursor cursor = db.query(ChangeEntry.TABLE_NAME, new String[] {ChangeEntry._ID}
+                , null, null, null, null, ChangeEntry._ID + " DESC"
+                , MAX_CHANGES + ", 1");
+        try {
+            if (cursor.moveToFirst()) {
+                final long horizon = cursor.getLong(0);
+                db.delete(ChangeEntry.TABLE_NAME, ChangeEntry._ID + " <= ?"
+                        , new String[] {Long.toString(horizon)});
+                ContentValues reset = new ContentValues();
+                reset.put(ChangeEntry._ID, horizon);
+                reset.put(ChangeEntry.COLUMN_OPERATION, ChangeEntry.OPERATION_RESET);
+                db.insert(ChangeEntry.TABLE_NAME, null, reset);
+            }
+        } finally {
+            cursor.close();
+        }
+        return (int) (before - DatabaseUtils.queryNumEntries(db, ChangeEntry.TABLE_NAME));
+    }
+
+    /**
+     * Returns the values of the row of {@link BookDetailEntry#TABLE_NAME}
+     * for a book, with the description compressed if it is worth it.
+     *
+     * @param bookId the book's identifier.
+     * @param description the book's description, possibly {@code null}.
+     * @return the values of the row.
+     */
+    static ContentValues buildDetailValues(long bookId, String description) {
+        ContentValues values = new ContentValues();
+        values.put(BookDetailEntry.COLUMN_BOOK_ID, bookId);
+        byte[] compressed = TextCodec.compress(description);
+        if (compressed != null) {
+            values.put(BookDetailEntry.COLUMN_DESCRIPTION, compressed);
+        } else {
+            values.put(BookDetailEntry.COLUMN_DESCRIPTION, description);
+        }
+        return values;
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
+        final long start = StartupTrace.begin("BookDbHelper.onCreate");
         db.execSQL(SQL_CREATE_BOOK_TABLE);
+        db.execSQL(SQL_CREATE_BOOK_FETCHED_AT_INDEX);
+        db.execSQL(SQL_CREATE_BOOK_TITLE_SORT_INDEX);
+        db.execSQL(SQL_CREATE_BOOK_DETAIL_TABLE);
         db.execSQL(SQL_CREATE_AUTHOR_TABLE);
         db.execSQL(SQL_CREATE_CATEGORY_TABLE);
+        createChangeLog(db);
+        createFacets(db);
+        createSearchIndex(db);
+        StartupTrace.end("BookDbHelper.onCreate", start);
     }
 
+    /**
+     * Upgrades the database keeping the books in it, from
+     * {@link #VERSION_DISPLAY_TITLE} onwards. Older databases are dropped and
+     * created again.
+     *
+     * @param db the database.
+     * @param oldVersion the version of the database.
+     * @param newVersion the version of the database after the upgrade.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < VERSION_DISPLAY_TITLE) {
+            dropAndCreate(db);
+            return;
+        }
+        if (oldVersion < VERSION_FETCHED_AT) {
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN "
+                    + BookEntry.COLUMN_FETCHED_AT + " INTEGER");
+            db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN "
+                    + BookEntry.COLUMN_ETAG + " TEXT");
+            db.execSQL(SQL_CREATE_BOOK_FETCHED_AT_INDEX);
+        }
+        if (oldVersion < VERSION_BOOK_DETAIL) {
+            // Rebuilds the books' table with all the current columns
+            moveDescriptions(db);
+        } else {
+            if (oldVersion < VERSION_DELETED_AT) {
+                db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN "
+                        + BookEntry.COLUMN_DELETED_AT + " INTEGER");
+            }
+            if (oldVersion < VERSION_MODIFIED_AT) {
+                db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN "
+                        + BookEntry.COLUMN_MODIFIED_AT + " INTEGER");
+                db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN "
+                        + BookEntry.COLUMN_SYNCED_AT + " INTEGER");
+            }
+            if (oldVersion < VERSION_TITLE_SORT) {
+                db.execSQL("ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN "
+                        + BookEntry.COLUMN_TITLE_SORT + " TEXT");
+            }
+        }
+        if (oldVersion < VERSION_MODIFIED_AT) {
+            // The books keep the version of their last download until modified
+            db.execSQL("UPDATE " + BookEntry.TABLE_NAME + " SET "
+                    + BookEntry.COLUMN_MODIFIED_AT + " = COALESCE("
+                    + BookEntry.COLUMN_FETCHED_AT + ", 0)");
+        }
+        if (oldVersion < VERSION_CHANGE_LOG) {
+            createChangeLog(db);
+        }
+        if (oldVersion < VERSION_TITLE_SORT) {
+            fillTitleSortKeys(db);
+            db.execSQL(SQL_CREATE_BOOK_TITLE_SORT_INDEX);
+        }
+        if (oldVersion < VERSION_FACETS) {
+            createFacets(db);
+        }
+        if (oldVersion < VERSION_SEARCH_INDEX) {
+            createSearchIndex(db);
+            SearchIndex.indexAllBooks(db);
+        }
+    }
+
+    /**
+     * Computes the {@link BookEntry#COLUMN_TITLE_SORT} of every book, which
+     * cannot be done in SQL.
+     *
+     * @param db the database.
+     */
+    private void fillTitleSortKeys(SQLiteDatabase db) {
+        Cursor cursor = db.query(BookEntry.TABLE_NAME
+                , new String[] {BookEntry._ID, BookEntry.COLUMN_TITLE}
+                , null, null, null, null, null);
+        try {
+            ContentValues values = new ContentValues();
+            String[] idArgs = new String[1];
+            while (cursor.moveToNext()) {
+                values.put(BookEntry.COLUMN_TITLE_SORT, SortKey.normalize(cursor.getString(1)));
+                idArgs[0] = cursor.getString(0);
+                db.update(BookEntry.TABLE_NAME, values, BookEntry._ID + " = ?", idArgs);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Creates the log of changes and the triggers that write it. The
+     * triggers of a table are dropped with it, so they have to be created
+     * again whenever a table is rebuilt.
+     *
+     * @param db the database.
+     */
+    private void createChangeLog(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_CHANGE_TABLE);
+        for (String trigger : SQL_CREATE_CHANGE_TRIGGERS) {
+            db.execSQL(trigger);
+        }
+    }
+
+    /**
+     * Creates the facets, with the names already in the database counted,
+     * and the indexes used to find the books of each name. The triggers that
+     * keep the facets up to date are dropped with the books' table, so they
+     * have to be created again whenever it is rebuilt.
+     *
+     * @param db the database.
+     */
+    private void createFacets(SQLiteDatabase db) {
+        for (String statement : SQL_CREATE_NAME_INDEXES) {
+            db.execSQL(statement);
+        }
+        createFacet(db, SQL_CREATE_AUTHOR_FACET
+                , AuthorFacetEntry.TABLE_NAME, AuthorEntry.TABLE_NAME);
+        createFacet(db, SQL_CREATE_CATEGORY_FACET
+                , CategoryFacetEntry.TABLE_NAME, CategoryEntry.TABLE_NAME);
+    }
+
+    /**
+     * Creates a facet and counts the names already in its source table, the
+     * only time they are all counted at once.
+     *
+     * @param db the database.
+     * @param statements the statements used to create the facet.
+     * @param facetTable the name of the table of the facet.
+     * @param sourceTable the name of the table with the names counted.
+     * @see #buildCreateFacet(String, String)
+     */
+    private void createFacet(SQLiteDatabase db
+            , String[] statements
+            , String facetTable
+            , String sourceTable) {
+        for (String statement : statements) {
+            db.execSQL(statement);
+        }
+        db.execSQL("INSERT INTO " + facetTable + " (" + AuthorFacetEntry.COLUMN_NAME + ", "
+                + AuthorFacetEntry.COLUMN_BOOK_COUNT + ") SELECT " + AuthorEntry.COLUMN_NAME
+                + ", COUNT(*) FROM " + sourceTable + " WHERE " + AuthorEntry.COLUMN_NAME
+                + " IS NOT NULL AND " + buildBookNotDeleted(
+                        sourceTable + "." + AuthorEntry.COLUMN_BOOK_ID)
+                + " GROUP BY " + AuthorEntry.COLUMN_NAME);
+    }
+
+    /**
+     * Creates the empty tables of the index of the fuzzy searches.
+     *
+     * @param db the database.
+     */
+    private void createSearchIndex(SQLiteDatabase db) {
+        for (String statement : SQL_CREATE_SEARCH_INDEX) {
+            db.execSQL(statement);
+        }
+    }
+
+    /**
+     * Moves the descriptions of the books to {@link BookDetailEntry#TABLE_NAME},
+     * compressing them, and rebuilds the books' table without them so that
+     * its pages are no longer filled with them. Foreign keys are not enforced
+     * during upgrades, so dropping the old table does not delete the authors
+     * and categories.
+     *
+     * @param db the database.
+     */
+    private void moveDescriptions(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_BOOK_DETAIL_TABLE);
+        Cursor cursor = db.query(BookEntry.TABLE_NAME
+                , new String[] {BookEntry._ID, BookEntry.COLUMN_DESCRIPTION}
+                , BookEntry.COLUMN_DESCRIPTION + " IS NOT NULL"
+                , null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                db.insert(BookDetailEntry.TABLE_NAME, null
+                        , buildDetailValues(cursor.getLong(0), cursor.getString(1)));
+            }
+        } finally {
+            cursor.close();
+        }
+        db.execSQL(buildCreateBookTable(TABLE_BOOK_REBUILT));
+        db.execSQL("INSERT INTO " + TABLE_BOOK_REBUILT
+                + " (" + BookEntry._ID + ", " + BOOK_COLUMNS + ") SELECT "
+                + BookEntry._ID + ", " + BOOK_COLUMNS + " FROM " + BookEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE " + BookEntry.TABLE_NAME);
+        db.execSQL("ALTER TABLE " + TABLE_BOOK_REBUILT + " RENAME TO " + BookEntry.TABLE_NAME);
+        db.execSQL(SQL_CREATE_BOOK_FETCHED_AT_INDEX);
+    }
+
+    /**
+     * Drops every table in the database and creates them again.
+     *
+     * @param db the database.
+     */
+    private void dropAndCreate(SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + BookDetailEntry.TABLE_NAME);
         db.execSQL("DROP TABLE IF EXISTS " + BookEntry.TABLE_NAME);
         db.execSQL("DROP TABLE IF EXISTS " + AuthorEntry.TABLE_NAME);
         db.execSQL("DROP TABLE IF EXISTS " + CategoryEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + ChangeEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + AuthorFacetEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + CategoryFacetEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + SearchIndexEntry.TABLE_POSTING);
+        db.execSQL("DROP TABLE IF EXISTS " + SearchIndexEntry.TABLE_TRIGRAM);
+        db.execSQL("DROP TABLE IF EXISTS " + SearchIndexEntry.TABLE_WORD);
         onCreate(db);
     }
 
     @Override
     public void onOpen(SQLiteDatabase db) {
+        final long start = StartupTrace.begin("BookDbHelper.onOpen");
         super.onOpen(db);
         if (!db.isReadOnly()) {
             db.execSQL("PRAGMA foreign_keys=ON;");
+            // Logs the rows deleted to resolve conflicts with REPLACE
+            db.execSQL("PRAGMA recursive_triggers=ON;");
         }
+        StartupTrace.end("BookDbHelper.onOpen", start);
     }
 }
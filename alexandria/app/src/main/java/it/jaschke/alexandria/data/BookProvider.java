@@ -1,17 +1,40 @@
 package it.jaschke.alexandria.data;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import it.jaschke.alexandria.R;
+import it.jaschke.alexandria.service.FetchStats;
+import it.jaschke.alexandria.util.MainThreadWatchdog;
+import it.jaschke.alexandria.util.SortKey;
+import it.jaschke.alexandria.util.StartupTrace;
 
 import static it.jaschke.alexandria.data.BookContract.AuthorEntry;
+import static it.jaschke.alexandria.data.BookContract.AuthorFacetEntry;
+import static it.jaschke.alexandria.data.BookContract.BookDetailEntry;
 import static it.jaschke.alexandria.data.BookContract.BookEntry;
 import static it.jaschke.alexandria.data.BookContract.CategoryEntry;
+import static it.jaschke.alexandria.data.BookContract.CategoryFacetEntry;
+import static it.jaschke.alexandria.data.BookContract.ChangeEntry;
 
 /**
  * Provides access to the book data used by the application.
@@ -31,6 +54,11 @@ public class BookProvider extends ContentProvider {
      */
     private static final int BOOK_ID = 110;
 
+    /**
+     * Identifies a fuzzy search of the books.
+     */
+    private static final int BOOK_SEARCH = 120;
+
     /**
      * Identifies a query for author information.
      */
@@ -64,6 +92,33 @@ public class BookProvider extends ContentProvider {
      */
     private static final int BOOK_CATEGORY = 320;
 
+    /**
+     * Identifies a query for the whole log of changes.
+     */
+    private static final int CHANGE = 400;
+
+    /**
+     * Identifies a query for the changes made after the one with a sequence
+     * number.
+     */
+    private static final int CHANGE_SINCE = 410;
+
+    /**
+     * Identifies a query for the authors' facet.
+     */
+    private static final int AUTHOR_FACET = 500;
+
+    /**
+     * Identifies a query for the categories' facet.
+     */
+    private static final int CATEGORY_FACET = 510;
+
+    /**
+     * Parent of the URIs of the facets, notified when any of them changes.
+     */
+    private static final Uri FACET_URI = BookContract.BASE_CONTENT_URI.buildUpon()
+            .appendPath(BookContract.PATH_FACET).build();
+
     /**
      * Selection for a book queried by id.
      */
@@ -96,6 +151,64 @@ public class BookProvider extends ContentProvider {
     private static final String SELECTION_BOOK_CATEGORIES =
             CategoryEntry.TABLE_NAME + "." + CategoryEntry.COLUMN_BOOK_ID + " = ? ";
 
+    /**
+     * Selection for the changes made after the one with a sequence number.
+     */
+    private static final String SELECTION_CHANGES_SINCE = ChangeEntry._ID + " > ?";
+
+    /**
+     * Order of the changes, in which they were made.
+     */
+    private static final String SORT_ORDER_CHANGES = ChangeEntry._ID + " ASC";
+
+    /**
+     * Selection for the books not deleted.
+     */
+    private static final String SELECTION_BOOK_NOT_DELETED =
+            BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_DELETED_AT + " IS NULL";
+
+    /**
+     * Selection for the authors of the books not deleted.
+     */
+    private static final String SELECTION_AUTHOR_NOT_DELETED =
+            buildSelectionBookNotDeleted(AuthorEntry.TABLE_NAME, AuthorEntry.COLUMN_BOOK_ID);
+
+    /**
+     * Selection for the categories of the books not deleted.
+     */
+    private static final String SELECTION_CATEGORY_NOT_DELETED =
+            buildSelectionBookNotDeleted(CategoryEntry.TABLE_NAME, CategoryEntry.COLUMN_BOOK_ID);
+
+    /**
+     * Selection for the books by an author, queried by the author's name.
+     */
+    private static final String SELECTION_BOOK_BY_AUTHOR =
+            BookEntry.TABLE_NAME + "." + BookEntry._ID + " IN (SELECT "
+            + AuthorEntry.COLUMN_BOOK_ID + " FROM " + AuthorEntry.TABLE_NAME + " WHERE "
+            + AuthorEntry.COLUMN_NAME + " = ?)";
+
+    /**
+     * Selection for the books of a category, queried by the category's name.
+     */
+    private static final String SELECTION_BOOK_BY_CATEGORY =
+            BookEntry.TABLE_NAME + "." + BookEntry._ID + " IN (SELECT "
+            + CategoryEntry.COLUMN_BOOK_ID + " FROM " + CategoryEntry.TABLE_NAME + " WHERE "
+            + CategoryEntry.COLUMN_NAME + " = ?)";
+
+    /**
+     * Columns of the books whose update modifies them, as far as the sync
+     * is concerned.
+     *
+     * @see BookEntry#COLUMN_MODIFIED_AT
+     */
+    private static final String[] MODIFYING_COLUMNS = {
+        BookEntry.COLUMN_TITLE
+        , BookEntry.COLUMN_SUBTITLE
+        , BookEntry.COLUMN_DESCRIPTION
+        , BookEntry.COLUMN_COVER_IMAGE_URL
+        , BookEntry.COLUMN_DELETED_AT
+    };
+
     /**
      * Used to match URIs to queries and their result type.
      */
@@ -111,6 +224,20 @@ public class BookProvider extends ContentProvider {
         sBookQueryBuilder.setTables(BookEntry.TABLE_NAME);
     }
 
+    /**
+     * Used to query book data including the large fields kept in
+     * {@link BookDetailEntry#TABLE_NAME}.
+     */
+    private static SQLiteQueryBuilder sBookDetailQueryBuilder;
+
+    static {
+        sBookDetailQueryBuilder = new SQLiteQueryBuilder();
+        sBookDetailQueryBuilder.setTables(BookEntry.TABLE_NAME + " LEFT OUTER JOIN "
+                + BookDetailEntry.TABLE_NAME + " ON ("
+                + BookEntry.TABLE_NAME + "." + BookEntry._ID + " = "
+                + BookDetailEntry.TABLE_NAME + "." + BookDetailEntry.COLUMN_BOOK_ID + ")");
+    }
+
     /**
      * Used to query author data.
      */
@@ -136,6 +263,30 @@ public class BookProvider extends ContentProvider {
      */
     private BookDbHelper mOpenHelper;
 
+    /**
+     * The {@link Uri}s changed by the batch being applied on each thread,
+     * whose observers are notified once the batch finishes. Holds
+     * {@code null} on threads that are not applying a batch.
+     *
+     * @see #applyBatch(ArrayList)
+     */
+    private final ThreadLocal<Set<Uri>> mBatchChanges = new ThreadLocal<>();
+
+    /**
+     * The books whose words changed during the batch being applied on each
+     * thread, which are indexed once the batch finishes instead of once per
+     * operation. Holds {@code null} on threads that are not applying a batch.
+     *
+     * @see #indexBook(SQLiteDatabase, long)
+     */
+    private final ThreadLocal<Set<Long>> mBatchIndexed = new ThreadLocal<>();
+
+    /**
+     * Keeps the results of the queries that opt in with
+     * {@link BookContract#QUERY_PARAMETER_CACHED}.
+     */
+    private final QueryResultCache mResultCache = new QueryResultCache();
+
     /**
      * Returns a new instance of {@link UriMatcher} that maps URIs to the
      * equivalent constants used by the provider.
@@ -156,6 +307,8 @@ public class BookProvider extends ContentProvider {
                 , BookContract.PATH_BOOK_CATEGORY + "/#", CATEGORY_ID);
         matcher.addURI(BookContract.CONTENT_AUTHORITY
                 , BookContract.PATH_BOOK, BOOK);
+        matcher.addURI(BookContract.CONTENT_AUTHORITY
+                , BookContract.PATH_BOOK + "/" + BookContract.PATH_SEARCH + "/*", BOOK_SEARCH);
         matcher.addURI(BookContract.CONTENT_AUTHORITY
                 , BookContract.PATH_BOOK_AUTHOR, AUTHOR);
         matcher.addURI(BookContract.CONTENT_AUTHORITY
@@ -166,12 +319,41 @@ public class BookProvider extends ContentProvider {
         matcher.addURI(BookContract.CONTENT_AUTHORITY
                 , BookContract.PATH_BOOK + "/#/" + BookContract.PATH_BOOK_CATEGORY
                 , BookProvider.BOOK_CATEGORY);
+        matcher.addURI(BookContract.CONTENT_AUTHORITY
+                , BookContract.PATH_CHANGE, CHANGE);
+        matcher.addURI(BookContract.CONTENT_AUTHORITY
+                , BookContract.PATH_CHANGE + "/" + BookContract.PATH_SINCE + "/#"
+                , CHANGE_SINCE);
+        matcher.addURI(BookContract.CONTENT_AUTHORITY
+                , BookContract.PATH_FACET + "/" + BookContract.PATH_BOOK_AUTHOR
+                , AUTHOR_FACET);
+        matcher.addURI(BookContract.CONTENT_AUTHORITY
+                , BookContract.PATH_FACET + "/" + BookContract.PATH_BOOK_CATEGORY
+                , CATEGORY_FACET);
         return matcher;
     }
 
+    /**
+     * Returns the selection for the rows of a table whose book is not
+     * deleted. The book is looked up by its key for each row, instead of
+     * listing every book not deleted.
+     *
+     * @param tableName the name of the table.
+     * @param bookIdColumn the column of the table with the book's id.
+     * @return the selection for the rows whose book is not deleted.
+     */
+    private static String buildSelectionBookNotDeleted(String tableName, String bookIdColumn) {
+        return "EXISTS (SELECT 1 FROM " + BookEntry.TABLE_NAME
+                + " WHERE " + BookEntry.TABLE_NAME + "." + BookEntry._ID + " = "
+                + tableName + "." + bookIdColumn
+                + " AND " + SELECTION_BOOK_NOT_DELETED + ")";
+    }
+
     @Override
     public boolean onCreate() {
+        final long start = StartupTrace.begin("BookProvider.onCreate");
         mOpenHelper = new BookDbHelper(getContext());
+        StartupTrace.end("BookProvider.onCreate", start);
         return true;
 
     }
@@ -180,6 +362,7 @@ public class BookProvider extends ContentProvider {
     public String getType(Uri uri) {
         switch (sUriMatcher.match(uri)) {
             case BOOK:
+            case BOOK_SEARCH:
                 return BookEntry.CONTENT_TYPE;
             case BOOK_ID:
                 return BookEntry.CONTENT_ITEM_TYPE;
@@ -195,6 +378,13 @@ public class BookProvider extends ContentProvider {
                 return AuthorEntry.CONTENT_TYPE;
             case BOOK_CATEGORY:
                 return CategoryEntry.CONTENT_TYPE;
+            case CHANGE:
+            case CHANGE_SINCE:
+                return ChangeEntry.CONTENT_TYPE;
+            case AUTHOR_FACET:
+                return AuthorFacetEntry.CONTENT_TYPE;
+            case CATEGORY_FACET:
+                return CategoryFacetEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -206,39 +396,244 @@ public class BookProvider extends ContentProvider {
             , String selection
             , String[] selectionArgs
             , String sortOrder) {
+        MainThreadWatchdog.checkNotMainThread(MainThreadWatchdog.KIND_PROVIDER, "query", uri);
+        final int match = sUriMatcher.match(uri);
+        QueryResultCache.Key cacheKey = null;
+        long cacheGeneration = 0L;
+        if (uri.getBooleanQueryParameter(BookContract.QUERY_PARAMETER_CACHED, false)) {
+            cacheKey = new QueryResultCache.Key(getQueryTables(match, uri), uri.toString()
+                    , projection, selection, selectionArgs, sortOrder);
+            Cursor cached = mResultCache.get(cacheKey);
+            if (cached != null) {
+                cached.setNotificationUri(getContext().getContentResolver(), uri);
+                return cached;
+            }
+            cacheGeneration = mResultCache.getGeneration(cacheKey.getTables());
+        }
+        final String notDeleted =
+                uri.getBooleanQueryParameter(BookContract.QUERY_PARAMETER_INCLUDE_DELETED, false)
+                        ? null : getSelectionNotDeleted(match);
         Cursor retCursor;
-        switch (sUriMatcher.match(uri)) {
+        switch (match) {
             case BOOK:
-                retCursor = getAllBooks(projection, selection, selectionArgs, sortOrder);
+                retCursor = getAllBooks(projection
+                        , and(and(selection, notDeleted), getSelectionFacets(uri))
+                        , ArrayUtils.addAll(selectionArgs, getFacetArguments(uri))
+                        , sortOrder);
+                break;
+            case BOOK_SEARCH:
+                retCursor = searchBooks(uri, projection, and(selection, notDeleted)
+                        , selectionArgs, sortOrder);
                 break;
             case BOOK_ID:
-                retCursor = getBookById(uri, projection);
+                retCursor = getBookById(uri, projection, notDeleted);
                 break;
             case AUTHOR:
-                retCursor = getAllAuthors(projection, selection, selectionArgs, sortOrder);
+                retCursor = getAllAuthors(projection, and(selection, notDeleted)
+                        , selectionArgs, sortOrder);
                 break;
             case AUTHOR_ID:
-                retCursor = getAuthorById(uri, projection);
+                retCursor = getAuthorById(uri, projection, notDeleted);
                 break;
             case CATEGORY:
-                retCursor = getAllCategories(projection, selection, selectionArgs, sortOrder);
+                retCursor = getAllCategories(projection, and(selection, notDeleted)
+                        , selectionArgs, sortOrder);
                 break;
             case CATEGORY_ID:
-                retCursor = getCategoryById(uri, projection);
+                retCursor = getCategoryById(uri, projection, notDeleted);
                 break;
             case BOOK_AUTHOR:
-                retCursor = getBookAuthors(uri, projection);
+                retCursor = getBookAuthors(uri, projection, notDeleted);
                 break;
             case BOOK_CATEGORY:
-                retCursor = getBookCategories(uri, projection);
+                retCursor = getBookCategories(uri, projection, notDeleted);
+                break;
+            case CHANGE:
+                retCursor = getAllChanges(projection, selection, selectionArgs, sortOrder);
+                break;
+            case CHANGE_SINCE:
+                retCursor = getChangesSince(uri, projection);
+                break;
+            case AUTHOR_FACET:
+                retCursor = getFacet(AuthorFacetEntry.TABLE_NAME, projection
+                        , selection, selectionArgs, sortOrder);
+                break;
+            case CATEGORY_FACET:
+                retCursor = getFacet(CategoryFacetEntry.TABLE_NAME, projection
+                        , selection, selectionArgs, sortOrder);
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
+        if (cacheKey != null) {
+            retCursor = mResultCache.put(cacheKey, retCursor, cacheGeneration);
+        }
         retCursor.setNotificationUri(getContext().getContentResolver(), uri);
         return retCursor;
     }
 
+    /**
+     * Returns the selection that leaves out the deleted books, or the rows of
+     * the deleted books, from the results of the URIs of a type.
+     *
+     * @param match the type of URI, as returned by {@link #sUriMatcher}.
+     * @return the selection, or {@code null} if the URIs of the type are not
+     *     queried.
+     */
+    private static String getSelectionNotDeleted(int match) {
+        switch (match) {
+            case BOOK:
+            case BOOK_ID:
+            case BOOK_SEARCH:
+                return SELECTION_BOOK_NOT_DELETED;
+            case AUTHOR:
+            case AUTHOR_ID:
+            case BOOK_AUTHOR:
+                return SELECTION_AUTHOR_NOT_DELETED;
+            case CATEGORY:
+            case CATEGORY_ID:
+            case BOOK_CATEGORY:
+                return SELECTION_CATEGORY_NOT_DELETED;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the selection that limits the books to those of the facets
+     * selected by the URI's {@link BookContract#QUERY_PARAMETER_AUTHOR} and
+     * {@link BookContract#QUERY_PARAMETER_CATEGORY}, whose arguments are
+     * returned by {@link #getFacetArguments(Uri)}.
+     *
+     * @param uri the URI used to query for books.
+     * @return the selection, or {@code null} if the URI selects no facet.
+     */
+    private static String getSelectionFacets(Uri uri) {
+        String selection = null;
+        if (uri.getQueryParameter(BookContract.QUERY_PARAMETER_AUTHOR) != null) {
+            selection = SELECTION_BOOK_BY_AUTHOR;
+        }
+        if (uri.getQueryParameter(BookContract.QUERY_PARAMETER_CATEGORY) != null) {
+            selection = and(selection, SELECTION_BOOK_BY_CATEGORY);
+        }
+        return selection;
+    }
+
+    /**
+     * Returns the arguments of the selection returned by
+     * {@link #getSelectionFacets(Uri)}.
+     *
+     * @param uri the URI used to query for books.
+     * @return the names of the facets selected, or {@code null} if the URI
+     *     selects none.
+     */
+    private static String[] getFacetArguments(Uri uri) {
+        List<String> names = new ArrayList<>();
+        String author = uri.getQueryParameter(BookContract.QUERY_PARAMETER_AUTHOR);
+        if (author != null) {
+            names.add(author);
+        }
+        String category = uri.getQueryParameter(BookContract.QUERY_PARAMETER_CATEGORY);
+        if (category != null) {
+            names.add(category);
+        }
+        return names.isEmpty() ? null : names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Returns the conjunction of a selection and a condition.
+     *
+     * @param selection the <i>WHERE</i> clause, possibly {@code null}.
+     * @param condition the condition added to the clause, possibly
+     *     {@code null}.
+     * @return the selection, if the condition is {@code null}, the condition,
+     *     if the selection is blank, or both joined by <i>AND</i> otherwise.
+     */
+    private static String and(String selection, String condition) {
+        if (condition == null) {
+            return selection;
+        }
+        if (StringUtils.isBlank(selection)) {
+            return condition;
+        }
+        return "(" + selection + ") AND " + condition;
+    }
+
+    /**
+     * Returns the tables read or written through the URIs of a type.
+     * Deleting books also deletes their authors and categories.
+     *
+     * @param match the type of URI, as returned by {@link #sUriMatcher}.
+     * @return the tables, as a combination of the
+     *     {@code QueryResultCache.TABLE_*} bits.
+     */
+    private static int getTables(int match) {
+        switch (match) {
+            case BOOK:
+            case BOOK_ID:
+                return QueryResultCache.TABLE_BOOK;
+            case AUTHOR:
+            case AUTHOR_ID:
+            case BOOK_AUTHOR:
+                return QueryResultCache.TABLE_AUTHOR;
+            case CATEGORY:
+            case CATEGORY_ID:
+            case BOOK_CATEGORY:
+                return QueryResultCache.TABLE_CATEGORY;
+            default:
+                return QueryResultCache.TABLE_ALL;
+        }
+    }
+
+    /**
+     * Returns the tables read through a URI: those of its type and, for
+     * books limited to the facets selected by the URI, the authors' and
+     * categories' tables their selection reads, so that the cached books of
+     * a facet are invalidated when the authors or categories are written.
+     *
+     * @param match the type of URI, as returned by {@link #sUriMatcher}.
+     * @param uri the URI used to query.
+     * @return the tables, as a combination of the
+     *     {@code QueryResultCache.TABLE_*} bits.
+     * @see #getSelectionFacets(Uri)
+     */
+    private static int getQueryTables(int match, Uri uri) {
+        if (match == BOOK && getSelectionFacets(uri) != null) {
+            return QueryResultCache.TABLE_BOOK | QueryResultCache.TABLE_AUTHOR
+                    | QueryResultCache.TABLE_CATEGORY;
+        }
+        return getTables(match);
+    }
+
+    /**
+     * Returns the statistics of the result cache for
+     * {@link BookContract#METHOD_GET_CACHE_STATS}, or those of the fetches
+     * of books for {@link BookContract#METHOD_GET_FETCH_STATS}. Compacts
+     * the log of changes for {@link BookContract#METHOD_COMPACT_CHANGES},
+     * returning the number of changes discarded.
+     *
+     * @param method the method called.
+     * @param arg ignored.
+     * @param extras ignored.
+     * @return the statistics, or {@code null} if the method is unknown.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (BookContract.METHOD_GET_FETCH_STATS.equals(method)) {
+            return FetchStats.toBundle();
+        }
+        if (BookContract.METHOD_COMPACT_CHANGES.equals(method)) {
+            return compactChanges();
+        }
+        if (!BookContract.METHOD_GET_CACHE_STATS.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        Bundle stats = new Bundle();
+        stats.putInt(BookContract.KEY_CACHE_HITS, mResultCache.getHitCount());
+        stats.putInt(BookContract.KEY_CACHE_MISSES, mResultCache.getMissCount());
+        return stats;
+    }
+
     /**
      * Queries the database for all registered books.
      *
@@ -252,14 +647,56 @@ public class BookProvider extends ContentProvider {
             , String selection
             , String[] selectionArgs
             , String sortOrder) {
-        return sBookQueryBuilder.query(
+        return decodeDetail(getBookQueryBuilder(projection).query(
                 mOpenHelper.getReadableDatabase()
                 , projection
                 , selection
                 , selectionArgs
                 , null // groupBy
                 , null // having
-                , sortOrder);
+                , sortOrder));
+    }
+
+    /**
+     * Searches the books similar to the text contained in the URI, using
+     * the index kept by {@link SearchIndex}, and queries the database for
+     * those found. The books are limited to the facets selected by the URI
+     * by the search itself, before it keeps only the most similar. Unless a
+     * sort order is passed, the books are sorted by how similar they are
+     * and, if equally similar, by title.
+     *
+     * @param uri the URI used to query, containing the text searched for
+     *     and the facets selected.
+     * @param projection the columns to return.
+     * @param selection condition the books found must also meet, possibly
+     *     {@code null}.
+     * @param selectionArgs the values for the arguments used in {@code selection}.
+     * @param sortOrder how the rows sould be ordered, {@code null} to rank them.
+     * @return a {@link Cursor} for the result.
+     */
+    private Cursor searchBooks(Uri uri
+            , String[] projection
+            , String selection
+            , String[] selectionArgs
+            , String sortOrder) {
+        final Map<Long, Float> scores = SearchIndex.search(mOpenHelper.getReadableDatabase()
+                , BookEntry.getSearchTextFromUri(uri)
+                , getSelectionFacets(uri), getFacetArguments(uri));
+        final String bookId = BookEntry.TABLE_NAME + "." + BookEntry._ID;
+        if (scores.isEmpty()) {
+            return getAllBooks(projection, and("0", selection), selectionArgs, sortOrder);
+        }
+        StringBuilder rank = new StringBuilder("CASE ").append(bookId);
+        for (Map.Entry<Long, Float> score : scores.entrySet()) {
+            rank.append(" WHEN ").append(score.getKey())
+                    .append(" THEN ").append(score.getValue());
+        }
+        rank.append(" END DESC, ").append(BookEntry.SORT_ORDER_TITLE);
+        return getAllBooks(projection
+                , and(bookId + " IN (" + StringUtils.join(scores.keySet(), ", ") + ")"
+                        , selection)
+                , selectionArgs
+                , sortOrder != null ? sortOrder : rank.toString());
     }
 
     /**
@@ -267,19 +704,48 @@ public class BookProvider extends ContentProvider {
      *
      * @param uri the URI used to query, containing the id of the book.
      * @param projection the columns to return.
+     * @param filter condition the rows must also meet, possibly {@code null}.
      * @return a {@link Cursor} for the result.
      */
-    private Cursor getBookById(Uri uri, String[] projection) {
+    private Cursor getBookById(Uri uri, String[] projection, String filter) {
         String id = Long.toString(ContentUris.parseId(uri));
-        return sBookQueryBuilder.query(
+        return decodeDetail(getBookQueryBuilder(projection).query(
                 mOpenHelper.getReadableDatabase()
                 , projection
-                , SELECTION_BOOK_ID // selection
+                , and(SELECTION_BOOK_ID, filter) // selection
                 , new String[] {id}  // selectionArgs
                 , null // groupBy
                 , null // having
                 , null  // sortOrder
-        );
+        ));
+    }
+
+    /**
+     * Returns the query builder for the books, joining
+     * {@link BookDetailEntry#TABLE_NAME} only if the projection includes
+     * any of its columns, so that lists do not read it.
+     *
+     * @param projection the columns to return, {@code null} for all.
+     * @return the query builder for the books.
+     */
+    private static SQLiteQueryBuilder getBookQueryBuilder(String[] projection) {
+        if (projection == null
+                || ArrayUtils.contains(projection, BookEntry.COLUMN_DESCRIPTION)) {
+            return sBookDetailQueryBuilder;
+        }
+        return sBookQueryBuilder;
+    }
+
+    /**
+     * Wraps the cursor so that the descriptions it contains are read
+     * decompressed, if it contains them.
+     *
+     * @param cursor the result of a query for books.
+     * @return the cursor, wrapped if it includes the description.
+     */
+    private static Cursor decodeDetail(Cursor cursor) {
+        final int column = cursor.getColumnIndex(BookEntry.COLUMN_DESCRIPTION);
+        return column < 0 ? cursor : new TextDecodingCursor(cursor, column);
     }
 
     /**
@@ -310,14 +776,15 @@ public class BookProvider extends ContentProvider {
      *
      * @param uri the URI used to query, containing the id of the author.
      * @param projection the columns to return.
+     * @param filter condition the rows must also meet, possibly {@code null}.
      * @return a {@link Cursor} for the result.
      */
-    private Cursor getAuthorById(Uri uri, String[] projection) {
+    private Cursor getAuthorById(Uri uri, String[] projection, String filter) {
         String id = Long.toString(ContentUris.parseId(uri));
         return sAuthorQueryBuilder.query(
                 mOpenHelper.getReadableDatabase()
                 , projection
-                , SELECTION_AUTHOR_ID // selection
+                , and(SELECTION_AUTHOR_ID, filter) // selection
                 , new String[] {id}  // selectionArgs
                 , null // groupBy
                 , null // having
@@ -353,14 +820,15 @@ public class BookProvider extends ContentProvider {
      *
      * @param uri the URI used to query, containing the id of the category.
      * @param projection the columns to return.
+     * @param filter condition the rows must also meet, possibly {@code null}.
      * @return a {@link Cursor} for the result.
      */
-    private Cursor getCategoryById(Uri uri, String[] projection) {
+    private Cursor getCategoryById(Uri uri, String[] projection, String filter) {
         String id = Long.toString(ContentUris.parseId(uri));
         return sCategoryQueryBuilder.query(
                 mOpenHelper.getReadableDatabase()
                 , projection
-                , SELECTION_CATEGORY_ID // selection
+                , and(SELECTION_CATEGORY_ID, filter) // selection
                 , new String[] {id}  // selectionArgs
                 , null // groupBy
                 , null // having
@@ -374,14 +842,15 @@ public class BookProvider extends ContentProvider {
      *
      * @param uri the URI used to query, containing the id of the book.
      * @param projection the columns to return.
+     * @param filter condition the rows must also meet, possibly {@code null}.
      * @return a {@link Cursor} for the result.
      */
-    private Cursor getBookAuthors(Uri uri, String[] projection) {
+    private Cursor getBookAuthors(Uri uri, String[] projection, String filter) {
         String id = Long.toString(BookEntry.getBookIdFromUri(uri));
         return sAuthorQueryBuilder.query(
                 mOpenHelper.getReadableDatabase()
                 , projection
-                , SELECTION_BOOK_AUTHORS
+                , and(SELECTION_BOOK_AUTHORS, filter)
                 , new String[] {id}
                 , null // groupBy
                 , null // having
@@ -395,14 +864,15 @@ public class BookProvider extends ContentProvider {
      *
      * @param uri the URI used to query, containing the id of the book.
      * @param projection the columns to return.
+     * @param filter condition the rows must also meet, possibly {@code null}.
      * @return a {@link Cursor} for the result.
      */
-    private Cursor getBookCategories(Uri uri, String[] projection) {
+    private Cursor getBookCategories(Uri uri, String[] projection, String filter) {
         String id = Long.toString(BookEntry.getBookIdFromUri(uri));
         return sCategoryQueryBuilder.query(
                 mOpenHelper.getReadableDatabase()
                 , projection
-                , SELECTION_BOOK_CATEGORIES
+                , and(SELECTION_BOOK_CATEGORIES, filter)
                 , new String[] {id}
                 , null // groupBy
                 , null // having
@@ -410,13 +880,108 @@ public class BookProvider extends ContentProvider {
         );
     }
 
+    /**
+     * Queries the database for the whole log of changes.
+     *
+     * @param projection the columns to return.
+     * @param selection the <i>WHERE</i> clause.
+     * @param selectionArgs the values for the arguments used in {@code selection}.
+     * @param sortOrder how the rows sould be ordered, by default in the
+     *     order the changes were made.
+     * @return a {@link Cursor} for the result.
+     */
+    private Cursor getAllChanges(String[] projection
+            , String selection
+            , String[] selectionArgs
+            , String sortOrder) {
+        return mOpenHelper.getReadableDatabase().query(ChangeEntry.TABLE_NAME
+                , projection
+                , selection
+                , selectionArgs
+                , null // groupBy
+                , null // having
+                , sortOrder == null ? SORT_ORDER_CHANGES : sortOrder);
+    }
+
+    /**
+     * Queries the database for the changes made after the one with the
+     * sequence number contained in the URI, in the order they were made.
+     *
+     * @param uri the URI used to query, containing the sequence number.
+     * @param projection the columns to return.
+     * @return a {@link Cursor} for the result.
+     */
+    private Cursor getChangesSince(Uri uri, String[] projection) {
+        String seq = Long.toString(ChangeEntry.getSeqFromUri(uri));
+        return mOpenHelper.getReadableDatabase().query(ChangeEntry.TABLE_NAME
+                , projection
+                , SELECTION_CHANGES_SINCE
+                , new String[] {seq}
+                , null // groupBy
+                , null // having
+                , SORT_ORDER_CHANGES);
+    }
+
+    /**
+     * Queries the database for the names of a facet with their number of
+     * books, kept up to date by the database instead of counted here.
+     *
+     * @param tableName the name of the table of the facet.
+     * @param projection the columns to return.
+     * @param selection the <i>WHERE</i> clause.
+     * @param selectionArgs the values for the arguments used in {@code selection}.
+     * @param sortOrder how the rows sould be ordered, by default by name.
+     * @return a {@link Cursor} for the result.
+     */
+    private Cursor getFacet(String tableName
+            , String[] projection
+            , String selection
+            , String[] selectionArgs
+            , String sortOrder) {
+        return mOpenHelper.getReadableDatabase().query(tableName
+                , projection
+                , selection
+                , selectionArgs
+                , null // groupBy
+                , null // having
+                , sortOrder == null ? AuthorFacetEntry.SORT_ORDER_NAME : sortOrder);
+    }
+
+    /**
+     * Compacts the log of changes in a single transaction and notifies its
+     * observers.
+     *
+     * @return the number of changes discarded, associated to the key
+     *     {@link BookContract#KEY_CHANGES_DISCARDED}.
+     * @see BookDbHelper#compactChanges(SQLiteDatabase)
+     */
+    private Bundle compactChanges() {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int discarded;
+        db.beginTransaction();
+        try {
+            discarded = BookDbHelper.compactChanges(db);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (discarded > 0) {
+            mResultCache.invalidate(QueryResultCache.TABLE_ALL);
+            getContext().getContentResolver().notifyChange(ChangeEntry.CONTENT_URI, null);
+        }
+        Bundle result = new Bundle();
+        result.putInt(BookContract.KEY_CHANGES_DISCARDED, discarded);
+        return result;
+    }
+
     @Override
     public Uri insert(Uri uri, ContentValues values) {
+        MainThreadWatchdog.checkNotMainThread(MainThreadWatchdog.KIND_PROVIDER, "insert", uri);
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         Uri resultUri;
         switch (sUriMatcher.match(uri)) {
             case BOOK:
-                long id = db.insert(BookEntry.TABLE_NAME, null, values);
+                long id = insertBook(db, values);
                 if (id > 0) {
                     resultUri = BookEntry.buildBookUri(id);
                 } else {
@@ -424,7 +989,7 @@ public class BookProvider extends ContentProvider {
                 }
                 break;
             case AUTHOR:
-                id = db.insert(AuthorEntry.TABLE_NAME, null, values);
+                id = insertAuthor(db, values);
                 if (id > 0) {
                     resultUri = AuthorEntry.buildAuthorUri(id);
                 } else {
@@ -442,7 +1007,10 @@ public class BookProvider extends ContentProvider {
             default:
                 throw new UnsupportedOperationException("Unknown: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        // Adding a deleted book again replaces it, with its authors and categories
+        mResultCache.invalidate(sUriMatcher.match(uri) == BOOK
+                ? QueryResultCache.TABLE_ALL : getTables(sUriMatcher.match(uri)));
+        notifyChange(uri);
         return resultUri;
     }
 
@@ -451,18 +1019,25 @@ public class BookProvider extends ContentProvider {
             , ContentValues values
             , String selection
             , String[] selectionArgs) {
+        MainThreadWatchdog.checkNotMainThread(MainThreadWatchdog.KIND_PROVIDER, "update", uri);
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         int rowsAffected;
         switch (sUriMatcher.match(uri)) {
             case BOOK:
-                rowsAffected =
-                        db.update(BookEntry.TABLE_NAME
-                                , values, selection, selectionArgs);
+                ContentValues bookValues = withModifiedAt(values);
+                if (values.containsKey(BookEntry.COLUMN_TITLE)
+                        || values.containsKey(BookEntry.COLUMN_SUBTITLE)
+                        || values.containsKey(BookEntry.COLUMN_DESCRIPTION)) {
+                    rowsAffected = updateBooksById(db
+                            , bookValues, selection, selectionArgs);
+                } else {
+                    rowsAffected =
+                            db.update(BookEntry.TABLE_NAME
+                                    , bookValues, selection, selectionArgs);
+                }
                 break;
             case AUTHOR:
-                rowsAffected =
-                        db.update(AuthorEntry.TABLE_NAME
-                                , values, selection, selectionArgs);
+                rowsAffected = updateAuthors(db, values, selection, selectionArgs);
                 break;
             case CATEGORY:
                 rowsAffected =
@@ -474,13 +1049,319 @@ public class BookProvider extends ContentProvider {
         }
         // notify listeners
         if (rowsAffected > 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            // Deleting or restoring books hides or shows their authors and categories
+            mResultCache.invalidate(values.containsKey(BookEntry.COLUMN_DELETED_AT)
+                    ? QueryResultCache.TABLE_ALL : getTables(sUriMatcher.match(uri)));
+            notifyChange(uri);
         }
         return rowsAffected;
     }
 
+    /**
+     * Returns the book values passed as argument, or a copy of them with
+     * {@link BookEntry#COLUMN_MODIFIED_AT} set to the current time if they
+     * write any of {@link #MODIFYING_COLUMNS} but not the time of the
+     * modification. The argument is not modified.
+     *
+     * @param values the book values to be written.
+     * @return {@code values}, or a copy that includes the time of the
+     *     modification.
+     */
+    private static ContentValues withModifiedAt(ContentValues values) {
+        if (values.containsKey(BookEntry.COLUMN_MODIFIED_AT)) {
+            return values;
+        }
+        for (String column : MODIFYING_COLUMNS) {
+            if (values.containsKey(column)) {
+                ContentValues result = new ContentValues(values);
+                result.put(BookEntry.COLUMN_MODIFIED_AT, System.currentTimeMillis());
+                return result;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns a copy of the book values passed as argument, with
+     * {@link BookEntry#COLUMN_DISPLAY_TITLE} and
+     * {@link BookEntry#COLUMN_TITLE_SORT} set according to the title and
+     * subtitle they contain. The argument is not modified.
+     *
+     * @param values the book values to be inserted.
+     * @return a copy of {@code values} that includes the display title and
+     *     the title's sort key.
+     */
+    private ContentValues withComputedTitles(ContentValues values) {
+        ContentValues result = new ContentValues(values);
+        final String title = values.getAsString(BookEntry.COLUMN_TITLE);
+        result.put(BookEntry.COLUMN_DISPLAY_TITLE, buildDisplayTitle(
+                title, values.getAsString(BookEntry.COLUMN_SUBTITLE)));
+        result.put(BookEntry.COLUMN_TITLE_SORT, SortKey.normalize(title));
+        return result;
+    }
+
+    /**
+     * Returns the text shown for a book in lists, built from its title and
+     * subtitle, so it does not have to be built each time a list item is
+     * bound.
+     *
+     * @param title the book's title.
+     * @param subtitle the book's subtitle, possibly {@code null} or blank.
+     * @return the title if the subtitle is blank, otherwise the title and
+     *     subtitle combined using {@code R.string.title_subtitle_pattern}.
+     */
+    private String buildDisplayTitle(String title, String subtitle) {
+        if (StringUtils.trimToNull(subtitle) == null) {
+            return title;
+        }
+        return getContext().getString(R.string.title_subtitle_pattern
+                , title, subtitle);
+    }
+
+    /**
+     * Inserts a book, writing its description to
+     * {@link BookDetailEntry#TABLE_NAME} and indexing its words, in a single
+     * transaction. If the book was deleted, but not yet purged, it is
+     * replaced.
+     *
+     * @param db the database to write to.
+     * @param values the book values to be inserted.
+     * @return the id of the book, or {@code -1} if it could not be inserted.
+     */
+    private long insertBook(SQLiteDatabase db, ContentValues values) {
+        ContentValues bookValues = withComputedTitles(withModifiedAt(values));
+        bookValues.remove(BookEntry.COLUMN_DESCRIPTION);
+        final String description = values.getAsString(BookEntry.COLUMN_DESCRIPTION);
+        db.beginTransaction();
+        try {
+            if (values.containsKey(BookEntry._ID)) {
+                db.delete(BookEntry.TABLE_NAME, SELECTION_BOOK_ID + " AND "
+                        + BookEntry.COLUMN_DELETED_AT + " IS NOT NULL"
+                        , new String[] {values.getAsString(BookEntry._ID)});
+            }
+            long id = db.insert(BookEntry.TABLE_NAME, null, bookValues);
+            if (id > 0 && description != null) {
+                db.insertWithOnConflict(BookDetailEntry.TABLE_NAME, null
+                        , BookDbHelper.buildDetailValues(id, description)
+                        , SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            if (id > 0) {
+                indexBook(db, id);
+            }
+            db.setTransactionSuccessful();
+            return id;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Updates the books that match the selection one by one, in a single
+     * transaction. Used when the values being written include the title or
+     * subtitle, from which {@link BookEntry#COLUMN_DISPLAY_TITLE} and
+     * {@link BookEntry#COLUMN_TITLE_SORT} are recomputed and whose words
+     * are indexed again, or the
+     * description, which is written to
+     * {@link BookDetailEntry#TABLE_NAME}.
+     *
+     * @param db the database to write to.
+     * @param values the new values for the books.
+     * @param selection the <i>WHERE</i> clause.
+     * @param selectionArgs the values for the arguments used in {@code selection}.
+     * @return the number of books updated.
+     */
+    private int updateBooksById(SQLiteDatabase db
+            , ContentValues values
+            , String selection
+            , String[] selectionArgs) {
+        final String[] titleProjection =
+                {BookEntry.COLUMN_TITLE, BookEntry.COLUMN_SUBTITLE};
+        final boolean titleChanged = values.containsKey(BookEntry.COLUMN_TITLE)
+                || values.containsKey(BookEntry.COLUMN_SUBTITLE);
+        final boolean descriptionChanged = values.containsKey(BookEntry.COLUMN_DESCRIPTION);
+        ContentValues bookValues = new ContentValues(values);
+        bookValues.remove(BookEntry.COLUMN_DESCRIPTION);
+        db.beginTransaction();
+        try {
+            // The ids are read first, the update may change the selected columns
+            List<Long> ids = new ArrayList<>();
+            Cursor idCursor = db.query(BookEntry.TABLE_NAME
+                    , new String[] {BookEntry._ID}
+                    , selection, selectionArgs, null, null, null);
+            try {
+                while (idCursor.moveToNext()) {
+                    ids.add(idCursor.getLong(0));
+                }
+            } finally {
+                idCursor.close();
+            }
+            int rowsAffected = bookValues.size() > 0
+                    ? db.update(BookEntry.TABLE_NAME, bookValues, selection, selectionArgs)
+                    : ids.size();
+            final String description = values.getAsString(BookEntry.COLUMN_DESCRIPTION);
+            ContentValues displayValues = new ContentValues();
+            for (Long id : ids) {
+                String[] idArgs = {id.toString()};
+                if (descriptionChanged) {
+                    db.insertWithOnConflict(BookDetailEntry.TABLE_NAME, null
+                            , BookDbHelper.buildDetailValues(id, description)
+                            , SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                if (!titleChanged) {
+                    continue;
+                }
+                Cursor cursor = db.query(BookEntry.TABLE_NAME, titleProjection
+                        , SELECTION_BOOK_ID, idArgs, null, null, null);
+                try {
+                    if (cursor.moveToFirst()) {
+                        displayValues.put(BookEntry.COLUMN_DISPLAY_TITLE
+                                , buildDisplayTitle(cursor.getString(0)
+                                        , cursor.getString(1)));
+                        displayValues.put(BookEntry.COLUMN_TITLE_SORT
+                                , SortKey.normalize(cursor.getString(0)));
+                        db.update(BookEntry.TABLE_NAME, displayValues
+                                , SELECTION_BOOK_ID, idArgs);
+                    }
+                    indexBook(db, id);
+                } finally {
+                    cursor.close();
+                }
+            }
+            db.setTransactionSuccessful();
+            return rowsAffected;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Inserts an author and indexes the words of its book again, in a
+     * single transaction.
+     *
+     * @param db the database to write to.
+     * @param values the author values to be inserted.
+     * @return the id of the author, or {@code -1} if it could not be inserted.
+     */
+    private long insertAuthor(SQLiteDatabase db, ContentValues values) {
+        db.beginTransaction();
+        try {
+            final long id = db.insert(AuthorEntry.TABLE_NAME, null, values);
+            if (id > 0) {
+                indexBook(db, values.getAsLong(AuthorEntry.COLUMN_BOOK_ID));
+            }
+            db.setTransactionSuccessful();
+            return id;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Updates the authors that match the selection and, if their names or
+     * books change, indexes the words of the books they belonged to and
+     * belong to again, in a single transaction.
+     *
+     * @param db the database to write to.
+     * @param values the new values for the authors.
+     * @param selection the <i>WHERE</i> clause.
+     * @param selectionArgs the values for the arguments used in {@code selection}.
+     * @return the number of authors updated.
+     */
+    private int updateAuthors(SQLiteDatabase db
+            , ContentValues values
+            , String selection
+            , String[] selectionArgs) {
+        if (!values.containsKey(AuthorEntry.COLUMN_NAME)
+                && !values.containsKey(AuthorEntry.COLUMN_BOOK_ID)) {
+            return db.update(AuthorEntry.TABLE_NAME, values, selection, selectionArgs);
+        }
+        db.beginTransaction();
+        try {
+            Set<Long> bookIds = getAuthorBookIds(db, selection, selectionArgs);
+            final int rowsAffected =
+                    db.update(AuthorEntry.TABLE_NAME, values, selection, selectionArgs);
+            if (rowsAffected > 0 && values.getAsLong(AuthorEntry.COLUMN_BOOK_ID) != null) {
+                bookIds.add(values.getAsLong(AuthorEntry.COLUMN_BOOK_ID));
+            }
+            for (Long bookId : bookIds) {
+                indexBook(db, bookId);
+            }
+            db.setTransactionSuccessful();
+            return rowsAffected;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Deletes the authors that match the selection and indexes the words of
+     * their books again, in a single transaction.
+     *
+     * @param db the database to write to.
+     * @param selection the <i>WHERE</i> clause.
+     * @param selectionArgs the values for the arguments used in {@code selection}.
+     * @return the number of authors deleted.
+     */
+    private int deleteAuthors(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        db.beginTransaction();
+        try {
+            Set<Long> bookIds = getAuthorBookIds(db, selection, selectionArgs);
+            final int rowsAffected = db.delete(AuthorEntry.TABLE_NAME, selection, selectionArgs);
+            for (Long bookId : bookIds) {
+                indexBook(db, bookId);
+            }
+            db.setTransactionSuccessful();
+            return rowsAffected;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the ids of the books of the authors that match the selection.
+     *
+     * @param db the database to read from.
+     * @param selection the <i>WHERE</i> clause.
+     * @param selectionArgs the values for the arguments used in {@code selection}.
+     * @return the ids of the books.
+     */
+    private static Set<Long> getAuthorBookIds(SQLiteDatabase db
+            , String selection
+            , String[] selectionArgs) {
+        Set<Long> bookIds = new HashSet<>();
+        Cursor cursor = db.query(true, AuthorEntry.TABLE_NAME
+                , new String[] {AuthorEntry.COLUMN_BOOK_ID}
+                , selection, selectionArgs, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                bookIds.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return bookIds;
+    }
+
+    /**
+     * Indexes the words of a book again, unless a batch is being applied on
+     * the current thread, in which case it is indexed when the batch
+     * finishes, once, however many of its rows the batch writes.
+     *
+     * @param db the database to write to, in a transaction.
+     * @param bookId the book's identifier.
+     */
+    private void indexBook(SQLiteDatabase db, long bookId) {
+        Set<Long> batchIndexed = mBatchIndexed.get();
+        if (batchIndexed != null) {
+            batchIndexed.add(bookId);
+        } else {
+            SearchIndex.indexBook(db, bookId);
+        }
+    }
+
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        MainThreadWatchdog.checkNotMainThread(MainThreadWatchdog.KIND_PROVIDER, "delete", uri);
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         int rowsAffected;
         switch (sUriMatcher.match(uri)) {
@@ -489,8 +1370,7 @@ public class BookProvider extends ContentProvider {
                         db.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
                 break;
             case AUTHOR:
-                rowsAffected =
-                        db.delete(AuthorEntry.TABLE_NAME, selection, selectionArgs);
+                rowsAffected = deleteAuthors(db, selection, selectionArgs);
                 break;
             case CATEGORY:
                 rowsAffected =
@@ -501,11 +1381,79 @@ public class BookProvider extends ContentProvider {
         }
         // notify listeners
         if (rowsAffected > 0 || selection == null) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            // Deleting books cascades to their authors and categories
+            mResultCache.invalidate(sUriMatcher.match(uri) == BOOK
+                    ? QueryResultCache.TABLE_ALL : getTables(sUriMatcher.match(uri)));
+            notifyChange(uri);
         }
         return rowsAffected;
     }
 
+    /**
+     * Applies the operations in a single transaction, so that importing many
+     * books does not pay for a transaction per row. The books written are
+     * indexed once each, at the end. Observers are notified
+     * once per {@link Uri} changed, after the transaction ends, instead of
+     * once per operation.
+     *
+     * @param operations the operations to apply.
+     * @return the results of the operations.
+     * @throws OperationApplicationException if any operation fails, in which
+     *     case none is applied.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        MainThreadWatchdog.checkNotMainThread(MainThreadWatchdog.KIND_PROVIDER
+                , "applyBatch", operations.size());
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        Set<Uri> changes = new HashSet<>();
+        mBatchChanges.set(changes);
+        Set<Long> indexed = new HashSet<>();
+        mBatchIndexed.set(indexed);
+        db.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            mBatchIndexed.remove();
+            for (Long bookId : indexed) {
+                SearchIndex.indexBook(db, bookId);
+            }
+            db.setTransactionSuccessful();
+            return results;
+        } finally {
+            db.endTransaction();
+            mBatchChanges.remove();
+            mBatchIndexed.remove();
+            // Results read while the transaction was open could be stale
+            for (Uri uri : changes) {
+                mResultCache.invalidate(getTables(sUriMatcher.match(uri)));
+            }
+            for (Uri uri : changes) {
+                getContext().getContentResolver().notifyChange(uri, null);
+            }
+        }
+    }
+
+    /**
+     * Notifies the observers of the {@link Uri}, and those of the log of
+     * changes and the facets, about a change, unless a batch is being applied on the current
+     * thread, in which case they are notified when it finishes.
+     *
+     * @param uri the {@link Uri} that changed.
+     */
+    private void notifyChange(Uri uri) {
+        Set<Uri> batchChanges = mBatchChanges.get();
+        if (batchChanges != null) {
+            batchChanges.add(uri);
+            batchChanges.add(ChangeEntry.CONTENT_URI);
+            batchChanges.add(FACET_URI);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+            getContext().getContentResolver().notifyChange(ChangeEntry.CONTENT_URI, null);
+            getContext().getContentResolver().notifyChange(FACET_URI, null);
+        }
+    }
+
     @Override
     public void shutdown() {
         mOpenHelper.close();
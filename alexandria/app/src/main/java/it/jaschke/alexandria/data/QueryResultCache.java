@@ -0,0 +1,349 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Size-bounded cache of query results used by {@link BookProvider}. Each
+ * result is kept as an immutable snapshot of its rows, and every hit returns
+ * a new {@link MatrixCursor} over them, so that clients may close or move it
+ * freely. Results depend on one or more tables, and are invalidated
+ * whenever those tables are written. Results read while a table they
+ * depend on was being written are not kept, as they could already be stale.
+ * The size of each result is estimated by the number of characters of its
+ * values, like {@link BookCache} does.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+final class QueryResultCache {
+
+    /**
+     * Identifies the book table.
+     */
+    static final int TABLE_BOOK = 1;
+
+    /**
+     * Identifies the author table.
+     */
+    static final int TABLE_AUTHOR = 1 << 1;
+
+    /**
+     * Identifies the category table.
+     */
+    static final int TABLE_CATEGORY = 1 << 2;
+
+    /**
+     * Identifies every table.
+     */
+    static final int TABLE_ALL = TABLE_BOOK | TABLE_AUTHOR | TABLE_CATEGORY;
+
+    /**
+     * Number of tables.
+     */
+    private static final int TABLE_COUNT = 3;
+
+    /**
+     * Maximum number of characters held by the cache.
+     */
+    private static final int MAX_SIZE = 512 * 1024;
+
+    /**
+     * Results larger than this, in characters, are not kept, so that a
+     * single large result does not evict every other.
+     */
+    private static final int MAX_ENTRY_SIZE = MAX_SIZE / 4;
+
+    /**
+     * Size added to each value to account for the objects themselves.
+     */
+    private static final int VALUE_OVERHEAD = 16;
+
+    /**
+     * Holds the results.
+     */
+    private final LruCache<Key, Snapshot> mEntries = new LruCache<Key, Snapshot>(MAX_SIZE) {
+        @Override
+        protected int sizeOf(Key key, Snapshot snapshot) {
+            return snapshot.mSize;
+        }
+    };
+
+    /**
+     * Number of times each table has been invalidated, indexed by the
+     * position of its bit.
+     */
+    private final long[] mGenerations = new long[TABLE_COUNT];
+
+    /**
+     * Number of queries served from the cache.
+     */
+    private final AtomicInteger mHitCount = new AtomicInteger();
+
+    /**
+     * Number of cacheable queries not served from the cache.
+     */
+    private final AtomicInteger mMissCount = new AtomicInteger();
+
+    /**
+     * Returns a new {@link Cursor} over the cached result of the query, or
+     * {@code null} if it is not cached.
+     *
+     * @param key identifies the query.
+     * @return a new {@link Cursor} over the cached result, or {@code null}.
+     */
+    Cursor get(Key key) {
+        Snapshot snapshot = mEntries.get(key);
+        if (snapshot == null) {
+            mMissCount.incrementAndGet();
+            return null;
+        }
+        mHitCount.incrementAndGet();
+        return snapshot.newCursor();
+    }
+
+    /**
+     * Returns the current generation of the tables, to be passed to
+     * {@link #put(Key, Cursor, long)} for a query started now.
+     *
+     * @param tables the tables, as a combination of the {@code TABLE_*} bits.
+     * @return the current generation of the tables.
+     */
+    synchronized long getGeneration(int tables) {
+        long generation = 0L;
+        for (int i = 0; i < TABLE_COUNT; i++) {
+            if ((tables & (1 << i)) != 0) {
+                generation += mGenerations[i];
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * Keeps the result of a query, unless too large or its tables were
+     * written since the query started. The result is read in full.
+     *
+     * @param key identifies the query.
+     * @param cursor the result of the query, positioned before its first row.
+     * @param generation the generation of the key's tables when the query
+     *     started.
+     * @return a new {@link Cursor} over the result kept, closing the one
+     *     passed, or the one passed, back before its first row, if not kept.
+     */
+    Cursor put(Key key, Cursor cursor, long generation) {
+        final String[] columns = cursor.getColumnNames();
+        Object[][] rows = new Object[cursor.getCount()][];
+        int size = 0;
+        while (cursor.moveToNext()) {
+            Object[] row = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                row[i] = getValue(cursor, i);
+                size += VALUE_OVERHEAD + sizeOf(row[i]);
+            }
+            rows[cursor.getPosition()] = row;
+            if (size > MAX_ENTRY_SIZE) {
+                cursor.moveToPosition(-1);
+                return cursor;
+            }
+        }
+        cursor.close();
+        Snapshot snapshot = new Snapshot(columns, rows, size);
+        synchronized (this) {
+            if (getGeneration(key.mTables) == generation) {
+                mEntries.put(key, snapshot);
+            }
+        }
+        return snapshot.newCursor();
+    }
+
+    /**
+     * Removes the results that depend on any of the tables, and prevents
+     * those being read from being kept.
+     *
+     * @param tables the tables written, as a combination of the
+     *     {@code TABLE_*} bits.
+     */
+    synchronized void invalidate(int tables) {
+        for (int i = 0; i < TABLE_COUNT; i++) {
+            if ((tables & (1 << i)) != 0) {
+                mGenerations[i]++;
+            }
+        }
+        for (Key key : mEntries.snapshot().keySet()) {
+            if ((key.mTables & tables) != 0) {
+                mEntries.remove(key);
+            }
+        }
+    }
+
+    int getHitCount() {
+        return mHitCount.get();
+    }
+
+    int getMissCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * Returns the value of a column of the current row of the cursor, as an
+     * immutable object of the column's type.
+     *
+     * @param cursor the cursor.
+     * @param column the column's index.
+     * @return the value, possibly {@code null}.
+     */
+    private static Object getValue(Cursor cursor, int column) {
+        switch (cursor.getType(column)) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return cursor.getLong(column);
+            case Cursor.FIELD_TYPE_FLOAT:
+                return cursor.getDouble(column);
+            case Cursor.FIELD_TYPE_STRING:
+                return cursor.getString(column);
+            case Cursor.FIELD_TYPE_BLOB:
+                return cursor.getBlob(column);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns an estimate of the memory used by the value, as a number of
+     * characters.
+     *
+     * @param value the value, possibly {@code null}.
+     * @return the estimated size of the value.
+     */
+    private static int sizeOf(Object value) {
+        if (value instanceof String) {
+            return ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length / 2;
+        }
+        return 0;
+    }
+
+    /**
+     * Identifies a query: its URI, arguments and the tables it reads.
+     */
+    static final class Key {
+
+        /**
+         * The tables read by the query, as a combination of the
+         * {@code TABLE_*} bits.
+         */
+        private final int mTables;
+
+        /**
+         * The query's URI and arguments.
+         */
+        private final Object[] mParts;
+
+        /**
+         * The hash code of {@link #mParts}, computed once.
+         */
+        private final int mHashCode;
+
+        /**
+         * Creates a new {@link Key}.
+         *
+         * @param tables the tables read by the query, as a combination of the
+         *     {@code TABLE_*} bits.
+         * @param uri the query's URI.
+         * @param projection the columns to return.
+         * @param selection the <i>WHERE</i> clause.
+         * @param selectionArgs the values for the arguments used in
+         *     {@code selection}.
+         * @param sortOrder how the rows should be ordered.
+         */
+        Key(int tables, String uri, String[] projection, String selection
+                , String[] selectionArgs, String sortOrder) {
+            mTables = tables;
+            mParts = new Object[] {uri, projection, selection, selectionArgs, sortOrder};
+            mHashCode = Arrays.deepHashCode(mParts);
+        }
+
+        int getTables() {
+            return mTables;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && Arrays.deepEquals(mParts, ((Key) other).mParts);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+    }
+
+    /**
+     * The immutable rows of a query result.
+     */
+    private static final class Snapshot {
+
+        /**
+         * The names of the columns.
+         */
+        private final String[] mColumns;
+
+        /**
+         * The values of each row.
+         */
+        private final Object[][] mRows;
+
+        /**
+         * The estimated size of the result, in characters.
+         */
+        private final int mSize;
+
+        /**
+         * Creates a new {@link Snapshot}.
+         *
+         * @param columns the names of the columns.
+         * @param rows the values of each row.
+         * @param size the estimated size of the result, in characters.
+         */
+        Snapshot(String[] columns, Object[][] rows, int size) {
+            mColumns = columns;
+            mRows = rows;
+            mSize = size;
+        }
+
+        /**
+         * Returns a new {@link Cursor} over the rows.
+         *
+         * @return a new {@link Cursor} over the rows.
+         */
+        Cursor newCursor() {
+            MatrixCursor cursor = new MatrixCursor(mColumns, mRows.length);
+            for (Object[] row : mRows) {
+                cursor.addRow(row);
+            }
+            return cursor;
+        }
+
+    }
+
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import it.jaschke.alexandria.util.Trigrams;
+
+import static it.jaschke.alexandria.data.BookContract.AuthorEntry;
+import static it.jaschke.alexandria.data.BookContract.BookEntry;
+import static it.jaschke.alexandria.data.BookContract.SearchIndexEntry;
+
+/**
+ * Maintains and searches the index of the fuzzy searches of the books. The
+ * trigrams are indexed per distinct word, not per book: a search first
+ * finds the words of the library similar to each word searched for, which
+ * are far fewer than the books, and then the books those words appear in.
+ * Its cost depends on the size of the vocabulary and is bounded by
+ * {@link #MAX_SEARCH_WORDS}, {@link #MAX_WORD_MATCHES} and
+ * {@link #MAX_POSTINGS_PER_WORD}, so that common words do not make it grow
+ * with the number of books.
+ * <p>
+ * Words no longer used by any book are kept, they are few and may be used
+ * again. Deleting a book for good deletes its postings.
+ * </p>
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+final class SearchIndex {
+
+    /**
+     * Minimum similarity of a word to a word searched for, and of a book to
+     * the whole search, for them to be matched.
+     */
+    static final float MIN_SIMILARITY = 0.3f;
+
+    /**
+     * Maximum number of words searched for, the rest are ignored.
+     */
+    static final int MAX_SEARCH_WORDS = 8;
+
+    /**
+     * Maximum number of words of the library matched to each word searched
+     * for, the most similar, so that short words do not match the whole
+     * vocabulary.
+     */
+    static final int MAX_WORD_MATCHES = 64;
+
+    /**
+     * Maximum number of books read for each word matched. A word used by
+     * more books than this tells little about which of them are searched
+     * for, the books read are those that also match other words, unless
+     * cut off, in which case they only rank lower.
+     */
+    static final int MAX_POSTINGS_PER_WORD = 500;
+
+    /**
+     * Maximum number of books found by a search.
+     */
+    static final int MAX_RESULTS = 200;
+
+    /**
+     * Selection of the postings of a book.
+     */
+    private static final String SELECTION_BOOK_POSTINGS =
+            SearchIndexEntry.COLUMN_BOOK_ID + " = ?";
+
+    /**
+     * Selection of a word by its text.
+     */
+    private static final String SELECTION_WORD = SearchIndexEntry.COLUMN_WORD + " = ?";
+
+    /**
+     * Query of the books, not deleted, a word appears in, by the word's
+     * identifier. The books are not aliased, so that conditions on the
+     * columns of {@link BookEntry#TABLE_NAME} can be added to it.
+     */
+    private static final String QUERY_WORD_POSTINGS = "SELECT p."
+            + SearchIndexEntry.COLUMN_BOOK_ID + ", p." + SearchIndexEntry.COLUMN_WORD_ID
+            + " FROM " + SearchIndexEntry.TABLE_POSTING + " AS p JOIN "
+            + BookEntry.TABLE_NAME + " ON " + BookEntry.TABLE_NAME + "." + BookEntry._ID
+            + " = p." + SearchIndexEntry.COLUMN_BOOK_ID
+            + " WHERE p." + SearchIndexEntry.COLUMN_WORD_ID + " = ? AND "
+            + BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_DELETED_AT + " IS NULL";
+
+    /**
+     * The class only provides utility methods.
+     */
+    private SearchIndex() {
+        // Empty constructor
+    }
+
+    /**
+     * Indexes every book in the database. Should run in a transaction.
+     *
+     * @param db the database.
+     */
+    static void indexAllBooks(SQLiteDatabase db) {
+        Cursor cursor = db.query(BookEntry.TABLE_NAME, new String[] {BookEntry._ID}
+                , null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                indexBook(db, cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Indexes the words of the title, subtitle and authors of a book again,
+     * replacing its postings. Should run in a transaction.
+     *
+     * @param db the database.
+     * @param bookId the book's identifier. If the book does not exist, its
+     *     postings are just deleted.
+     */
+    static void indexBook(SQLiteDatabase db, long bookId) {
+        final String[] idArgs = {Long.toString(bookId)};
+        db.delete(SearchIndexEntry.TABLE_POSTING, SELECTION_BOOK_POSTINGS, idArgs);
+        StringBuilder text = new StringBuilder();
+        Cursor cursor = db.query(BookEntry.TABLE_NAME
+                , new String[] {BookEntry.COLUMN_TITLE, BookEntry.COLUMN_SUBTITLE}
+                , BookEntry._ID + " = ?", idArgs, null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return;
+            }
+            appendValues(text, cursor);
+        } finally {
+            cursor.close();
+        }
+        cursor = db.query(AuthorEntry.TABLE_NAME, new String[] {AuthorEntry.COLUMN_NAME}
+                , AuthorEntry.COLUMN_BOOK_ID + " = ?", idArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                appendValues(text, cursor);
+            }
+        } finally {
+            cursor.close();
+        }
+        ContentValues posting = new ContentValues();
+        posting.put(SearchIndexEntry.COLUMN_BOOK_ID, bookId);
+        for (String word : Trigrams.words(text.toString())) {
+            posting.put(SearchIndexEntry.COLUMN_WORD_ID, getWordId(db, word));
+            db.insertWithOnConflict(SearchIndexEntry.TABLE_POSTING, null, posting
+                    , SQLiteDatabase.CONFLICT_IGNORE);
+        }
+    }
+
+    /**
+     * Appends the values of the current row of a cursor that are not
+     * {@code null} to a text, separated by spaces.
+     *
+     * @param text the text.
+     * @param cursor the cursor, whose columns are all text.
+     */
+    private static void appendValues(StringBuilder text, Cursor cursor) {
+        for (int i = 0; i < cursor.getColumnCount(); i++) {
+            if (!cursor.isNull(i)) {
+                text.append(' ').append(cursor.getString(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the identifier of a word, adding it and its trigrams to the
+     * index if it is not in it yet.
+     *
+     * @param db the database.
+     * @param word the folded word.
+     * @return the word's identifier.
+     */
+    private static long getWordId(SQLiteDatabase db, String word) {
+        Cursor cursor = db.query(SearchIndexEntry.TABLE_WORD
+                , new String[] {SearchIndexEntry._ID}
+                , SELECTION_WORD, new String[] {word}, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        final List<String> trigrams = Trigrams.of(word);
+        ContentValues values = new ContentValues();
+        values.put(SearchIndexEntry.COLUMN_WORD, word);
+        values.put(SearchIndexEntry.COLUMN_TRIGRAM_COUNT, trigrams.size());
+        final long wordId = db.insert(SearchIndexEntry.TABLE_WORD, null, values);
+        ContentValues trigramValues = new ContentValues();
+        trigramValues.put(SearchIndexEntry.COLUMN_WORD_ID, wordId);
+        for (String trigram : trigrams) {
+            trigramValues.put(SearchIndexEntry.COLUMN_TRIGRAM, trigram);
+            db.insert(SearchIndexEntry.TABLE_TRIGRAM, null, trigramValues);
+        }
+        return wordId;
+    }
+
+    /**
+     * Searches the books whose words are similar to those of a text. The
+     * score of a book is the mean, over the words searched for, of the
+     * similarity of its most similar word to each, so that a book matches
+     * even if one of the words is misspelled beyond recognition, but ranks
+     * below those that match all of them. Deleted books are never found.
+     * The filter is applied as the books are read, before they are ranked
+     * and cut off, so that searching a few books among many finds them.
+     *
+     * @param db the database.
+     * @param text the text searched for.
+     * @param filter condition the books found must meet, on the columns of
+     *     {@link BookEntry#TABLE_NAME}, possibly {@code null}.
+     * @param filterArgs the values for the arguments used in {@code filter}.
+     * @return the identifiers of the books found, with their scores, from
+     *     the most similar to the least, at most {@link #MAX_RESULTS}.
+     */
+    static Map<Long, Float> search(SQLiteDatabase db, String text, String filter
+            , String[] filterArgs) {
+        List<String> searched = new ArrayList<>(Trigrams.words(text));
+        if (searched.size() > MAX_SEARCH_WORDS) {
+            searched = searched.subList(0, MAX_SEARCH_WORDS);
+        }
+        // The similarity of each word matched to each word searched for
+        Map<Long, float[]> wordSimilarities = new HashMap<>();
+        // The words matched to each word searched for, each listed only once
+        List<List<String>> matchedWords = new ArrayList<>(searched.size());
+        for (int i = 0; i < searched.size(); i++) {
+            List<String> matched = new ArrayList<>();
+            matchedWords.add(matched);
+            for (Match match : matchWord(db, searched.get(i))) {
+                float[] similarities = wordSimilarities.get(match.mId);
+                if (similarities == null) {
+                    similarities = new float[searched.size()];
+                    wordSimilarities.put(match.mId, similarities);
+                    matched.add(Long.toString(match.mId));
+                }
+                similarities[i] = match.mSimilarity;
+            }
+        }
+        Map<Long, Float> results = new LinkedHashMap<>();
+        if (wordSimilarities.isEmpty()) {
+            return results;
+        }
+        // Those of several words are read at once, as SQLite cannot limit the rows of each group
+        final String wordPostings = "SELECT * FROM (" + QUERY_WORD_POSTINGS
+                + (filter == null ? "" : " AND (" + filter + ")")
+                + " LIMIT " + MAX_POSTINGS_PER_WORD + ")";
+        // The similarity of the most similar word of each book to each word searched for
+        Map<Long, float[]> bookSimilarities = new HashMap<>();
+        for (List<String> matched : matchedWords) {
+            if (matched.isEmpty()) {
+                continue;
+            }
+            List<String> args = new ArrayList<>();
+            for (String wordId : matched) {
+                args.add(wordId);
+                if (filterArgs != null) {
+                    Collections.addAll(args, filterArgs);
+                }
+            }
+            Cursor cursor = db.rawQuery(StringUtils.repeat(wordPostings, " UNION ALL "
+                    , matched.size()), args.toArray(new String[args.size()]));
+            try {
+                while (cursor.moveToNext()) {
+                    final long bookId = cursor.getLong(0);
+                    final float[] similarities = wordSimilarities.get(cursor.getLong(1));
+                    float[] best = bookSimilarities.get(bookId);
+                    if (best == null) {
+                        best = new float[searched.size()];
+                        bookSimilarities.put(bookId, best);
+                    }
+                    for (int i = 0; i < best.length; i++) {
+                        best[i] = Math.max(best[i], similarities[i]);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        List<Match> books = new ArrayList<>();
+        for (Map.Entry<Long, float[]> entry : bookSimilarities.entrySet()) {
+            float sum = 0f;
+            for (float similarity : entry.getValue()) {
+                sum += similarity;
+            }
+            final float score = sum / searched.size();
+            if (score >= MIN_SIMILARITY) {
+                books.add(new Match(entry.getKey(), score));
+            }
+        }
+        Collections.sort(books);
+        for (Match book : books.subList(0, Math.min(books.size(), MAX_RESULTS))) {
+            results.put(book.mId, book.mSimilarity);
+        }
+        return results;
+    }
+
+    /**
+     * Finds the words of the library most similar to a word searched for.
+     * Only the words that share enough trigrams with it to be similar, or
+     * to begin with it, are read.
+     *
+     * @param db the database.
+     * @param searched the folded word searched for.
+     * @return the words at least {@link #MIN_SIMILARITY} similar to the one
+     *     searched for, the most similar first, at most
+     *     {@link #MAX_WORD_MATCHES}.
+     */
+    private static List<Match> matchWord(SQLiteDatabase db, String searched) {
+        final List<String> trigrams = Trigrams.of(searched);
+        // Fewer shared trigrams could be neither similar enough nor a prefix
+        final int minShared = Math.max(1, (int) (MIN_SIMILARITY * trigrams.size()));
+        String[] args = trigrams.toArray(new String[trigrams.size()]);
+        Cursor cursor = db.rawQuery("SELECT w." + SearchIndexEntry._ID
+                + ", w." + SearchIndexEntry.COLUMN_WORD
+                + ", w." + SearchIndexEntry.COLUMN_TRIGRAM_COUNT + ", m.shared FROM (SELECT "
+                + SearchIndexEntry.COLUMN_WORD_ID + ", COUNT(*) AS shared FROM "
+                + SearchIndexEntry.TABLE_TRIGRAM + " WHERE " + SearchIndexEntry.COLUMN_TRIGRAM
+                + " IN (" + StringUtils.repeat("?", ", ", args.length) + ") GROUP BY "
+                + SearchIndexEntry.COLUMN_WORD_ID + " HAVING COUNT(*) >= " + minShared
+                + ") AS m JOIN " + SearchIndexEntry.TABLE_WORD + " AS w ON w."
+                + SearchIndexEntry._ID + " = m." + SearchIndexEntry.COLUMN_WORD_ID, args);
+        List<Match> matches = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                final float similarity = Trigrams.similarity(searched, cursor.getString(1)
+                        , cursor.getInt(3), trigrams.size(), cursor.getInt(2));
+                if (similarity >= MIN_SIMILARITY) {
+                    matches.add(new Match(cursor.getLong(0), similarity));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        Collections.sort(matches);
+        return matches.subList(0, Math.min(matches.size(), MAX_WORD_MATCHES));
+    }
+
+    /**
+     * A word or book matched by a search, with its similarity. Sorted from
+     * the most similar to the least.
+     */
+    private static final class Match implements Comparable<Match> {
+
+        /**
+         * Identifier of the word or book.
+         */
+        private final long mId;
+
+        /**
+         * Similarity of the word or book to the search.
+         */
+        private final float mSimilarity;
+
+        /**
+         * Creates a new {@link Match}.
+         *
+         * @param id identifier of the word or book.
+         * @param similarity similarity of the word or book to the search.
+         */
+        Match(long id, float similarity) {
+            mId = id;
+            mSimilarity = similarity;
+        }
+
+        @Override
+        public int compareTo(Match another) {
+            return Float.compare(another.mSimilarity, mSimilarity);
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.data;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the large text fields of the books, such as their descriptions,
+ * with deflate. Only texts long enough for the compression to pay for itself
+ * are compressed.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+final class TextCodec {
+
+    /**
+     * Minimum length of the texts worth compressing, in characters. Shorter
+     * ones barely shrink and would be inflated every time they are read.
+     */
+    static final int MIN_COMPRESSED_LENGTH = 256;
+
+    /**
+     * Encoding of the texts before they are compressed.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Size of the buffers used to compress and decompress, in bytes.
+     */
+    private static final int BUFFER_SIZE = 1024;
+
+    /**
+     * The class only provides static methods.
+     */
+    private TextCodec() {
+        // Empty constructor
+    }
+
+    /**
+     * Compresses the text, if it is worth it.
+     *
+     * @param text the text to compress, possibly {@code null}.
+     * @return the text encoded as UTF-8 and deflated, or {@code null} if the
+     *     text is {@code null}, shorter than {@link #MIN_COMPRESSED_LENGTH}
+     *     or does not shrink.
+     */
+    static byte[] compress(String text) {
+        if (text == null || text.length() < MIN_COMPRESSED_LENGTH) {
+            return null;
+        }
+        final byte[] raw = text.getBytes(UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+                if (out.size() >= raw.length) {
+                    return null;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses a text compressed with {@link #compress(String)}.
+     *
+     * @param data the compressed text.
+     * @return the text.
+     * @throws IllegalArgumentException if {@code data} is not a compressed
+     *     text.
+     */
+    static String decompress(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 2);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed text.");
+                }
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid compressed text.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
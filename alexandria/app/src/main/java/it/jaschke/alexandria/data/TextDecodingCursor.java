@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.data;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+/**
+ * Exposes a text column whose values may have been compressed with
+ * {@link TextCodec} as a plain text column, decompressing the values as they
+ * are read.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+class TextDecodingCursor extends CursorWrapper {
+
+    /**
+     * Index of the column that may hold compressed values.
+     */
+    private final int mColumn;
+
+    /**
+     * Creates a new {@link TextDecodingCursor}.
+     *
+     * @param cursor the cursor to wrap.
+     * @param column index of the column that may hold compressed values.
+     */
+    TextDecodingCursor(Cursor cursor, int column) {
+        super(cursor);
+        mColumn = column;
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        final int type = super.getType(columnIndex);
+        return columnIndex == mColumn && type == FIELD_TYPE_BLOB ? FIELD_TYPE_STRING : type;
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        if (columnIndex == mColumn && super.getType(columnIndex) == FIELD_TYPE_BLOB) {
+            return TextCodec.decompress(super.getBlob(columnIndex));
+        }
+        return super.getString(columnIndex);
+    }
+
+}
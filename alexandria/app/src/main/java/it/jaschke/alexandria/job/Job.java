@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.job;
+
+/**
+ * A unit of background work: an action, the lane that determines its
+ * priority and, depending on the action, the ISBN-13 of a book or some other
+ * data (e.g. a {@code Uri}). Cancelling a job that is running only sets a
+ * flag, which long jobs check to stop early.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see JobQueue
+ */
+public class Job {
+
+    /**
+     * Identifies the job in the {@link JobStore}. {@code 0} until stored.
+     */
+    private long mId;
+
+    /**
+     * The lane of the job, one of {@code JobQueue.LANE_*}.
+     */
+    private int mLane;
+
+    /**
+     * What the job does.
+     */
+    private final String mAction;
+
+    /**
+     * The ISBN-13 of the book the job works on, {@code 0} if none.
+     */
+    private final long mIsbn;
+
+    /**
+     * Other data the job works on, possibly {@code null}.
+     */
+    private final String mData;
+
+    /**
+     * Indicates if the job was cancelled.
+     */
+    private volatile boolean mCancelled;
+
+    /**
+     * When the job was created, or read from the {@link JobStore}, in
+     * nanoseconds of {@link System#nanoTime()}. Used to measure how long
+     * jobs wait in the queue.
+     */
+    private final long mCreatedNanos = System.nanoTime();
+
+    /**
+     * Creates a new {@link Job}, not yet stored.
+     *
+     * @param lane the lane of the job, one of {@code JobQueue.LANE_*}.
+     * @param action what the job does.
+     * @param isbn the ISBN-13 of the book the job works on, {@code 0} if none.
+     * @param data other data the job works on, possibly {@code null}.
+     */
+    public Job(int lane, String action, long isbn, String data) {
+        this(0L, lane, action, isbn, data);
+    }
+
+    /**
+     * Creates a new {@link Job}, as read from the {@link JobStore}.
+     *
+     * @param id identifies the job in the {@link JobStore}.
+     * @param lane the lane of the job, one of {@code JobQueue.LANE_*}.
+     * @param action what the job does.
+     * @param isbn the ISBN-13 of the book the job works on, {@code 0} if none.
+     * @param data other data the job works on, possibly {@code null}.
+     */
+    public Job(long id, int lane, String action, long isbn, String data) {
+        if (lane < 0 || lane >= JobQueue.LANE_COUNT || action == null) {
+            throw new IllegalArgumentException("Invalid job " + action + " in lane " + lane);
+        }
+        mId = id;
+        mLane = lane;
+        mAction = action;
+        mIsbn = isbn;
+        mData = data;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    /**
+     * Sets the id assigned by the {@link JobStore}.
+     *
+     * @param id identifies the job in the {@link JobStore}.
+     */
+    void setId(long id) {
+        mId = id;
+    }
+
+    public int getLane() {
+        return mLane;
+    }
+
+    /**
+     * Moves the job to another lane.
+     *
+     * @param lane the lane of the job, one of {@code JobQueue.LANE_*}.
+     */
+    void setLane(int lane) {
+        mLane = lane;
+    }
+
+    public String getAction() {
+        return mAction;
+    }
+
+    public long getIsbn() {
+        return mIsbn;
+    }
+
+    public String getData() {
+        return mData;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    public long getCreatedNanos() {
+        return mCreatedNanos;
+    }
+
+    /**
+     * Marks the job as cancelled.
+     */
+    void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * Returns {@code true} if both jobs do the same work, regardless of
+     * their lane.
+     *
+     * @param other the other job.
+     * @return {@code true} if both jobs do the same work.
+     */
+    boolean isSameWork(Job other) {
+        return mAction.equals(other.mAction)
+                && mIsbn == other.mIsbn
+                && (mData == null ? other.mData == null : mData.equals(other.mData));
+    }
+
+    @Override
+    public String toString() {
+        return "Job " + mId + " " + mAction + " " + mIsbn + " " + mData + " in lane " + mLane;
+    }
+
+}
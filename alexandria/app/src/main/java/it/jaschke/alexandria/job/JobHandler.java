@@ -0,0 +1,33 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.job;
+
+/**
+ * Does the work of the jobs of a {@link JobQueue}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public interface JobHandler {
+
+    /**
+     * Does the work of the job. Called on one of the queue's worker threads.
+     *
+     * @param job the job to run.
+     */
+    void run(Job job);
+
+}
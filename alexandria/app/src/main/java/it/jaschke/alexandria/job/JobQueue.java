@@ -0,0 +1,440 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.job;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A persistent queue of background jobs with priority lanes. Jobs are taken
+ * from the highest priority lane first (lower lane numbers) and run on the
+ * worker threads, with at most a fixed number of jobs running at the same
+ * time per lane, so that a long bulk import never takes the threads needed
+ * to fetch the book the user just scanned. Within a lane, jobs run in the
+ * order they were enqueued. Jobs are stored until they finish, so those not
+ * finished when the process dies run again once the queue is restored.
+ * Enqueuing the same work again moves it to the higher priority lane, if
+ * any, instead of duplicating it.
+ * <p>
+ * The queue's state is only accessed from its dispatcher thread. The
+ * {@link JobStore} is written on a thread of its own, so that the dispatch
+ * never waits for storage, and the jobs enqueued while a write is under way
+ * are stored together by the next one. The public methods can be called
+ * from any thread.
+ * </p>
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class JobQueue {
+
+    /**
+     * Lane of the books requested by the user, who is waiting for them.
+     */
+    public static final int LANE_INTERACTIVE_FETCH = 0;
+
+    /**
+     * Lane of the books deleted.
+     */
+    public static final int LANE_DELETE = 1;
+
+    /**
+     * Lane of the books added in bulk (e.g. found in a photo).
+     */
+    public static final int LANE_BULK_IMPORT = 2;
+
+    /**
+     * Lane of the background refresh of the books.
+     */
+    public static final int LANE_BACKGROUND_REFRESH = 3;
+
+    /**
+     * Number of lanes.
+     */
+    public static final int LANE_COUNT = 4;
+
+    /**
+     * Maximum number of jobs of each lane running at the same time, indexed
+     * by lane.
+     */
+    private static final int[] MAX_RUNNING = {2, 1, 1, 1};
+
+    /**
+     * Maximum time {@link #shutdown()} waits for the jobs to be stored, in
+     * milliseconds.
+     */
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 2000L;
+
+    /**
+     * Stores the jobs until they finish.
+     */
+    private final JobStore mStore;
+
+    /**
+     * Does the work of the jobs.
+     */
+    private final JobHandler mHandler;
+
+    /**
+     * Notified when jobs finish and when the queue becomes idle.
+     */
+    private final Listener mListener;
+
+    /**
+     * Runs the jobs.
+     */
+    private final ExecutorService mWorkers;
+
+    /**
+     * The only thread that accesses the queue's state.
+     */
+    private final ExecutorService mDispatcher = Executors.newSingleThreadExecutor();
+
+    /**
+     * The only thread that writes {@link #mStore}, in the order the writes
+     * were requested.
+     */
+    private final ExecutorService mPersister = Executors.newSingleThreadExecutor();
+
+    /**
+     * The jobs enqueued but not stored yet. Guarded by itself, as it is
+     * filled by the dispatcher thread and emptied by {@link #mPersister}.
+     */
+    private final List<Job> mUnstored = new ArrayList<>();
+
+    /**
+     * The jobs waiting to run, indexed by lane.
+     */
+    private final List<Deque<Job>> mPending = new ArrayList<>(LANE_COUNT);
+
+    /**
+     * The jobs running.
+     */
+    private final List<Job> mRunning = new ArrayList<>();
+
+    /**
+     * The number of jobs running, indexed by lane.
+     */
+    private final int[] mRunningCount = new int[LANE_COUNT];
+
+    /**
+     * The number of jobs waiting or running, indexed by lane. Updated right
+     * away when jobs are enqueued, so that the queue is not considered idle
+     * before the dispatcher gets to them.
+     */
+    private final AtomicIntegerArray mLoad = new AtomicIntegerArray(LANE_COUNT);
+
+    /**
+     * Creates a new {@link JobQueue}. Call {@link #restore()} to run the jobs
+     * already stored.
+     *
+     * @param store stores the jobs until they finish.
+     * @param handler does the work of the jobs.
+     * @param listener notified when jobs finish and the queue becomes idle.
+     * @param workers runs the jobs. Must have at least as many threads as
+     *     the jobs that can run at the same time in all the lanes.
+     */
+    public JobQueue(JobStore store, JobHandler handler, Listener listener
+            , ExecutorService workers) {
+        mStore = store;
+        mHandler = handler;
+        mListener = listener;
+        mWorkers = workers;
+        for (int lane = 0; lane < LANE_COUNT; lane++) {
+            mPending.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Returns the maximum number of jobs that can run at the same time, in
+     * all the lanes.
+     *
+     * @return the maximum number of jobs running at the same time.
+     */
+    public static int getMaxRunning() {
+        int count = 0;
+        for (int maxRunning : MAX_RUNNING) {
+            count += maxRunning;
+        }
+        return count;
+    }
+
+    /**
+     * Enqueues the jobs in the {@link JobStore}, left by a previous process.
+     */
+    public void restore() {
+        post(() -> {
+            for (Job job : mStore.loadAll()) {
+                mLoad.incrementAndGet(job.getLane());
+                mPending.get(job.getLane()).add(job);
+            }
+        });
+    }
+
+    /**
+     * Enqueues a job, unless the same work is already waiting or running.
+     *
+     * @param job the job.
+     */
+    public void enqueue(Job job) {
+        mLoad.incrementAndGet(job.getLane());
+        post(() -> {
+            for (Job running : mRunning) {
+                if (!running.isCancelled() && running.isSameWork(job)) {
+                    mLoad.decrementAndGet(job.getLane());
+                    return;
+                }
+            }
+            for (int lane = 0; lane < LANE_COUNT; lane++) {
+                for (Job pending : mPending.get(lane)) {
+                    if (pending.isSameWork(job)) {
+                        mLoad.decrementAndGet(job.getLane());
+                        if (job.getLane() < lane) {
+                            promote(pending, job.getLane());
+                        }
+                        return;
+                    }
+                }
+            }
+            store(job);
+            mPending.get(job.getLane()).add(job);
+        });
+    }
+
+    /**
+     * Cancels every job of the lane. Those waiting are removed, and those
+     * running are marked as cancelled.
+     *
+     * @param lane the lane to cancel.
+     */
+    public void cancel(int lane) {
+        post(() -> {
+            Iterator<Job> pending = mPending.get(lane).iterator();
+            while (pending.hasNext()) {
+                Job job = pending.next();
+                job.cancel();
+                persist(() -> mStore.delete(job.getId()));
+                mLoad.decrementAndGet(lane);
+                pending.remove();
+            }
+            for (Job running : mRunning) {
+                if (running.getLane() == lane) {
+                    running.cancel();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns {@code true} if there are jobs waiting or running in lanes of
+     * higher priority than the one specified. Long, low priority jobs check
+     * it to make way for the others.
+     *
+     * @param lane the lane.
+     * @return {@code true} if there are jobs in higher priority lanes.
+     */
+    public boolean isBusyAbove(int lane) {
+        for (int higherLane = 0; higherLane < lane; higherLane++) {
+            if (mLoad.get(higherLane) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if no jobs are waiting or running.
+     *
+     * @return {@code true} if no jobs are waiting or running.
+     */
+    public boolean isIdle() {
+        return !isBusyAbove(LANE_COUNT);
+    }
+
+    /**
+     * Stops dispatching jobs. The jobs running finish, but they and those
+     * waiting remain stored, to run again once the queue is restored. Waits
+     * a short while for the pending writes to the {@link JobStore}, which is
+     * not written after this returns.
+     */
+    public void shutdown() {
+        mDispatcher.shutdownNow();
+        mWorkers.shutdown();
+        try {
+            // The dispatcher may still be requesting writes
+            mDispatcher.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            mPersister.shutdown();
+            mPersister.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            mPersister.shutdown();
+        }
+    }
+
+    /**
+     * Moves a waiting job to a higher priority lane.
+     *
+     * @param job the waiting job.
+     * @param lane the new lane of the job.
+     */
+    private void promote(Job job, int lane) {
+        mPending.get(job.getLane()).remove(job);
+        mLoad.decrementAndGet(job.getLane());
+        job.setLane(lane);
+        persist(() -> mStore.updateLane(job.getId(), lane));
+        mLoad.incrementAndGet(lane);
+        mPending.get(lane).add(job);
+    }
+
+    /**
+     * Stores an enqueued job. The jobs enqueued until {@link #mPersister}
+     * gets to them are stored together, and assigned their ids on its
+     * thread, before any other write to them is requested.
+     *
+     * @param job the job enqueued.
+     */
+    private void store(Job job) {
+        synchronized (mUnstored) {
+            mUnstored.add(job);
+            if (mUnstored.size() > 1) {
+                // Already requested
+                return;
+            }
+        }
+        persist(() -> {
+            List<Job> jobs;
+            synchronized (mUnstored) {
+                jobs = new ArrayList<>(mUnstored);
+                mUnstored.clear();
+            }
+            final long[] ids = mStore.insert(jobs);
+            for (int i = 0; i < ids.length; i++) {
+                jobs.get(i).setId(ids[i]);
+            }
+        });
+    }
+
+    /**
+     * Writes to the {@link JobStore} on {@link #mPersister}'s thread. Ignored
+     * once the queue is shut down.
+     *
+     * @param write the write.
+     */
+    private void persist(Runnable write) {
+        try {
+            mPersister.execute(write);
+        } catch (RejectedExecutionException e) {
+            // Shut down, the jobs stored will run once the queue is restored
+        }
+    }
+
+    /**
+     * Runs the task on the dispatcher thread, followed by the dispatch of the
+     * jobs that can run. Ignored once the queue is shut down.
+     *
+     * @param task changes the queue's state.
+     */
+    private void post(Runnable task) {
+        try {
+            mDispatcher.execute(() -> {
+                task.run();
+                dispatch();
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down, the jobs stored will run once the queue is restored
+        }
+    }
+
+    /**
+     * Starts the waiting jobs, from the highest priority lane, while their
+     * lanes have room. Notifies the listener if the queue is idle.
+     */
+    private void dispatch() {
+        for (int lane = 0; lane < LANE_COUNT; lane++) {
+            Deque<Job> pending = mPending.get(lane);
+            while (!pending.isEmpty() && mRunningCount[lane] < MAX_RUNNING[lane]) {
+                Job job = pending.poll();
+                mRunningCount[lane]++;
+                mRunning.add(job);
+                try {
+                    mWorkers.execute(() -> run(job));
+                } catch (RejectedExecutionException e) {
+                    return;
+                }
+            }
+        }
+        if (mRunning.isEmpty() && isIdle()) {
+            mListener.onIdle();
+        }
+    }
+
+    /**
+     * Runs the job on a worker thread and removes it once finished, even if
+     * it failed, so that a failing job does not run over and over.
+     *
+     * @param job the job to run.
+     */
+    private void run(Job job) {
+        RuntimeException error = null;
+        try {
+            if (!job.isCancelled()) {
+                mHandler.run(job);
+            }
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        final RuntimeException jobError = error;
+        post(() -> {
+            mRunning.remove(job);
+            mRunningCount[job.getLane()]--;
+            mLoad.decrementAndGet(job.getLane());
+            persist(() -> mStore.delete(job.getId()));
+            mListener.onJobFinished(job, jobError);
+        });
+    }
+
+    /**
+     * Notified by a {@link JobQueue} when jobs finish and when it becomes
+     * idle. Called on the dispatcher thread.
+     */
+    public interface Listener {
+
+        /**
+         * Called when a job finishes, or fails.
+         *
+         * @param job the job.
+         * @param error the exception thrown by the job, {@code null} if it
+         *     did not fail.
+         */
+        void onJobFinished(Job job, RuntimeException error);
+
+        /**
+         * Called when no jobs are waiting or running.
+         */
+        void onIdle();
+
+    }
+
+}
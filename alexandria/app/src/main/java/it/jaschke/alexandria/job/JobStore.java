@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.job;
+
+import java.util.List;
+
+/**
+ * Stores the jobs of a {@link JobQueue}, so that they survive the death of
+ * the process. The jobs are loaded on the thread that dispatches them, and
+ * written on a single thread of their own, so that slow writes never delay
+ * the dispatch.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public interface JobStore {
+
+    /**
+     * Returns every job stored, in the order they were inserted.
+     *
+     * @return the jobs stored.
+     */
+    List<Job> loadAll();
+
+    /**
+     * Stores new jobs, all at once.
+     *
+     * @param jobs the jobs to store, in the order they were enqueued.
+     * @return the ids assigned to the jobs, in the same order, each greater
+     *     than those assigned before.
+     */
+    long[] insert(List<Job> jobs);
+
+    /**
+     * Changes the lane of a stored job.
+     *
+     * @param id identifies the job.
+     * @param lane the new lane of the job.
+     */
+    void updateLane(long id, int lane);
+
+    /**
+     * Removes a job, if stored.
+     *
+     * @param id identifies the job.
+     */
+    void delete(long id);
+
+}
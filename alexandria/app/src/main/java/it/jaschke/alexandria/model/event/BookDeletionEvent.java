@@ -19,7 +19,8 @@ package it.jaschke.alexandria.model.event;
 import it.jaschke.alexandria.model.domain.Book;
 
 /**
- * Event that occurs when a book is deleted.
+ * Event that occurs when a book is deleted. Posted as a sticky event, so that
+ * the deletion can be undone from the {@code Activity} shown next.
  *
  * @author Jesús Adolfo García Pasquel
  */
@@ -30,14 +31,22 @@ public class BookDeletionEvent {
      */
     private final Book mBook;
 
+    /**
+     * When the book was deleted, in milliseconds since the epoch.
+     */
+    private final long mDeletedAt;
+
     /**
      * Creates a new {@link BookDeletionEvent} for the {@link Book} passed
      * as argument.
      *
      * @param movie the {@link Book} that was selected.
+     * @param deletedAt when the book was deleted, in milliseconds since the
+     *     epoch.
      */
-    public BookDeletionEvent(Book movie) {
+    public BookDeletionEvent(Book movie, long deletedAt) {
         mBook = movie;
+        mDeletedAt = deletedAt;
     }
 
     /**
@@ -48,4 +57,8 @@ public class BookDeletionEvent {
     public Book getDeletedBook() {
         return mBook;
     }
+
+    public long getDeletedAt() {
+        return mDeletedAt;
+    }
 }
@@ -28,7 +28,8 @@ import it.jaschke.alexandria.model.domain.Book;
 public class BookSelectionEvent {
 
     /**
-     * The {@link Book} that was selected.
+     * The {@link Book} that was selected. Besides its id, it may contain the
+     * data that was presented where it was selected (e.g. its title).
      */
     private final Book mBook;
 
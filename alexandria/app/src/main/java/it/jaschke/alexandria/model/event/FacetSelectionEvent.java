@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.model.event;
+
+/**
+ * Event that occurs when a facet of the books is selected, to list only the
+ * books of one of its names, or cleared.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see it.jaschke.alexandria.view.fragment.FacetDialogFragment
+ */
+public class FacetSelectionEvent {
+
+    /**
+     * The facet, {@link it.jaschke.alexandria.data.BookContract#QUERY_PARAMETER_AUTHOR}
+     * or {@link it.jaschke.alexandria.data.BookContract#QUERY_PARAMETER_CATEGORY}.
+     */
+    private final String mFacet;
+
+    /**
+     * The name selected in the facet, {@code null} if the facet was cleared.
+     */
+    private final String mName;
+
+    /**
+     * Creates a new {@link FacetSelectionEvent}.
+     *
+     * @param facet the facet, as the query parameter that selects it.
+     * @param name the name selected, {@code null} to list all the books.
+     */
+    public FacetSelectionEvent(String facet, String name) {
+        mFacet = facet;
+        mName = name;
+    }
+
+    public String getFacet() {
+        return mFacet;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+}
@@ -18,6 +18,8 @@ package it.jaschke.alexandria.model.view;
 
 import org.parceler.Parcel;
 
+import it.jaschke.alexandria.util.Isbn;
+
 /**
  * View model for the book addition view. Provides data and behaviour.
  *
@@ -26,14 +28,6 @@ import org.parceler.Parcel;
 @Parcel(Parcel.Serialization.BEAN)
 public class BookAdditionViewModel {
 
-
-    /**
-     * Regular expression used to verify that the text entered is a valid
-     * ISBN-13 number.
-     */
-    public static final String ISBN13_REGULAR_EXPRESSION =
-            "^((978)|(979))[0-9]{10}$";
-
     /**
      * Identifies the messages written to the log by this class.
      */
@@ -55,16 +49,38 @@ public class BookAdditionViewModel {
 
     /**
      * Returns {@code true} if the argument is a valid ISBN-13 number. That is,
-     * it is made of 13 digits, starting with 978 or 979.
+     * it is made of 13 digits, starting with 978 or 979, and its check digit
+     * is right.
      *
-     * @param scannedCode the strig to check for validity.
+     * @param scannedCode the text to check for validity.
      * @return {@code true} if the argument is a valid ISBN-13 number.
-     * @see #ISBN13_REGULAR_EXPRESSION
+     * @see Isbn#isValidIsbn13(CharSequence)
      */
-    public boolean isValidIsbn(String scannedCode) {
-        if (scannedCode == null) {
-            return false;
+    public boolean isValidIsbn(CharSequence scannedCode) {
+        return Isbn.isValidIsbn13(scannedCode);
+    }
+
+    /**
+     * Returns the ISBN-13 equivalent to the text entered, if it is an ISBN-10.
+     * ISBN-10 numbers made only of digits that start with 978 or 979 are not
+     * converted, since they may be the beginning of an ISBN-13 still being
+     * entered.
+     *
+     * @param text the text entered.
+     * @return the equivalent ISBN-13, or {@code null} if the text is not an
+     *     ISBN-10 or may be the beginning of an ISBN-13.
+     * @see Isbn#toIsbn13(CharSequence)
+     */
+    public String convertIsbn10(CharSequence text) {
+        if (!Isbn.isValidIsbn10(text)) {
+            return null;
+        }
+        final char checkDigit = text.charAt(Isbn.ISBN10_LENGTH - 1);
+        if (checkDigit >= '0' && checkDigit <= '9'
+                && text.charAt(0) == '9' && text.charAt(1) == '7'
+                && (text.charAt(2) == '8' || text.charAt(2) == '9')) {
+            return null;
         }
-        return scannedCode.matches(ISBN13_REGULAR_EXPRESSION);
+        return Isbn.toIsbn13(text);
     }
 }
@@ -42,6 +42,7 @@ import java.util.List;
 import de.greenrobot.event.EventBus;
 import it.jaschke.alexandria.BR;
 import it.jaschke.alexandria.R;
+import it.jaschke.alexandria.data.BookCache;
 import it.jaschke.alexandria.databinding.AuthorListItemBinding;
 import it.jaschke.alexandria.databinding.CategoryListItemBinding;
 import it.jaschke.alexandria.model.domain.Author;
@@ -67,6 +68,14 @@ public class BookDetailViewModel extends BaseObservable {
      */
     private static final String LOG_TAG = BookDetailViewModel.class.getSimpleName();
 
+    /**
+     * Number of author and category views inflated by the binding adapters.
+     * Only accessed from the main thread.
+     *
+     * @see #getInflatedItemCount()
+     */
+    private static int sInflatedItemCount;
+
     /**
      * The book for which the detail data is being shown.
      */
@@ -99,7 +108,8 @@ public class BookDetailViewModel extends BaseObservable {
 
     /**
      * Requests {@link BookService} to delete the book for which the detail data
-     * is shown and publishes a {@link BookDeletionEvent} on the {@link EventBus}.
+     * is shown, removes it from the {@link BookCache} and publishes a sticky
+     * {@link BookDeletionEvent} on the {@link EventBus}.
      * If no book is set, does nothing.
      *
      * @param context the {@link Context} used to comunicate with the
@@ -110,11 +120,14 @@ public class BookDetailViewModel extends BaseObservable {
             Log.i(LOG_TAG, "Ignoring deletion request. No book set.");
             return;
         }
+        final long deletedAt = System.currentTimeMillis();
         Intent bookIntent = new Intent(context, BookService.class);
         bookIntent.putExtra(BookService.EXTRA_BOOK, Parcels.wrap(mBook));
+        bookIntent.putExtra(BookService.EXTRA_DELETED_AT, deletedAt);
         bookIntent.setAction(BookService.ACTION_DELETE_BOOK);
         context.startService(bookIntent);
-        EventBus.getDefault().post(new BookDeletionEvent(mBook));
+        BookCache.getInstance().remove(mBook.getId());
+        EventBus.getDefault().postSticky(new BookDeletionEvent(mBook, deletedAt));
     }
 
     /**
@@ -220,35 +233,50 @@ public class BookDetailViewModel extends BaseObservable {
     }
 
     /**
-     * Removes all views from the {@link LinearLayout} and adds new ones for
-     * the specified {@link Author}s.
+     * Shows the specified {@link Author}s in the {@link LinearLayout}. The
+     * item views already in the container are rebound to the new data, views
+     * are only inflated for the missing items and the surplus ones are
+     * removed.
      *
      * @param container {@link LinearLayout} that will contain the authors.
      * @param authors the {@link Author}s to be placed in the container.
      */
     @BindingAdapter({"bind:authors"})
     public static void loadAuthorViews(LinearLayout container, List<Author> authors) {
-        container.removeAllViews();
-        if (authors == null || authors.isEmpty()) {
-            return;
-        }
-        LayoutInflater inflater = (LayoutInflater) container.getContext()
-                .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-        for (Author author : authors) {
-            AuthorListItemBinding binding = DataBindingUtil.inflate(inflater
-                    , R.layout.list_item_author
-                    , container
-                    , false);
-            AuthorListItemViewModel itemViewModel = new AuthorListItemViewModel();
-            itemViewModel.setAuthor(author);
-            binding.setViewModel(itemViewModel);
-            container.addView(binding.getRoot());
+        final int count = authors == null ? 0 : authors.size();
+        LayoutInflater inflater = null;
+        for (int i = 0; i < count; i++) {
+            AuthorListItemBinding binding;
+            if (i < container.getChildCount()) {
+                binding = (AuthorListItemBinding) container.getChildAt(i).getTag();
+            } else {
+                if (inflater == null) {
+                    inflater = LayoutInflater.from(container.getContext());
+                }
+                binding = DataBindingUtil.inflate(inflater
+                        , R.layout.list_item_author
+                        , container
+                        , false);
+                binding.setViewModel(new AuthorListItemViewModel());
+                binding.getRoot().setTag(binding);
+                container.addView(binding.getRoot());
+                sInflatedItemCount++;
+            }
+            AuthorListItemViewModel itemViewModel = binding.getViewModel();
+            Author author = authors.get(i);
+            if (!author.equals(itemViewModel.getAuthor())) {
+                itemViewModel.setAuthor(author);
+                binding.setViewModel(itemViewModel);
+            }
         }
+        removeSurplusViews(container, count);
     }
 
     /**
-     * Removes all views from the {@link LinearLayout} and adds new ones for
-     * the specified instances of {@link Category}.
+     * Shows the specified instances of {@link Category} in the
+     * {@link LinearLayout}. The item views already in the container are
+     * rebound to the new data, views are only inflated for the missing items
+     * and the surplus ones are removed.
      *
      * @param container {@link LinearLayout} that will contain the categories.
      * @param categories the instances of {@link Category} to be placed in the
@@ -256,24 +284,59 @@ public class BookDetailViewModel extends BaseObservable {
      */
     @BindingAdapter({"bind:categories"})
     public static void loadCategoryViews(LinearLayout container, List<Category> categories) {
-        container.removeAllViews();
-        if (categories == null || categories.isEmpty()) {
-            return;
+        final int count = categories == null ? 0 : categories.size();
+        LayoutInflater inflater = null;
+        for (int i = 0; i < count; i++) {
+            CategoryListItemBinding binding;
+            if (i < container.getChildCount()) {
+                binding = (CategoryListItemBinding) container.getChildAt(i).getTag();
+            } else {
+                if (inflater == null) {
+                    inflater = LayoutInflater.from(container.getContext());
+                }
+                binding = DataBindingUtil.inflate(inflater
+                        , R.layout.list_item_category
+                        , container
+                        , false);
+                binding.setViewModel(new CategoryListItemViewModel());
+                binding.getRoot().setTag(binding);
+                container.addView(binding.getRoot());
+                sInflatedItemCount++;
+            }
+            CategoryListItemViewModel itemViewModel = binding.getViewModel();
+            Category category = categories.get(i);
+            if (!category.equals(itemViewModel.getCategory())) {
+                itemViewModel.setCategory(category);
+                binding.setViewModel(itemViewModel);
+            }
         }
-        LayoutInflater inflater = (LayoutInflater) container.getContext()
-                .getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-        for (Category category : categories) {
-            CategoryListItemBinding binding = DataBindingUtil.inflate(inflater
-                    , R.layout.list_item_category
-                    , container
-                    , false);
-            CategoryListItemViewModel itemViewModel = new CategoryListItemViewModel();
-            itemViewModel.setCategory(category);
-            binding.setViewModel(itemViewModel);
-            container.addView(binding.getRoot());
+        removeSurplusViews(container, count);
+    }
+
+    /**
+     * Removes the views of the container that are beyond the specified count.
+     *
+     * @param container the {@link LinearLayout} from which views are removed.
+     * @param count the number of views to keep.
+     */
+    private static void removeSurplusViews(LinearLayout container, int count) {
+        final int surplus = container.getChildCount() - count;
+        if (surplus > 0) {
+            container.removeViews(count, surplus);
         }
     }
 
+    /**
+     * Returns the number of author and category views inflated since the
+     * process started. Used to measure how many views are created each time
+     * a book's details are shown.
+     *
+     * @return the number of author and category views inflated.
+     */
+    static int getInflatedItemCount() {
+        return sInflatedItemCount;
+    }
+
     /**
      * Retrieves the data from the cursor passed as argument and sets it onto the
      * {@link BookDetailViewModel}'s current {@link Book}. The projection used
@@ -376,7 +439,7 @@ public class BookDetailViewModel extends BaseObservable {
         if (cursor == null || !cursor.moveToFirst()) {
             Log.d(LOG_TAG, "The cursor contains no categories.");
             mBook.setCategories(Collections.emptyList());
-            notifyPropertyChanged(BR.authors);
+            notifyPropertyChanged(BR.categories);
             return;
         }
         List<Category> categories = new ArrayList<>();
@@ -415,7 +478,9 @@ public class BookDetailViewModel extends BaseObservable {
 
         /**
          * Projection that includes the movie details to be presented. Used to
-         * query {@link it.jaschke.alexandria.data.BookProvider}.
+         * query {@link it.jaschke.alexandria.data.BookProvider}. Being the only
+         * projection that shows the description, it is the only one that reads
+         * the table the descriptions are kept in.
          */
         public static final String[] PROJECTION = {
                 BookEntry._ID,
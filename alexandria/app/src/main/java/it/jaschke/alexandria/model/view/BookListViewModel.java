@@ -16,6 +16,7 @@
 
 package it.jaschke.alexandria.model.view;
 
+import android.database.Cursor;
 import android.net.Uri;
 import android.text.Editable;
 import android.text.TextWatcher;
@@ -26,6 +27,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.parceler.Parcel;
 
 import de.greenrobot.event.EventBus;
+import it.jaschke.alexandria.data.BookCache;
 import it.jaschke.alexandria.data.BookContract;
 import it.jaschke.alexandria.model.domain.Book;
 import it.jaschke.alexandria.model.event.BookSelectionEvent;
@@ -48,8 +50,8 @@ public class BookListViewModel {
     private static final String LOG_TAG = BookListViewModel.class.getSimpleName();
 
     /**
-     * Selection clause used to search for text in the title or subtitle of
-     * a book.
+     * Selection clause used by the exact search for text in the title or
+     * subtitle of a book.
      */
     private static final String SELECTION_PARTIAL_TITLE =
             BookEntry.COLUMN_TITLE + " LIKE ? OR "
@@ -67,6 +69,27 @@ public class BookListViewModel {
      */
     private String mSearchString;
 
+    /**
+     * Indicates if the search only lists the books whose title or subtitle
+     * contain the text entered by the user, as is, instead of those whose
+     * words are similar to it.
+     */
+    private boolean mExactSearch;
+
+    /**
+     * The facet the books listed are limited to,
+     * {@link BookContract#QUERY_PARAMETER_AUTHOR} or
+     * {@link BookContract#QUERY_PARAMETER_CATEGORY}, or {@code null} to
+     * list the books of every author and category.
+     */
+    private String mFacet;
+
+    /**
+     * The name, within {@link #mFacet}, of the author or category whose
+     * books are listed.
+     */
+    private String mFacetName;
+
     /**
      * Updates the value of the search string with the changes entered by
      * the user.
@@ -91,9 +114,12 @@ public class BookListViewModel {
     /**
      * Updates the value of {@link #mSelectedPosition} and publishes a
      * {@link BookSelectionEvent} on the {@link EventBus}, containing a new
-     * instance of {@link Book} with only its id (the ISBN-13) assigned.
+     * instance of {@link Book} with its id (the ISBN-13) and the summary
+     * data already presented in the list (title, subtitle and cover).
+     * The summary is also placed in the {@link BookCache}, unless the book
+     * is already there, so the detail view can present it right away.
      *
-     * @param parent ignored.
+     * @param parent the list, used to retrieve the selected book's data.
      * @param view ignored.
      * @param position the book's position in the list.
      * @param id the book's identifier.
@@ -102,6 +128,15 @@ public class BookListViewModel {
         mSelectedPosition = position;
         Book selectedBook = new Book();
         selectedBook.setId(id);
+        Object item = parent.getItemAtPosition(position);
+        if (item instanceof Cursor) {
+            Cursor cursor = (Cursor) item;
+            selectedBook.setTitle(cursor.getString(BookListAdapter.COL_TITLE));
+            selectedBook.setSubtitle(cursor.getString(BookListAdapter.COL_SUBTITLE));
+            String coverUrl = cursor.getString(BookListAdapter.COL_COVER_IMAGE_URL);
+            selectedBook.setCoverUri(Uri.parse(StringUtils.trimToEmpty(coverUrl)));
+            BookCache.getInstance().putIfAbsent(selectedBook);
+        }
         EventBus.getDefault().post(new BookSelectionEvent(selectedBook));
     }
 
@@ -143,6 +178,40 @@ public class BookListViewModel {
                 new SearchStringChangeEvent(old, mSearchString));
     }
 
+    public boolean isExactSearch() {
+        return mExactSearch;
+    }
+
+    public void setExactSearch(boolean exactSearch) {
+        mExactSearch = exactSearch;
+    }
+
+    public String getFacet() {
+        return mFacet;
+    }
+
+    public void setFacet(String facet) {
+        mFacet = facet;
+    }
+
+    public String getFacetName() {
+        return mFacetName;
+    }
+
+    public void setFacetName(String facetName) {
+        mFacetName = facetName;
+    }
+
+    /**
+     * Indicates if the books listed are limited to those of an author or
+     * category.
+     *
+     * @return {@code true} if a facet is selected, {@code false} otherwise.
+     */
+    public boolean isFacetSelected() {
+        return mFacet != null && mFacetName != null;
+    }
+
     /**
      * Returns a reference to {@link #onBookSelected(AdapterView, View, int, long)}.
      *
@@ -157,12 +226,45 @@ public class BookListViewModel {
     }
 
     /**
-     * Returns the content {@link Uri} from which the list of books is retrieved.
+     * Indicates if the books listed are limited to those matching the text
+     * entered by the user.
+     *
+     * @return {@code true} if the user entered a text to search for,
+     *     {@code false} otherwise.
+     */
+    public boolean isSearching() {
+        return StringUtils.trimToNull(mSearchString) != null;
+    }
+
+    /**
+     * Indicates if the books listed are those similar to the text entered by
+     * the user, ranked by their similarity.
+     *
+     * @return {@code true} if searching, but not for the exact text,
+     *     {@code false} otherwise.
+     */
+    public boolean isFuzzySearching() {
+        return isSearching() && !mExactSearch;
+    }
+
+    /**
+     * Returns the content {@link Uri} from which the list of books is retrieved:
+     * the fuzzy search of the text entered by the user, if any and not an
+     * exact search, limited to the books of the selected facet, if any.
+     * Lists that are not search results are served from the content
+     * provider's result cache, search results are not worth caching.
      *
      * @return the content {@link Uri} from which the list of books is retrieved.
+     * @see BookEntry#buildSearchUri(String)
      */
     public Uri getBookListQueryUri() {
-        return BookContract.BookEntry.CONTENT_URI;
+        Uri uri = isFuzzySearching()
+                ? BookEntry.buildSearchUri(mSearchString.trim())
+                : BookEntry.CONTENT_URI;
+        if (isFacetSelected()) {
+            uri = uri.buildUpon().appendQueryParameter(mFacet, mFacetName).build();
+        }
+        return isSearching() ? uri : BookContract.buildCachedUri(uri);
     }
 
     /**
@@ -176,12 +278,14 @@ public class BookListViewModel {
     }
 
     /**
-     * Returns the selection clause used on the query to retrieve the list of books.
+     * Returns the selection clause used on the query to retrieve the list of
+     * books, only needed by the exact search.
      *
-     * @return the selection clause used on the query to retrieve the list of books.
+     * @return the selection clause used on the query to retrieve the list of
+     *     books, {@code null} unless searching for the exact text.
      */
     public String getBookListQuerySelection() {
-        return StringUtils.trimToNull(mSearchString) != null
+        return isSearching() && mExactSearch
                 ? SELECTION_PARTIAL_TITLE
                 : null;
     }
@@ -191,13 +295,27 @@ public class BookListViewModel {
      * retrieve the list of books.
      *
      * @return the arguments for the selection clause used on the query to
-     *     retrieve the list of books.
+     *     retrieve the list of books, {@code null} unless searching for the
+     *     exact text.
      */
     public String[] getBookListQuerySelectionArguments() {
         String searchPattern = "%" + mSearchString + "%";
-        return StringUtils.trimToNull(mSearchString) != null
+        return isSearching() && mExactSearch
                 ? new String[] {searchPattern, searchPattern}
                 : null;
     }
 
+    /**
+     * Returns the sort order used on the query to retrieve the list of books,
+     * by title, served from an index so that large libraries are not sorted
+     * on each query. Fuzzy search results keep the order of the search, the
+     * most similar books first.
+     *
+     * @return the sort order used on the query to retrieve the list of books,
+     *     {@code null} when fuzzy searching.
+     */
+    public String getBookListQuerySortOrder() {
+        return isFuzzySearching() ? null : BookEntry.SORT_ORDER_TITLE;
+    }
+
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.model.view;
+
+import android.content.Context;
+import android.databinding.BaseObservable;
+import android.databinding.Bindable;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import it.jaschke.alexandria.BR;
+import it.jaschke.alexandria.service.BookService;
+import it.jaschke.alexandria.util.Isbn;
+
+/**
+ * View model for the continuous scanning view, where the camera stays open
+ * and every ISBN-13 decoded is queued for addition right away. Provides data
+ * and behaviour. Repeats of the same code within
+ * {@link #REPEAT_WINDOW_MILLIS} are ignored, since the scanner decodes the
+ * same barcode on many consecutive frames.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class ContinuousScanViewModel extends BaseObservable {
+
+    /**
+     * Time during which a code scanned again is considered a repeat and
+     * ignored, in milliseconds.
+     */
+    public static final long REPEAT_WINDOW_MILLIS = 3000L;
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    private static final String LOG_TAG = ContinuousScanViewModel.class.getSimpleName();
+
+    /**
+     * When each code was last scanned, in milliseconds. Only holds the codes
+     * scanned within the last {@link #REPEAT_WINDOW_MILLIS}.
+     */
+    private final Map<String, Long> mLastScanTimes = new HashMap<>();
+
+    /**
+     * Number of books queued for addition during the session.
+     */
+    private int mQueuedCount;
+
+    /**
+     * Number of codes ignored during the session, because they were not an
+     * ISBN-13.
+     */
+    private int mRejectedCount;
+
+    /**
+     * The last ISBN-13 queued for addition, possibly {@code null}.
+     */
+    private String mLastIsbn;
+
+    /**
+     * Handles a code decoded by the scanner. If it is a valid ISBN-13 and not
+     * a repeat, requests {@link BookService} to add the book and updates the
+     * tally.
+     *
+     * @param context the {@link Context} used to start the {@link BookService}.
+     * @param code the decoded code.
+     * @param nowMillis the time when the code was decoded, in milliseconds.
+     * @return {@code true} if the book was queued for addition, {@code false}
+     *     if the code was ignored.
+     */
+    public boolean onCodeScanned(Context context, String code, long nowMillis) {
+        if (code == null) {
+            return false;
+        }
+        if (isRepeat(code, nowMillis)) {
+            return false;
+        }
+        if (!Isbn.isValidIsbn13(code)) {
+            Log.d(LOG_TAG, "Ignoring code that is not an ISBN-13: " + code);
+            mRejectedCount++;
+            notifyPropertyChanged(BR.rejectedCount);
+            return false;
+        }
+        BookService.requestFetch(context, Long.parseLong(code));
+        mQueuedCount++;
+        mLastIsbn = code;
+        notifyPropertyChanged(BR.queuedCount);
+        notifyPropertyChanged(BR.lastIsbn);
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if the code was scanned within the last
+     * {@link #REPEAT_WINDOW_MILLIS}, and records the time it was scanned.
+     * Forgets the codes scanned before the window.
+     *
+     * @param code the scanned code.
+     * @param nowMillis the time when the code was scanned, in milliseconds.
+     * @return {@code true} if the code is a repeat, {@code false} otherwise.
+     */
+    private boolean isRepeat(String code, long nowMillis) {
+        Iterator<Long> scanTimes = mLastScanTimes.values().iterator();
+        while (scanTimes.hasNext()) {
+            if (nowMillis - scanTimes.next() >= REPEAT_WINDOW_MILLIS) {
+                scanTimes.remove();
+            }
+        }
+        // Holding the code still extends the window
+        return mLastScanTimes.put(code, nowMillis) != null;
+    }
+
+    /**
+     * Returns the number of books queued for addition during the session.
+     *
+     * @return the number of books queued for addition during the session.
+     */
+    @Bindable
+    public int getQueuedCount() {
+        return mQueuedCount;
+    }
+
+    /**
+     * Returns the number of codes ignored during the session, because they
+     * were not an ISBN-13.
+     *
+     * @return the number of codes ignored because they were not an ISBN-13.
+     */
+    @Bindable
+    public int getRejectedCount() {
+        return mRejectedCount;
+    }
+
+    /**
+     * Returns the last ISBN-13 queued for addition, possibly {@code null}.
+     *
+     * @return the last ISBN-13 queued for addition, possibly {@code null}.
+     */
+    @Bindable
+    public String getLastIsbn() {
+        return mLastIsbn;
+    }
+
+}
@@ -20,17 +20,26 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.res.Resources;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.v4.content.LocalBroadcastManager;
+import android.text.TextUtils;
 import android.util.Log;
 import android.widget.Toast;
 
 import org.parceler.Parcels;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import de.greenrobot.event.EventBus;
 import it.jaschke.alexandria.R;
 import it.jaschke.alexandria.model.domain.Book;
 import it.jaschke.alexandria.model.event.BookAdditionEvent;
 import it.jaschke.alexandria.service.BookService;
+import it.jaschke.alexandria.service.LibraryBackupService;
 
 /**
  * Handles notifications broadcasted by {@link BookService}. Receives
@@ -39,18 +48,103 @@ import it.jaschke.alexandria.service.BookService;
  * category (e.g. {@link BookService#CATEGORY_DOWNLOAD_ERROR}). In case of
  * {@link BookService#CATEGORY_SUCCESSFULLY_ADDED} or
  * {@link BookService#CATEGORY_ALREADY_REGISTERED} publishes a
- * {@link BookAdditionEvent} on the {@link EventBus}.
+ * {@link BookAdditionEvent} on the {@link EventBus}. Notifications are handled
+ * at most once every {@link #BATCH_WINDOW_MILLIS}: the first one after a
+ * quiet period is handled right away, and the ones that follow are batched
+ * until the window ends. A batch is shown as a single {@link Toast} with the
+ * counts per category and only its last book added is published, so that
+ * intake of many books at once does not flood the main thread with toasts
+ * and detail view transactions. Notifications from
+ * {@link LibraryBackupService} are rare and shown right away, outside of the
+ * batches.
  *
  * @author Jesús Adolfo García Pasquel
  */
 public class NotificationBroadcastReceiver extends BroadcastReceiver {
 
+    /**
+     * Minimum time between the handling of two batches of notifications, in
+     * milliseconds.
+     */
+    static final long BATCH_WINDOW_MILLIS = 1000L;
+
     /**
      * Identifies the messages written to the log by this class.
      */
     private static final String LOG_TAG =
             NotificationBroadcastReceiver.class.getSimpleName();
 
+    /**
+     * Shows the pending notifications at the end of the batch window.
+     */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Shows the pending notifications.
+     */
+    private final Runnable mFlushRunnable = this::flush;
+
+    /**
+     * The {@link Context} used to show the messages.
+     */
+    private final Context mContext;
+
+    /**
+     * The {@link Toast} used to show the messages. Reused, so that a new
+     * message replaces the previous one instead of being queued after it.
+     */
+    private Toast mToast;
+
+    /**
+     * When the last batch was handled, in milliseconds of
+     * {@link SystemClock#uptimeMillis()}.
+     */
+    private long mLastFlushMillis;
+
+    /**
+     * Number of notifications in the current batch.
+     */
+    private int mPendingCount;
+
+    /**
+     * Number of books added, or already registered, in the current batch.
+     */
+    private int mAddedCount;
+
+    /**
+     * Number of books not found in the current batch.
+     */
+    private int mNoResultCount;
+
+    /**
+     * Number of download errors in the current batch.
+     */
+    private int mDownloadErrorCount;
+
+    /**
+     * Number of result processing errors in the current batch.
+     */
+    private int mProcessingErrorCount;
+
+    /**
+     * Number of books found in the photos scanned in the current batch.
+     */
+    private int mPhotoBookCount;
+
+    /**
+     * The last book added in the current batch, possibly {@code null}.
+     */
+    private Book mLastAddedBook;
+
+    /**
+     * Creates a new {@link NotificationBroadcastReceiver}.
+     *
+     * @param context the {@link Context} used to show the messages.
+     */
+    NotificationBroadcastReceiver(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
     @Override
     public void onReceive(Context context, Intent intent) {
         if (intent.getCategories() == null
@@ -58,25 +152,155 @@ public class NotificationBroadcastReceiver extends BroadcastReceiver {
             Log.e(LOG_TAG, "Expected one category.");
             return;
         }
-        String message = null;
         final String category = intent.getCategories().iterator().next();
+        if (isBackupCategory(category)) {
+            showMessage(getBackupMessage(category
+                    , intent.getIntExtra(BookService.EXTRA_BOOK_COUNT, 0)));
+            return;
+        }
         if (BookService.CATEGORY_NO_RESULT.equals(category)) {
-            message = context.getString(R.string.msg_no_result);
+            mNoResultCount++;
         } else if (BookService.CATEGORY_DOWNLOAD_ERROR.equals(category)) {
-            message = context.getString(R.string.msg_download_error);
+            mDownloadErrorCount++;
         } else if (BookService.CATEGORY_RESULT_PROCESSING_ERROR.equals(category)) {
-            message = context.getString(R.string.msg_response_processing_error);
+            mProcessingErrorCount++;
         } else if (BookService.CATEGORY_ALREADY_REGISTERED.equals(category)
                 || BookService.CATEGORY_SUCCESSFULLY_ADDED.equals(category)) {
-            Book book = Parcels.unwrap(intent.getParcelableExtra(BookService.EXTRA_BOOK));
-            message = context.getString(R.string.msg_book_added, book.getId());
-            EventBus.getDefault().post(new BookAdditionEvent(book));
+            mLastAddedBook = Parcels.unwrap(intent.getParcelableExtra(BookService.EXTRA_BOOK));
+            mAddedCount++;
+        } else if (BookService.CATEGORY_SHELF_PHOTO_SCANNED.equals(category)) {
+            mPhotoBookCount += intent.getIntExtra(BookService.EXTRA_BOOK_COUNT, 0);
         } else {
             Log.e(LOG_TAG, "Unexpected notification category " + category);
+            return;
+        }
+        mPendingCount++;
+        if (SystemClock.uptimeMillis() - mLastFlushMillis >= BATCH_WINDOW_MILLIS) {
+            flush();
+        } else if (mPendingCount == 1) {
+            mHandler.postAtTime(mFlushRunnable, mLastFlushMillis + BATCH_WINDOW_MILLIS);
+        }
+    }
+
+    /**
+     * Shows a message for the notifications received in the current batch,
+     * publishes a {@link BookAdditionEvent} for the last book added, if any,
+     * and starts a new batch.
+     */
+    void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        if (mPendingCount == 0) {
+            return;
+        }
+        mLastFlushMillis = SystemClock.uptimeMillis();
+        showMessage(mPendingCount == 1 ? getSingleMessage() : getSummaryMessage());
+        Book lastAddedBook = mLastAddedBook;
+        mPendingCount = 0;
+        mAddedCount = 0;
+        mNoResultCount = 0;
+        mDownloadErrorCount = 0;
+        mProcessingErrorCount = 0;
+        mPhotoBookCount = 0;
+        mLastAddedBook = null;
+        if (lastAddedBook != null) {
+            EventBus.getDefault().post(new BookAdditionEvent(lastAddedBook));
+        }
+    }
+
+    /**
+     * Shows the message in the reused {@link Toast}.
+     *
+     * @param message the message to show.
+     */
+    private void showMessage(String message) {
+        if (mToast == null) {
+            mToast = Toast.makeText(mContext, message, Toast.LENGTH_LONG);
+        } else {
+            mToast.setText(message);
+        }
+        mToast.show();
+    }
+
+    /**
+     * Returns {@code true} if the category is one of
+     * {@link LibraryBackupService}'s.
+     *
+     * @param category the notification's category.
+     * @return {@code true} if the category is one of
+     *     {@link LibraryBackupService}'s.
+     */
+    private static boolean isBackupCategory(String category) {
+        return LibraryBackupService.CATEGORY_LIBRARY_EXPORTED.equals(category)
+                || LibraryBackupService.CATEGORY_LIBRARY_IMPORTED.equals(category)
+                || LibraryBackupService.CATEGORY_LIBRARY_BACKUP_ERROR.equals(category);
+    }
+
+    /**
+     * Returns the message shown for a {@link LibraryBackupService}
+     * notification.
+     *
+     * @param category the notification's category.
+     * @param bookCount the number of books exported or imported.
+     * @return the message shown for the notification.
+     */
+    private String getBackupMessage(String category, int bookCount) {
+        Resources resources = mContext.getResources();
+        if (LibraryBackupService.CATEGORY_LIBRARY_EXPORTED.equals(category)) {
+            return resources.getQuantityString(R.plurals.msg_library_exported
+                    , bookCount, bookCount);
+        } else if (LibraryBackupService.CATEGORY_LIBRARY_IMPORTED.equals(category)) {
+            return resources.getQuantityString(R.plurals.msg_library_imported
+                    , bookCount, bookCount);
+        }
+        return resources.getString(R.string.msg_library_backup_error);
+    }
+
+    /**
+     * Returns the message shown when the batch has only one notification.
+     *
+     * @return the message shown when the batch has only one notification.
+     */
+    private String getSingleMessage() {
+        if (mAddedCount > 0) {
+            return mContext.getString(R.string.msg_book_added, mLastAddedBook.getId());
+        } else if (mNoResultCount > 0) {
+            return mContext.getString(R.string.msg_no_result);
+        } else if (mDownloadErrorCount > 0) {
+            return mContext.getString(R.string.msg_download_error);
+        } else if (mProcessingErrorCount > 0) {
+            return mContext.getString(R.string.msg_response_processing_error);
+        }
+        return mContext.getResources().getQuantityString(
+                R.plurals.msg_shelf_photo_scanned, mPhotoBookCount, mPhotoBookCount);
+    }
+
+    /**
+     * Returns the message shown when the batch has several notifications,
+     * with the count of each category that occurred.
+     *
+     * @return the message with the counts of the notifications in the batch.
+     */
+    private String getSummaryMessage() {
+        Resources resources = mContext.getResources();
+        List<String> parts = new ArrayList<>();
+        if (mPhotoBookCount > 0) {
+            parts.add(resources.getQuantityString(R.plurals.msg_shelf_photo_scanned
+                    , mPhotoBookCount, mPhotoBookCount));
+        }
+        if (mAddedCount > 0) {
+            parts.add(resources.getQuantityString(R.plurals.msg_summary_added
+                    , mAddedCount, mAddedCount));
+        }
+        if (mNoResultCount > 0) {
+            parts.add(resources.getQuantityString(R.plurals.msg_summary_no_result
+                    , mNoResultCount, mNoResultCount));
         }
-        if (message != null) {
-            Toast.makeText(context, message, Toast.LENGTH_LONG).show();
+        final int errorCount = mDownloadErrorCount + mProcessingErrorCount;
+        if (errorCount > 0) {
+            parts.add(resources.getQuantityString(R.plurals.msg_summary_error
+                    , errorCount, errorCount));
         }
+        return TextUtils.join(resources.getString(R.string.msg_summary_separator), parts);
     }
 
     /**
@@ -90,13 +314,17 @@ public class NotificationBroadcastReceiver extends BroadcastReceiver {
     public static NotificationBroadcastReceiver registerLocalReceiver(
             Context context) {
         NotificationBroadcastReceiver broadcastReceiver =
-                new NotificationBroadcastReceiver();
+                new NotificationBroadcastReceiver(context);
         IntentFilter filter = new IntentFilter(BookService.ACTION_NOTIFY);
         filter.addCategory(BookService.CATEGORY_NO_RESULT);
         filter.addCategory(BookService.CATEGORY_DOWNLOAD_ERROR);
         filter.addCategory(BookService.CATEGORY_RESULT_PROCESSING_ERROR);
         filter.addCategory(BookService.CATEGORY_ALREADY_REGISTERED);
         filter.addCategory(BookService.CATEGORY_SUCCESSFULLY_ADDED);
+        filter.addCategory(BookService.CATEGORY_SHELF_PHOTO_SCANNED);
+        filter.addCategory(LibraryBackupService.CATEGORY_LIBRARY_EXPORTED);
+        filter.addCategory(LibraryBackupService.CATEGORY_LIBRARY_IMPORTED);
+        filter.addCategory(LibraryBackupService.CATEGORY_LIBRARY_BACKUP_ERROR);
         LocalBroadcastManager.getInstance(context)
                 .registerReceiver(broadcastReceiver, filter);
         return broadcastReceiver;
@@ -104,7 +332,8 @@ public class NotificationBroadcastReceiver extends BroadcastReceiver {
 
     /**
      * Unregisters the specified {@link NotificationBroadcastReceiver} from
-     * the {@link LocalBroadcastManager}.
+     * the {@link LocalBroadcastManager} and handles the notifications still
+     * pending.
      *
      * @param context {@link Context} used to get the {@link LocalBroadcastManager}.
      * @param broadcastReceiver the {@link NotificationBroadcastReceiver} to
@@ -114,6 +343,7 @@ public class NotificationBroadcastReceiver extends BroadcastReceiver {
             , NotificationBroadcastReceiver broadcastReceiver) {
         LocalBroadcastManager.getInstance(context)
                 .unregisterReceiver(broadcastReceiver);
+        broadcastReceiver.flush();
     }
 
 }
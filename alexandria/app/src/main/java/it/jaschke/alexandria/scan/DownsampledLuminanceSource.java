@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.scan;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * {@link LuminanceSource} that scales down another one by averaging square
+ * blocks of its pixels. Rows are computed when they are requested, so the
+ * cost of downsampling is proportional to the number of rows a 1D reader
+ * actually scans, rather than to the area of the image.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+final class DownsampledLuminanceSource extends LuminanceSource {
+
+    /**
+     * The source that is scaled down.
+     */
+    private final LuminanceSource mSource;
+
+    /**
+     * Length of the side of the blocks of pixels averaged, in pixels.
+     */
+    private final int mFactor;
+
+    /**
+     * Sum of the pixels of each block in the row being computed.
+     */
+    private final int[] mSums;
+
+    /**
+     * Holds the rows read from {@link #mSource}.
+     */
+    private byte[] mSourceRow;
+
+    /**
+     * Creates a new {@link DownsampledLuminanceSource}.
+     *
+     * @param source the source to scale down.
+     * @param factor length of the side of the blocks of pixels averaged, in
+     *     pixels. Must be greater than 1.
+     */
+    DownsampledLuminanceSource(LuminanceSource source, int factor) {
+        super(source.getWidth() / factor, source.getHeight() / factor);
+        mSource = source;
+        mFactor = factor;
+        mSums = new int[getWidth()];
+        mSourceRow = new byte[source.getWidth()];
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        final int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        for (int x = 0; x < width; x++) {
+            mSums[x] = 0;
+        }
+        for (int dy = 0; dy < mFactor; dy++) {
+            mSourceRow = mSource.getRow(y * mFactor + dy, mSourceRow);
+            int sourceX = 0;
+            for (int x = 0; x < width; x++) {
+                int sum = 0;
+                for (int dx = 0; dx < mFactor; dx++) {
+                    sum += mSourceRow[sourceX++] & 0xff;
+                }
+                mSums[x] += sum;
+            }
+        }
+        final int blockArea = mFactor * mFactor;
+        for (int x = 0; x < width; x++) {
+            row[x] = (byte) (mSums[x] / blockArea);
+        }
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        final int width = getWidth();
+        final int height = getHeight();
+        byte[] matrix = new byte[width * height];
+        byte[] row = new byte[width];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(getRow(y, row), 0, matrix, y * width, width);
+        }
+        return matrix;
+    }
+
+}
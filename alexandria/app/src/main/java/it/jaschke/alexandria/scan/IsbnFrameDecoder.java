@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.scan;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.oned.EAN13Reader;
+
+import it.jaschke.alexandria.util.Isbn;
+
+/**
+ * Decodes the ISBN-13 barcode in a camera frame, doing as little work per
+ * frame as possible. Only a centred region of interest of the frame is
+ * decoded, it is downsampled to at most {@link #DEFAULT_MAX_REGION_WIDTH}
+ * pixels wide (only the rows scanned are computed), only the EAN-13 format
+ * is tried and codes without a Bookland
+ * prefix (978 or 979) are discarded as if nothing had been found. Instances
+ * are not thread safe, but frames are decoded one at a time anyway.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class IsbnFrameDecoder {
+
+    /**
+     * Default width of the region of interest, as a fraction of the width of
+     * the frame.
+     */
+    public static final float DEFAULT_REGION_WIDTH = 0.8f;
+
+    /**
+     * Default height of the region of interest, as a fraction of the height
+     * of the frame. EAN-13 barcodes only need to be crossed by a line.
+     */
+    public static final float DEFAULT_REGION_HEIGHT = 0.3f;
+
+    /**
+     * Default maximum width of the region of interest after downsampling,
+     * in pixels. Leaves about 5 pixels per module to a barcode that fills it.
+     */
+    public static final int DEFAULT_MAX_REGION_WIDTH = 640;
+
+    /**
+     * Decodes the EAN-13 barcodes. Keeps buffers between frames.
+     */
+    private final EAN13Reader mReader = new EAN13Reader();
+
+    /**
+     * Width of the region of interest, as a fraction of the width of the frame.
+     */
+    private final float mRegionWidth;
+
+    /**
+     * Height of the region of interest, as a fraction of the height of the
+     * frame.
+     */
+    private final float mRegionHeight;
+
+    /**
+     * Maximum width of the region of interest after downsampling, in pixels.
+     */
+    private final int mMaxRegionWidth;
+
+    /**
+     * Creates a new {@link IsbnFrameDecoder} with the default region of
+     * interest and downsampling.
+     */
+    public IsbnFrameDecoder() {
+        this(DEFAULT_REGION_WIDTH, DEFAULT_REGION_HEIGHT, DEFAULT_MAX_REGION_WIDTH);
+    }
+
+    /**
+     * Creates a new {@link IsbnFrameDecoder}.
+     *
+     * @param regionWidth width of the region of interest, as a fraction of
+     *     the width of the frame.
+     * @param regionHeight height of the region of interest, as a fraction of
+     *     the height of the frame.
+     * @param maxRegionWidth maximum width of the region of interest after
+     *     downsampling, in pixels.
+     */
+    public IsbnFrameDecoder(float regionWidth, float regionHeight, int maxRegionWidth) {
+        if (regionWidth <= 0f || regionWidth > 1f
+                || regionHeight <= 0f || regionHeight > 1f || maxRegionWidth <= 0) {
+            throw new IllegalArgumentException("Invalid region of interest.");
+        }
+        mRegionWidth = regionWidth;
+        mRegionHeight = regionHeight;
+        mMaxRegionWidth = maxRegionWidth;
+    }
+
+    /**
+     * Decodes the ISBN-13 barcode in the region of interest of the frame.
+     *
+     * @param frame the camera frame. If it does not support cropping, it is
+     *     decoded whole.
+     * @return the barcode found or {@code null} if there is no ISBN-13
+     *     barcode in the region of interest.
+     */
+    public Result decode(LuminanceSource frame) {
+        try {
+            Result result = mReader.decode(
+                    new BinaryBitmap(new GlobalHistogramBinarizer(toRegionOfInterest(frame))));
+            return Isbn.isValidIsbn13(result.getText()) ? result : null;
+        } catch (ReaderException e) {
+            return null;
+        } finally {
+            mReader.reset();
+        }
+    }
+
+    /**
+     * Crops the frame to the region of interest and downsamples it, by
+     * averaging blocks of pixels, so that it is not wider than the maximum
+     * width. Neither copies the frame's pixels.
+     *
+     * @param frame the camera frame.
+     * @return the region of interest to decode.
+     */
+    LuminanceSource toRegionOfInterest(LuminanceSource frame) {
+        if (!frame.isCropSupported()) {
+            return frame;
+        }
+        final int width = Math.round(frame.getWidth() * mRegionWidth);
+        final int height = Math.round(frame.getHeight() * mRegionHeight);
+        LuminanceSource region = frame.crop((frame.getWidth() - width) / 2
+                , (frame.getHeight() - height) / 2
+                , width
+                , height);
+        final int factor = (width + mMaxRegionWidth - 1) / mMaxRegionWidth;
+        if (factor <= 1) {
+            return region;
+        }
+        return new DownsampledLuminanceSource(region, factor);
+    }
+
+}
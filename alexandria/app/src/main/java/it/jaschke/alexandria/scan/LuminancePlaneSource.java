@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.scan;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * {@link LuminanceSource} backed by a plane of 8-bit luminance values, such as
+ * a greyscale photo. Cropping only creates a new view of the same plane, so
+ * an image can be split into tiles that are decoded concurrently without
+ * copying it. Rotation is supported, so barcodes placed vertically (e.g. on
+ * book spines) can also be decoded.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+final class LuminancePlaneSource extends LuminanceSource {
+
+    /**
+     * The luminance values of the whole plane, one byte per pixel, row by row.
+     * Never modified.
+     */
+    private final byte[] mLuminances;
+
+    /**
+     * Width of the whole plane, in pixels.
+     */
+    private final int mDataWidth;
+
+    /**
+     * Horizontal offset of this source within the plane, in pixels.
+     */
+    private final int mLeft;
+
+    /**
+     * Vertical offset of this source within the plane, in pixels.
+     */
+    private final int mTop;
+
+    /**
+     * Creates a new {@link LuminancePlaneSource} covering the whole plane.
+     *
+     * @param luminances the luminance values, one byte per pixel, row by row.
+     * @param width the width of the plane, in pixels.
+     * @param height the height of the plane, in pixels.
+     */
+    LuminancePlaneSource(byte[] luminances, int width, int height) {
+        this(luminances, width, 0, 0, width, height);
+    }
+
+    /**
+     * Creates a new {@link LuminancePlaneSource} covering a region of the
+     * plane.
+     *
+     * @param luminances the luminance values, one byte per pixel, row by row.
+     * @param dataWidth the width of the whole plane, in pixels.
+     * @param left horizontal offset of the region, in pixels.
+     * @param top vertical offset of the region, in pixels.
+     * @param width the width of the region, in pixels.
+     * @param height the height of the region, in pixels.
+     */
+    private LuminancePlaneSource(byte[] luminances
+            , int dataWidth
+            , int left
+            , int top
+            , int width
+            , int height) {
+        super(width, height);
+        mLuminances = luminances;
+        mDataWidth = dataWidth;
+        mLeft = left;
+        mTop = top;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        final int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        System.arraycopy(mLuminances, (mTop + y) * mDataWidth + mLeft, row, 0, width);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        final int width = getWidth();
+        final int height = getHeight();
+        if (mLeft == 0 && mTop == 0 && width == mDataWidth
+                && width * height == mLuminances.length) {
+            return mLuminances;
+        }
+        byte[] matrix = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(mLuminances, (mTop + y) * mDataWidth + mLeft
+                    , matrix, y * width, width);
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        return new LuminancePlaneSource(mLuminances
+                , mDataWidth
+                , mLeft + left
+                , mTop + top
+                , width
+                , height);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        final int width = getWidth();
+        final int height = getHeight();
+        // The rotated image is height pixels wide and width pixels high
+        byte[] rotated = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            final int rowOffset = (mTop + y) * mDataWidth + mLeft;
+            for (int x = 0; x < width; x++) {
+                rotated[(width - 1 - x) * height + y] = mLuminances[rowOffset + x];
+            }
+        }
+        return new LuminancePlaneSource(rotated, height, width);
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import it.jaschke.alexandria.util.Isbn;
+
+/**
+ * Decodes every ISBN-13 barcode in a single image, such as a photo of the
+ * backs of several books or of a pile of spines. The image is split into
+ * overlapping square tiles that are decoded in parallel on the
+ * {@link ExecutorService} passed to the constructor, each of them with ZXing's
+ * {@link GenericMultipleBarcodeReader}. A barcode is found as long as it fits
+ * entirely inside a tile, which is always the case if it is smaller than the
+ * overlap between tiles. Instances are thread safe.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class MultiBarcodeDecoder {
+
+    /**
+     * Default length of the side of the tiles, in pixels.
+     */
+    public static final int DEFAULT_TILE_SIZE = 1024;
+
+    /**
+     * Default overlap between neighbouring tiles, in pixels.
+     */
+    public static final int DEFAULT_TILE_OVERLAP = 512;
+
+    /**
+     * Returned when no barcodes are found in a tile.
+     */
+    private static final Result[] NO_RESULTS = new Result[0];
+
+    /**
+     * Runs the decoding of the tiles.
+     */
+    private final ExecutorService mExecutor;
+
+    /**
+     * Length of the side of the tiles, in pixels.
+     */
+    private final int mTileSize;
+
+    /**
+     * Distance between the origins of neighbouring tiles, in pixels.
+     */
+    private final int mTileStride;
+
+    /**
+     * Hints passed to the readers, restricting them to EAN-13 and allowing
+     * them to spend more time (e.g. trying rotated images) on each tile.
+     */
+    private final Map<DecodeHintType, Object> mHints;
+
+    /**
+     * Creates a new {@link MultiBarcodeDecoder} that uses tiles of
+     * {@link #DEFAULT_TILE_SIZE} overlapped by {@link #DEFAULT_TILE_OVERLAP}.
+     *
+     * @param executor runs the decoding of the tiles. It is not shut down by
+     *     the decoder.
+     */
+    public MultiBarcodeDecoder(ExecutorService executor) {
+        this(executor, DEFAULT_TILE_SIZE, DEFAULT_TILE_OVERLAP);
+    }
+
+    /**
+     * Creates a new {@link MultiBarcodeDecoder}.
+     *
+     * @param executor runs the decoding of the tiles. It is not shut down by
+     *     the decoder.
+     * @param tileSize length of the side of the tiles, in pixels.
+     * @param tileOverlap overlap between neighbouring tiles, in pixels. Must
+     *     be smaller than {@code tileSize} and should be larger than the
+     *     barcodes in the image.
+     */
+    public MultiBarcodeDecoder(ExecutorService executor, int tileSize, int tileOverlap) {
+        if (tileSize <= 0 || tileOverlap < 0 || tileOverlap >= tileSize) {
+            throw new IllegalArgumentException("Invalid tile size " + tileSize
+                    + " or overlap " + tileOverlap);
+        }
+        mExecutor = executor;
+        mTileSize = tileSize;
+        mTileStride = tileSize - tileOverlap;
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS
+                , Collections.singletonList(BarcodeFormat.EAN_13));
+        hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        mHints = Collections.unmodifiableMap(hints);
+    }
+
+    /**
+     * Converts a row of ARGB pixels, as returned by
+     * {@code Bitmap.getPixels(...)}, into luminance values.
+     *
+     * @param pixels the ARGB pixels.
+     * @param count the number of pixels to convert.
+     * @param luminances where the luminance values are written.
+     * @param offset index of {@code luminances} where the first value is
+     *     written.
+     */
+    public static void toLuminances(int[] pixels, int count, byte[] luminances, int offset) {
+        for (int i = 0; i < count; i++) {
+            final int pixel = pixels[i];
+            final int r = (pixel >> 16) & 0xff;
+            final int g = (pixel >> 8) & 0xff;
+            final int b = pixel & 0xff;
+            // Green counts double, as it does for the eye
+            luminances[offset + i] = (byte) ((r + (g << 1) + b) >> 2);
+        }
+    }
+
+    /**
+     * Decodes every ISBN-13 barcode in the image. Blocks until all the tiles
+     * are decoded.
+     *
+     * @param luminances the luminance values of the image, one byte per pixel,
+     *     row by row.
+     * @param width the width of the image, in pixels.
+     * @param height the height of the image, in pixels.
+     * @return the ISBN-13 numbers found, without repetitions, in the order of
+     *     the tiles where they were found (left to right, top to bottom).
+     * @throws InterruptedException if interrupted while waiting for the tiles
+     *     to be decoded.
+     */
+    public List<String> decode(byte[] luminances, int width, int height)
+            throws InterruptedException {
+        final LuminanceSource image = new LuminancePlaneSource(luminances, width, height);
+        List<Callable<Result[]>> tasks = new ArrayList<>();
+        for (int top : getTileOrigins(height)) {
+            final int tileHeight = Math.min(mTileSize, height - top);
+            for (int left : getTileOrigins(width)) {
+                final int tileWidth = Math.min(mTileSize, width - left);
+                tasks.add(() -> decodeTile(image.crop(left, top, tileWidth, tileHeight)));
+            }
+        }
+        Set<String> isbns = new LinkedHashSet<>();
+        for (Future<Result[]> tile : mExecutor.invokeAll(tasks)) {
+            Result[] results;
+            try {
+                results = tile.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Unable to decode tile.", e.getCause());
+            }
+            for (Result result : results) {
+                if (result.getBarcodeFormat() == BarcodeFormat.EAN_13
+                        && Isbn.isValidIsbn13(result.getText())) {
+                    isbns.add(result.getText());
+                }
+            }
+        }
+        return new ArrayList<>(isbns);
+    }
+
+    /**
+     * Returns the positions where the tiles start along one dimension of the
+     * image, such that the last tile ends at the edge of the image.
+     *
+     * @param length the length of the image along the dimension, in pixels.
+     * @return the positions where the tiles start.
+     */
+    private List<Integer> getTileOrigins(int length) {
+        List<Integer> origins = new ArrayList<>();
+        int origin = 0;
+        origins.add(origin);
+        while (origin + mTileSize < length) {
+            origin = Math.min(origin + mTileStride, length - mTileSize);
+            origins.add(origin);
+        }
+        return origins;
+    }
+
+    /**
+     * Decodes every EAN-13 barcode in a tile. Creates its own readers, since
+     * ZXing's readers are not thread safe.
+     *
+     * @param tile the tile to decode.
+     * @return the barcodes found, possibly none.
+     */
+    private Result[] decodeTile(LuminanceSource tile) {
+        GenericMultipleBarcodeReader reader =
+                new GenericMultipleBarcodeReader(new MultiFormatReader());
+        try {
+            return reader.decodeMultiple(new BinaryBitmap(new HybridBinarizer(tile)), mHints);
+        } catch (NotFoundException e) {
+            return NO_RESULTS;
+        }
+    }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.service;
+
+import android.net.Uri;
+import android.util.Log;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import it.jaschke.alexandria.model.domain.Author;
+import it.jaschke.alexandria.model.domain.Book;
+import it.jaschke.alexandria.model.domain.Category;
+import it.jaschke.alexandria.util.MainThreadWatchdog;
+
+/**
+ * Downloads and parses book data from the Google Books API. Shared by the
+ * services that add books and the ones that refresh them.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public final class BookApi {
+
+    /**
+     * Identifies messages written to the log by this class.
+     */
+    private static final String LOG_TAG = BookApi.class.getSimpleName();
+
+    /**
+     * Base URL of the volume search.
+     */
+    private static final String WEB_SERVICE_BASE_URL =
+            "https://www.googleapis.com/books/v1/volumes?";
+
+    /**
+     * The class only provides utility methods.
+     */
+    private BookApi() {
+        // Empty constructor
+    }
+
+    /**
+     * Downloads information about the book with the specified ISBN-13,
+     * from a Google API, in JSON format. If an entity tag is specified, the
+     * request is conditional and nothing is downloaded when the data did not
+     * change since it was returned.
+     *
+     * @param isbn the book's ISBN-13.
+     * @param etag the entity tag of the last response for the book, or
+     *     {@code null} to download it unconditionally.
+     * @return the response.
+     * @throws IOException if an error occurs while downloading the book's data.
+     */
+    public static Response download(long isbn, String etag) throws IOException {
+        MainThreadWatchdog.checkNotMainThread(MainThreadWatchdog.KIND_NETWORK, "download", isbn);
+        final String queryParam = "q";
+        final String isbnParam = "isbn:" + isbn;
+        Uri builtUri = Uri.parse(WEB_SERVICE_BASE_URL).buildUpon()
+                .appendQueryParameter(queryParam, isbnParam)
+                .build();
+        URL url = new URL(builtUri.toString());
+        HttpURLConnection urlConnection = null;
+        BufferedReader reader = null;
+        try  {
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setRequestMethod("GET");
+            if (etag != null) {
+                urlConnection.setRequestProperty("If-None-Match", etag);
+            }
+            urlConnection.connect();
+            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return new Response(null, etag, true);
+            }
+            InputStream inputStream = urlConnection.getInputStream();
+            if (inputStream == null) {
+                return new Response(null, null, false);
+            }
+            StringBuilder buffer = new StringBuilder();
+            reader = new BufferedReader(new InputStreamReader(inputStream));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                buffer.append(line);
+                buffer.append("\n");
+            }
+            return new Response(buffer.toString()
+                    , urlConnection.getHeaderField("ETag")
+                    , false);
+        } finally {
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses the data of the first book in a response of the API.
+     *
+     * @param isbn the book's ISBN-13.
+     * @param bookJsonString the body of the response.
+     * @return the book, or {@code null} if the response has no books. Its
+     *     cover {@link Uri} is {@code null} if it has no cover, and its
+     *     authors and categories are empty lists if it has none.
+     * @throws JSONException if the response is not the expected JSON.
+     */
+    public static Book parse(long isbn, String bookJsonString) throws JSONException {
+        if (StringUtils.trimToNull(bookJsonString) == null) {
+            return null;
+        }
+        // JSON tag names
+        final String tagItems = "items";
+        final String tagVolumeInfo = "volumeInfo";
+        final String tagTitle = "title";
+        final String tagSubtitle = "subtitle";
+        final String tagAuthors = "authors";
+        final String tagDescription = "description";
+        final String tagCategories = "categories";
+        final String tagImageLinks = "imageLinks";
+        final String tagThumbnail = "thumbnail";
+
+        JSONObject bookJson = new JSONObject(bookJsonString);
+        if (!bookJson.has(tagItems)) {
+            return null;
+        }
+        JSONArray bookArray = bookJson.getJSONArray(tagItems);
+        JSONObject bookInfo =
+                ((JSONObject) bookArray.get(0)).getJSONObject(tagVolumeInfo);
+
+        Book book = new Book();
+        book.setId(isbn);
+        book.setTitle(bookInfo.getString(tagTitle));
+        book.setSubtitle(bookInfo.optString(tagSubtitle, StringUtils.EMPTY));
+        book.setDescription(bookInfo.optString(tagDescription, StringUtils.EMPTY));
+        if (bookInfo.has(tagImageLinks)
+                && bookInfo.getJSONObject(tagImageLinks).has(tagThumbnail)) {
+            book.setCoverUri(Uri.parse(
+                    bookInfo.getJSONObject(tagImageLinks).getString(tagThumbnail)));
+        }
+        List<Author> authors = new ArrayList<>();
+        if (bookInfo.has(tagAuthors)) {
+            JSONArray jsonArray = bookInfo.getJSONArray(tagAuthors);
+            for (int i = 0; i < jsonArray.length(); i++) {
+                Author author = new Author();
+                author.setName(jsonArray.getString(i));
+                authors.add(author);
+            }
+        }
+        book.setAuthors(authors);
+        List<Category> categories = new ArrayList<>();
+        if (bookInfo.has(tagCategories)) {
+            JSONArray jsonArray = bookInfo.getJSONArray(tagCategories);
+            for (int i = 0; i < jsonArray.length(); i++) {
+                Category category = new Category();
+                category.setName(jsonArray.getString(i));
+                categories.add(category);
+            }
+        }
+        book.setCategories(categories);
+        return book;
+    }
+
+    /**
+     * A response of the API.
+     */
+    public static final class Response {
+
+        /**
+         * The body of the response, possibly {@code null}.
+         */
+        private final String mBody;
+
+        /**
+         * The entity tag of the response, possibly {@code null}.
+         */
+        private final String mEtag;
+
+        /**
+         * Indicates if the data did not change since the entity tag of a
+         * conditional request was returned.
+         */
+        private final boolean mNotModified;
+
+        /**
+         * Creates a new {@link Response}.
+         *
+         * @param body the body of the response, possibly {@code null}.
+         * @param etag the entity tag of the response, possibly {@code null}.
+         * @param notModified {@code true} if the data did not change.
+         */
+        Response(String body, String etag, boolean notModified) {
+            mBody = body;
+            mEtag = etag;
+            mNotModified = notModified;
+        }
+
+        public String getBody() {
+            return mBody;
+        }
+
+        public String getEtag() {
+            return mEtag;
+        }
+
+        public boolean isNotModified() {
+            return mNotModified;
+        }
+
+    }
+
+}
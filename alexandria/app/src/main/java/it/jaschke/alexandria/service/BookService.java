@@ -1,46 +1,75 @@
 package it.jaschke.alexandria.service;
 
-import android.app.IntentService;
+import android.app.ActivityManager;
+import android.app.Service;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
 import android.support.v4.content.LocalBroadcastManager;
+import android.text.TextUtils;
 import android.util.Log;
 
 import org.apache.commons.lang3.StringUtils;
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 import org.parceler.Parcels;
 
-import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import it.jaschke.alexandria.R;
+import it.jaschke.alexandria.job.Job;
+import it.jaschke.alexandria.job.JobQueue;
+import it.jaschke.alexandria.model.domain.Author;
 import it.jaschke.alexandria.model.domain.Book;
+import it.jaschke.alexandria.model.domain.Category;
 import it.jaschke.alexandria.data.BookContract;
+import it.jaschke.alexandria.scan.MultiBarcodeDecoder;
+import it.jaschke.alexandria.util.Isbn;
 
 import static it.jaschke.alexandria.data.BookContract.BookEntry;
 
 
 /**
- * An {@link IntentService} subclass that handles book data download, storage
- * and deletion asynchronously. To request either action, use an {@link Intent}
+ * A {@link Service} that handles book data download, storage and deletion
+ * asynchronously. To request either action, use an {@link Intent}
  * specifying {@link #ACTION_FETCH_BOOK} or {@link #ACTION_DELETE_BOOK} and
- * the {@link Book} in {@link #EXTRA_BOOK}. This service notifies about
+ * the {@link Book} in {@link #EXTRA_BOOK}. Deleted books are kept for
+ * {@link #PURGE_DELETED_AFTER_MILLIS}, so that {@link #ACTION_RESTORE_BOOK}
+ * can undo the deletion and fetching them again does not download them. To
+ * add every book whose barcode appears in a photo, use
+ * {@link #ACTION_SCAN_SHELF_PHOTO} and the photo's {@link Uri} as the
+ * {@link Intent}'s data. This service notifies about
  * empty results, download and processing errors by publishing {@link Intent}s
  * with {@link #ACTION_NOTIFY} on the {@link LocalBroadcastManager}. The
  * notifications have different categories.
+ * <p>
+ * Requests become jobs of a persistent {@link JobQueue}, instead of being
+ * handled one at a time in the order they arrive: the books requested by the
+ * user are fetched before, and alongside, deletions, the books found in
+ * photos and the background refresh, in that order of priority. Jobs not
+ * finished when the process dies run once the service is restarted. The
+ * service stops itself once the queue is idle.
+ * </p>
  *
  * @author Sascha Jaschke
  * @author Jesús Adolfo García Pasquel
  */
-public class BookService extends IntentService {
+public class BookService extends Service {
 
     /**
      * Action specified to the service in {@link Intent}s that request that data
@@ -58,6 +87,61 @@ public class BookService extends IntentService {
     public static final String ACTION_DELETE_BOOK =
             "it.jaschke.alexandria.services.action.ACTION_DELETE_BOOK";
 
+    /**
+     * Action specified to the service in {@link Intent}s that request that
+     * the deletion of a book is undone. The intent must also provide
+     * {@link #EXTRA_BOOK} and the {@link #EXTRA_DELETED_AT} of the deletion.
+     */
+    public static final String ACTION_RESTORE_BOOK =
+            "it.jaschke.alexandria.services.action.ACTION_RESTORE_BOOK";
+
+    /**
+     * Action specified to the service in {@link Intent}s that request that
+     * every ISBN-13 barcode in a photo is decoded, and the data of the
+     * corresponding books fetched. The photo's {@link Uri} must be the
+     * {@link Intent}'s data.
+     */
+    public static final String ACTION_SCAN_SHELF_PHOTO =
+            "it.jaschke.alexandria.services.action.ACTION_SCAN_SHELF_PHOTO";
+
+    /**
+     * Action specified to the service in {@link Intent}s that request that
+     * the books whose data has not been downloaded for the longest time are
+     * refreshed. The library is synced, if enabled, then the books deleted
+     * long ago are purged and the log of changes compacted first. Nothing is
+     * done unless the device is charging on an unmetered network. A
+     * {@link #CATEGORY_REFRESH_FINISHED} notification is posted once done,
+     * even if the refresh failed.
+     *
+     * @see MetadataRefresher
+     */
+    public static final String ACTION_REFRESH_STALE_BOOKS =
+            "it.jaschke.alexandria.services.action.ACTION_REFRESH_STALE_BOOKS";
+
+    /**
+     * Action specified to the service in {@link Intent}s that request that
+     * the library is synced with the server at {@code R.string.sync_server_url}.
+     * Ignored if it is not set.
+     *
+     * @see SyncEngine
+     */
+    public static final String ACTION_SYNC_LIBRARY =
+            "it.jaschke.alexandria.services.action.ACTION_SYNC_LIBRARY";
+
+    /**
+     * Action specified to the service in {@link Intent}s that request that
+     * the jobs of the lane in {@link #EXTRA_LANE} are cancelled.
+     */
+    public static final String ACTION_CANCEL =
+            "it.jaschke.alexandria.services.action.ACTION_CANCEL";
+
+    /**
+     * Extra included in {@link #ACTION_CANCEL} requests to specify the lane
+     * to cancel, one of {@code JobQueue.LANE_*}.
+     */
+    public static final String EXTRA_LANE =
+            "it.jaschke.alexandria.service.extra.LANE";
+
     /**
      * Extra included in the {@link Intent} to specify the {@link Book} to
      * operate on (e.g. fetch or delete). The only required attribute is
@@ -66,6 +150,16 @@ public class BookService extends IntentService {
     public static final String EXTRA_BOOK =
             "it.jaschke.alexandria.service.extra.Book";
 
+    /**
+     * Extra included in {@link #ACTION_DELETE_BOOK} and
+     * {@link #ACTION_RESTORE_BOOK} requests to specify when the user deleted
+     * the book, in milliseconds since the epoch. Restoring only undoes the
+     * deletion made at that time, so that a later deletion is not undone.
+     * Optional for deletions, which default to the time they are requested.
+     */
+    public static final String EXTRA_DELETED_AT =
+            "it.jaschke.alexandria.service.extra.DELETED_AT";
+
     /**
      * Action specified by the service when broadcasting an {@link Intent} to
      * notify about an event.
@@ -108,39 +202,472 @@ public class BookService extends IntentService {
     public static final String CATEGORY_ALREADY_REGISTERED =
             "it.jaschke.alexandria.service.category.CATEGORY_ALREADY_REGISTERED";
 
+    /**
+     * Category used to notify that a photo was scanned. The number of books
+     * found is included as an extra, using the key {@link #EXTRA_BOOK_COUNT}.
+     */
+    public static final String CATEGORY_SHELF_PHOTO_SCANNED =
+            "it.jaschke.alexandria.service.category.CATEGORY_SHELF_PHOTO_SCANNED";
+
+    /**
+     * Category used to notify that a {@link #ACTION_REFRESH_STALE_BOOKS}
+     * request finished, or was cancelled.
+     */
+    public static final String CATEGORY_REFRESH_FINISHED =
+            "it.jaschke.alexandria.service.category.CATEGORY_REFRESH_FINISHED";
+
+    /**
+     * Extra included in {@link #CATEGORY_SHELF_PHOTO_SCANNED} notifications to
+     * specify the number of books found in the photo.
+     */
+    public static final String EXTRA_BOOK_COUNT =
+            "it.jaschke.alexandria.service.extra.BOOK_COUNT";
+
+    /**
+     * Photos are scaled down until neither their width nor their height are
+     * larger than this, in pixels, to bound the memory used to decode them.
+     */
+    private static final int MAX_PHOTO_SIZE = 4096;
+
+    /**
+     * Photos are also scaled down until they and their luminances take no
+     * more than the memory class of the device divided by this.
+     */
+    private static final int PHOTO_MEMORY_FRACTION = 4;
+
+    /**
+     * Bytes taken by each pixel of a photo being scanned: two in
+     * {@link Bitmap.Config#RGB_565}, and one for its luminance.
+     */
+    private static final int PHOTO_BYTES_PER_PIXEL = 3;
+
+    /**
+     * Bytes in a megabyte.
+     */
+    private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+
+    /**
+     * Time deleted books are kept before they are purged, in milliseconds.
+     */
+    private static final long PURGE_DELETED_AFTER_MILLIS = TimeUnit.DAYS.toMillis(7L);
+
+    /**
+     * Maximum number of deleted books purged in a single transaction, so
+     * that the purge never holds the database for long.
+     */
+    private static final int PURGE_BATCH_SIZE = 50;
+
+    /**
+     * Selects a book by the id specified as argument.
+     */
+    private static final String SELECTION_BOOK_ID = BookEntry._ID + " = ?";
+
+    /**
+     * Selects up to {@link #PURGE_BATCH_SIZE} books deleted before the time
+     * specified as argument.
+     */
+    private static final String SELECTION_PURGEABLE = BookEntry._ID + " IN (SELECT "
+            + BookEntry._ID + " FROM " + BookEntry.TABLE_NAME
+            + " WHERE " + BookEntry.COLUMN_DELETED_AT + " < ?"
+            + " LIMIT " + PURGE_BATCH_SIZE + ")";
+
     /**
      * Identifies messages written to the log by this class.
      */
     private static final String LOG_TAG = BookService.class.getSimpleName();
 
     /**
-     * Creates a new instance of {@link BookService}.
+     * Posts to the main thread.
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The jobs requested.
+     */
+    private JobQueue mQueue;
+
+    /**
+     * Stores the jobs of {@link #mQueue}, closed once it is shut down.
+     */
+    private SqliteJobStore mJobStore;
+
+    /**
+     * The id of the last start request, used to stop the service once the
+     * queue is idle, unless started again since. Only accessed from the main
+     * thread.
+     */
+    private int mLastStartId;
+
+    /**
+     * Requests the {@link BookService} to fetch the data of the book with
+     * the specified ISBN-13 and store it in the {@code ContentProvider}.
+     *
+     * @param context the {@link Context} used to start the service.
+     * @param isbn the book's ISBN-13.
+     * @see #ACTION_FETCH_BOOK
+     */
+    public static void requestFetch(Context context, long isbn) {
+        Book book = new Book();
+        book.setId(isbn);
+        Intent bookIntent = new Intent(context, BookService.class);
+        bookIntent.putExtra(EXTRA_BOOK, Parcels.wrap(book));
+        bookIntent.setAction(ACTION_FETCH_BOOK);
+        context.startService(bookIntent);
+    }
+
+    /**
+     * Requests the {@link BookService} to undo the deletion of a book.
+     *
+     * @param context the {@link Context} used to start the service.
+     * @param isbn the book's ISBN-13.
+     * @param deletedAt when the book was deleted, in milliseconds since the
+     *     epoch.
+     * @see #ACTION_RESTORE_BOOK
+     */
+    public static void requestRestore(Context context, long isbn, long deletedAt) {
+        Intent restoreIntent = new Intent(context, BookService.class);
+        restoreIntent.putExtra(EXTRA_BOOK, Parcels.wrap(newBook(isbn)));
+        restoreIntent.putExtra(EXTRA_DELETED_AT, deletedAt);
+        restoreIntent.setAction(ACTION_RESTORE_BOOK);
+        context.startService(restoreIntent);
+    }
+
+    /**
+     * Requests the {@link BookService} to add every book whose ISBN-13
+     * barcode appears in the photo. The photo is deleted afterwards if it is
+     * a file.
+     *
+     * @param context the {@link Context} used to start the service.
+     * @param photoUri the photo's {@link Uri}.
+     * @see #ACTION_SCAN_SHELF_PHOTO
+     */
+    public static void requestShelfPhotoScan(Context context, Uri photoUri) {
+        Intent scanIntent = new Intent(context, BookService.class);
+        scanIntent.setAction(ACTION_SCAN_SHELF_PHOTO);
+        scanIntent.setData(photoUri);
+        context.startService(scanIntent);
+    }
+
+    /**
+     * Requests the {@link BookService} to refresh the stalest books.
+     *
+     * @param context the {@link Context} used to start the service.
+     * @see #ACTION_REFRESH_STALE_BOOKS
+     */
+    public static void requestRefresh(Context context) {
+        context.startService(new Intent(context, BookService.class)
+                .setAction(ACTION_REFRESH_STALE_BOOKS));
+    }
+
+    /**
+     * Requests the {@link BookService} to sync the library.
+     *
+     * @param context the {@link Context} used to start the service.
+     * @see #ACTION_SYNC_LIBRARY
+     */
+    public static void requestSync(Context context) {
+        context.startService(new Intent(context, BookService.class)
+                .setAction(ACTION_SYNC_LIBRARY));
+    }
+
+    /**
+     * Returns {@code true} if the server the library is synced with is set.
+     *
+     * @param context the {@link Context} used to access the resources.
+     * @return {@code true} if the library is synced.
+     */
+    public static boolean isSyncEnabled(Context context) {
+        return !TextUtils.isEmpty(context.getString(R.string.sync_server_url));
+    }
+
+    /**
+     * Requests the {@link BookService} to cancel the jobs of a lane.
+     *
+     * @param context the {@link Context} used to start the service.
+     * @param lane the lane to cancel, one of {@code JobQueue.LANE_*}.
+     * @see #ACTION_CANCEL
      */
-    public BookService() {
-        super("Alexandria");
+    public static void requestCancel(Context context, int lane) {
+        context.startService(new Intent(context, BookService.class)
+                .setAction(ACTION_CANCEL)
+                .putExtra(EXTRA_LANE, lane));
     }
 
     @Override
-    protected void onHandleIntent(Intent intent) {
-        Book book = Parcels.unwrap(intent.getParcelableExtra(EXTRA_BOOK));
+    public void onCreate() {
+        super.onCreate();
+        mJobStore = new SqliteJobStore(this);
+        mQueue = new JobQueue(mJobStore
+                , this::runJob
+                , new JobQueue.Listener() {
+                    @Override
+                    public void onJobFinished(Job job, RuntimeException error) {
+                        if (error != null) {
+                            Log.e(LOG_TAG, "Failed " + job, error);
+                        }
+                    }
+
+                    @Override
+                    public void onIdle() {
+                        mMainHandler.post(BookService.this::stopIfIdle);
+                    }
+                }
+                , Executors.newFixedThreadPool(JobQueue.getMaxRunning()));
+        mQueue.restore();
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        mLastStartId = startId;
+        if (intent != null) {
+            enqueue(intent);
+        }
+        // Restarted without an intent if killed, to run the jobs stored
+        return START_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        mQueue.shutdown();
+        mJobStore.close();
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    /**
+     * Writes the {@link FetchStats}, for
+     * {@code adb shell dumpsys activity service .service.BookService}.
+     *
+     * @param fd the file descriptor the dump is written to.
+     * @param writer where the dump is written.
+     * @param args the arguments of the dump, ignored.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        FetchStats.dump(writer);
+    }
+
+    /**
+     * Stops the service if the queue is idle and it was not started again
+     * since the last request.
+     */
+    private void stopIfIdle() {
+        if (mQueue.isIdle()) {
+            stopSelf(mLastStartId);
+        }
+    }
+
+    /**
+     * Adds the job requested by the {@link Intent} to the queue, or cancels
+     * the jobs of a lane.
+     *
+     * @param intent the request.
+     */
+    private void enqueue(Intent intent) {
         final String action = intent.getAction();
+        if (ACTION_SCAN_SHELF_PHOTO.equals(action)) {
+            // The user is waiting for the books in the photo
+            mQueue.enqueue(new Job(JobQueue.LANE_INTERACTIVE_FETCH, action
+                    , 0L, intent.getDataString()));
+        } else if (ACTION_REFRESH_STALE_BOOKS.equals(action)
+                || ACTION_SYNC_LIBRARY.equals(action)) {
+            mQueue.enqueue(new Job(JobQueue.LANE_BACKGROUND_REFRESH, action, 0L, null));
+        } else if (ACTION_CANCEL.equals(action)) {
+            mQueue.cancel(intent.getIntExtra(EXTRA_LANE, JobQueue.LANE_BACKGROUND_REFRESH));
+        } else if (ACTION_FETCH_BOOK.equals(action)) {
+            Book book = Parcels.unwrap(intent.getParcelableExtra(EXTRA_BOOK));
+            mQueue.enqueue(new Job(JobQueue.LANE_INTERACTIVE_FETCH, action, book.getId(), null));
+        } else if (ACTION_DELETE_BOOK.equals(action) || ACTION_RESTORE_BOOK.equals(action)) {
+            // Both in the same lane, so that they run in the order requested
+            Book book = Parcels.unwrap(intent.getParcelableExtra(EXTRA_BOOK));
+            final long deletedAt =
+                    intent.getLongExtra(EXTRA_DELETED_AT, System.currentTimeMillis());
+            mQueue.enqueue(new Job(JobQueue.LANE_DELETE, action, book.getId()
+                    , Long.toString(deletedAt)));
+        } else {
+            Log.w(LOG_TAG, "Ignoring unknown action " + action);
+            stopIfIdle();
+        }
+    }
+
+    /**
+     * Does the work of a job, on one of the queue's worker threads. Only the
+     * jobs of {@link JobQueue#LANE_INTERACTIVE_FETCH} run at the default
+     * priority, the others run at background priority.
+     *
+     * @param job the job to run.
+     */
+    private void runJob(Job job) {
+        Process.setThreadPriority(job.getLane() == JobQueue.LANE_INTERACTIVE_FETCH
+                ? Process.THREAD_PRIORITY_DEFAULT : Process.THREAD_PRIORITY_BACKGROUND);
+        final String action = job.getAction();
         if (ACTION_FETCH_BOOK.equals(action)) {
-            fetchBook(book);
+            FetchStats.record(FetchStats.PHASE_QUEUE_WAIT
+                    , System.nanoTime() - job.getCreatedNanos());
+            fetchBook(job);
         } else if (ACTION_DELETE_BOOK.equals(action)) {
-            deleteBook(book);
+            deleteBook(newBook(job.getIsbn()), Long.parseLong(job.getData()));
+        } else if (ACTION_RESTORE_BOOK.equals(action)) {
+            restoreBook(job.getIsbn(), Long.parseLong(job.getData()));
+        } else if (ACTION_SCAN_SHELF_PHOTO.equals(action)) {
+            scanShelfPhoto(Uri.parse(job.getData()));
+        } else if (ACTION_SYNC_LIBRARY.equals(action)) {
+            syncLibrary(job);
+        } else if (ACTION_REFRESH_STALE_BOOKS.equals(action)) {
+            try {
+                refreshLibrary(job);
+            } finally {
+                // Whatever happened, so that RefreshJobService releases its job
+                postNotification(CATEGORY_REFRESH_FINISHED, null);
+            }
+        } else {
+            Log.w(LOG_TAG, "Ignoring unknown " + job);
+        }
+    }
+
+    /**
+     * Returns a new {@link Book} with only its id set.
+     *
+     * @param isbn the book's ISBN-13.
+     * @return a new {@link Book} with only its id set.
+     */
+    private static Book newBook(long isbn) {
+        Book book = new Book();
+        book.setId(isbn);
+        return book;
+    }
+
+    /**
+     * Decodes every ISBN-13 barcode in the photo, using all the cores
+     * available, and enqueues the data of the books found, which is fetched
+     * in {@link JobQueue#LANE_BULK_IMPORT}. Posts a
+     * {@link #CATEGORY_SHELF_PHOTO_SCANNED} notification with the number of
+     * books found.
+     *
+     * @param photoUri the photo's {@link Uri}.
+     */
+    private void scanShelfPhoto(Uri photoUri) {
+        Bitmap photo = loadPhoto(photoUri);
+        if ("file".equals(photoUri.getScheme()) && !new File(photoUri.getPath()).delete()) {
+            Log.w(LOG_TAG, "Unable to delete photo " + photoUri);
+        }
+        if (photo == null) {
+            postShelfPhotoNotification(0);
+            return;
+        }
+        final int width = photo.getWidth();
+        final int height = photo.getHeight();
+        byte[] luminances = new byte[width * height];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            photo.getPixels(row, 0, width, 0, y, width, 1);
+            MultiBarcodeDecoder.toLuminances(row, width, luminances, y * width);
+        }
+        photo.recycle();
+
+        ExecutorService executor =
+                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<String> isbns;
+        try {
+            isbns = new MultiBarcodeDecoder(executor).decode(luminances, width, height);
+        } catch (InterruptedException e) {
+            Log.w(LOG_TAG, "Interrupted while decoding photo " + photoUri, e);
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            executor.shutdown();
+        }
+        Log.i(LOG_TAG, "Found " + isbns.size() + " books in photo " + photoUri);
+        for (String isbn : isbns) {
+            mQueue.enqueue(new Job(JobQueue.LANE_BULK_IMPORT, ACTION_FETCH_BOOK
+                    , Long.parseLong(isbn), null));
+        }
+        postShelfPhotoNotification(isbns.size());
+    }
+
+    /**
+     * Loads the photo in {@link Bitmap.Config#RGB_565}, as only its
+     * luminance is needed, scaled down so that neither its width nor its
+     * height are larger than {@link #MAX_PHOTO_SIZE} and it fits in the
+     * memory given by {@link #getMaxPhotoPixels()}.
+     *
+     * @param photoUri the photo's {@link Uri}.
+     * @return the photo or {@code null} if it could not be loaded.
+     */
+    private Bitmap loadPhoto(Uri photoUri) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        try {
+            options.inJustDecodeBounds = true;
+            decodePhoto(photoUri, options);
+            final long maxPixels = getMaxPhotoPixels();
+            options.inSampleSize = 1;
+            while (Math.max(options.outWidth, options.outHeight) / options.inSampleSize
+                    > MAX_PHOTO_SIZE
+                    || (long) (options.outWidth / options.inSampleSize)
+                            * (options.outHeight / options.inSampleSize) > maxPixels) {
+                options.inSampleSize *= 2;
+            }
+            options.inJustDecodeBounds = false;
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            return decodePhoto(photoUri, options);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to load photo " + photoUri, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the maximum number of pixels of a photo being scanned, so that
+     * it and its luminances take at most the memory class of the device
+     * divided by {@link #PHOTO_MEMORY_FRACTION}.
+     *
+     * @return the maximum number of pixels of a photo being scanned.
+     */
+    private long getMaxPhotoPixels() {
+        ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+        return activityManager.getMemoryClass() * BYTES_PER_MEGABYTE
+                / PHOTO_MEMORY_FRACTION / PHOTO_BYTES_PER_PIXEL;
+    }
+
+    /**
+     * Decodes the photo with the specified options.
+     *
+     * @param photoUri the photo's {@link Uri}.
+     * @param options the options passed to {@link BitmapFactory}.
+     * @return the photo, or {@code null} if only its bounds were decoded or
+     *     it is not an image.
+     * @throws IOException if the photo could not be read.
+     */
+    private Bitmap decodePhoto(Uri photoUri, BitmapFactory.Options options)
+            throws IOException {
+        InputStream inputStream = getContentResolver().openInputStream(photoUri);
+        try {
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        } finally {
+            inputStream.close();
         }
     }
 
     /**
-     * Deletes the book with the specified id from the {@code ContentProvider}.
+     * Marks the book with the specified id as deleted in the
+     * {@code ContentProvider}, which keeps it until it is purged.
      *
      * @param book an instance of {@link Book} with its id set to the book's
      *             ISBN-13 number.
+     * @param deletedAt when the user deleted the book, in milliseconds since
+     *     the epoch.
      */
-    private void deleteBook(Book book) {
-        int count = getContentResolver().delete(
+    private void deleteBook(Book book, long deletedAt) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_DELETED_AT, deletedAt);
+        int count = getContentResolver().update(
                 BookEntry.CONTENT_URI
-                , BookEntry._ID + "= ?"
+                , values
+                , SELECTION_BOOK_ID + " AND " + BookEntry.COLUMN_DELETED_AT + " IS NULL"
                 , new String[]{Long.toString(book.getId())});
         Log.i(LOG_TAG, "Deleted book: " + book);
         if (count != 1) {
@@ -148,6 +675,90 @@ public class BookService extends IntentService {
         }
     }
 
+    /**
+     * Undoes the deletion of the book with the specified id, if it was not
+     * purged yet.
+     *
+     * @param isbn the book's ISBN-13 number.
+     * @param deletedAt when the deletion to undo was made, in milliseconds
+     *     since the epoch, or {@code null} to undo any.
+     * @return {@code true} if the book was restored, {@code false} if it was
+     *     not deleted at that time, or is not in the {@code ContentProvider}.
+     */
+    private boolean restoreBook(long isbn, Long deletedAt) {
+        ContentValues values = new ContentValues();
+        values.putNull(BookEntry.COLUMN_DELETED_AT);
+        final String isbnArg = Long.toString(isbn);
+        int count = deletedAt == null
+                ? getContentResolver().update(BookEntry.CONTENT_URI, values
+                        , SELECTION_BOOK_ID + " AND " + BookEntry.COLUMN_DELETED_AT + " IS NOT NULL"
+                        , new String[] {isbnArg})
+                : getContentResolver().update(BookEntry.CONTENT_URI, values
+                        , SELECTION_BOOK_ID + " AND " + BookEntry.COLUMN_DELETED_AT + " = ?"
+                        , new String[] {isbnArg, deletedAt.toString()});
+        if (count > 0) {
+            Log.i(LOG_TAG, "Restored book: " + isbn);
+        }
+        return count > 0;
+    }
+
+    /**
+     * Syncs the library, purges the books deleted long ago, compacts the log
+     * of changes and refreshes the stalest books, only if the device is
+     * charging on an unmetered network. The alarms used before Lollipop
+     * request it whatever the conditions, unlike the {@code JobScheduler}.
+     *
+     * @param job the job refreshing the library.
+     * @see MetadataRefresher#isRefreshAllowed(Context)
+     */
+    private void refreshLibrary(Job job) {
+        if (!MetadataRefresher.isRefreshAllowed(this)) {
+            Log.i(LOG_TAG, "Skipping refresh, not charging on an unmetered network");
+            return;
+        }
+        // Before the purge, so that the deletions reach the other devices
+        syncLibrary(job);
+        purgeDeletedBooks(job);
+        getContentResolver().call(BookContract.BASE_CONTENT_URI
+                , BookContract.METHOD_COMPACT_CHANGES, null, null);
+        new MetadataRefresher(this, job, mQueue).refresh();
+    }
+
+    /**
+     * Syncs the library, if enabled.
+     *
+     * @param job the job syncing the library.
+     * @see SyncEngine
+     */
+    private void syncLibrary(Job job) {
+        if (isSyncEnabled(this)) {
+            new SyncEngine(this, job, mQueue).sync();
+        }
+    }
+
+    /**
+     * Removes for good the books deleted more than
+     * {@link #PURGE_DELETED_AFTER_MILLIS} ago, with their authors and
+     * categories, {@link #PURGE_BATCH_SIZE} at a time, until there are no
+     * more or the job is cancelled.
+     *
+     * @param job the job purging the books.
+     */
+    private void purgeDeletedBooks(Job job) {
+        final String[] selectionArgs =
+                {Long.toString(System.currentTimeMillis() - PURGE_DELETED_AFTER_MILLIS)};
+        int total = 0;
+        int count;
+        do {
+            count = getContentResolver().delete(BookEntry.CONTENT_URI
+                    , SELECTION_PURGEABLE, selectionArgs);
+            total += count;
+        } while (count == PURGE_BATCH_SIZE && !job.isCancelled());
+        if (total > 0) {
+            Log.i(LOG_TAG, "Purged " + total + " deleted books");
+        }
+    }
+
     /**
      * Returns {@code true} if the book with the specified ISBN-13 number is
      * already in the {@code ContentProvider}, {@code false} otherwise.
@@ -172,92 +783,98 @@ public class BookService extends IntentService {
     /**
      * Downloads the information for the book with the specified ISBN-13 from
      * a Google API and inserts it into the {@code ContentProvider}, if not
-     * available already. Posts notifications on the {@link LocalBroadcastManager}
+     * available already. Books deleted, but not yet purged, are restored
+     * instead. Posts notifications on the {@link LocalBroadcastManager}
      * if no results are returned by the service, an error occurred while
-     * downloading the book's data or processing the result.
+     * downloading the book's data or processing the result. Nothing is
+     * inserted nor posted if the job is cancelled before the download ends.
      *
-     * @param book an instance of {@link Book} with its id set to the book's
-     *             ISBN-13 number.
+     * @param job the job, with the book's ISBN-13 number.
      */
-    private void fetchBook(Book book) {
-        final long isbn = book.getId();
-        if (Long.toString(isbn).length() != getResources().getInteger(R.integer.isbn13_length)) {
-            Log.w(LOG_TAG, "Not an ISBN-13. Ignoring " + isbn);
+    private void fetchBook(Job job) {
+        final long isbn = job.getIsbn();
+        final Book book = newBook(isbn);
+        if (!Isbn.isValidIsbn13(isbn)) {
+            Log.w(LOG_TAG, "Not a valid ISBN-13. Ignoring " + isbn);
             return;
         }
         // Do not fetch books already in the database.
         if (isBookFetched(isbn)) {
-            postNotification(CATEGORY_ALREADY_REGISTERED, book);
+            postFetchResult(CATEGORY_ALREADY_REGISTERED
+                    , FetchStats.OUTCOME_ALREADY_REGISTERED, book);
+            return;
+        }
+        // Nor those deleted but not purged yet, which are restored as they were
+        if (restoreBook(isbn, null)) {
+            postFetchResult(CATEGORY_SUCCESSFULLY_ADDED, FetchStats.OUTCOME_RESTORED, book);
             return;
         }
 
-        String bookJsonString = null;
-
+        // The results are posted once each phase ends, so they are not measured as part of it
+        BookApi.Response response = null;
+        long start = FetchStats.begin(FetchStats.PHASE_DOWNLOAD);
         try {
-            bookJsonString = downloadBookData(isbn);
+            response = BookApi.download(isbn, null);
         } catch (IOException ioe) {
             Log.e(LOG_TAG, "Unable to download book data.", ioe);
-            postNotification(CATEGORY_DOWNLOAD_ERROR, book);
+        } finally {
+            FetchStats.end(FetchStats.PHASE_DOWNLOAD, start);
+        }
+        if (job.isCancelled()) {
+            Log.i(LOG_TAG, "Cancelled " + job);
             return;
         }
-        if (StringUtils.trimToNull(bookJsonString) == null) {
-            postNotification(CATEGORY_NO_RESULT, book);
+        if (response == null) {
+            postFetchResult(CATEGORY_DOWNLOAD_ERROR, FetchStats.OUTCOME_DOWNLOAD_ERROR, book);
             return;
         }
-
-        // JSON tag names
-        final String tagItems = "items";
-        final String tagVolumeInfo = "volumeInfo";
-        final String tagTitle = "title";
-        final String tagSubtitle = "subtitle";
-        final String tagAuthors = "authors";
-        final String tagDescription = "description";
-        final String tagCategories = "categories";
-        final String tagImageLinks = "imageLinks";
-        final String tagThumbnail = "thumbnail";
+        Book fetchedBook = null;
+        boolean parsed = false;
+        start = FetchStats.begin(FetchStats.PHASE_PARSE);
         try {
-            JSONObject bookJson = new JSONObject(bookJsonString);
-            JSONArray bookArray;
-            if (bookJson.has(tagItems)) {
-                bookArray = bookJson.getJSONArray(tagItems);
-            } else {
-                postNotification(CATEGORY_NO_RESULT, book);
-                return;
-            }
-
-            JSONObject bookInfo =
-                    ((JSONObject) bookArray.get(0)).getJSONObject(tagVolumeInfo);
-
-            String title = bookInfo.getString(tagTitle);
-
-            String subtitle = StringUtils.EMPTY;
-            if (bookInfo.has(tagSubtitle)) {
-                subtitle = bookInfo.getString(tagSubtitle);
-            }
-
-            String desc = StringUtils.EMPTY;
-            if (bookInfo.has(tagDescription)) {
-                desc = bookInfo.getString(tagDescription);
-            }
-
-            String imgUrl = StringUtils.EMPTY;
-            if (bookInfo.has(tagImageLinks)
-                    && bookInfo.getJSONObject(tagImageLinks).has(tagThumbnail)) {
-                imgUrl = bookInfo.getJSONObject(tagImageLinks).getString(tagThumbnail);
-            }
-
-            insertBook(isbn, title, subtitle, desc, imgUrl);
-
-            if (bookInfo.has(tagAuthors)) {
-                insertAuthors(isbn, bookInfo.getJSONArray(tagAuthors));
-            }
-            if (bookInfo.has(tagCategories)) {
-                insertCategories(isbn, bookInfo.getJSONArray(tagCategories));
-            }
-            postNotification(CATEGORY_SUCCESSFULLY_ADDED, book);
+            fetchedBook = BookApi.parse(isbn, response.getBody());
+            parsed = true;
         } catch (JSONException e) {
             Log.e(LOG_TAG, "Error processing JSON", e);
-            postNotification(CATEGORY_RESULT_PROCESSING_ERROR, book);
+        } finally {
+            FetchStats.end(FetchStats.PHASE_PARSE, start);
+        }
+        if (!parsed) {
+            postFetchResult(CATEGORY_RESULT_PROCESSING_ERROR
+                    , FetchStats.OUTCOME_PROCESSING_ERROR, book);
+            return;
+        }
+        if (fetchedBook == null) {
+            postFetchResult(CATEGORY_NO_RESULT, FetchStats.OUTCOME_NO_RESULT, book);
+            return;
+        }
+        start = FetchStats.begin(FetchStats.PHASE_INSERT);
+        try {
+            insertBook(fetchedBook, response.getEtag());
+            insertAuthors(isbn, fetchedBook.getAuthors());
+            insertCategories(isbn, fetchedBook.getCategories());
+        } finally {
+            FetchStats.end(FetchStats.PHASE_INSERT, start);
+        }
+        postFetchResult(CATEGORY_SUCCESSFULLY_ADDED, FetchStats.OUTCOME_ADDED, book);
+    }
+
+    /**
+     * Posts the notification of the result of a fetch, measuring the time
+     * spent, and counts its outcome in {@link FetchStats}.
+     *
+     * @param category the notification's category.
+     * @param outcome the outcome of the fetch, one of the
+     *     {@code FetchStats.OUTCOME_*} constants.
+     * @param book the book fetched.
+     */
+    private void postFetchResult(String category, String outcome, Book book) {
+        FetchStats.countOutcome(outcome);
+        final long start = FetchStats.begin(FetchStats.PHASE_NOTIFY);
+        try {
+            postNotification(category, book);
+        } finally {
+            FetchStats.end(FetchStats.PHASE_NOTIFY, start);
         }
     }
 
@@ -279,93 +896,66 @@ public class BookService extends IntentService {
     }
 
     /**
-     * Downloads information about the book with the specified ISBN-13,
-     * from a Google API, in JSON format.
+     * Posts an {@link Intent} with {@link #ACTION_NOTIFY} and
+     * {@link #CATEGORY_SHELF_PHOTO_SCANNED} to the {@link LocalBroadcastManager}.
      *
-     * @param isbn the book's ISBN-13.
-     * @return the data for the specified book, downloaded from the Google API,
-     *     in JSON format. May be null.
-     * @throws IOException if an error occurs while downloading the book's data.
-     */
-    private String downloadBookData(long isbn) throws IOException {
-        StringBuilder buffer = new StringBuilder();
-        final String webServiceBaseUrl =
-                "https://www.googleapis.com/books/v1/volumes?";
-        final String queryParam = "q";
-        final String isbnParam = "isbn:" + isbn;
-        Uri builtUri = Uri.parse(webServiceBaseUrl).buildUpon()
-                .appendQueryParameter(queryParam, isbnParam)
-                .build();
-        URL url = new URL(builtUri.toString());
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-        try  {
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-            InputStream inputStream = urlConnection.getInputStream();
-            if (inputStream == null) {
-                return null;
-            }
-
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                buffer.append(line);
-                buffer.append("\n");
-            }
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
-            }
-        }
-        return buffer.toString();
+     * @param bookCount the number of books found in the photo, added as an
+     *     extra associated to the key {@link #EXTRA_BOOK_COUNT}.
+     */
+    private void postShelfPhotoNotification(int bookCount) {
+        Intent notificationIntent = new Intent(ACTION_NOTIFY);
+        notificationIntent.addCategory(CATEGORY_SHELF_PHOTO_SCANNED);
+        notificationIntent.putExtra(EXTRA_BOOK_COUNT, bookCount);
+        LocalBroadcastManager.getInstance(this).sendBroadcast(notificationIntent);
     }
 
     /**
      * Inserts a book's data into the {@code ContentProvider}.
      *
-     * @param id the book's ISBN-13.
-     * @param title the book's title.
-     * @param subtitle the book's subtitle.
-     * @param description the book's description.
-     * @param coverImageUrl URL of the cover's image.
-     */
-    private void insertBook(long id
-            , String title
-            , String subtitle
-            , String description
-            , String coverImageUrl) {
+     * @param book the book's data.
+     * @param etag the entity tag of the response the data was downloaded
+     *     from, possibly {@code null}.
+     */
+    private void insertBook(Book book, String etag) {
+        getContentResolver().insert(BookContract.BookEntry.CONTENT_URI
+                , toContentValues(book, etag, System.currentTimeMillis()));
+    }
+
+    /**
+     * Returns the values of the book's row in the {@code ContentProvider}.
+     *
+     * @param book the book's data.
+     * @param etag the entity tag of the response the data was downloaded
+     *     from, possibly {@code null}.
+     * @param fetchedAt when the data was downloaded, in milliseconds since
+     *     the epoch.
+     * @return the values of the book's row.
+     */
+    static ContentValues toContentValues(Book book, String etag, long fetchedAt) {
         ContentValues values = new ContentValues();
-        values.put(BookContract.BookEntry._ID, id);
-        values.put(BookContract.BookEntry.COLUMN_TITLE, title);
-        values.put(BookContract.BookEntry.COLUMN_COVER_IMAGE_URL, coverImageUrl);
-        values.put(BookContract.BookEntry.COLUMN_SUBTITLE, subtitle);
-        values.put(BookContract.BookEntry.COLUMN_DESCRIPTION, description);
-        getContentResolver().insert(BookContract.BookEntry.CONTENT_URI, values);
+        values.put(BookContract.BookEntry._ID, book.getId());
+        values.put(BookContract.BookEntry.COLUMN_TITLE, book.getTitle());
+        values.put(BookContract.BookEntry.COLUMN_COVER_IMAGE_URL
+                , book.getCoverUri() == null ? StringUtils.EMPTY : book.getCoverUri().toString());
+        values.put(BookContract.BookEntry.COLUMN_SUBTITLE, book.getSubtitle());
+        values.put(BookContract.BookEntry.COLUMN_DESCRIPTION, book.getDescription());
+        values.put(BookContract.BookEntry.COLUMN_FETCHED_AT, fetchedAt);
+        values.put(BookContract.BookEntry.COLUMN_ETAG, etag);
+        return values;
     }
 
     /**
      * Inserts a book authors' data into the {@code ContentProvider}.
      *
      * @param id the book's ISBN-13.
-     * @param jsonArray {@link JSONArray} with the authors' data.
-     * @throws JSONException if an error occurs while accessing the data.
+     * @param authors the authors' data.
      */
-    private void insertAuthors(long id, JSONArray jsonArray) throws JSONException {
-        ContentValues values = new ContentValues();
-        for (int i = 0; i < jsonArray.length(); i++) {
+    private void insertAuthors(long id, List<Author> authors) {
+        for (Author author : authors) {
+            ContentValues values = new ContentValues();
             values.put(BookContract.AuthorEntry.COLUMN_BOOK_ID, id);
-            values.put(BookContract.AuthorEntry.COLUMN_NAME, jsonArray.getString(i));
+            values.put(BookContract.AuthorEntry.COLUMN_NAME, author.getName());
             getContentResolver().insert(BookContract.AuthorEntry.CONTENT_URI, values);
-            values = new ContentValues();
         }
     }
 
@@ -373,16 +963,14 @@ public class BookService extends IntentService {
      * Inserts a book's category data into the {@code ContentProvider}.
      *
      * @param id the book's ISBN-13.
-     * @param jsonArray {@link JSONArray} with the category data.
-     * @throws JSONException if an error occurs while accessing the data.
+     * @param categories the category data.
      */
-    private void insertCategories(long id, JSONArray jsonArray) throws JSONException {
-        ContentValues values = new ContentValues();
-        for (int i = 0; i < jsonArray.length(); i++) {
+    private void insertCategories(long id, List<Category> categories) {
+        for (Category category : categories) {
+            ContentValues values = new ContentValues();
             values.put(BookContract.CategoryEntry.COLUMN_BOOK_ID, id);
-            values.put(BookContract.CategoryEntry.COLUMN_NAME, jsonArray.getString(i));
+            values.put(BookContract.CategoryEntry.COLUMN_NAME, category.getName());
             getContentResolver().insert(BookContract.CategoryEntry.CONTENT_URI, values);
-            values = new ContentValues();
         }
     }
  }
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.service;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Trace;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.jaschke.alexandria.BuildConfig;
+import it.jaschke.alexandria.util.Histogram;
+
+/**
+ * Measures where the time is spent while fetching the books requested by the
+ * user, phase by phase: waiting in the queue, downloading the data, parsing
+ * it, inserting it and posting the notification. The duration of each phase
+ * is recorded in a {@link Histogram} and the outcome of each fetch is
+ * counted, for the whole life of the process. In debug builds each phase is
+ * also shown as a section in {@code systrace} (on API 18 and above).
+ * <p>
+ * The statistics can be read with
+ * {@code adb shell dumpsys activity service it.jaschke.alexandria/.service.BookService}
+ * while the service runs, or through
+ * {@link it.jaschke.alexandria.data.BookContract#METHOD_GET_FETCH_STATS}.
+ * </p>
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public final class FetchStats {
+
+    /**
+     * Phase from the moment the fetch is requested until it starts running.
+     */
+    public static final String PHASE_QUEUE_WAIT = "queue_wait";
+
+    /**
+     * Phase in which the book's data is downloaded.
+     */
+    public static final String PHASE_DOWNLOAD = "download";
+
+    /**
+     * Phase in which the book's data is parsed.
+     */
+    public static final String PHASE_PARSE = "parse";
+
+    /**
+     * Phase in which the book's data is inserted into the
+     * {@code ContentProvider}.
+     */
+    public static final String PHASE_INSERT = "insert";
+
+    /**
+     * Phase in which the result of the fetch is notified.
+     */
+    public static final String PHASE_NOTIFY = "notify";
+
+    /**
+     * Outcome of the fetches that added a book.
+     */
+    public static final String OUTCOME_ADDED = "added";
+
+    /**
+     * Outcome of the fetches of books already in the library.
+     */
+    public static final String OUTCOME_ALREADY_REGISTERED = "already_registered";
+
+    /**
+     * Outcome of the fetches of books deleted, but not yet purged, which are
+     * restored without downloading them.
+     */
+    public static final String OUTCOME_RESTORED = "restored";
+
+    /**
+     * Outcome of the fetches of books the API knows nothing about.
+     */
+    public static final String OUTCOME_NO_RESULT = "no_result";
+
+    /**
+     * Outcome of the fetches whose download failed.
+     */
+    public static final String OUTCOME_DOWNLOAD_ERROR = "download_error";
+
+    /**
+     * Outcome of the fetches whose response could not be parsed.
+     */
+    public static final String OUTCOME_PROCESSING_ERROR = "processing_error";
+
+    /**
+     * Suffix of the keys of {@link #toBundle()} with the number of durations
+     * recorded for a phase.
+     */
+    public static final String KEY_SUFFIX_COUNT = "_count";
+
+    /**
+     * Suffix of the keys of {@link #toBundle()} with the median duration of
+     * a phase, in milliseconds.
+     */
+    public static final String KEY_SUFFIX_P50 = "_p50_ms";
+
+    /**
+     * Suffix of the keys of {@link #toBundle()} with the 90th percentile of
+     * the duration of a phase, in milliseconds.
+     */
+    public static final String KEY_SUFFIX_P90 = "_p90_ms";
+
+    /**
+     * Suffix of the keys of {@link #toBundle()} with the 99th percentile of
+     * the duration of a phase, in milliseconds.
+     */
+    public static final String KEY_SUFFIX_P99 = "_p99_ms";
+
+    /**
+     * Suffix of the keys of {@link #toBundle()} with the longest duration
+     * of a phase, in milliseconds.
+     */
+    public static final String KEY_SUFFIX_MAX = "_max_ms";
+
+    /**
+     * Prefix of the keys of {@link #toBundle()} with the number of fetches
+     * with an outcome.
+     */
+    public static final String KEY_PREFIX_OUTCOME = "outcome_";
+
+    /**
+     * The median.
+     */
+    private static final int P50 = 50;
+
+    /**
+     * The 90th percentile.
+     */
+    private static final int P90 = 90;
+
+    /**
+     * The 99th percentile.
+     */
+    private static final int P99 = 99;
+
+    /**
+     * Indicates if the phases are shown in {@code systrace}.
+     */
+    private static final boolean TRACE_ENABLED = BuildConfig.DEBUG
+            && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    /**
+     * The durations of each phase, in the order the phases happen.
+     */
+    private static final Map<String, Histogram> PHASES = new LinkedHashMap<>();
+
+    static {
+        PHASES.put(PHASE_QUEUE_WAIT, new Histogram());
+        PHASES.put(PHASE_DOWNLOAD, new Histogram());
+        PHASES.put(PHASE_PARSE, new Histogram());
+        PHASES.put(PHASE_INSERT, new Histogram());
+        PHASES.put(PHASE_NOTIFY, new Histogram());
+    }
+
+    /**
+     * The number of fetches with each outcome.
+     */
+    private static final Map<String, AtomicLong> OUTCOMES = new LinkedHashMap<>();
+
+    static {
+        OUTCOMES.put(OUTCOME_ADDED, new AtomicLong());
+        OUTCOMES.put(OUTCOME_ALREADY_REGISTERED, new AtomicLong());
+        OUTCOMES.put(OUTCOME_RESTORED, new AtomicLong());
+        OUTCOMES.put(OUTCOME_NO_RESULT, new AtomicLong());
+        OUTCOMES.put(OUTCOME_DOWNLOAD_ERROR, new AtomicLong());
+        OUTCOMES.put(OUTCOME_PROCESSING_ERROR, new AtomicLong());
+    }
+
+    /**
+     * The class only provides constants and utility methods.
+     */
+    private FetchStats() {
+        // Empty constructor
+    }
+
+    /**
+     * Begins a phase on the current thread.
+     *
+     * @param phase the phase, one of the {@code PHASE_*} constants.
+     * @return the time when the phase started, to be passed to
+     *     {@link #end(String, long)}.
+     */
+    static long begin(String phase) {
+        if (TRACE_ENABLED) {
+            beginTraceSection(phase);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends the last phase begun on the current thread and records its
+     * duration.
+     *
+     * @param phase the phase, as passed to {@link #begin(String)}.
+     * @param startNanos the value returned by {@link #begin(String)}.
+     */
+    static void end(String phase, long startNanos) {
+        record(phase, System.nanoTime() - startNanos);
+        if (TRACE_ENABLED) {
+            endTraceSection();
+        }
+    }
+
+    /**
+     * Records the duration of a phase that was not measured with
+     * {@link #begin(String)}.
+     *
+     * @param phase the phase, one of the {@code PHASE_*} constants.
+     * @param nanos the duration, in nanoseconds.
+     */
+    static void record(String phase, long nanos) {
+        PHASES.get(phase).record(nanos);
+    }
+
+    /**
+     * Counts the outcome of a fetch.
+     *
+     * @param outcome the outcome, one of the {@code OUTCOME_*} constants.
+     */
+    static void countOutcome(String outcome) {
+        OUTCOMES.get(outcome).incrementAndGet();
+    }
+
+    /**
+     * Returns the statistics. For each phase, the keys are its name followed
+     * by each of the {@code KEY_SUFFIX_*} constants, holding {@code long}s.
+     * For each outcome, the key is {@link #KEY_PREFIX_OUTCOME} followed by
+     * its name, holding a {@code long}.
+     *
+     * @return the statistics.
+     */
+    public static Bundle toBundle() {
+        Bundle stats = new Bundle();
+        for (Map.Entry<String, Histogram> phase : PHASES.entrySet()) {
+            Histogram histogram = phase.getValue();
+            stats.putLong(phase.getKey() + KEY_SUFFIX_COUNT, histogram.getCount());
+            stats.putLong(phase.getKey() + KEY_SUFFIX_P50, histogram.getPercentileMillis(P50));
+            stats.putLong(phase.getKey() + KEY_SUFFIX_P90, histogram.getPercentileMillis(P90));
+            stats.putLong(phase.getKey() + KEY_SUFFIX_P99, histogram.getPercentileMillis(P99));
+            stats.putLong(phase.getKey() + KEY_SUFFIX_MAX, histogram.getMaxMillis());
+        }
+        for (Map.Entry<String, AtomicLong> outcome : OUTCOMES.entrySet()) {
+            stats.putLong(KEY_PREFIX_OUTCOME + outcome.getKey(), outcome.getValue().get());
+        }
+        return stats;
+    }
+
+    /**
+     * Writes the statistics in a human readable format.
+     *
+     * @param writer where the statistics are written.
+     */
+    static void dump(PrintWriter writer) {
+        writer.println("Fetch phases (count, p50, p90, p99, max in ms):");
+        for (Map.Entry<String, Histogram> phase : PHASES.entrySet()) {
+            Histogram histogram = phase.getValue();
+            writer.println("  " + phase.getKey() + ": " + histogram.getCount()
+                    + ", " + histogram.getPercentileMillis(P50)
+                    + ", " + histogram.getPercentileMillis(P90)
+                    + ", " + histogram.getPercentileMillis(P99)
+                    + ", " + histogram.getMaxMillis());
+        }
+        writer.println("Fetch outcomes:");
+        for (Map.Entry<String, AtomicLong> outcome : OUTCOMES.entrySet()) {
+            writer.println("  " + outcome.getKey() + ": " + outcome.getValue().get());
+        }
+    }
+
+    /**
+     * Begins a {@link Trace} section for a phase.
+     *
+     * @param phase the phase.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginTraceSection(String phase) {
+        Trace.beginSection("fetch " + phase);
+    }
+
+    /**
+     * Ends the last {@link Trace} section begun on the current thread.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endTraceSection() {
+        Trace.endSection();
+    }
+
+}
@@ -0,0 +1,560 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.service;
+
+import android.app.IntentService;
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.support.v4.content.LocalBroadcastManager;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.squareup.picasso.Picasso;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import it.jaschke.alexandria.backup.BookRecord;
+import it.jaschke.alexandria.backup.LibraryReader;
+import it.jaschke.alexandria.backup.LibraryWriter;
+import it.jaschke.alexandria.data.BookContract;
+import it.jaschke.alexandria.util.Isbn;
+
+import static it.jaschke.alexandria.data.BookContract.AuthorEntry;
+import static it.jaschke.alexandria.data.BookContract.BookEntry;
+import static it.jaschke.alexandria.data.BookContract.CategoryEntry;
+
+/**
+ * An {@link IntentService} subclass that exports the whole library to a
+ * backup and imports it back, as requested with {@link #ACTION_EXPORT_LIBRARY}
+ * and {@link #ACTION_IMPORT_LIBRARY} with the backup's {@link Uri} as the
+ * {@link Intent}'s data. Books are streamed one at a time, and imported in
+ * batches of at most {@link #IMPORT_BATCH_SIZE} books and
+ * {@link #IMPORT_BATCH_COVER_LENGTH} bytes of covers, applied in a single
+ * transaction each, so the memory used does not depend on the size of the
+ * library. The
+ * outcome is notified like {@link BookService} does, with
+ * {@link BookService#ACTION_NOTIFY} and the number of books in
+ * {@link BookService#EXTRA_BOOK_COUNT}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see LibraryWriter
+ * @see LibraryReader
+ */
+public class LibraryBackupService extends IntentService {
+
+    /**
+     * Action specified to the service in {@link Intent}s that request that the
+     * library is exported to the {@link Uri} in the {@link Intent}'s data.
+     */
+    public static final String ACTION_EXPORT_LIBRARY =
+            "it.jaschke.alexandria.services.action.ACTION_EXPORT_LIBRARY";
+
+    /**
+     * Action specified to the service in {@link Intent}s that request that the
+     * books in the backup at the {@link Uri} in the {@link Intent}'s data are
+     * added to the library. Books already in the library are left as they are.
+     */
+    public static final String ACTION_IMPORT_LIBRARY =
+            "it.jaschke.alexandria.services.action.ACTION_IMPORT_LIBRARY";
+
+    /**
+     * Extra included in {@link #ACTION_EXPORT_LIBRARY} requests to specify if
+     * the cover images are included in the backup. {@code false} by default.
+     */
+    public static final String EXTRA_INCLUDE_COVERS =
+            "it.jaschke.alexandria.service.extra.INCLUDE_COVERS";
+
+    /**
+     * Category used to notify that the library was exported.
+     */
+    public static final String CATEGORY_LIBRARY_EXPORTED =
+            "it.jaschke.alexandria.service.category.CATEGORY_LIBRARY_EXPORTED";
+
+    /**
+     * Category used to notify that a backup was imported.
+     */
+    public static final String CATEGORY_LIBRARY_IMPORTED =
+            "it.jaschke.alexandria.service.category.CATEGORY_LIBRARY_IMPORTED";
+
+    /**
+     * Category used to notify that the library could not be exported or a
+     * backup could not be imported.
+     */
+    public static final String CATEGORY_LIBRARY_BACKUP_ERROR =
+            "it.jaschke.alexandria.service.category.CATEGORY_LIBRARY_BACKUP_ERROR";
+
+    /**
+     * Number of books imported in each transaction.
+     */
+    static final int IMPORT_BATCH_SIZE = 100;
+
+    /**
+     * Once the covers of the books read reach this length, in bytes, they
+     * are imported without waiting for {@link #IMPORT_BATCH_SIZE} books, as
+     * each cover can take up to 4 MB.
+     */
+    static final int IMPORT_BATCH_COVER_LENGTH = 8 * 1024 * 1024;
+
+    /**
+     * Identifies messages written to the log by this class.
+     */
+    private static final String LOG_TAG = LibraryBackupService.class.getSimpleName();
+
+    /**
+     * Directory, inside the application's files directory, where the covers
+     * imported are stored.
+     */
+    private static final String COVER_DIRECTORY = "covers";
+
+    /**
+     * Quality of the covers exported, from 0 to 100.
+     */
+    private static final int COVER_QUALITY = 85;
+
+    /**
+     * Columns read from the books exported.
+     */
+    private static final String[] BOOK_PROJECTION = {
+        BookEntry._ID
+        , BookEntry.COLUMN_TITLE
+        , BookEntry.COLUMN_SUBTITLE
+        , BookEntry.COLUMN_DESCRIPTION
+        , BookEntry.COLUMN_COVER_IMAGE_URL
+    };
+
+    /**
+     * Index of {@link BookEntry#_ID} in {@link #BOOK_PROJECTION}.
+     */
+    private static final int COL_BOOK_ID = 0;
+
+    /**
+     * Index of {@link BookEntry#COLUMN_TITLE} in {@link #BOOK_PROJECTION}.
+     */
+    private static final int COL_BOOK_TITLE = 1;
+
+    /**
+     * Index of {@link BookEntry#COLUMN_SUBTITLE} in {@link #BOOK_PROJECTION}.
+     */
+    private static final int COL_BOOK_SUBTITLE = 2;
+
+    /**
+     * Index of {@link BookEntry#COLUMN_DESCRIPTION} in {@link #BOOK_PROJECTION}.
+     */
+    private static final int COL_BOOK_DESCRIPTION = 3;
+
+    /**
+     * Index of {@link BookEntry#COLUMN_COVER_IMAGE_URL} in
+     * {@link #BOOK_PROJECTION}.
+     */
+    private static final int COL_BOOK_COVER_IMAGE_URL = 4;
+
+    /**
+     * Columns read from the authors and categories exported. Both tables have
+     * the same column names.
+     */
+    private static final String[] NAME_PROJECTION = {
+        AuthorEntry.COLUMN_BOOK_ID
+        , AuthorEntry.COLUMN_NAME
+    };
+
+    /**
+     * Index of the book id in {@link #NAME_PROJECTION}.
+     */
+    private static final int COL_NAME_BOOK_ID = 0;
+
+    /**
+     * Index of the name in {@link #NAME_PROJECTION}.
+     */
+    private static final int COL_NAME = 1;
+
+    /**
+     * Creates a new instance of {@link LibraryBackupService}.
+     */
+    public LibraryBackupService() {
+        super("AlexandriaBackup");
+    }
+
+    /**
+     * Requests the {@link LibraryBackupService} to export the library.
+     *
+     * @param context the {@link Context} used to start the service.
+     * @param backupUri where the backup is written.
+     * @param includeCovers if {@code true} the cover images are included.
+     * @see #ACTION_EXPORT_LIBRARY
+     */
+    public static void requestExport(Context context, Uri backupUri, boolean includeCovers) {
+        Intent intent = new Intent(context, LibraryBackupService.class);
+        intent.setAction(ACTION_EXPORT_LIBRARY);
+        intent.setData(backupUri);
+        intent.putExtra(EXTRA_INCLUDE_COVERS, includeCovers);
+        context.startService(intent);
+    }
+
+    /**
+     * Requests the {@link LibraryBackupService} to import a backup.
+     *
+     * @param context the {@link Context} used to start the service.
+     * @param backupUri the backup to read.
+     * @see #ACTION_IMPORT_LIBRARY
+     */
+    public static void requestImport(Context context, Uri backupUri) {
+        Intent intent = new Intent(context, LibraryBackupService.class);
+        intent.setAction(ACTION_IMPORT_LIBRARY);
+        intent.setData(backupUri);
+        context.startService(intent);
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        final String action = intent.getAction();
+        try {
+            if (ACTION_EXPORT_LIBRARY.equals(action)) {
+                final int count = exportLibrary(intent.getData()
+                        , intent.getBooleanExtra(EXTRA_INCLUDE_COVERS, false));
+                postNotification(CATEGORY_LIBRARY_EXPORTED, count);
+            } else if (ACTION_IMPORT_LIBRARY.equals(action)) {
+                final int count = importLibrary(intent.getData());
+                postNotification(CATEGORY_LIBRARY_IMPORTED, count);
+            }
+        } catch (IOException | RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Unable to " + action + " " + intent.getData(), e);
+            postNotification(CATEGORY_LIBRARY_BACKUP_ERROR, 0);
+        }
+    }
+
+    /**
+     * Writes every book in the {@code ContentProvider} to a backup. Books,
+     * authors and categories are read with one query each, sorted by book id,
+     * and merged as they are written.
+     *
+     * @param backupUri where the backup is written.
+     * @param includeCovers if {@code true} the cover images are included.
+     * @return the number of books exported.
+     * @throws IOException if the backup cannot be written.
+     */
+    private int exportLibrary(Uri backupUri, boolean includeCovers) throws IOException {
+        ContentResolver resolver = getContentResolver();
+        Cursor books = null;
+        Cursor authors = null;
+        Cursor categories = null;
+        LibraryWriter writer = null;
+        try {
+            books = resolver.query(BookEntry.CONTENT_URI, BOOK_PROJECTION
+                    , null, null, BookEntry._ID);
+            authors = resolver.query(AuthorEntry.CONTENT_URI, NAME_PROJECTION
+                    , null, null, AuthorEntry.COLUMN_BOOK_ID);
+            categories = resolver.query(CategoryEntry.CONTENT_URI, NAME_PROJECTION
+                    , null, null, CategoryEntry.COLUMN_BOOK_ID);
+            OutputStream output = resolver.openOutputStream(backupUri);
+            if (output == null) {
+                throw new IOException("Unable to open " + backupUri);
+            }
+            writer = new LibraryWriter(output);
+            BookRecord book = new BookRecord();
+            ByteArrayOutputStream coverBuffer = new ByteArrayOutputStream();
+            authors.moveToFirst();
+            categories.moveToFirst();
+            while (books.moveToNext()) {
+                book.clear();
+                book.setId(books.getLong(COL_BOOK_ID));
+                book.setTitle(books.getString(COL_BOOK_TITLE));
+                book.setSubtitle(books.getString(COL_BOOK_SUBTITLE));
+                book.setDescription(books.getString(COL_BOOK_DESCRIPTION));
+                book.setCoverUrl(books.getString(COL_BOOK_COVER_IMAGE_URL));
+                readNames(authors, book.getId(), book.getAuthors());
+                readNames(categories, book.getId(), book.getCategories());
+                if (includeCovers) {
+                    book.setCover(downloadCover(book.getCoverUrl(), coverBuffer));
+                }
+                writer.writeBook(book);
+            }
+            writer.finish();
+            return writer.getBookCount();
+        } finally {
+            closeQuietly(books);
+            closeQuietly(authors);
+            closeQuietly(categories);
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Adds to the list the names of the rows, from the current position of
+     * the cursor, related to the specified book. The cursor must be sorted by
+     * book id, and is left at the first row of the next book.
+     *
+     * @param cursor the authors or categories, sorted by book id.
+     * @param bookId the id of the book whose names are read.
+     * @param names where the names are added.
+     */
+    private static void readNames(Cursor cursor, long bookId, List<String> names) {
+        while (!cursor.isAfterLast() && cursor.getLong(COL_NAME_BOOK_ID) <= bookId) {
+            // Names of books that no longer exist are skipped
+            if (cursor.getLong(COL_NAME_BOOK_ID) == bookId) {
+                names.add(cursor.getString(COL_NAME));
+            }
+            cursor.moveToNext();
+        }
+    }
+
+    /**
+     * Returns the cover image, encoded as JPEG, going through Picasso so that
+     * its cache is used.
+     *
+     * @param coverUrl the URL of the cover, possibly {@code null} or empty.
+     * @param buffer buffer used to encode the image.
+     * @return the encoded cover, or {@code null} if there is no cover or it
+     *     cannot be downloaded.
+     */
+    private byte[] downloadCover(String coverUrl, ByteArrayOutputStream buffer) {
+        if (TextUtils.isEmpty(coverUrl)) {
+            return null;
+        }
+        try {
+            Bitmap cover = Picasso.with(this).load(coverUrl).get();
+            buffer.reset();
+            cover.compress(Bitmap.CompressFormat.JPEG, COVER_QUALITY, buffer);
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to download cover " + coverUrl, e);
+            return null;
+        }
+    }
+
+    /**
+     * Adds the books in a backup to the {@code ContentProvider}, in batches
+     * of {@link #IMPORT_BATCH_SIZE} books, or fewer if their covers reach
+     * {@link #IMPORT_BATCH_COVER_LENGTH} bytes. Books already in the library, or
+     * whose id is not a valid ISBN-13, are skipped.
+     *
+     * @param backupUri the backup to read.
+     * @return the number of books added.
+     * @throws IOException if the backup cannot be read or is corrupt.
+     * @throws RemoteException if the {@code ContentProvider} fails.
+     * @throws OperationApplicationException if a batch cannot be applied.
+     */
+    private int importLibrary(Uri backupUri)
+            throws IOException, RemoteException, OperationApplicationException {
+        InputStream input = getContentResolver().openInputStream(backupUri);
+        if (input == null) {
+            throw new IOException("Unable to open " + backupUri);
+        }
+        LibraryReader reader = null;
+        int importedCount = 0;
+        try {
+            reader = new LibraryReader(input);
+            List<BookRecord> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+            for (int i = 0; i < IMPORT_BATCH_SIZE; i++) {
+                batch.add(new BookRecord());
+            }
+            boolean more;
+            do {
+                int batchSize = 0;
+                int coverLength = 0;
+                more = true;
+                while (more && batchSize < IMPORT_BATCH_SIZE
+                        && coverLength < IMPORT_BATCH_COVER_LENGTH) {
+                    BookRecord book = batch.get(batchSize);
+                    more = reader.readBook(book);
+                    if (more) {
+                        coverLength += book.getCover() == null ? 0 : book.getCover().length;
+                        batchSize++;
+                    }
+                }
+                importedCount += importBatch(batch, batchSize);
+                // The records are reused, but their covers need not be kept
+                for (int i = 0; i < batchSize; i++) {
+                    batch.get(i).setCover(null);
+                }
+            } while (more);
+        } finally {
+            if (reader != null) {
+                reader.close();
+            } else {
+                input.close();
+            }
+        }
+        return importedCount;
+    }
+
+    /**
+     * Adds a batch of books to the {@code ContentProvider}, in a single
+     * transaction, skipping those already in the library or whose id is not
+     * a valid ISBN-13.
+     *
+     * @param batch the books read from the backup.
+     * @param size the number of books in the batch.
+     * @return the number of books added.
+     * @throws RemoteException if the {@code ContentProvider} fails.
+     * @throws OperationApplicationException if the batch cannot be applied.
+     */
+    private int importBatch(List<BookRecord> batch, int size)
+            throws RemoteException, OperationApplicationException {
+        Set<Long> skippedIds = findExistingBooks(batch, size);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            BookRecord book = batch.get(i);
+            final long id = book.getId();
+            // Also skips repeated books within the batch
+            if (!Isbn.isValidIsbn13(id) || book.getTitle() == null || !skippedIds.add(id)) {
+                continue;
+            }
+            ContentValues values = new ContentValues();
+            values.put(BookEntry._ID, id);
+            values.put(BookEntry.COLUMN_TITLE, book.getTitle());
+            values.put(BookEntry.COLUMN_SUBTITLE, book.getSubtitle());
+            values.put(BookEntry.COLUMN_DESCRIPTION, book.getDescription());
+            values.put(BookEntry.COLUMN_COVER_IMAGE_URL, storeCover(book));
+            operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI)
+                    .withValues(values).build());
+            for (String author : book.getAuthors()) {
+                operations.add(ContentProviderOperation.newInsert(AuthorEntry.CONTENT_URI)
+                        .withValue(AuthorEntry.COLUMN_BOOK_ID, id)
+                        .withValue(AuthorEntry.COLUMN_NAME, author).build());
+            }
+            for (String category : book.getCategories()) {
+                operations.add(ContentProviderOperation.newInsert(CategoryEntry.CONTENT_URI)
+                        .withValue(CategoryEntry.COLUMN_BOOK_ID, id)
+                        .withValue(CategoryEntry.COLUMN_NAME, category).build());
+            }
+            count++;
+        }
+        if (!operations.isEmpty()) {
+            getContentResolver().applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the ids of the books in the batch that are already in the
+     * library, with a single query.
+     *
+     * @param batch the books read from the backup.
+     * @param size the number of books in the batch.
+     * @return the ids of the books already in the library.
+     */
+    private Set<Long> findExistingBooks(List<BookRecord> batch, int size) {
+        Set<Long> existingIds = new HashSet<>();
+        if (size == 0) {
+            return existingIds;
+        }
+        StringBuilder selection = new StringBuilder(BookEntry._ID).append(" IN (");
+        String[] selectionArgs = new String[size];
+        for (int i = 0; i < size; i++) {
+            selection.append(i == 0 ? "?" : ",?");
+            selectionArgs[i] = Long.toString(batch.get(i).getId());
+        }
+        selection.append(')');
+        Cursor cursor = getContentResolver().query(BookEntry.CONTENT_URI
+                , new String[] {BookEntry._ID}
+                , selection.toString()
+                , selectionArgs
+                , null);
+        try {
+            while (cursor.moveToNext()) {
+                existingIds.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return existingIds;
+    }
+
+    /**
+     * Stores the cover included in the backup, if any, in the application's
+     * files directory.
+     *
+     * @param book the book read from the backup.
+     * @return the {@link Uri} of the stored cover, or the book's cover URL if
+     *     the backup has no cover for it or it cannot be stored.
+     */
+    private String storeCover(BookRecord book) {
+        if (book.getCover() == null) {
+            return book.getCoverUrl();
+        }
+        File directory = new File(getFilesDir(), COVER_DIRECTORY);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(LOG_TAG, "Unable to create " + directory);
+            return book.getCoverUrl();
+        }
+        File coverFile = new File(directory, book.getId() + ".jpg");
+        OutputStream output = null;
+        try {
+            output = new FileOutputStream(coverFile);
+            output.write(book.getCover());
+            return Uri.fromFile(coverFile).toString();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Unable to store cover " + coverFile, e);
+            return book.getCoverUrl();
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the cursor, if not {@code null}.
+     *
+     * @param cursor the cursor to close, possibly {@code null}.
+     */
+    private static void closeQuietly(Cursor cursor) {
+        if (cursor != null) {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Posts an {@link Intent} with {@link BookService#ACTION_NOTIFY} and the
+     * specified category to the {@link LocalBroadcastManager}.
+     *
+     * @param category the notification's category.
+     * @param bookCount the number of books exported or imported, added as an
+     *     extra associated to the key {@link BookService#EXTRA_BOOK_COUNT}.
+     */
+    private void postNotification(String category, int bookCount) {
+        Intent notificationIntent = new Intent(BookService.ACTION_NOTIFY);
+        notificationIntent.addCategory(category);
+        notificationIntent.putExtra(BookService.EXTRA_BOOK_COUNT, bookCount);
+        LocalBroadcastManager.getInstance(this).sendBroadcast(notificationIntent);
+    }
+
+}
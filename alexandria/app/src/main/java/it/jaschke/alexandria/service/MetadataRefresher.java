@@ -0,0 +1,301 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.service;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.OperationApplicationException;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import it.jaschke.alexandria.R;
+import it.jaschke.alexandria.data.BookContract;
+import it.jaschke.alexandria.job.Job;
+import it.jaschke.alexandria.job.JobQueue;
+import it.jaschke.alexandria.model.domain.Author;
+import it.jaschke.alexandria.model.domain.Book;
+import it.jaschke.alexandria.model.domain.Category;
+
+import static it.jaschke.alexandria.data.BookContract.AuthorEntry;
+import static it.jaschke.alexandria.data.BookContract.BookEntry;
+import static it.jaschke.alexandria.data.BookContract.CategoryEntry;
+
+/**
+ * Downloads again the data of the books that have not been refreshed for the
+ * longest time. At most {@code R.integer.refresh_budget_books} books not
+ * refreshed for {@code R.integer.refresh_stale_after_days} are refreshed per
+ * run, pausing {@code R.integer.refresh_request_interval_millis} between
+ * requests. The requests are conditional on the entity tag of the last
+ * response, and the changes are written in batches of
+ * {@link #WRITE_BATCH_SIZE} books. A run is a job of the lowest priority lane
+ * of {@link BookService}'s queue, and waits while there are jobs in the other
+ * lanes, so that it never competes with the books the user is adding. It
+ * stops as soon as the device is no longer charging on an unmetered network,
+ * or the job is cancelled.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see RefreshScheduler
+ */
+final class MetadataRefresher {
+
+    /**
+     * Number of books whose changes are written in a single transaction.
+     */
+    static final int WRITE_BATCH_SIZE = 20;
+
+    /**
+     * Identifies messages written to the log by this class.
+     */
+    private static final String LOG_TAG = MetadataRefresher.class.getSimpleName();
+
+    /**
+     * Columns read from the stale books.
+     */
+    private static final String[] STALE_BOOK_PROJECTION = {
+        BookEntry._ID
+        , BookEntry.COLUMN_ETAG
+    };
+
+    /**
+     * Index of {@link BookEntry#_ID} in {@link #STALE_BOOK_PROJECTION}.
+     */
+    private static final int COL_ID = 0;
+
+    /**
+     * Index of {@link BookEntry#COLUMN_ETAG} in {@link #STALE_BOOK_PROJECTION}.
+     */
+    private static final int COL_ETAG = 1;
+
+    /**
+     * Selects the books not refreshed since the time specified as argument.
+     */
+    private static final String SELECTION_STALE = BookEntry.COLUMN_FETCHED_AT + " IS NULL OR "
+            + BookEntry.COLUMN_FETCHED_AT + " < ?";
+
+    /**
+     * Selects the book with the id specified as argument.
+     */
+    private static final String SELECTION_BOOK_ID = BookEntry._ID + " = ?";
+
+    /**
+     * Selects the authors or categories of the book with the id specified as
+     * argument. Both tables have the same column names.
+     */
+    private static final String SELECTION_NAME_BOOK_ID = AuthorEntry.COLUMN_BOOK_ID + " = ?";
+
+    /**
+     * The {@link Context} used to access the {@code ContentProvider}.
+     */
+    private final Context mContext;
+
+    /**
+     * The job of the run, checked for cancellation.
+     */
+    private final Job mJob;
+
+    /**
+     * The queue of the job, checked for jobs of higher priority.
+     */
+    private final JobQueue mQueue;
+
+    /**
+     * Creates a new {@link MetadataRefresher}.
+     *
+     * @param context the {@link Context} used to access the
+     *     {@code ContentProvider}.
+     * @param job the job of the run.
+     * @param queue the queue of the job.
+     */
+    MetadataRefresher(Context context, Job job, JobQueue queue) {
+        mContext = context.getApplicationContext();
+        mJob = job;
+        mQueue = queue;
+    }
+
+    /**
+     * Returns {@code true} if the device is charging and connected to an
+     * unmetered network, the only conditions in which books are refreshed.
+     *
+     * @param context the {@link Context} used to access the system services.
+     * @return {@code true} if books can be refreshed.
+     */
+    static boolean isRefreshAllowed(Context context) {
+        Intent battery = context.registerReceiver(null
+                , new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null || battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) == 0) {
+            return false;
+        }
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo network = connectivityManager.getActiveNetworkInfo();
+        return network != null && network.isConnected()
+                && !ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager);
+    }
+
+    /**
+     * Refreshes the stalest books, within the budget. Blocks until done, so
+     * it must not be called on the main thread. If the job is cancelled, the
+     * changes already downloaded are written.
+     *
+     * @return the number of books checked.
+     */
+    int refresh() {
+        Resources resources = mContext.getResources();
+        final int budget = resources.getInteger(R.integer.refresh_budget_books);
+        final long staleAfterMillis = TimeUnit.DAYS.toMillis(
+                resources.getInteger(R.integer.refresh_stale_after_days));
+        final long pauseMillis = resources.getInteger(R.integer.refresh_request_interval_millis);
+
+        final long now = System.currentTimeMillis();
+        long[] ids = new long[budget];
+        String[] etags = new String[budget];
+        Cursor cursor = mContext.getContentResolver().query(BookEntry.CONTENT_URI
+                , STALE_BOOK_PROJECTION
+                , SELECTION_STALE
+                , new String[] {Long.toString(now - staleAfterMillis)}
+                , BookEntry.COLUMN_FETCHED_AT);
+        int count = 0;
+        try {
+            while (count < budget && cursor.moveToNext()) {
+                ids[count] = cursor.getLong(COL_ID);
+                etags[count] = cursor.getString(COL_ETAG);
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        int checkedCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                SystemClock.sleep(pauseMillis);
+            }
+            while (mQueue.isBusyAbove(mJob.getLane()) && !mJob.isCancelled()) {
+                SystemClock.sleep(pauseMillis);
+            }
+            if (mJob.isCancelled() || !isRefreshAllowed(mContext)) {
+                break;
+            }
+            BookApi.Response response;
+            try {
+                response = BookApi.download(ids[i], etags[i]);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Unable to refresh book " + ids[i], e);
+                break;
+            }
+            addRefreshOperations(operations, ids[i], response, System.currentTimeMillis());
+            checkedCount++;
+            if (checkedCount % WRITE_BATCH_SIZE == 0) {
+                applyOperations(operations);
+            }
+        }
+        applyOperations(operations);
+        Log.i(LOG_TAG, "Checked " + checkedCount + " of " + count + " stale books");
+        return checkedCount;
+    }
+
+    /**
+     * Adds the operations that write the response for a book. If the book
+     * did not change, or the response has no book, only the time it was
+     * checked is written, so that the next run moves on to other books.
+     *
+     * @param operations where the operations are added.
+     * @param id the book's ISBN-13.
+     * @param response the response to the request of the book's data.
+     * @param fetchedAt when the response was received.
+     */
+    private static void addRefreshOperations(ArrayList<ContentProviderOperation> operations
+            , long id
+            , BookApi.Response response
+            , long fetchedAt) {
+        final String[] idArgs = {Long.toString(id)};
+        Book book = null;
+        if (!response.isNotModified()) {
+            try {
+                book = BookApi.parse(id, response.getBody());
+            } catch (JSONException e) {
+                Log.w(LOG_TAG, "Unable to process the data of book " + id, e);
+            }
+        }
+        if (book == null) {
+            operations.add(ContentProviderOperation.newUpdate(BookEntry.CONTENT_URI)
+                    .withSelection(SELECTION_BOOK_ID, idArgs)
+                    .withValue(BookEntry.COLUMN_FETCHED_AT, fetchedAt)
+                    .build());
+            return;
+        }
+        ContentValues values = BookService.toContentValues(book, response.getEtag(), fetchedAt);
+        values.remove(BookEntry._ID);
+        operations.add(ContentProviderOperation.newUpdate(BookEntry.CONTENT_URI)
+                .withSelection(SELECTION_BOOK_ID, idArgs)
+                .withValues(values)
+                .build());
+        operations.add(ContentProviderOperation.newDelete(AuthorEntry.CONTENT_URI)
+                .withSelection(SELECTION_NAME_BOOK_ID, idArgs)
+                .build());
+        for (Author author : book.getAuthors()) {
+            operations.add(ContentProviderOperation.newInsert(AuthorEntry.CONTENT_URI)
+                    .withValue(AuthorEntry.COLUMN_BOOK_ID, id)
+                    .withValue(AuthorEntry.COLUMN_NAME, author.getName())
+                    .build());
+        }
+        operations.add(ContentProviderOperation.newDelete(CategoryEntry.CONTENT_URI)
+                .withSelection(SELECTION_NAME_BOOK_ID, idArgs)
+                .build());
+        for (Category category : book.getCategories()) {
+            operations.add(ContentProviderOperation.newInsert(CategoryEntry.CONTENT_URI)
+                    .withValue(CategoryEntry.COLUMN_BOOK_ID, id)
+                    .withValue(CategoryEntry.COLUMN_NAME, category.getName())
+                    .build());
+        }
+    }
+
+    /**
+     * Applies the operations in a single transaction and clears them.
+     *
+     * @param operations the operations to apply.
+     */
+    private void applyOperations(ArrayList<ContentProviderOperation> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
+        try {
+            mContext.getContentResolver().applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Unable to write the refreshed books", e);
+        }
+        operations.clear();
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.service;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.support.v4.content.LocalBroadcastManager;
+
+import it.jaschke.alexandria.job.JobQueue;
+
+/**
+ * Runs the periodic refresh of the stalest books, scheduled with the
+ * {@code JobScheduler} to run only while the device is charging on an
+ * unmetered network. The refresh itself is a job of {@link BookService}'s
+ * queue; this service only keeps the scheduled job running until the
+ * {@link BookService#CATEGORY_REFRESH_FINISHED} notification arrives.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see RefreshScheduler
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class RefreshJobService extends JobService {
+
+    /**
+     * Finishes the scheduled job once the refresh finishes, {@code null}
+     * while no job is running.
+     */
+    private BroadcastReceiver mFinishReceiver;
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        unregisterFinishReceiver();
+        mFinishReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                unregisterFinishReceiver();
+                jobFinished(params, false);
+            }
+        };
+        IntentFilter filter = new IntentFilter(BookService.ACTION_NOTIFY);
+        filter.addCategory(BookService.CATEGORY_REFRESH_FINISHED);
+        LocalBroadcastManager.getInstance(this).registerReceiver(mFinishReceiver, filter);
+        BookService.requestRefresh(this);
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        unregisterFinishReceiver();
+        BookService.requestCancel(this, JobQueue.LANE_BACKGROUND_REFRESH);
+        // The books not refreshed are picked by the next run
+        return false;
+    }
+
+    /**
+     * Unregisters {@link #mFinishReceiver}, if registered.
+     */
+    private void unregisterFinishReceiver() {
+        if (mFinishReceiver != null) {
+            LocalBroadcastManager.getInstance(this).unregisterReceiver(mFinishReceiver);
+            mFinishReceiver = null;
+        }
+    }
+
+}
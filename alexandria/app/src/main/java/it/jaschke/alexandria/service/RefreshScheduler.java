@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.service;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.SystemClock;
+
+/**
+ * Schedules the daily refresh of the stalest books, with the
+ * {@code JobScheduler} when available, so that it only runs while the device
+ * is charging on an unmetered network, or with an inexact alarm otherwise.
+ * Scheduling again does not postpone a refresh already scheduled.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see RefreshJobService
+ * @see BookService#ACTION_REFRESH_STALE_BOOKS
+ */
+public final class RefreshScheduler {
+
+    /**
+     * Identifies the refresh job.
+     */
+    static final int JOB_ID = 1;
+
+    /**
+     * Time between refreshes, in milliseconds.
+     */
+    private static final long REFRESH_INTERVAL_MILLIS = AlarmManager.INTERVAL_DAY;
+
+    /**
+     * The class only provides utility methods.
+     */
+    private RefreshScheduler() {
+        // Empty constructor
+    }
+
+    /**
+     * Schedules the refresh of the stalest books, unless already scheduled.
+     *
+     * @param context the {@link Context} used to access the system services.
+     */
+    public static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleJob(context);
+        } else {
+            scheduleAlarm(context);
+        }
+    }
+
+    /**
+     * Schedules the refresh with the {@code JobScheduler}.
+     *
+     * @param context the {@link Context} used to access the system services.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context) {
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+        scheduler.schedule(new JobInfo.Builder(JOB_ID
+                        , new ComponentName(context, RefreshJobService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setRequiresCharging(true)
+                .setPeriodic(REFRESH_INTERVAL_MILLIS)
+                .setPersisted(true)
+                .build());
+    }
+
+    /**
+     * Schedules the refresh with an inexact alarm, which requests it from
+     * {@link BookService}. The refresh checks the charging and network
+     * conditions itself.
+     *
+     * @param context the {@link Context} used to access the system services.
+     */
+    private static void scheduleAlarm(Context context) {
+        Intent intent = new Intent(context, BookService.class)
+                .setAction(BookService.ACTION_REFRESH_STALE_BOOKS);
+        if (PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_NO_CREATE) != null) {
+            return;
+        }
+        AlarmManager alarmManager =
+                (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME
+                , SystemClock.elapsedRealtime() + REFRESH_INTERVAL_MILLIS
+                , REFRESH_INTERVAL_MILLIS
+                , PendingIntent.getService(context, 0, intent, 0));
+    }
+
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.service;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.provider.BaseColumns;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import it.jaschke.alexandria.job.Job;
+import it.jaschke.alexandria.job.JobStore;
+
+/**
+ * Stores the jobs of {@link BookService}'s queue in their own SQLite
+ * database, separate from the books, so that writing them neither contends
+ * with the {@code ContentProvider} nor notifies its observers.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+class SqliteJobStore extends SQLiteOpenHelper implements JobStore {
+
+    /**
+     * Name of the SQLite database file.
+     */
+    static final String DATABASE_NAME = "jobs.db";
+
+    /**
+     * Version number of the database.
+     */
+    private static final int DATABASE_VERSION = 1;
+
+    /**
+     * Name of the table of jobs.
+     */
+    private static final String TABLE_NAME = "job";
+
+    /**
+     * The job's lane.
+     */
+    private static final String COLUMN_LANE = "lane";
+
+    /**
+     * The job's action.
+     */
+    private static final String COLUMN_ACTION = "action";
+
+    /**
+     * The ISBN-13 of the book the job works on.
+     */
+    private static final String COLUMN_ISBN = "isbn";
+
+    /**
+     * Other data the job works on.
+     */
+    private static final String COLUMN_DATA = "data";
+
+    /**
+     * Columns read from the jobs.
+     */
+    private static final String[] PROJECTION = {
+        BaseColumns._ID
+        , COLUMN_LANE
+        , COLUMN_ACTION
+        , COLUMN_ISBN
+        , COLUMN_DATA
+    };
+
+    /**
+     * Index of {@link BaseColumns#_ID} in {@link #PROJECTION}.
+     */
+    private static final int COL_ID = 0;
+
+    /**
+     * Index of {@link #COLUMN_LANE} in {@link #PROJECTION}.
+     */
+    private static final int COL_LANE = 1;
+
+    /**
+     * Index of {@link #COLUMN_ACTION} in {@link #PROJECTION}.
+     */
+    private static final int COL_ACTION = 2;
+
+    /**
+     * Index of {@link #COLUMN_ISBN} in {@link #PROJECTION}.
+     */
+    private static final int COL_ISBN = 3;
+
+    /**
+     * Index of {@link #COLUMN_DATA} in {@link #PROJECTION}.
+     */
+    private static final int COL_DATA = 4;
+
+    /**
+     * Selects the job with the id specified as argument.
+     */
+    private static final String SELECTION_ID = BaseColumns._ID + " = ?";
+
+    /**
+     * Creates a new instance of {@link SqliteJobStore}.
+     *
+     * @param context {@link Context} to create or open the database with.
+     */
+    SqliteJobStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        // AUTOINCREMENT, so that ids follow the order the jobs were inserted
+        db.execSQL("CREATE TABLE " + TABLE_NAME + " ("
+                + BaseColumns._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_LANE + " INTEGER NOT NULL, "
+                + COLUMN_ACTION + " TEXT NOT NULL, "
+                + COLUMN_ISBN + " INTEGER NOT NULL, "
+                + COLUMN_DATA + " TEXT"
+                + ");");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
+        onCreate(db);
+    }
+
+    @Override
+    public List<Job> loadAll() {
+        List<Job> jobs = new ArrayList<>();
+        Cursor cursor = getReadableDatabase().query(TABLE_NAME, PROJECTION
+                , null, null, null, null, BaseColumns._ID);
+        try {
+            while (cursor.moveToNext()) {
+                jobs.add(new Job(cursor.getLong(COL_ID)
+                        , cursor.getInt(COL_LANE)
+                        , cursor.getString(COL_ACTION)
+                        , cursor.getLong(COL_ISBN)
+                        , cursor.getString(COL_DATA)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return jobs;
+    }
+
+    @Override
+    public long[] insert(List<Job> jobs) {
+        long[] ids = new long[jobs.size()];
+        SQLiteDatabase db = getWritableDatabase();
+        // A single transaction, so that a bulk import is not synced to storage job by job
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < ids.length; i++) {
+                Job job = jobs.get(i);
+                values.put(COLUMN_LANE, job.getLane());
+                values.put(COLUMN_ACTION, job.getAction());
+                values.put(COLUMN_ISBN, job.getIsbn());
+                values.put(COLUMN_DATA, job.getData());
+                ids[i] = db.insert(TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return ids;
+    }
+
+    @Override
+    public void updateLane(long id, int lane) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_LANE, lane);
+        getWritableDatabase().update(TABLE_NAME, values, SELECTION_ID
+                , new String[] {Long.toString(id)});
+    }
+
+    @Override
+    public void delete(long id) {
+        getWritableDatabase().delete(TABLE_NAME, SELECTION_ID
+                , new String[] {Long.toString(id)});
+    }
+
+}
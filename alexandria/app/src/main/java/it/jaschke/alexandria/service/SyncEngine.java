@@ -0,0 +1,698 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.service;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import it.jaschke.alexandria.R;
+import it.jaschke.alexandria.backup.BookRecord;
+import it.jaschke.alexandria.data.BookContract;
+import it.jaschke.alexandria.job.Job;
+import it.jaschke.alexandria.job.JobQueue;
+import it.jaschke.alexandria.sync.SyncClient;
+import it.jaschke.alexandria.util.Isbn;
+
+import static it.jaschke.alexandria.data.BookContract.AuthorEntry;
+import static it.jaschke.alexandria.data.BookContract.BookEntry;
+import static it.jaschke.alexandria.data.BookContract.CategoryEntry;
+import static it.jaschke.alexandria.data.BookContract.ChangeEntry;
+
+/**
+ * Syncs the library with the server at {@code R.string.sync_server_url},
+ * exchanging only the books changed since the last sync, so that a book
+ * added on one device is not downloaded again from the Google Books API on
+ * the others. First the books the server accepted after the last one
+ * downloaded are downloaded, then the books changed locally, found in the
+ * log of changes after the last change uploaded, are uploaded. Both travel
+ * in batches of {@link #BATCH_SIZE} books, and the position reached is
+ * stored after each one, so an interrupted sync goes on where it stopped.
+ * Conflicts are resolved per book by {@link BookEntry#COLUMN_MODIFIED_AT}:
+ * the last writer wins, here and on the server. Covers are not exchanged.
+ * Like {@link MetadataRefresher}, a run is a job of the lowest priority lane
+ * of {@link BookService}'s queue and waits while there are jobs in the other
+ * lanes.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see SyncClient
+ */
+final class SyncEngine {
+
+    /**
+     * Number of books uploaded, or downloaded and written, at once.
+     */
+    static final int BATCH_SIZE = 100;
+
+    /**
+     * Name of the preferences where the position of the sync is stored.
+     */
+    static final String PREFERENCES_NAME = "sync";
+
+    /**
+     * Key of the sequence number of the last change uploaded, from
+     * {@link ChangeEntry}.
+     */
+    static final String KEY_LOCAL_SEQ = "localSeq";
+
+    /**
+     * Key of the sequence number of the last book downloaded from the server.
+     */
+    static final String KEY_SERVER_SEQ = "serverSeq";
+
+    /**
+     * Pause while there are jobs of higher priority, in milliseconds.
+     */
+    private static final long BUSY_PAUSE_MILLIS = 1000L;
+
+    /**
+     * Identifies messages written to the log by this class.
+     */
+    private static final String LOG_TAG = SyncEngine.class.getSimpleName();
+
+    /**
+     * Matches the URLs of covers that other devices can download, unlike
+     * those stored by {@link LibraryBackupService} on this one.
+     */
+    private static final String PATTERN_REMOTE_URL = "(?i)https?://.*";
+
+    /**
+     * Columns read from the books uploaded.
+     */
+    private static final String[] BOOK_PROJECTION = {
+        BookEntry._ID
+        , BookEntry.COLUMN_TITLE
+        , BookEntry.COLUMN_SUBTITLE
+        , BookEntry.COLUMN_DESCRIPTION
+        , BookEntry.COLUMN_COVER_IMAGE_URL
+        , BookEntry.COLUMN_MODIFIED_AT
+        , BookEntry.COLUMN_DELETED_AT
+    };
+
+    /**
+     * Index of {@link BookEntry#_ID} in {@link #BOOK_PROJECTION}.
+     */
+    private static final int COL_BOOK_ID = 0;
+
+    /**
+     * Index of {@link BookEntry#COLUMN_TITLE} in {@link #BOOK_PROJECTION}.
+     */
+    private static final int COL_BOOK_TITLE = 1;
+
+    /**
+     * Index of {@link BookEntry#COLUMN_SUBTITLE} in {@link #BOOK_PROJECTION}.
+     */
+    private static final int COL_BOOK_SUBTITLE = 2;
+
+    /**
+     * Index of {@link BookEntry#COLUMN_DESCRIPTION} in {@link #BOOK_PROJECTION}.
+     */
+    private static final int COL_BOOK_DESCRIPTION = 3;
+
+    /**
+     * Index of {@link BookEntry#COLUMN_COVER_IMAGE_URL} in
+     * {@link #BOOK_PROJECTION}.
+     */
+    private static final int COL_BOOK_COVER_IMAGE_URL = 4;
+
+    /**
+     * Index of {@link BookEntry#COLUMN_MODIFIED_AT} in {@link #BOOK_PROJECTION}.
+     */
+    private static final int COL_BOOK_MODIFIED_AT = 5;
+
+    /**
+     * Index of {@link BookEntry#COLUMN_DELETED_AT} in {@link #BOOK_PROJECTION}.
+     */
+    private static final int COL_BOOK_DELETED_AT = 6;
+
+    /**
+     * Columns read from the authors and categories uploaded. Both tables
+     * have the same column names.
+     */
+    private static final String[] NAME_PROJECTION = {
+        AuthorEntry.COLUMN_BOOK_ID
+        , AuthorEntry.COLUMN_NAME
+    };
+
+    /**
+     * Index of the book id in {@link #NAME_PROJECTION}.
+     */
+    private static final int COL_NAME_BOOK_ID = 0;
+
+    /**
+     * Index of the name in {@link #NAME_PROJECTION}.
+     */
+    private static final int COL_NAME = 1;
+
+    /**
+     * Columns read from the log of changes.
+     */
+    private static final String[] CHANGE_PROJECTION = {
+        ChangeEntry._ID
+        , ChangeEntry.COLUMN_BOOK_ID
+        , ChangeEntry.COLUMN_OPERATION
+    };
+
+    /**
+     * Index of {@link ChangeEntry#_ID} in {@link #CHANGE_PROJECTION}.
+     */
+    private static final int COL_CHANGE_SEQ = 0;
+
+    /**
+     * Index of {@link ChangeEntry#COLUMN_BOOK_ID} in {@link #CHANGE_PROJECTION}.
+     */
+    private static final int COL_CHANGE_BOOK_ID = 1;
+
+    /**
+     * Index of {@link ChangeEntry#COLUMN_OPERATION} in
+     * {@link #CHANGE_PROJECTION}.
+     */
+    private static final int COL_CHANGE_OPERATION = 2;
+
+    /**
+     * Selects the books modified since they were last exchanged with the
+     * server.
+     */
+    private static final String SELECTION_NOT_SYNCED = "(" + BookEntry.COLUMN_SYNCED_AT
+            + " IS NULL OR " + BookEntry.COLUMN_SYNCED_AT + " <> "
+            + BookEntry.COLUMN_MODIFIED_AT + ")";
+
+    /**
+     * Selects the book with the id specified as argument.
+     */
+    private static final String SELECTION_BOOK_ID = BookEntry._ID + " = ?";
+
+    /**
+     * Selects the book with the id and modification time specified as
+     * arguments, so that a book modified while it was uploaded is not
+     * marked as synced.
+     */
+    private static final String SELECTION_BOOK_VERSION = SELECTION_BOOK_ID + " AND "
+            + BookEntry.COLUMN_MODIFIED_AT + " = ?";
+
+    /**
+     * Selects the authors or categories of the book with the id specified as
+     * argument. Both tables have the same column names.
+     */
+    private static final String SELECTION_NAME_BOOK_ID = AuthorEntry.COLUMN_BOOK_ID + " = ?";
+
+    /**
+     * The {@link Context} used to access the {@code ContentProvider}.
+     */
+    private final Context mContext;
+
+    /**
+     * The job of the run, checked for cancellation.
+     */
+    private final Job mJob;
+
+    /**
+     * The queue of the job, checked for jobs of higher priority.
+     */
+    private final JobQueue mQueue;
+
+    /**
+     * Exchanges the books with the server.
+     */
+    private final SyncClient mClient;
+
+    /**
+     * Where the position of the sync is stored.
+     */
+    private final SharedPreferences mPreferences;
+
+    /**
+     * Reused to hold the books of a batch.
+     */
+    private final List<BookRecord> mBatch = new ArrayList<>(BATCH_SIZE);
+
+    /**
+     * Creates a new {@link SyncEngine}. The sync must be enabled.
+     *
+     * @param context the {@link Context} used to access the
+     *     {@code ContentProvider}.
+     * @param job the job of the run.
+     * @param queue the queue of the job.
+     * @see BookService#isSyncEnabled(Context)
+     */
+    SyncEngine(Context context, Job job, JobQueue queue) {
+        this(context, job, queue
+                , new SyncClient(context.getString(R.string.sync_server_url)));
+    }
+
+    /**
+     * Creates a new {@link SyncEngine} that syncs with the server of a
+     * client, such as a test server.
+     *
+     * @param context the {@link Context} used to access the
+     *     {@code ContentProvider}.
+     * @param job the job of the run.
+     * @param queue the queue of the job.
+     * @param client exchanges the books with the server.
+     */
+    SyncEngine(Context context, Job job, JobQueue queue, SyncClient client) {
+        mContext = context.getApplicationContext();
+        mJob = job;
+        mQueue = queue;
+        mClient = client;
+        mPreferences = mContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mBatch.add(new BookRecord());
+        }
+    }
+
+    /**
+     * Downloads the books changed on the server and uploads those changed
+     * locally. Blocks until done, so it must not be called on the main
+     * thread. If the server cannot be reached, or the job is cancelled, the
+     * batches already exchanged are kept.
+     *
+     * @return the number of books downloaded and uploaded that were newer
+     *     than the version they replaced.
+     */
+    int sync() {
+        int downloadedCount = 0;
+        int uploadedCount = 0;
+        try {
+            downloadedCount = download();
+            uploadedCount = upload();
+        } catch (IOException | RemoteException | OperationApplicationException e) {
+            Log.w(LOG_TAG, "Unable to sync the library", e);
+        }
+        Log.i(LOG_TAG, "Downloaded " + downloadedCount + " and uploaded "
+                + uploadedCount + " books");
+        return downloadedCount + uploadedCount;
+    }
+
+    /**
+     * Downloads, a batch at a time, the books accepted by the server after
+     * the last one downloaded, and writes those more recent than the local
+     * version.
+     *
+     * @return the number of books written.
+     * @throws IOException if the books cannot be downloaded.
+     * @throws RemoteException if the {@code ContentProvider} fails.
+     * @throws OperationApplicationException if a batch cannot be written.
+     */
+    private int download()
+            throws IOException, RemoteException, OperationApplicationException {
+        long seq = mPreferences.getLong(KEY_SERVER_SEQ, 0L);
+        int writtenCount = 0;
+        boolean more = true;
+        while (more && waitForTurn()) {
+            SyncClient.Page page = mClient.download(seq, BATCH_SIZE);
+            int size = 0;
+            try {
+                while (size < BATCH_SIZE && page.readBook(mBatch.get(size))) {
+                    size++;
+                }
+            } finally {
+                page.close();
+            }
+            writtenCount += writeDownloaded(size);
+            seq = page.getSeq();
+            more = page.hasMore();
+            mPreferences.edit().putLong(KEY_SERVER_SEQ, seq).apply();
+        }
+        return writtenCount;
+    }
+
+    /**
+     * Writes the books of a downloaded batch more recent than the local
+     * version, in a single transaction, marking them as synced. Books
+     * deleted on another device are not added if they are not in the
+     * library.
+     *
+     * @param size the number of books in the batch.
+     * @return the number of books written.
+     * @throws RemoteException if the {@code ContentProvider} fails.
+     * @throws OperationApplicationException if the batch cannot be written.
+     */
+    private int writeDownloaded(int size)
+            throws RemoteException, OperationApplicationException {
+        Map<Long, Long> localVersions = findLocalVersions(size);
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            BookRecord book = mBatch.get(i);
+            final long id = book.getId();
+            final Long localVersion = localVersions.get(id);
+            if (!Isbn.isValidIsbn13(id) || book.getTitle() == null
+                    || (localVersion == null && book.getDeletedAt() != 0L)
+                    || (localVersion != null && book.getModifiedAt() <= localVersion)) {
+                continue;
+            }
+            addWriteOperations(operations, book, localVersion != null);
+            // Any later version of the book in the batch is compared with this one
+            localVersions.put(id, book.getModifiedAt());
+            count++;
+        }
+        if (!operations.isEmpty()) {
+            mContext.getContentResolver().applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+        }
+        return count;
+    }
+
+    /**
+     * Adds the operations that write a downloaded book, replacing its
+     * authors and categories. The book's data is considered as fresh as its
+     * modification, so it is not downloaded again from the Google Books API
+     * until it becomes stale.
+     *
+     * @param operations where the operations are added.
+     * @param book the downloaded book.
+     * @param exists {@code true} if the book is in the library, maybe deleted.
+     */
+    private static void addWriteOperations(ArrayList<ContentProviderOperation> operations
+            , BookRecord book
+            , boolean exists) {
+        final long id = book.getId();
+        final String[] idArgs = {Long.toString(id)};
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_TITLE, book.getTitle());
+        values.put(BookEntry.COLUMN_SUBTITLE, book.getSubtitle());
+        values.put(BookEntry.COLUMN_DESCRIPTION, book.getDescription());
+        if (book.getCoverUrl() != null) {
+            values.put(BookEntry.COLUMN_COVER_IMAGE_URL, book.getCoverUrl());
+        }
+        values.put(BookEntry.COLUMN_MODIFIED_AT, book.getModifiedAt());
+        values.put(BookEntry.COLUMN_SYNCED_AT, book.getModifiedAt());
+        values.put(BookEntry.COLUMN_FETCHED_AT, book.getModifiedAt());
+        if (book.getDeletedAt() != 0L) {
+            values.put(BookEntry.COLUMN_DELETED_AT, book.getDeletedAt());
+        } else {
+            values.putNull(BookEntry.COLUMN_DELETED_AT);
+        }
+        if (exists) {
+            operations.add(ContentProviderOperation.newUpdate(BookEntry.CONTENT_URI)
+                    .withSelection(SELECTION_BOOK_ID, idArgs)
+                    .withValues(values)
+                    .build());
+            operations.add(ContentProviderOperation.newDelete(AuthorEntry.CONTENT_URI)
+                    .withSelection(SELECTION_NAME_BOOK_ID, idArgs)
+                    .build());
+            operations.add(ContentProviderOperation.newDelete(CategoryEntry.CONTENT_URI)
+                    .withSelection(SELECTION_NAME_BOOK_ID, idArgs)
+                    .build());
+        } else {
+            values.put(BookEntry._ID, id);
+            operations.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI)
+                    .withValues(values)
+                    .build());
+        }
+        for (String author : book.getAuthors()) {
+            operations.add(ContentProviderOperation.newInsert(AuthorEntry.CONTENT_URI)
+                    .withValue(AuthorEntry.COLUMN_BOOK_ID, id)
+                    .withValue(AuthorEntry.COLUMN_NAME, author)
+                    .build());
+        }
+        for (String category : book.getCategories()) {
+            operations.add(ContentProviderOperation.newInsert(CategoryEntry.CONTENT_URI)
+                    .withValue(CategoryEntry.COLUMN_BOOK_ID, id)
+                    .withValue(CategoryEntry.COLUMN_NAME, category)
+                    .build());
+        }
+    }
+
+    /**
+     * Returns the local versions of the books of a downloaded batch, deleted
+     * or not, with a single query.
+     *
+     * @param size the number of books in the batch.
+     * @return the {@link BookEntry#COLUMN_MODIFIED_AT} of the books in the
+     *     library, by id.
+     */
+    private Map<Long, Long> findLocalVersions(int size) {
+        Map<Long, Long> versions = new HashMap<>();
+        if (size == 0) {
+            return versions;
+        }
+        String[] ids = new String[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = Long.toString(mBatch.get(i).getId());
+        }
+        Cursor cursor = mContext.getContentResolver().query(
+                BookContract.buildIncludeDeletedUri(BookEntry.CONTENT_URI)
+                , new String[] {BookEntry._ID, BookEntry.COLUMN_MODIFIED_AT}
+                , buildSelectionIn(BookEntry._ID, size)
+                , ids
+                , null);
+        try {
+            while (cursor.moveToNext()) {
+                versions.put(cursor.getLong(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return versions;
+    }
+
+    /**
+     * Uploads, a batch at a time, the books changed locally since they were
+     * last exchanged with the server. The candidates are the books in the
+     * log of changes after the last change uploaded, or every book if the
+     * log was compacted past it. Each batch is marked as synced once the
+     * server receives it.
+     *
+     * @return the number of books the server kept.
+     * @throws IOException if the books cannot be uploaded.
+     * @throws RemoteException if the {@code ContentProvider} fails.
+     * @throws OperationApplicationException if a batch cannot be marked as
+     *     synced.
+     */
+    private int upload() throws IOException, RemoteException, OperationApplicationException {
+        final long localSeq = mPreferences.getLong(KEY_LOCAL_SEQ, 0L);
+        Set<Long> changedIds = new LinkedHashSet<>();
+        long lastSeq = localSeq;
+        boolean reset = localSeq == 0L;
+        Cursor cursor = mContext.getContentResolver().query(
+                ChangeEntry.buildChangesSinceUri(localSeq), CHANGE_PROJECTION, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                lastSeq = cursor.getLong(COL_CHANGE_SEQ);
+                if (cursor.getInt(COL_CHANGE_OPERATION) == ChangeEntry.OPERATION_RESET) {
+                    reset = true;
+                } else if (!cursor.isNull(COL_CHANGE_BOOK_ID)) {
+                    changedIds.add(cursor.getLong(COL_CHANGE_BOOK_ID));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        List<Long> ids = reset ? findNotSyncedBooks() : new ArrayList<>(changedIds);
+
+        int acceptedCount = 0;
+        for (int start = 0; start < ids.size(); start += BATCH_SIZE) {
+            if (!waitForTurn()) {
+                return acceptedCount;
+            }
+            final int size = readBatch(ids.subList(start
+                    , Math.min(start + BATCH_SIZE, ids.size())));
+            if (size > 0) {
+                acceptedCount += mClient.upload(mBatch, size);
+                markSynced(size);
+            }
+        }
+        mPreferences.edit().putLong(KEY_LOCAL_SEQ, lastSeq).apply();
+        return acceptedCount;
+    }
+
+    /**
+     * Returns the ids of every book, deleted or not, modified since it was
+     * last exchanged with the server.
+     *
+     * @return the ids of the books not synced.
+     */
+    private List<Long> findNotSyncedBooks() {
+        List<Long> ids = new ArrayList<>();
+        Cursor cursor = mContext.getContentResolver().query(
+                BookContract.buildIncludeDeletedUri(BookEntry.CONTENT_URI)
+                , new String[] {BookEntry._ID}
+                , SELECTION_NOT_SYNCED
+                , null
+                , null);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Reads into {@link #mBatch} those of the specified books, deleted or
+     * not, modified since they were last exchanged with the server, with
+     * their authors and categories. Books, authors and categories are read
+     * with one query each, sorted by book id, and merged.
+     *
+     * @param ids the ids of the candidate books, at most {@link #BATCH_SIZE}.
+     * @return the number of books read.
+     */
+    private int readBatch(List<Long> ids) {
+        final String[] idArgs = new String[ids.size()];
+        for (int i = 0; i < idArgs.length; i++) {
+            idArgs[i] = ids.get(i).toString();
+        }
+        ContentResolver resolver = mContext.getContentResolver();
+        Cursor books = null;
+        Cursor authors = null;
+        Cursor categories = null;
+        try {
+            books = resolver.query(BookContract.buildIncludeDeletedUri(BookEntry.CONTENT_URI)
+                    , BOOK_PROJECTION
+                    , buildSelectionIn(BookEntry._ID, idArgs.length)
+                            + " AND " + SELECTION_NOT_SYNCED
+                    , idArgs
+                    , BookEntry._ID);
+            authors = resolver.query(BookContract.buildIncludeDeletedUri(AuthorEntry.CONTENT_URI)
+                    , NAME_PROJECTION
+                    , buildSelectionIn(AuthorEntry.COLUMN_BOOK_ID, idArgs.length)
+                    , idArgs
+                    , AuthorEntry.COLUMN_BOOK_ID);
+            categories = resolver.query(
+                    BookContract.buildIncludeDeletedUri(CategoryEntry.CONTENT_URI)
+                    , NAME_PROJECTION
+                    , buildSelectionIn(CategoryEntry.COLUMN_BOOK_ID, idArgs.length)
+                    , idArgs
+                    , CategoryEntry.COLUMN_BOOK_ID);
+            authors.moveToFirst();
+            categories.moveToFirst();
+            int size = 0;
+            while (books.moveToNext()) {
+                BookRecord book = mBatch.get(size++);
+                book.clear();
+                book.setId(books.getLong(COL_BOOK_ID));
+                book.setTitle(books.getString(COL_BOOK_TITLE));
+                book.setSubtitle(books.getString(COL_BOOK_SUBTITLE));
+                book.setDescription(books.getString(COL_BOOK_DESCRIPTION));
+                // Covers stored on this device are useless to the others
+                final String coverUrl = books.getString(COL_BOOK_COVER_IMAGE_URL);
+                if (coverUrl != null && coverUrl.matches(PATTERN_REMOTE_URL)) {
+                    book.setCoverUrl(coverUrl);
+                }
+                book.setModifiedAt(books.getLong(COL_BOOK_MODIFIED_AT));
+                book.setDeletedAt(books.getLong(COL_BOOK_DELETED_AT));
+                readNames(authors, book.getId(), book.getAuthors());
+                readNames(categories, book.getId(), book.getCategories());
+            }
+            return size;
+        } finally {
+            closeQuietly(books);
+            closeQuietly(authors);
+            closeQuietly(categories);
+        }
+    }
+
+    /**
+     * Marks the books of an uploaded batch as synced, in a single
+     * transaction, unless they were modified again since they were read.
+     *
+     * @param size the number of books in the batch.
+     * @throws RemoteException if the {@code ContentProvider} fails.
+     * @throws OperationApplicationException if the batch cannot be written.
+     */
+    private void markSynced(int size) throws RemoteException, OperationApplicationException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            BookRecord book = mBatch.get(i);
+            operations.add(ContentProviderOperation.newUpdate(BookEntry.CONTENT_URI)
+                    .withSelection(SELECTION_BOOK_VERSION, new String[] {
+                        Long.toString(book.getId())
+                        , Long.toString(book.getModifiedAt())
+                    })
+                    .withValue(BookEntry.COLUMN_SYNCED_AT, book.getModifiedAt())
+                    .build());
+        }
+        mContext.getContentResolver().applyBatch(BookContract.CONTENT_AUTHORITY, operations);
+    }
+
+    /**
+     * Waits while there are jobs of higher priority in the queue.
+     *
+     * @return {@code true} if the sync can go on, {@code false} if the job
+     *     was cancelled.
+     */
+    private boolean waitForTurn() {
+        while (mQueue.isBusyAbove(mJob.getLane()) && !mJob.isCancelled()) {
+            SystemClock.sleep(BUSY_PAUSE_MILLIS);
+        }
+        return !mJob.isCancelled();
+    }
+
+    /**
+     * Returns a selection of the rows whose column is one of as many
+     * arguments as specified.
+     *
+     * @param column the column compared.
+     * @param count the number of arguments.
+     * @return the selection.
+     */
+    private static String buildSelectionIn(String column, int count) {
+        StringBuilder selection = new StringBuilder(column).append(" IN (");
+        for (int i = 0; i < count; i++) {
+            selection.append(i == 0 ? "?" : ",?");
+        }
+        return selection.append(')').toString();
+    }
+
+    /**
+     * Adds to the list the names of the rows, from the current position of
+     * the cursor, related to the specified book. The cursor must be sorted by
+     * book id, and is left at the first row of the next book.
+     *
+     * @param cursor the authors or categories, sorted by book id.
+     * @param bookId the id of the book whose names are read.
+     * @param names where the names are added.
+     */
+    private static void readNames(Cursor cursor, long bookId, List<String> names) {
+        while (!cursor.isAfterLast() && cursor.getLong(COL_NAME_BOOK_ID) <= bookId) {
+            if (cursor.getLong(COL_NAME_BOOK_ID) == bookId) {
+                names.add(cursor.getString(COL_NAME));
+            }
+            cursor.moveToNext();
+        }
+    }
+
+    /**
+     * Closes the cursor, if not {@code null}.
+     *
+     * @param cursor the cursor to close, possibly {@code null}.
+     */
+    private static void closeQuietly(Cursor cursor) {
+        if (cursor != null) {
+            cursor.close();
+        }
+    }
+
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.sync;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+
+import it.jaschke.alexandria.backup.BookRecord;
+import it.jaschke.alexandria.backup.LibraryReader;
+import it.jaschke.alexandria.backup.LibraryWriter;
+
+/**
+ * Exchanges books with the sync server. The server keeps the last version
+ * of each book, identified by its ISBN-13, and numbers the versions it
+ * accepts with a sequence that only grows. Books travel in the format of the
+ * library backups, with their {@link BookRecord#getModifiedAt()} as their
+ * version and without covers.
+ * <ul>
+ * <li>{@code POST} {@value #PATH_BOOKS} uploads a batch of books. The
+ * server keeps those more recent than the version it has, so the last writer
+ * wins, and answers with the number it kept in {@value #HEADER_ACCEPTED}.</li>
+ * <li>{@code GET} {@value #PATH_BOOKS}{@code ?}{@value #PARAMETER_SINCE}
+ * {@code =s&}{@value #PARAMETER_LIMIT}{@code =n} downloads, in the order
+ * they were accepted, up to {@code n} books accepted after the sequence
+ * number {@code s}. The server answers with the sequence number of the last
+ * book in {@value #HEADER_SEQ}, to be passed as {@code s} next time, and
+ * whether more books follow it in {@value #HEADER_MORE}.</li>
+ * </ul>
+ * Instances hold no connections between requests, and can be shared by
+ * several threads.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class SyncClient {
+
+    /**
+     * Path of the books, relative to the server's URL.
+     */
+    public static final String PATH_BOOKS = "books";
+
+    /**
+     * Query parameter of the sequence number after which books are downloaded.
+     */
+    public static final String PARAMETER_SINCE = "since";
+
+    /**
+     * Query parameter of the maximum number of books downloaded.
+     */
+    public static final String PARAMETER_LIMIT = "limit";
+
+    /**
+     * Response header with the sequence number of the last book downloaded.
+     */
+    public static final String HEADER_SEQ = "X-Sync-Seq";
+
+    /**
+     * Response header that is {@code true} if more books follow those
+     * downloaded.
+     */
+    public static final String HEADER_MORE = "X-Sync-More";
+
+    /**
+     * Response header with the number of books uploaded that the server kept.
+     */
+    public static final String HEADER_ACCEPTED = "X-Sync-Accepted";
+
+    /**
+     * Content type of the books uploaded and downloaded.
+     */
+    public static final String CONTENT_TYPE = "application/x-alexandria-library";
+
+    /**
+     * Time allowed to connect to the server, and to wait for its data, in
+     * milliseconds.
+     */
+    static final int TIMEOUT_MILLIS = 30000;
+
+    /**
+     * URL of the books on the server.
+     */
+    private final String mBooksUrl;
+
+    /**
+     * Creates a new {@link SyncClient}.
+     *
+     * @param serverUrl the URL of the sync server, e.g.
+     *     {@code http://192.168.1.2:8080/alexandria/}.
+     */
+    public SyncClient(String serverUrl) {
+        mBooksUrl = (serverUrl.endsWith("/") ? serverUrl : serverUrl + "/") + PATH_BOOKS;
+    }
+
+    /**
+     * Uploads a batch of books, streaming them as they are written. Blocks
+     * until the server answers, so it must not be called on the main thread.
+     *
+     * @param books the books to upload.
+     * @param size the number of books of the list to upload, from the first.
+     * @return the number of books kept by the server, those more recent than
+     *     the version it had.
+     * @throws IOException if the books cannot be uploaded.
+     */
+    public int upload(List<BookRecord> books, int size) throws IOException {
+        HttpURLConnection connection = open(new URL(mBooksUrl));
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setChunkedStreamingMode(0);
+            connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+            LibraryWriter writer = new LibraryWriter(connection.getOutputStream());
+            try {
+                for (int i = 0; i < size; i++) {
+                    writer.writeBook(books.get(i));
+                }
+                writer.finish();
+            } finally {
+                writer.close();
+            }
+            checkResponse(connection);
+            return (int) getLongHeader(connection, HEADER_ACCEPTED);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Starts downloading the books accepted by the server after a sequence
+     * number. The books are read from the returned {@link Page}, which must
+     * be closed.
+     *
+     * @param since the sequence number of the last book downloaded before,
+     *     {@code 0} for all.
+     * @param limit the maximum number of books to download.
+     * @return the page of books.
+     * @throws IOException if the download cannot be started.
+     */
+    public Page download(long since, int limit) throws IOException {
+        HttpURLConnection connection = open(new URL(mBooksUrl + "?" + PARAMETER_SINCE + "="
+                + since + "&" + PARAMETER_LIMIT + "=" + limit));
+        try {
+            checkResponse(connection);
+            return new Page(connection
+                    , new LibraryReader(connection.getInputStream())
+                    , getLongHeader(connection, HEADER_SEQ)
+                    , Boolean.parseBoolean(connection.getHeaderField(HEADER_MORE)));
+        } catch (IOException | RuntimeException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a connection to the server, with the timeouts set.
+     *
+     * @param url the URL to connect to.
+     * @return the connection, not connected yet.
+     * @throws IOException if the connection cannot be opened.
+     */
+    private static HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        return connection;
+    }
+
+    /**
+     * Checks that the server handled the request.
+     *
+     * @param connection the connection the request was sent through.
+     * @throws IOException if the server did not answer, or answered with an
+     *     error.
+     */
+    private static void checkResponse(HttpURLConnection connection) throws IOException {
+        final int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            throw new IOException("Sync server answered " + status + " to "
+                    + connection.getRequestMethod() + " " + connection.getURL());
+        }
+    }
+
+    /**
+     * Returns the value of a numeric response header.
+     *
+     * @param connection the connection the request was sent through.
+     * @param name the header's name.
+     * @return the header's value.
+     * @throws IOException if the header is missing or not a number.
+     */
+    private static long getLongHeader(HttpURLConnection connection, String name)
+            throws IOException {
+        final String value = connection.getHeaderField(name);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid " + name + " header " + value, e);
+        }
+    }
+
+    /**
+     * A page of books being downloaded. Closing it ends the download.
+     */
+    public static final class Page implements Closeable {
+
+        /**
+         * The connection the books are downloaded through.
+         */
+        private final HttpURLConnection mConnection;
+
+        /**
+         * Reads the books as they are downloaded.
+         */
+        private final LibraryReader mReader;
+
+        /**
+         * The sequence number of the last book of the page.
+         */
+        private final long mSeq;
+
+        /**
+         * Indicates if more books follow those of the page.
+         */
+        private final boolean mMore;
+
+        /**
+         * Creates a new {@link Page}.
+         *
+         * @param connection the connection the books are downloaded through.
+         * @param reader reads the books as they are downloaded.
+         * @param seq the sequence number of the last book of the page.
+         * @param more {@code true} if more books follow those of the page.
+         */
+        Page(HttpURLConnection connection, LibraryReader reader, long seq, boolean more) {
+            mConnection = connection;
+            mReader = reader;
+            mSeq = seq;
+            mMore = more;
+        }
+
+        /**
+         * Reads the next book of the page.
+         *
+         * @param book where the book is read into. Cleared first.
+         * @return {@code true} if a book was read, {@code false} if there
+         *     are no more books in the page.
+         * @throws IOException if the book cannot be downloaded.
+         */
+        public boolean readBook(BookRecord book) throws IOException {
+            return mReader.readBook(book);
+        }
+
+        /**
+         * Returns the sequence number of the last book of the page, from
+         * which the next page is downloaded. Should only be stored once the
+         * books of the page are applied.
+         *
+         * @return the sequence number of the last book of the page.
+         */
+        public long getSeq() {
+            return mSeq;
+        }
+
+        /**
+         * Returns {@code true} if more books follow those of the page.
+         *
+         * @return {@code true} if more books follow those of the page.
+         */
+        public boolean hasMore() {
+            return mMore;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                mReader.close();
+            } finally {
+                mConnection.disconnect();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.util;
+
+/**
+ * A thread safe histogram of durations, with buckets whose bounds grow
+ * exponentially: the first holds durations under a millisecond, each of the
+ * following holds durations up to twice as long as the previous one, and the
+ * last one holds everything longer. Recording a duration does not allocate,
+ * so it can be done on every operation. Percentiles are approximated by the
+ * upper bound of the bucket they fall in.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public final class Histogram {
+
+    /**
+     * Number of buckets. The last one holds durations of 65.5 seconds or more.
+     */
+    static final int BUCKET_COUNT = 18;
+
+    /**
+     * Nanoseconds in a millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * Hundred percent.
+     */
+    private static final int HUNDRED = 100;
+
+    /**
+     * Number of durations recorded in each bucket.
+     */
+    private final long[] mBuckets = new long[BUCKET_COUNT];
+
+    /**
+     * Number of durations recorded.
+     */
+    private long mCount;
+
+    /**
+     * Longest duration recorded, in nanoseconds.
+     */
+    private long mMaxNanos;
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration, in nanoseconds. Negative durations are
+     *     recorded as zero.
+     */
+    public synchronized void record(long nanos) {
+        final long duration = Math.max(nanos, 0L);
+        mBuckets[getBucket(duration / NANOS_PER_MILLI)]++;
+        mCount++;
+        mMaxNanos = Math.max(mMaxNanos, duration);
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the longest duration recorded.
+     *
+     * @return the longest duration, in milliseconds, {@code 0} if none was
+     *     recorded.
+     */
+    public synchronized long getMaxMillis() {
+        return mMaxNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Returns an approximation of a percentile of the durations recorded,
+     * the upper bound of the bucket it falls in, but never more than the
+     * longest duration recorded.
+     *
+     * @param percentile the percentile, from 1 to 100.
+     * @return the percentile, in milliseconds, {@code 0} if no duration was
+     *     recorded.
+     */
+    public synchronized long getPercentileMillis(int percentile) {
+        if (percentile < 1 || percentile > HUNDRED) {
+            throw new IllegalArgumentException("Invalid percentile " + percentile);
+        }
+        final long rank = (percentile * mCount + HUNDRED - 1) / HUNDRED;
+        long seen = 0L;
+        for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+            seen += mBuckets[i];
+            if (seen >= rank && seen > 0L) {
+                return Math.min(getUpperBoundMillis(i), getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * Returns the bucket that holds a duration.
+     *
+     * @param millis the duration, in milliseconds.
+     * @return the index of the bucket.
+     */
+    static int getBucket(long millis) {
+        // Bucket i > 0 holds [2^(i - 1), 2^i) milliseconds
+        final int bucket = Long.SIZE - Long.numberOfLeadingZeros(millis);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Returns the upper bound of a bucket, excluded.
+     *
+     * @param bucket the index of the bucket, but the last one.
+     * @return the upper bound of the bucket, in milliseconds.
+     */
+    static long getUpperBoundMillis(int bucket) {
+        return 1L << bucket;
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.util;
+
+/**
+ * Validates ISBN-13 and ISBN-10 numbers, check digit included, and converts
+ * ISBN-10 numbers to ISBN-13. The validation methods do not allocate memory,
+ * so they can be called on every keystroke or camera frame.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public final class Isbn {
+
+    /**
+     * Number of digits in an ISBN-13.
+     */
+    public static final int ISBN13_LENGTH = 13;
+
+    /**
+     * Number of characters in an ISBN-10, check digit included.
+     */
+    public static final int ISBN10_LENGTH = 10;
+
+    /**
+     * Smallest ISBN-13 number, the first with the 978 prefix.
+     */
+    private static final long MIN_ISBN13 = 9780000000000L;
+
+    /**
+     * Largest ISBN-13 number, the last with the 979 prefix.
+     */
+    private static final long MAX_ISBN13 = 9799999999999L;
+
+    /**
+     * Prefix prepended to ISBN-10 numbers to convert them to ISBN-13.
+     */
+    private static final String ISBN10_PREFIX = "978";
+
+    /**
+     * Weight of the digits in odd positions of an ISBN-13 checksum. The digits
+     * in even positions have weight 1.
+     */
+    private static final int ISBN13_ODD_WEIGHT = 3;
+
+    /**
+     * Modulus of the ISBN-13 checksum.
+     */
+    private static final int ISBN13_MODULUS = 10;
+
+    /**
+     * Modulus of the ISBN-10 checksum.
+     */
+    private static final int ISBN10_MODULUS = 11;
+
+    /**
+     * Value of the {@code X} check digit of ISBN-10 numbers.
+     */
+    private static final int ISBN10_X_VALUE = 10;
+
+    /**
+     * Offset of the Bookland prefix's last digit (8 in 978 or 9 in 979).
+     */
+    private static final int PREFIX_LAST_DIGIT = 2;
+
+    /**
+     * The class only provides constants and utility methods.
+     */
+    private Isbn() {
+        // Empty constructor
+    }
+
+    /**
+     * Returns {@code true} if the argument is a valid ISBN-13. That is, it is
+     * made of 13 digits, starts with 978 or 979 and its check digit is right.
+     *
+     * @param code the text to check, possibly {@code null}.
+     * @return {@code true} if the argument is a valid ISBN-13.
+     */
+    public static boolean isValidIsbn13(CharSequence code) {
+        if (code == null || code.length() != ISBN13_LENGTH
+                || code.charAt(0) != '9' || code.charAt(1) != '7'
+                || (code.charAt(PREFIX_LAST_DIGIT) != '8'
+                        && code.charAt(PREFIX_LAST_DIGIT) != '9')) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < ISBN13_LENGTH; i++) {
+            final char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            sum += (i % 2 == 0) ? c - '0' : ISBN13_ODD_WEIGHT * (c - '0');
+        }
+        return sum % ISBN13_MODULUS == 0;
+    }
+
+    /**
+     * Returns {@code true} if the argument is a valid ISBN-13, as in
+     * {@link #isValidIsbn13(CharSequence)}.
+     *
+     * @param isbn the number to check.
+     * @return {@code true} if the argument is a valid ISBN-13.
+     */
+    public static boolean isValidIsbn13(long isbn) {
+        if (isbn < MIN_ISBN13 || isbn > MAX_ISBN13) {
+            return false;
+        }
+        // Digits are taken from the last one, which is in an even position
+        int sum = 0;
+        long remaining = isbn;
+        for (int i = ISBN13_LENGTH - 1; i >= 0; i--) {
+            final int digit = (int) (remaining % ISBN13_MODULUS);
+            sum += (i % 2 == 0) ? digit : ISBN13_ODD_WEIGHT * digit;
+            remaining /= ISBN13_MODULUS;
+        }
+        return sum % ISBN13_MODULUS == 0;
+    }
+
+    /**
+     * Returns {@code true} if the argument is a valid ISBN-10. That is, it is
+     * made of 9 digits followed by a check digit, which may be {@code X}, and
+     * the check digit is right.
+     *
+     * @param code the text to check, possibly {@code null}.
+     * @return {@code true} if the argument is a valid ISBN-10.
+     */
+    public static boolean isValidIsbn10(CharSequence code) {
+        if (code == null || code.length() != ISBN10_LENGTH) {
+            return false;
+        }
+        int sum = 0;
+        for (int i = 0; i < ISBN10_LENGTH; i++) {
+            final char c = code.charAt(i);
+            int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (i == ISBN10_LENGTH - 1 && (c == 'X' || c == 'x')) {
+                digit = ISBN10_X_VALUE;
+            } else {
+                return false;
+            }
+            sum += (ISBN10_LENGTH - i) * digit;
+        }
+        return sum % ISBN10_MODULUS == 0;
+    }
+
+    /**
+     * Returns the ISBN-13 equivalent to the argument, which may be either an
+     * ISBN-13 or an ISBN-10. Hyphens and spaces are ignored.
+     *
+     * @param code the ISBN-13 or ISBN-10, possibly {@code null}.
+     * @return the ISBN-13, or {@code null} if the argument is not a valid
+     *     ISBN-13 or ISBN-10.
+     */
+    public static String toIsbn13(CharSequence code) {
+        if (code == null) {
+            return null;
+        }
+        StringBuilder compact = new StringBuilder(ISBN13_LENGTH);
+        for (int i = 0; i < code.length(); i++) {
+            final char c = code.charAt(i);
+            if (c != '-' && c != ' ') {
+                compact.append(c);
+            }
+        }
+        if (isValidIsbn13(compact)) {
+            return compact.toString();
+        }
+        if (!isValidIsbn10(compact)) {
+            return null;
+        }
+        // Replace the ISBN-10 check digit with the ISBN-13 one
+        compact.insert(0, ISBN10_PREFIX).setLength(ISBN13_LENGTH - 1);
+        int sum = 0;
+        for (int i = 0; i < ISBN13_LENGTH - 1; i++) {
+            final int digit = compact.charAt(i) - '0';
+            sum += (i % 2 == 0) ? digit : ISBN13_ODD_WEIGHT * digit;
+        }
+        compact.append((char) ('0' + (ISBN13_MODULUS - sum % ISBN13_MODULUS) % ISBN13_MODULUS));
+        return compact.toString();
+    }
+
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.util;
+
+import android.os.Looper;
+import android.os.StrictMode;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Printer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import it.jaschke.alexandria.BuildConfig;
+
+/**
+ * Catches the work on the main thread that causes jank, in debug builds:
+ * <ul>
+ *     <li>Calls to the {@code ContentProvider} and to the network made on
+ *     the main thread, reported by the code that does them through
+ *     {@link #checkNotMainThread(String, String)}.</li>
+ *     <li>Messages of the main thread's {@link Looper} that take longer than
+ *     {@link #LONG_MESSAGE_MILLIS}.</li>
+ *     <li>Any other disk or network access on the main thread, detected by
+ *     {@link StrictMode} and written to the log by it.</li>
+ * </ul>
+ * Each violation is attributed to its call site, the first frame of the
+ * application's code that led to it (or the {@code Handler} and callback of a
+ * long message), and aggregated by call site. The first violation of each
+ * call site is written to the log, with its stack trace, using the tag
+ * {@link #LOG_TAG}; {@link #getReport()} returns them all. In test mode
+ * (see {@link #setFailOnViolation(boolean)}) disk and network accesses throw
+ * instead, so they fail instrumentation runs. Long messages are only
+ * reported.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public final class MainThreadWatchdog {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    public static final String LOG_TAG = "AlexandriaWatchdog";
+
+    /**
+     * Kind of the violations that access the {@code ContentProvider}.
+     */
+    public static final String KIND_PROVIDER = "provider";
+
+    /**
+     * Kind of the violations that access the network.
+     */
+    public static final String KIND_NETWORK = "network";
+
+    /**
+     * Kind of the violations that are long messages.
+     */
+    public static final String KIND_LONG_MESSAGE = "long_message";
+
+    /**
+     * Duration of the main thread's messages considered too long, in
+     * milliseconds. Several frames are dropped by then.
+     */
+    static final long LONG_MESSAGE_MILLIS = 100L;
+
+    /**
+     * Prefix of the text logged by the {@link Looper} before it dispatches a
+     * message.
+     */
+    private static final String DISPATCHING_PREFIX = ">>>>> Dispatching to ";
+
+    /**
+     * Prefix of the text logged by the {@link Looper} after it dispatches a
+     * message.
+     */
+    private static final String FINISHED_PREFIX = "<<<<< Finished to ";
+
+    /**
+     * Matches the identity hash codes of the objects in the texts logged by
+     * the {@link Looper}, which change from one message to the next.
+     */
+    private static final Pattern IDENTITY_HASH_CODE =
+            Pattern.compile("( ?\\{[0-9a-f]+\\}|@[0-9a-f]+)");
+
+    /**
+     * Package of the application's code, whose frames are call sites.
+     */
+    private static final String APPLICATION_PACKAGE = "it.jaschke.alexandria.";
+
+    /**
+     * The violations of each call site, by kind and call site, in the order
+     * they were first seen. Guarded by itself.
+     */
+    private static final Map<String, Violation> VIOLATIONS = new LinkedHashMap<>();
+
+    /**
+     * Indicates if the watchdog is installed.
+     */
+    private static volatile boolean sInstalled;
+
+    /**
+     * Indicates if violations throw, instead of being reported.
+     */
+    private static volatile boolean sFailOnViolation;
+
+    /**
+     * The class only provides constants and utility methods.
+     */
+    private MainThreadWatchdog() {
+        // Empty constructor
+    }
+
+    /**
+     * Starts watching the main thread, if this is a debug build. Must be
+     * called on the main thread.
+     */
+    public static void install() {
+        if (!BuildConfig.DEBUG || sInstalled) {
+            return;
+        }
+        sInstalled = true;
+        applyThreadPolicy();
+        Looper.getMainLooper().setMessageLogging(new LongMessagePrinter());
+    }
+
+    /**
+     * Sets whether violations fail, as instrumentation tests need, or are
+     * only reported. Has no effect unless the watchdog is installed. Must be
+     * called on the main thread.
+     *
+     * @param failOnViolation {@code true} if violations should throw an
+     *     {@link IllegalStateException}, and {@link StrictMode} violations
+     *     should kill the process.
+     */
+    public static void setFailOnViolation(boolean failOnViolation) {
+        sFailOnViolation = failOnViolation;
+        if (sInstalled) {
+            applyThreadPolicy();
+        }
+    }
+
+    /**
+     * Reports a violation if called on the main thread, while the watchdog
+     * is installed. Meant to be called by the code that accesses the disk or
+     * the network.
+     *
+     * @param kind the kind of access, e.g. {@link #KIND_PROVIDER}.
+     * @param operation the operation that accesses the disk or network,
+     *     e.g. the method called.
+     * @param subject what the operation works on, e.g. a {@code Uri}. Only
+     *     converted to a {@link String} if there is a violation.
+     * @throws IllegalStateException if called on the main thread in test mode.
+     */
+    public static void checkNotMainThread(String kind, String operation, Object subject) {
+        if (!sInstalled || Looper.myLooper() != Looper.getMainLooper()) {
+            return;
+        }
+        Throwable stackTrace = new Throwable(kind + " " + operation + " " + subject
+                + " on the main thread");
+        final String callSite = findCallSite(stackTrace.getStackTrace());
+        report(kind, callSite, 0L, stackTrace);
+        if (sFailOnViolation) {
+            throw new IllegalStateException("Main thread violation: " + kind + " at "
+                    + callSite, stackTrace);
+        }
+    }
+
+    /**
+     * Returns the violations seen so far, one per line, aggregated by call
+     * site: their kind, how many times they happened, the longest duration
+     * (for long messages) and the call site.
+     *
+     * @return the violations seen so far, empty if none.
+     */
+    public static String getReport() {
+        StringBuilder report = new StringBuilder();
+        synchronized (VIOLATIONS) {
+            for (Violation violation : VIOLATIONS.values()) {
+                report.append(violation).append('\n');
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Returns the number of violations seen so far.
+     *
+     * @return the number of violations seen so far.
+     */
+    public static int getViolationCount() {
+        int count = 0;
+        synchronized (VIOLATIONS) {
+            for (Violation violation : VIOLATIONS.values()) {
+                count += violation.mCount;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes the report to the log, if any violation was seen.
+     */
+    public static void logReport() {
+        final String report = getReport();
+        if (!report.isEmpty()) {
+            Log.w(LOG_TAG, "Main thread violations:\n" + report);
+        }
+    }
+
+    /**
+     * Enables {@link StrictMode} on the main thread, so that disk and network
+     * accesses not reported to this class are written to the log, or kill the
+     * process in test mode.
+     */
+    private static void applyThreadPolicy() {
+        StrictMode.ThreadPolicy.Builder policy = new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .detectNetwork()
+                .detectCustomSlowCalls()
+                .penaltyLog();
+        if (sFailOnViolation) {
+            policy.penaltyDeath();
+        }
+        StrictMode.setThreadPolicy(policy.build());
+    }
+
+    /**
+     * Returns the call site of a violation: the first frame of the
+     * application's code other than this class and the
+     * {@code ContentProvider}, or the first frame other than this class if
+     * there is none.
+     *
+     * @param frames the stack trace of the violation.
+     * @return the call site.
+     */
+    static String findCallSite(StackTraceElement[] frames) {
+        String fallback = "unknown";
+        for (StackTraceElement frame : frames) {
+            final String className = frame.getClassName();
+            if (className.equals(MainThreadWatchdog.class.getName())) {
+                continue;
+            }
+            if ("unknown".equals(fallback)) {
+                fallback = frame.toString();
+            }
+            if (className.startsWith(APPLICATION_PACKAGE)
+                    && !className.startsWith(APPLICATION_PACKAGE + "data.BookProvider")) {
+                return frame.toString();
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Returns the call site of a long message, from the text logged by the
+     * {@link Looper}: its {@code Handler} and callback, without the identity
+     * hash codes.
+     *
+     * @param dispatching the text logged before the message was dispatched.
+     * @return the call site.
+     */
+    static String getMessageCallSite(String dispatching) {
+        return IDENTITY_HASH_CODE.matcher(
+                dispatching.substring(DISPATCHING_PREFIX.length())).replaceAll("");
+    }
+
+    /**
+     * Records a violation, and writes it to the log if it is the first of
+     * its call site.
+     *
+     * @param kind the kind of the violation.
+     * @param callSite the call site of the violation.
+     * @param millis the duration of the violation, {@code 0} if unknown.
+     * @param stackTrace the stack trace of the violation, possibly
+     *     {@code null}.
+     */
+    private static void report(String kind, String callSite, long millis, Throwable stackTrace) {
+        final String key = kind + " " + callSite;
+        boolean first = false;
+        synchronized (VIOLATIONS) {
+            Violation violation = VIOLATIONS.get(key);
+            if (violation == null) {
+                violation = new Violation(kind, callSite);
+                VIOLATIONS.put(key, violation);
+                first = true;
+            }
+            violation.mCount++;
+            violation.mMaxMillis = Math.max(violation.mMaxMillis, millis);
+        }
+        if (first) {
+            Log.w(LOG_TAG, "Main thread violation: " + key
+                    + (millis > 0L ? " took " + millis + " ms" : ""), stackTrace);
+        }
+    }
+
+    /**
+     * The violations of a call site.
+     */
+    private static final class Violation {
+
+        /**
+         * The kind of the violations.
+         */
+        private final String mKind;
+
+        /**
+         * The call site of the violations.
+         */
+        private final String mCallSite;
+
+        /**
+         * Number of violations.
+         */
+        private int mCount;
+
+        /**
+         * The longest duration of the violations, in milliseconds.
+         */
+        private long mMaxMillis;
+
+        /**
+         * Creates a new {@link Violation}.
+         *
+         * @param kind the kind of the violations.
+         * @param callSite the call site of the violations.
+         */
+        Violation(String kind, String callSite) {
+            mKind = kind;
+            mCallSite = callSite;
+        }
+
+        @Override
+        public String toString() {
+            return mKind + " x" + mCount
+                    + (mMaxMillis > 0L ? " max " + mMaxMillis + " ms" : "")
+                    + " at " + mCallSite;
+        }
+    }
+
+    /**
+     * Measures the messages of the main thread's {@link Looper} from the
+     * texts it logs before and after dispatching each one.
+     */
+    private static final class LongMessagePrinter implements Printer {
+
+        /**
+         * The text logged before the message being dispatched, {@code null}
+         * if none is.
+         */
+        private String mDispatching;
+
+        /**
+         * When the message being dispatched started, in milliseconds of
+         * {@link SystemClock#uptimeMillis()}.
+         */
+        private long mStartMillis;
+
+        @Override
+        public void println(String text) {
+            if (text.startsWith(DISPATCHING_PREFIX)) {
+                mDispatching = text;
+                mStartMillis = SystemClock.uptimeMillis();
+            } else if (text.startsWith(FINISHED_PREFIX) && mDispatching != null) {
+                final long millis = SystemClock.uptimeMillis() - mStartMillis;
+                final String dispatching = mDispatching;
+                mDispatching = null;
+                if (millis >= LONG_MESSAGE_MILLIS) {
+                    // Only reported, even in test mode: slow emulators make them flaky
+                    report(KIND_LONG_MESSAGE, getMessageCallSite(dispatching), millis, null);
+                }
+            }
+        }
+    }
+
+}
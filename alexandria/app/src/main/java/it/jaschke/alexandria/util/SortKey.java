@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.util;
+
+import java.text.Normalizer;
+import java.util.regex.Pattern;
+
+/**
+ * Builds the keys lists are sorted by. A key is the text in Unicode
+ * normalization form C, so that composed and decomposed accents sort the
+ * same, without the punctuation and spaces it starts with, which would
+ * otherwise sort quoted titles before everything else, and with runs of
+ * spaces collapsed. Case and accents are kept, the keys are meant to be
+ * compared with the collator of the user's locale, which knows how to order
+ * them (e.g. Spanish sorts "ñ" after "n", not with it).
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public final class SortKey {
+
+    /**
+     * Matches the characters a key must not start with.
+     */
+    private static final Pattern LEADING_SYMBOLS = Pattern.compile("^[^\\p{L}\\p{N}]+");
+
+    /**
+     * Matches runs of white space.
+     */
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    /**
+     * The class only provides utility methods.
+     */
+    private SortKey() {
+        // Empty constructor
+    }
+
+    /**
+     * Returns the sort key of a text.
+     *
+     * @param text the text, possibly {@code null}.
+     * @return the sort key, or {@code null} if {@code text} is {@code null}.
+     *     Texts without letters or digits are kept whole, trimmed, so they
+     *     do not all sort the same.
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return null;
+        }
+        final String normalized = SPACES.matcher(
+                Normalizer.normalize(text, Normalizer.Form.NFC).trim()).replaceAll(" ");
+        final String key = LEADING_SYMBOLS.matcher(normalized).replaceFirst("");
+        return key.isEmpty() ? normalized : key;
+    }
+
+}
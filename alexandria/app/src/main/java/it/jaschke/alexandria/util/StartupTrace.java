@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.util;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import it.jaschke.alexandria.BuildConfig;
+
+/**
+ * Measures the work done while the application starts. Each measured section
+ * is shown in {@code systrace} (on API 18 and above) and, in debug builds,
+ * written to the log along with the time elapsed since the process started,
+ * using the tag {@link #LOG_TAG}, so it can be read by the cold start
+ * benchmark script. Sections may be measured on any thread, but must begin
+ * and end on the same one.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public final class StartupTrace {
+
+    /**
+     * Identifies the messages written to the log by this class.
+     */
+    public static final String LOG_TAG = "AlexandriaStartup";
+
+    /**
+     * Indicates if {@link Trace} is available on this device.
+     */
+    private static final boolean TRACE_AVAILABLE =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    /**
+     * When the process started, in milliseconds of
+     * {@link SystemClock#uptimeMillis()}. Approximated by the time when this
+     * class is first used.
+     *
+     * @see #onProcessStart()
+     */
+    private static final long PROCESS_START_MILLIS = SystemClock.uptimeMillis();
+
+    /**
+     * Indicates if timings are written to the log.
+     */
+    private static final boolean LOG_ENABLED = BuildConfig.DEBUG;
+
+    /**
+     * The class only provides constants and utility methods.
+     */
+    private StartupTrace() {
+        // Empty constructor
+    }
+
+    /**
+     * Marks the start of the process. Must be called as early as possible
+     * (i.e. when the {@code Application} is attached), so the times reported
+     * are relative to it.
+     */
+    public static void onProcessStart() {
+        mark("process start");
+    }
+
+    /**
+     * Begins a section of work with the given name on the current thread.
+     *
+     * @param sectionName the name of the section, shown in traces and logs.
+     * @return the time when the section started, to be passed to
+     *     {@link #end(String, long)}.
+     */
+    public static long begin(String sectionName) {
+        if (TRACE_AVAILABLE) {
+            beginTraceSection(sectionName);
+        }
+        return SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Ends the last section begun on the current thread, and logs its duration.
+     *
+     * @param sectionName the name of the section, as passed to {@link #begin(String)}.
+     * @param startMillis the value returned by {@link #begin(String)}.
+     */
+    public static void end(String sectionName, long startMillis) {
+        if (TRACE_AVAILABLE) {
+            endTraceSection();
+        }
+        if (LOG_ENABLED) {
+            final long now = SystemClock.uptimeMillis();
+            Log.d(LOG_TAG, sectionName + " took " + (now - startMillis)
+                    + " ms, ended at " + (now - PROCESS_START_MILLIS) + " ms");
+        }
+    }
+
+    /**
+     * Logs that an event occurred, along with the time elapsed since the
+     * process started.
+     *
+     * @param eventName the name of the event.
+     */
+    public static void mark(String eventName) {
+        if (LOG_ENABLED) {
+            Log.d(LOG_TAG, eventName + " at "
+                    + (SystemClock.uptimeMillis() - PROCESS_START_MILLIS) + " ms");
+        }
+    }
+
+    /**
+     * Begins a {@link Trace} section.
+     *
+     * @param sectionName the name of the section.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginTraceSection(String sectionName) {
+        Trace.beginSection(sectionName);
+    }
+
+    /**
+     * Ends the last {@link Trace} section begun on the current thread.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endTraceSection() {
+        Trace.endSection();
+    }
+
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Splits texts in the trigrams that fuzzy searches compare them by. Texts
+ * are first folded: accents are removed, letters are lower cased and
+ * everything but letters and digits separates words, so that "Tolkien",
+ * "tolkien" and "Tólkien" are the same word. The trigrams of a word are
+ * its substrings of three characters, with two spaces before the word and
+ * one after it, so that its beginning weighs more than its end, as done by
+ * PostgreSQL's {@code pg_trgm}. Words with a typo still share most of
+ * their trigrams: "tolkein" shares half of those of "tolkien".
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public final class Trigrams {
+
+    /**
+     * Number of characters of a trigram.
+     */
+    public static final int LENGTH = 3;
+
+    /**
+     * Similarity of a word to the words it is a prefix of, unless they are
+     * more similar, so that words being typed find the words they begin.
+     */
+    public static final float PREFIX_SIMILARITY = 0.8f;
+
+    /**
+     * Padding added before each word.
+     */
+    private static final String PADDING_BEFORE = "  ";
+
+    /**
+     * Padding added after each word.
+     */
+    private static final String PADDING_AFTER = " ";
+
+    /**
+     * Matches the combining marks left by decomposing accented letters.
+     */
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Matches runs of characters that separate words.
+     */
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * The class only provides utility methods.
+     */
+    private Trigrams() {
+        // Empty constructor
+    }
+
+    /**
+     * Folds a text: removes its accents, lower cases it and replaces the runs
+     * of characters that are not letters or digits with a single space.
+     *
+     * @param text the text, possibly {@code null}.
+     * @return the folded text, empty if {@code text} is {@code null} or has
+     *     no letters or digits.
+     */
+    public static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        final String unaccented = MARKS.matcher(
+                Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(unaccented.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    /**
+     * Returns the distinct words of a text, once folded.
+     *
+     * @param text the text, possibly {@code null}.
+     * @return the words, in the order they first appear.
+     */
+    public static Set<String> words(String text) {
+        Set<String> words = new LinkedHashSet<>();
+        final String folded = fold(text);
+        if (folded.isEmpty()) {
+            return words;
+        }
+        for (String word : folded.split(" ")) {
+            words.add(word);
+        }
+        return words;
+    }
+
+    /**
+     * Returns the distinct trigrams of a folded word.
+     *
+     * @param word the word, as returned by {@link #words(String)}.
+     * @return the trigrams of the word.
+     */
+    public static List<String> of(String word) {
+        final String padded = PADDING_BEFORE + word + PADDING_AFTER;
+        List<String> trigrams = new ArrayList<>(padded.length() - LENGTH + 1);
+        for (int i = 0; i + LENGTH <= padded.length(); i++) {
+            String trigram = padded.substring(i, i + LENGTH);
+            if (!trigrams.contains(trigram)) {
+                trigrams.add(trigram);
+            }
+        }
+        return trigrams;
+    }
+
+    /**
+     * Returns the similarity of two words given the number of trigrams they
+     * share, from {@code 0} (none shared) to {@code 1} (the same trigrams):
+     * the shared trigrams over all the trigrams of both.
+     *
+     * @param shared the number of trigrams both words have.
+     * @param first the number of trigrams of the first word.
+     * @param second the number of trigrams of the second word.
+     * @return the similarity of the words.
+     */
+    public static float similarity(int shared, int first, int second) {
+        final int all = first + second - shared;
+        return all > 0 ? (float) shared / all : 0f;
+    }
+
+    /**
+     * Returns how similar a word is to a word being searched for: their
+     * {@link #similarity(int, int, int)}, but at least
+     * {@link #PREFIX_SIMILARITY} if the word begins with the one searched.
+     *
+     * @param searched the folded word searched for.
+     * @param word a folded word.
+     * @return the similarity of the word to the one searched.
+     */
+    public static float similarity(String searched, String word) {
+        List<String> searchedTrigrams = of(searched);
+        List<String> wordTrigrams = of(word);
+        int shared = 0;
+        for (String trigram : searchedTrigrams) {
+            if (wordTrigrams.contains(trigram)) {
+                shared++;
+            }
+        }
+        return similarity(searched, word, shared, searchedTrigrams.size(), wordTrigrams.size());
+    }
+
+    /**
+     * Returns how similar a word is to a word being searched for, as
+     * {@link #similarity(String, String)} does, given the number of trigrams
+     * they share.
+     *
+     * @param searched the folded word searched for.
+     * @param word a folded word.
+     * @param shared the number of trigrams both words have.
+     * @param searchedCount the number of trigrams of the word searched for.
+     * @param wordCount the number of trigrams of the word.
+     * @return the similarity of the word to the one searched.
+     */
+    public static float similarity(String searched
+            , String word
+            , int shared
+            , int searchedCount
+            , int wordCount) {
+        final float similarity = similarity(shared, searchedCount, wordCount);
+        return word.startsWith(searched) ? Math.max(similarity, PREFIX_SIMILARITY) : similarity;
+    }
+
+}
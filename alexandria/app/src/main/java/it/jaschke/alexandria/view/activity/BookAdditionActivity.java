@@ -113,7 +113,7 @@ public class BookAdditionActivity extends AppCompatActivity {
         FragmentManager fragmentManager = getSupportFragmentManager();
         FragmentTransaction transaction = fragmentManager.beginTransaction();
         transaction.replace(R.id.book_detail_container
-                , BookDetailFragment.newInstance(book)
+                , BookDetailFragment.newInstance(book.getId())
                 , TAG_BOOK_DETAIL_FRAGMENT);
         transaction.commit();
     }
@@ -21,8 +21,6 @@ import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentTransaction;
 import android.support.v7.app.AppCompatActivity;
 
-import org.parceler.Parcels;
-
 import de.greenrobot.event.EventBus;
 import it.jaschke.alexandria.R;
 import it.jaschke.alexandria.model.domain.Book;
@@ -30,19 +28,18 @@ import it.jaschke.alexandria.model.event.BookDeletionEvent;
 import it.jaschke.alexandria.view.fragment.BookDetailFragment;
 
 /**
- * Shows the details of a {@link Book} passed as an extra in the {@code Intent},
- * using the key {@link #EXTRA_BOOK}. The only attribute that the {@link Book}
- * must have assigned is {@link Book#getId()}.
+ * Shows the details of a {@link Book} whose id is passed as an extra in the
+ * {@code Intent}, using the key {@link #EXTRA_BOOK_ID}.
  *
  * @author Jesús Adolfo García Pasquel
  */
 public class BookDetailActivity extends AppCompatActivity {
 
     /**
-     * Key used to access the {@link Book} to show, from the {@code Intent}'s
-     * extras.
+     * Key used to access the id (ISBN-13) of the {@link Book} to show, from
+     * the {@code Intent}'s extras.
      */
-    public static final String EXTRA_BOOK = "extra_book";
+    public static final String EXTRA_BOOK_ID = "extra_book_id";
 
     /**
      * Identifies the {@code Fragment} used to present the details of a movie.
@@ -53,17 +50,17 @@ public class BookDetailActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        Book book = Parcels.unwrap(getIntent().getParcelableExtra(EXTRA_BOOK));
-        if (book == null) {
+        if (!getIntent().hasExtra(EXTRA_BOOK_ID)) {
             throw new IllegalArgumentException(
-                    "The book specified in the Intent may not be null.");
+                    "The book must be specified in the Intent.");
         }
+        final long bookId = getIntent().getLongExtra(EXTRA_BOOK_ID, 0L);
         setContentView(R.layout.activity_book_detail);
         FragmentManager fragmentManager = getSupportFragmentManager();
         if (fragmentManager.findFragmentByTag(BOOK_DETAIL_FRAGMENT_TAG) == null) {
             FragmentTransaction transaction = fragmentManager.beginTransaction();
             transaction.add(R.id.book_detail_container
-                    , BookDetailFragment.newInstance(book)
+                    , BookDetailFragment.newInstance(bookId)
                     , BOOK_DETAIL_FRAGMENT_TAG);
             transaction.commit();
         }
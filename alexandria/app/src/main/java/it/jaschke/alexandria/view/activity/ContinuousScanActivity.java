@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.view.activity;
+
+import android.databinding.DataBindingUtil;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.v7.app.AppCompatActivity;
+
+import com.google.zxing.ResultPoint;
+import com.journeyapps.barcodescanner.BarcodeCallback;
+import com.journeyapps.barcodescanner.BarcodeResult;
+
+import java.util.List;
+
+import it.jaschke.alexandria.R;
+import it.jaschke.alexandria.databinding.ContinuousScanActivityBinding;
+import it.jaschke.alexandria.model.view.ContinuousScanViewModel;
+import it.jaschke.alexandria.receiver.NotificationBroadcastReceiver;
+
+/**
+ * Keeps the camera open and queues the addition of every book whose ISBN-13
+ * barcode is scanned, so that many books can be added without reopening the
+ * scanner for each of them.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class ContinuousScanActivity extends AppCompatActivity {
+
+    /**
+     * Binds the view to the view model.
+     * @see ContinuousScanViewModel
+     */
+    private ContinuousScanActivityBinding mBinding;
+
+    /**
+     * View model that provides data and behaviour to the
+     * {@link ContinuousScanActivity}.
+     */
+    private ContinuousScanViewModel mViewModel;
+
+    /**
+     * Shows a summary of the books added while scanning.
+     */
+    private NotificationBroadcastReceiver mBookNotificationReceiver;
+
+    /**
+     * Passes every barcode decoded to the view model.
+     */
+    private final BarcodeCallback mBarcodeCallback = new BarcodeCallback() {
+        @Override
+        public void barcodeResult(BarcodeResult result) {
+            mViewModel.onCodeScanned(ContinuousScanActivity.this
+                    , result.getText()
+                    , SystemClock.elapsedRealtime());
+        }
+
+        @Override
+        public void possibleResultPoints(List<ResultPoint> resultPoints) {
+            // Ignored
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mViewModel = new ContinuousScanViewModel();
+        mBinding = DataBindingUtil.setContentView(this, R.layout.activity_continuous_scan);
+        mBinding.setViewModel(mViewModel);
+        mBinding.barcodeView.getBarcodeView().setDecoderFactory(new IsbnDecoderFactory());
+        mBinding.barcodeView.decodeContinuous(mBarcodeCallback);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mBookNotificationReceiver = NotificationBroadcastReceiver.registerLocalReceiver(this);
+        mBinding.barcodeView.resume();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mBinding.barcodeView.pause();
+        NotificationBroadcastReceiver.unregisterLocalReceiver(this, mBookNotificationReceiver);
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.view.activity;
+
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.oned.EAN13Reader;
+import com.journeyapps.barcodescanner.Decoder;
+import com.journeyapps.barcodescanner.DecoderFactory;
+
+import java.util.Map;
+
+import it.jaschke.alexandria.scan.IsbnFrameDecoder;
+
+/**
+ * Creates the {@link Decoder}s used by the barcode scanning views, which only
+ * decode ISBN-13 barcodes in the centre of the preview frames, by means of
+ * {@link IsbnFrameDecoder}. The hints requested by the views are ignored.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+final class IsbnDecoderFactory implements DecoderFactory {
+
+    @Override
+    public Decoder createDecoder(Map<DecodeHintType, ?> baseHints) {
+        return new IsbnDecoder();
+    }
+
+    /**
+     * {@link Decoder} that delegates to an {@link IsbnFrameDecoder}.
+     */
+    private static final class IsbnDecoder extends Decoder {
+
+        /**
+         * Decodes the frames.
+         */
+        private final IsbnFrameDecoder mFrameDecoder = new IsbnFrameDecoder();
+
+        /**
+         * Creates a new {@link IsbnDecoder}.
+         */
+        IsbnDecoder() {
+            // The reader is required by the superclass, but never used
+            super(new EAN13Reader());
+        }
+
+        @Override
+        public Result decode(LuminanceSource source) {
+            return mFrameDecoder.decode(source);
+        }
+    }
+
+}
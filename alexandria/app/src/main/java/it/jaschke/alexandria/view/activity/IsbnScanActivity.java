@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.view.activity;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+
+import com.google.zxing.ResultPoint;
+import com.journeyapps.barcodescanner.BarcodeCallback;
+import com.journeyapps.barcodescanner.BarcodeResult;
+import com.journeyapps.barcodescanner.CompoundBarcodeView;
+
+import java.util.List;
+
+import it.jaschke.alexandria.R;
+
+/**
+ * Scans a single ISBN-13 barcode and returns it as the {@code Activity}'s
+ * result, in the extra {@link #EXTRA_ISBN}. Only the centre of the preview
+ * is decoded, and only ISBN-13 barcodes are accepted.
+ *
+ * @author Jesús Adolfo García Pasquel
+ * @see IsbnDecoderFactory
+ */
+public class IsbnScanActivity extends AppCompatActivity {
+
+    /**
+     * Key used to access the scanned ISBN-13 from the result's extras.
+     */
+    public static final String EXTRA_ISBN = "extra_isbn";
+
+    /**
+     * Shows the camera preview and decodes the barcode.
+     */
+    private CompoundBarcodeView mBarcodeView;
+
+    /**
+     * Returns the first ISBN-13 decoded as the {@code Activity}'s result.
+     */
+    private final BarcodeCallback mBarcodeCallback = new BarcodeCallback() {
+        @Override
+        public void barcodeResult(BarcodeResult result) {
+            Intent data = new Intent();
+            data.putExtra(EXTRA_ISBN, result.getText());
+            setResult(RESULT_OK, data);
+            finish();
+        }
+
+        @Override
+        public void possibleResultPoints(List<ResultPoint> resultPoints) {
+            // Ignored
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_isbn_scan);
+        mBarcodeView = (CompoundBarcodeView) findViewById(R.id.barcode_view);
+        mBarcodeView.getBarcodeView().setDecoderFactory(new IsbnDecoderFactory());
+        mBarcodeView.decodeSingle(mBarcodeCallback);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mBarcodeView.resume();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mBarcodeView.pause();
+    }
+
+}
@@ -1,7 +1,11 @@
 package it.jaschke.alexandria.view.activity;
 
 import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Looper;
+import android.support.design.widget.Snackbar;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentTransaction;
@@ -9,22 +13,35 @@ import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewTreeObserver;
 
-import org.parceler.Parcels;
+import com.squareup.picasso.Picasso;
+
+import java.io.File;
 
 import de.greenrobot.event.EventBus;
 import it.jaschke.alexandria.R;
+import it.jaschke.alexandria.data.BookContract;
 import it.jaschke.alexandria.model.domain.Book;
 import it.jaschke.alexandria.model.event.BookAdditionEvent;
 import it.jaschke.alexandria.model.event.BookDeletionEvent;
 import it.jaschke.alexandria.model.event.BookSelectionEvent;
 import it.jaschke.alexandria.receiver.NotificationBroadcastReceiver;
+import it.jaschke.alexandria.service.BookService;
+import it.jaschke.alexandria.service.LibraryBackupService;
+import it.jaschke.alexandria.service.RefreshScheduler;
+import it.jaschke.alexandria.util.StartupTrace;
 import it.jaschke.alexandria.view.fragment.BookAdditionFragment;
 import it.jaschke.alexandria.view.fragment.BookDetailFragment;
+import it.jaschke.alexandria.view.fragment.FacetDialogFragment;
 
 /**
  * Presents a collection of books to select from, the details of the selected
  * book and lets the user add more books by entering their ISBN-13 number.
+ * Unless {@code R.bool.defer_startup_work} is {@code false}, the work not
+ * needed to draw the first frame (registering the listeners and initializing
+ * Picasso) is deferred until after it is drawn.
  *
  * @author Sascha Jaschke
  * @author Jesús Adolfo García Pasquel
@@ -48,6 +65,44 @@ public class MainActivity extends AppCompatActivity {
     private static final String TAG_BOOK_ADDITION_FRAGMENT =
             BookAdditionFragment.class.getCanonicalName();
 
+    /**
+     * Identifies the {@code Fragment} used to list the names of a facet.
+     */
+    private static final String TAG_FACET_DIALOG_FRAGMENT =
+            FacetDialogFragment.class.getCanonicalName();
+
+    /**
+     * Request code used to pick where the library is exported, without
+     * covers.
+     */
+    private static final int REQUEST_EXPORT_LIBRARY = 1;
+
+    /**
+     * Request code used to pick where the library is exported, with covers.
+     */
+    private static final int REQUEST_EXPORT_LIBRARY_WITH_COVERS = 2;
+
+    /**
+     * Request code used to pick the backup to import.
+     */
+    private static final int REQUEST_IMPORT_LIBRARY = 3;
+
+    /**
+     * Time during which the deletion of a book can be undone, in
+     * milliseconds.
+     */
+    private static final long UNDO_DELETION_MILLIS = 10000L;
+
+    /**
+     * Name of the backup files created.
+     */
+    private static final String BACKUP_FILE_NAME = "alexandria-library.alxl";
+
+    /**
+     * MIME type of the backup files.
+     */
+    private static final String BACKUP_MIME_TYPE = "application/octet-stream";
+
     /**
      * Indicates if the activity contains two panes (master-detail) or just
      * one.
@@ -60,8 +115,26 @@ public class MainActivity extends AppCompatActivity {
      */
     private NotificationBroadcastReceiver mBookNotificationReceiver;
 
+    /**
+     * Indicates if the work not needed for the first frame is deferred until
+     * after it is drawn.
+     */
+    private boolean mDeferStartupWork;
+
+    /**
+     * Indicates if the first frame of the {@code Activity} has been drawn.
+     */
+    private boolean mFirstFrameDrawn;
+
+    /**
+     * Indicates if the {@code Activity} is between {@link #onResume()} and
+     * {@link #onPause()}.
+     */
+    private boolean mResumed;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        final long start = StartupTrace.begin("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         if (findViewById(R.id.book_detail_container) != null) {
@@ -72,19 +145,97 @@ public class MainActivity extends AppCompatActivity {
         } else {
             mTwoPane = false;
         }
+        mDeferStartupWork = getResources().getBoolean(R.bool.defer_startup_work);
+        observeFirstDraw();
+        StartupTrace.end("MainActivity.onCreate", start);
     }
 
     @Override
     public void onResume() {
-        EventBus.getDefault().register(this);
-        mBookNotificationReceiver =
-                NotificationBroadcastReceiver.registerLocalReceiver(this);
+        mResumed = true;
+        if (!mDeferStartupWork || mFirstFrameDrawn) {
+            registerListeners();
+        }
         super.onResume();
     }
 
     @Override
     public void onPause() {
         super.onPause();
+        mResumed = false;
+        unregisterListeners();
+    }
+
+    /**
+     * Calls {@link #onFirstFrameDrawn()} once the first frame of the
+     * {@code Activity} has been drawn.
+     */
+    private void observeFirstDraw() {
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        StartupTrace.mark("MainActivity first draw");
+                        // Posted, so it runs after the frame is drawn
+                        decorView.post(MainActivity.this::onFirstFrameDrawn);
+                        return true;
+                    }
+                });
+    }
+
+    /**
+     * Performs the work deferred until the first frame is drawn: registers
+     * the listeners, if still resumed, and initializes Picasso once the main
+     * thread is idle. The background refresh of the books is scheduled once
+     * the main thread is idle, whether the startup work is deferred or not.
+     */
+    private void onFirstFrameDrawn() {
+        mFirstFrameDrawn = true;
+        Looper.myQueue().addIdleHandler(() -> {
+            RefreshScheduler.schedule(getApplicationContext());
+            return false;
+        });
+        if (!mDeferStartupWork) {
+            return;
+        }
+        if (mResumed) {
+            registerListeners();
+        }
+        Looper.myQueue().addIdleHandler(() -> {
+            final long start = StartupTrace.begin("Picasso initialization");
+            Picasso.with(getApplicationContext());
+            StartupTrace.end("Picasso initialization", start);
+            return false;
+        });
+    }
+
+    /**
+     * Registers the {@code Activity} on the {@link EventBus} and the receiver
+     * of notifications from {@link it.jaschke.alexandria.service.BookService},
+     * unless they are already registered.
+     */
+    private void registerListeners() {
+        if (mBookNotificationReceiver != null) {
+            return;
+        }
+        final long start = StartupTrace.begin("MainActivity.registerListeners");
+        // Sticky, to offer undoing the deletions made on other activities
+        EventBus.getDefault().registerSticky(this);
+        mBookNotificationReceiver =
+                NotificationBroadcastReceiver.registerLocalReceiver(this);
+        StartupTrace.end("MainActivity.registerListeners", start);
+    }
+
+    /**
+     * Unregisters the listeners registered by {@link #registerListeners()},
+     * if they are registered.
+     */
+    private void unregisterListeners() {
+        if (mBookNotificationReceiver == null) {
+            return;
+        }
         NotificationBroadcastReceiver.unregisterLocalReceiver(this
                 , mBookNotificationReceiver);
         mBookNotificationReceiver = null;
@@ -110,11 +261,14 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * Removes the detail view of the added book.
+     * Removes the detail view of the deleted book and offers to undo the
+     * deletion, until {@link #UNDO_DELETION_MILLIS} after it was made.
      *
-     * @param event the book selection event.
+     * @param event the book deletion event.
      */
     public void onEvent(BookDeletionEvent event) {
+        EventBus.getDefault().removeStickyEvent(event);
+        showDeletionUndo(event);
         FragmentManager fragmentManager = getSupportFragmentManager();
         Fragment detailFragment =
                 fragmentManager.findFragmentByTag(TAG_BOOK_DETAIL_FRAGMENT);
@@ -126,9 +280,32 @@ public class MainActivity extends AppCompatActivity {
         transaction.commit();
     }
 
+    /**
+     * Shows a {@link Snackbar} that lets the user undo the deletion of a
+     * book, for the rest of {@link #UNDO_DELETION_MILLIS}.
+     *
+     * @param event the book deletion event.
+     */
+    private void showDeletionUndo(BookDeletionEvent event) {
+        final long remainingMillis =
+                event.getDeletedAt() + UNDO_DELETION_MILLIS - System.currentTimeMillis();
+        if (remainingMillis <= 0L) {
+            return;
+        }
+        final Book book = event.getDeletedBook();
+        final Snackbar snackbar = Snackbar.make(findViewById(android.R.id.content)
+                , getString(R.string.msg_book_deleted, book.getTitle())
+                , Snackbar.LENGTH_INDEFINITE)
+                .setAction(R.string.action_undo, view -> BookService.requestRestore(
+                        getApplicationContext(), book.getId(), event.getDeletedAt()));
+        snackbar.show();
+        snackbar.getView().postDelayed(snackbar::dismiss, remainingMillis);
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main, menu);
+        menu.findItem(R.id.menu_item_sync_library).setVisible(BookService.isSyncEnabled(this));
         return super.onCreateOptionsMenu(menu);
     }
 
@@ -139,11 +316,94 @@ public class MainActivity extends AppCompatActivity {
             case R.id.menu_item_add_book:
                 showAddBook();
                 return true;
+            case R.id.menu_item_browse_authors:
+                FacetDialogFragment.newInstance(BookContract.QUERY_PARAMETER_AUTHOR)
+                        .show(getSupportFragmentManager(), TAG_FACET_DIALOG_FRAGMENT);
+                return true;
+            case R.id.menu_item_browse_categories:
+                FacetDialogFragment.newInstance(BookContract.QUERY_PARAMETER_CATEGORY)
+                        .show(getSupportFragmentManager(), TAG_FACET_DIALOG_FRAGMENT);
+                return true;
+            case R.id.menu_item_export_library:
+                exportLibrary(REQUEST_EXPORT_LIBRARY);
+                return true;
+            case R.id.menu_item_export_library_with_covers:
+                exportLibrary(REQUEST_EXPORT_LIBRARY_WITH_COVERS);
+                return true;
+            case R.id.menu_item_import_library:
+                importLibrary();
+                return true;
+            case R.id.menu_item_sync_library:
+                BookService.requestSync(this);
+                return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
     }
 
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            super.onActivityResult(requestCode, resultCode, data);
+            return;
+        }
+        switch (requestCode) {
+            case REQUEST_EXPORT_LIBRARY:
+            case REQUEST_EXPORT_LIBRARY_WITH_COVERS:
+                LibraryBackupService.requestExport(this, data.getData()
+                        , requestCode == REQUEST_EXPORT_LIBRARY_WITH_COVERS);
+                break;
+            case REQUEST_IMPORT_LIBRARY:
+                LibraryBackupService.requestImport(this, data.getData());
+                break;
+            default:
+                super.onActivityResult(requestCode, resultCode, data);
+        }
+    }
+
+    /**
+     * Exports the library to a document picked by the user or, on devices
+     * without the Storage Access Framework, to the application's external
+     * files directory.
+     *
+     * @param requestCode {@link #REQUEST_EXPORT_LIBRARY} or
+     *     {@link #REQUEST_EXPORT_LIBRARY_WITH_COVERS}.
+     */
+    private void exportLibrary(int requestCode) {
+        final boolean includeCovers = requestCode == REQUEST_EXPORT_LIBRARY_WITH_COVERS;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType(BACKUP_MIME_TYPE);
+            intent.putExtra(Intent.EXTRA_TITLE, BACKUP_FILE_NAME);
+            startActivityForResult(intent, requestCode);
+            return;
+        }
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            Log.e(LOG_TAG, "External storage not available.");
+            return;
+        }
+        LibraryBackupService.requestExport(this
+                , Uri.fromFile(new File(directory, BACKUP_FILE_NAME))
+                , includeCovers);
+    }
+
+    /**
+     * Lets the user pick a backup and imports it.
+     */
+    private void importLibrary() {
+        Intent intent;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        } else {
+            intent = new Intent(Intent.ACTION_GET_CONTENT);
+        }
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        startActivityForResult(intent, REQUEST_IMPORT_LIBRARY);
+    }
+
     /**
      * Shows the book addition pane on a new {@code Activity} or the same one,
      * depending on the screen size of the device being used.
@@ -178,12 +438,12 @@ public class MainActivity extends AppCompatActivity {
                 transaction.remove(bookAdditionFragment);
             }
             transaction.replace(R.id.book_detail_container
-                    , BookDetailFragment.newInstance(book)
+                    , BookDetailFragment.newInstance(book.getId())
                     , TAG_BOOK_DETAIL_FRAGMENT);
             transaction.commit();
         } else {
             Intent intent = new Intent(this, BookDetailActivity.class);
-            intent.putExtra(BookDetailActivity.EXTRA_BOOK, Parcels.wrap(book));
+            intent.putExtra(BookDetailActivity.EXTRA_BOOK_ID, book.getId());
             startActivity(intent);
         }
     }
@@ -202,7 +462,7 @@ public class MainActivity extends AppCompatActivity {
         FragmentManager fragmentManager = getSupportFragmentManager();
         FragmentTransaction transaction = fragmentManager.beginTransaction();
         transaction.replace(R.id.book_detail_container
-                , BookDetailFragment.newInstance(book)
+                , BookDetailFragment.newInstance(book.getId())
                 , TAG_BOOK_DETAIL_FRAGMENT);
         transaction.commit();
     }
@@ -2,19 +2,19 @@ package it.jaschke.alexandria.view.adapter;
 
 
 import android.content.Context;
+import android.database.CharArrayBuffer;
 import android.database.Cursor;
 import android.databinding.DataBindingUtil;
 import android.support.v4.widget.CursorAdapter;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AlphabetIndexer;
+import android.widget.SectionIndexer;
 
 import com.squareup.picasso.Picasso;
 
-import org.apache.commons.lang3.StringUtils;
-
 import it.jaschke.alexandria.R;
-import it.jaschke.alexandria.data.BookContract;
 import it.jaschke.alexandria.databinding.BookListItemBinding;
 
 import static it.jaschke.alexandria.data.BookContract.BookEntry;
@@ -22,12 +22,18 @@ import static it.jaschke.alexandria.data.BookContract.BookEntry;
 /**
  * {@link CursorAdapter} that shows book titles and covers for the entries in
  * {@link it.jaschke.alexandria.data.BookProvider}. The projection
- * must be {@link #PROJECTION_BOOK_LIST}.
+ * must be {@link #PROJECTION_BOOK_LIST}. Binding a view does not allocate
+ * objects unless the data shown changes, since the text is copied from the
+ * {@link Cursor} into buffers kept by each view. The books must be sorted
+ * with {@link BookEntry#SORT_ORDER_TITLE}: the adapter splits them in
+ * sections by the first letter of the title, for the list's fast scroller,
+ * finding where each section starts with a binary search over the
+ * {@link Cursor}, without reading the books in between.
  *
  * @author Sascha Jaschke
  * @author Jesús Adolfo García Pasquel
  */
-public class BookListAdapter extends CursorAdapter {
+public class BookListAdapter extends CursorAdapter implements SectionIndexer {
 
     /**
      * Projection that includes the book details to be presented. Used to
@@ -35,9 +41,11 @@ public class BookListAdapter extends CursorAdapter {
      */
     public static final String[] PROJECTION_BOOK_LIST = {
             BookEntry._ID,
+            BookEntry.COLUMN_DISPLAY_TITLE,
+            BookEntry.COLUMN_COVER_IMAGE_URL,
             BookEntry.COLUMN_TITLE,
-            BookContract.BookEntry.COLUMN_SUBTITLE,
-            BookEntry.COLUMN_COVER_IMAGE_URL
+            BookEntry.COLUMN_SUBTITLE,
+            BookEntry.COLUMN_TITLE_SORT
     };
 
     /**
@@ -45,21 +53,41 @@ public class BookListAdapter extends CursorAdapter {
      */
     public static final int COL_ID = 0;
 
+    /**
+     * Index of {@link BookEntry#COLUMN_DISPLAY_TITLE} in
+     * {@link #PROJECTION_BOOK_LIST}.
+     */
+    public static final int COL_DISPLAY_TITLE = 1;
+
+    /**
+     * Index of {@link BookEntry#COLUMN_COVER_IMAGE_URL} in
+     * {@link #PROJECTION_BOOK_LIST}.
+     */
+    public static final int COL_COVER_IMAGE_URL = 2;
+
     /**
      * Index of {@link BookEntry#COLUMN_TITLE} in {@link #PROJECTION_BOOK_LIST}.
+     * Not presented in the list, but passed along when a book is selected.
      */
-    public static final int COL_TITLE = 1;
+    public static final int COL_TITLE = 3;
 
     /**
      * Index of {@link BookEntry#COLUMN_SUBTITLE} in {@link #PROJECTION_BOOK_LIST}.
+     * Not presented in the list, but passed along when a book is selected.
      */
-    public static final int COL_SUBTITLE = 2;
+    public static final int COL_SUBTITLE = 4;
 
     /**
-     * Index of {@link BookEntry#COLUMN_COVER_IMAGE_URL} in
-     * {@link #PROJECTION_BOOK_LIST}.
+     * Index of {@link BookEntry#COLUMN_TITLE_SORT} in
+     * {@link #PROJECTION_BOOK_LIST}. Used to split the list in sections.
+     */
+    public static final int COL_TITLE_SORT = 5;
+
+    /**
+     * Finds the sections of the list, caching their positions until the
+     * data changes.
      */
-    public static final int COL_COVER_IMAGE_URL = 3;
+    private final AlphabetIndexer mIndexer;
 
     /**
      * Creates a new instance of {@link BookListAdapter}.
@@ -70,6 +98,29 @@ public class BookListAdapter extends CursorAdapter {
      */
     public BookListAdapter(Context context, Cursor cursor, int flags) {
         super(context, cursor, flags);
+        mIndexer = new AlphabetIndexer(cursor, COL_TITLE_SORT
+                , context.getString(R.string.book_list_sections));
+    }
+
+    @Override
+    public Cursor swapCursor(Cursor newCursor) {
+        mIndexer.setCursor(newCursor);
+        return super.swapCursor(newCursor);
+    }
+
+    @Override
+    public Object[] getSections() {
+        return mIndexer.getSections();
+    }
+
+    @Override
+    public int getPositionForSection(int sectionIndex) {
+        return mIndexer.getPositionForSection(sectionIndex);
+    }
+
+    @Override
+    public int getSectionForPosition(int position) {
+        return mIndexer.getSectionForPosition(position);
     }
 
     @Override
@@ -77,23 +128,128 @@ public class BookListAdapter extends CursorAdapter {
         LayoutInflater layoutInflater = LayoutInflater.from(context);
         BookListItemBinding binding = DataBindingUtil.inflate(
                 layoutInflater, R.layout.list_item_book, parent, false);
-        binding.getRoot().setTag(binding);
+        binding.getRoot().setTag(new BookListItem(binding));
         return binding.getRoot();
     }
 
     @Override
     public void bindView(View view, Context context, Cursor cursor) {
-        BookListItemBinding binding = (BookListItemBinding) view.getTag();
-        String title = cursor.getString(COL_TITLE);
-        String subtitle = cursor.getString(COL_SUBTITLE);
-        if (StringUtils.trimToNull(subtitle) != null) {
-            title = context.getString(R.string.title_subtitle_pattern
-                    , title, subtitle);
+        BookListItem item = (BookListItem) view.getTag();
+        if (item.mTitle.copyFrom(cursor, COL_DISPLAY_TITLE)) {
+            item.mBinding.bookTitleTextView.setText(item.mTitle.mBuffer.data
+                    , 0, item.mTitle.mBuffer.sizeCopied);
+        }
+        if (item.mCoverUrl.copyFrom(cursor, COL_COVER_IMAGE_URL)) {
+            // Picasso rejects empty paths, null shows no image instead
+            String coverUrl = item.mCoverUrl.mBuffer.sizeCopied > 0
+                    ? new String(item.mCoverUrl.mBuffer.data
+                            , 0, item.mCoverUrl.mBuffer.sizeCopied)
+                    : null;
+            Picasso.with(context)
+                    .load(coverUrl)
+                    .into(item.mBinding.bookCoverImageView);
+        }
+    }
+
+    /**
+     * The state kept for each of the views created by the adapter: the
+     * binding and the text currently presented by it.
+     */
+    private static final class BookListItem {
+
+        /**
+         * Binds the data to the view.
+         */
+        private final BookListItemBinding mBinding;
+
+        /**
+         * The title currently shown.
+         */
+        private final TextColumn mTitle = new TextColumn();
+
+        /**
+         * The URL of the cover image currently shown.
+         */
+        private final TextColumn mCoverUrl = new TextColumn();
+
+        /**
+         * Creates a new instance of {@link BookListItem}.
+         *
+         * @param binding the binding of the view.
+         */
+        BookListItem(BookListItemBinding binding) {
+            mBinding = binding;
+        }
+    }
+
+    /**
+     * Holds the text of a {@link Cursor} column as last presented in a view,
+     * so it can be compared with the next value without creating
+     * {@link String}s.
+     */
+    private static final class TextColumn {
+
+        /**
+         * The value currently presented.
+         */
+        private final CharArrayBuffer mBuffer = new CharArrayBuffer(0);
+
+        /**
+         * The value most recently read from the {@link Cursor}.
+         */
+        private final CharArrayBuffer mScratch = new CharArrayBuffer(0);
+
+        /**
+         * Indicates if a value has been presented yet.
+         */
+        private boolean mPresented;
+
+        /**
+         * Copies the value of the column from the current row of the
+         * {@link Cursor} and returns {@code true} if it differs from the one
+         * held until now, in which case it replaces it.
+         *
+         * @param cursor the {@link Cursor} to read from.
+         * @param column the index of the column to read.
+         * @return {@code true} if the value changed, {@code false} otherwise.
+         */
+        boolean copyFrom(Cursor cursor, int column) {
+            cursor.copyStringToBuffer(column, mScratch);
+            final int length = mScratch.sizeCopied;
+            if (mPresented
+                    && length == mBuffer.sizeCopied
+                    && regionEquals(mScratch.data, mBuffer.data, length)) {
+                return false;
+            }
+            if (mBuffer.data == null || mBuffer.data.length < length) {
+                mBuffer.data = new char[length];
+            }
+            if (length > 0) {
+                System.arraycopy(mScratch.data, 0, mBuffer.data, 0, length);
+            }
+            mBuffer.sizeCopied = length;
+            mPresented = true;
+            return true;
+        }
+
+        /**
+         * Returns {@code true} if the first {@code length} characters of both
+         * arrays are the same.
+         *
+         * @param first the first array.
+         * @param second the second array.
+         * @param length the number of characters to compare.
+         * @return {@code true} if the first {@code length} characters of both
+         *     arrays are the same, {@code false} otherwise.
+         */
+        private static boolean regionEquals(char[] first, char[] second, int length) {
+            for (int i = 0; i < length; i++) {
+                if (first[i] != second[i]) {
+                    return false;
+                }
+            }
+            return true;
         }
-        binding.bookTitleTextView.setText(title);
-        Picasso.with(context)
-                .load(cursor.getString(COL_COVER_IMAGE_URL))
-                .into(binding.bookCoverImageView);
     }
 
 }
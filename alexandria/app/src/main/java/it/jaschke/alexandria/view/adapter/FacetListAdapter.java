@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.view.adapter;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.databinding.DataBindingUtil;
+import android.support.v4.widget.CursorAdapter;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import it.jaschke.alexandria.R;
+import it.jaschke.alexandria.databinding.FacetListItemBinding;
+
+import static it.jaschke.alexandria.data.BookContract.AuthorFacetEntry;
+
+/**
+ * {@link CursorAdapter} that shows the names of a facet of the books, the
+ * authors or the categories, each with its number of books. The projection
+ * must be {@link #PROJECTION_FACET_LIST}, whose columns both facets share.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class FacetListAdapter extends CursorAdapter {
+
+    /**
+     * Projection that includes the facet data to be presented. Used to
+     * query {@link it.jaschke.alexandria.data.BookProvider}.
+     */
+    public static final String[] PROJECTION_FACET_LIST = {
+            AuthorFacetEntry._ID,
+            AuthorFacetEntry.COLUMN_NAME,
+            AuthorFacetEntry.COLUMN_BOOK_COUNT
+    };
+
+    /**
+     * Index of {@link AuthorFacetEntry#_ID} in {@link #PROJECTION_FACET_LIST}.
+     */
+    public static final int COL_ID = 0;
+
+    /**
+     * Index of {@link AuthorFacetEntry#COLUMN_NAME} in
+     * {@link #PROJECTION_FACET_LIST}.
+     */
+    public static final int COL_NAME = 1;
+
+    /**
+     * Index of {@link AuthorFacetEntry#COLUMN_BOOK_COUNT} in
+     * {@link #PROJECTION_FACET_LIST}.
+     */
+    public static final int COL_BOOK_COUNT = 2;
+
+    /**
+     * Creates a new instance of {@link FacetListAdapter}.
+     *
+     * @param context the {@link Context}.
+     * @param cursor the {@link Cursor} from which the data is retrieved.
+     * @param flags flags that determine the behaviour of the adapter.
+     */
+    public FacetListAdapter(Context context, Cursor cursor, int flags) {
+        super(context, cursor, flags);
+    }
+
+    /**
+     * Returns the name at a position of the list.
+     *
+     * @param position the position.
+     * @return the name, or {@code null} if there is no such position.
+     */
+    public String getName(int position) {
+        Cursor cursor = getCursor();
+        if (cursor == null || !cursor.moveToPosition(position)) {
+            return null;
+        }
+        return cursor.getString(COL_NAME);
+    }
+
+    @Override
+    public View newView(Context context, Cursor cursor, ViewGroup parent) {
+        FacetListItemBinding binding = DataBindingUtil.inflate(LayoutInflater.from(context)
+                , R.layout.list_item_facet, parent, false);
+        binding.getRoot().setTag(binding);
+        return binding.getRoot();
+    }
+
+    @Override
+    public void bindView(View view, Context context, Cursor cursor) {
+        FacetListItemBinding binding = (FacetListItemBinding) view.getTag();
+        binding.facetNameTextView.setText(cursor.getString(COL_NAME));
+        binding.facetCountTextView.setText(Integer.toString(cursor.getInt(COL_BOOK_COUNT)));
+    }
+
+}
@@ -1,28 +1,32 @@
 package it.jaschke.alexandria.view.fragment;
 
+import android.app.Activity;
 import android.content.Intent;
 import android.databinding.DataBindingUtil;
+import android.net.Uri;
 import android.os.Bundle;
+import android.provider.MediaStore;
 import android.support.v4.app.Fragment;
 import android.text.Editable;
+import android.text.InputFilter;
 import android.text.TextWatcher;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
-import com.google.zxing.integration.android.IntentIntegrator;
-import com.google.zxing.integration.android.IntentResult;
-
-import org.parceler.Parcels;
+import java.io.File;
+import java.util.Arrays;
 
 import de.greenrobot.event.EventBus;
 import it.jaschke.alexandria.R;
 import it.jaschke.alexandria.databinding.BookAdditionFragmentBinding;
-import it.jaschke.alexandria.model.domain.Book;
 import it.jaschke.alexandria.model.event.BookAdditionEvent;
 import it.jaschke.alexandria.model.view.BookAdditionViewModel;
 import it.jaschke.alexandria.service.BookService;
+import it.jaschke.alexandria.util.Isbn;
+import it.jaschke.alexandria.view.activity.ContinuousScanActivity;
+import it.jaschke.alexandria.view.activity.IsbnScanActivity;
 
 /**
  * Lets the user add a new book by writing or scanning its ISBN-13. The addition
@@ -38,9 +42,25 @@ public class BookAdditionFragment extends Fragment {
     private static final String LOG_TAG = BookAdditionFragment.class.getSimpleName();
 
     /**
-     * Key used to save and retrieve the serialized {@link #mViewModel}.
+     * Key used to save and retrieve the ISBN entered by the user.
+     */
+    private static final String STATE_ISBN = "state_isbn";
+
+    /**
+     * Key used to save and retrieve the {@link Uri} where the camera
+     * application writes the shelf photo.
+     */
+    private static final String STATE_SHELF_PHOTO_URI = "state_shelf_photo_uri";
+
+    /**
+     * Identifies the request to take a shelf photo.
+     */
+    private static final int REQUEST_SHELF_PHOTO = 1;
+
+    /**
+     * Identifies the request to scan an ISBN-13 barcode.
      */
-    private static final String STATE_VIEW_MODEL = "state_view_model";
+    private static final int REQUEST_SCAN_ISBN = 2;
 
     /**
      * Binds the view to the view model.
@@ -55,6 +75,12 @@ public class BookAdditionFragment extends Fragment {
      */
     private BookAdditionViewModel mViewModel;
 
+    /**
+     * Where the camera application writes the last shelf photo requested.
+     * May be {@code null}.
+     */
+    private Uri mShelfPhotoUri;
+
     /**
      * Launches the {@code Activity} that scans ISBN-13 codes when the scan
      * button is clicked.
@@ -63,6 +89,21 @@ public class BookAdditionFragment extends Fragment {
      */
     private final View.OnClickListener mScanClickLister = (view) -> scanIsbnCode();
 
+    /**
+     * Launches the {@link ContinuousScanActivity} when the continuous scan
+     * button is clicked.
+     */
+    private final View.OnClickListener mContinuousScanClickListener = (view) ->
+            startActivity(new Intent(getActivity(), ContinuousScanActivity.class));
+
+    /**
+     * Asks the camera application to take a shelf photo when the shelf photo
+     * button is clicked.
+     *
+     * @see #takeShelfPhoto()
+     */
+    private final View.OnClickListener mShelfPhotoClickListener = (view) -> takeShelfPhoto();
+
     /**
      * Updates the value of the isbn in the view model with the changes entered
      * by the user.
@@ -88,16 +129,25 @@ public class BookAdditionFragment extends Fragment {
      * Updates the value of {@link BookAdditionViewModel#mIsbn} with that
      * passed as argument. This method is called by the {@link TextWatcher}.
      * If the value is a valid ISBN-13, request the book's addition to the
-     * {@link BookService}.
+     * {@link BookService}. If it is an ISBN-10, it is replaced by the
+     * equivalent ISBN-13.
      *
      * @param s the updated value if the ISBN-13 field.
      * @see BookService
      */
     private void updateIsbn(Editable s) {
         mViewModel.setIsbn(s != null ? s.toString() : null);
-        if (s != null && s.toString().length() ==
-                getResources().getInteger(R.integer.isbn13_length)) {
-            if (mViewModel.isValidIsbn(mViewModel.getIsbn())) {
+        if (s == null) {
+            return;
+        }
+        final String isbn13 = mViewModel.convertIsbn10(s);
+        if (isbn13 != null) {
+            // Calls this method again
+            mBinding.isbnEditText.setText(isbn13);
+            return;
+        }
+        if (s.length() == Isbn.ISBN13_LENGTH) {
+            if (mViewModel.isValidIsbn(s)) {
                 mBinding.isbnEditText.setError(null);
                 requestBookAddition();
             } else {
@@ -127,13 +177,16 @@ public class BookAdditionFragment extends Fragment {
         if (savedInstanceState == null) {
             return;
         }
-        mViewModel = Parcels.unwrap(savedInstanceState.getParcelable(STATE_VIEW_MODEL));
+        mViewModel = new BookAdditionViewModel();
+        mViewModel.setIsbn(savedInstanceState.getString(STATE_ISBN));
+        mShelfPhotoUri = savedInstanceState.getParcelable(STATE_SHELF_PHOTO_URI);
     }
 
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putParcelable(STATE_VIEW_MODEL, Parcels.wrap(mViewModel));
+        outState.putString(STATE_ISBN, mViewModel.getIsbn());
+        outState.putParcelable(STATE_SHELF_PHOTO_URI, mShelfPhotoUri);
     }
 
     @Override
@@ -145,8 +198,15 @@ public class BookAdditionFragment extends Fragment {
                 , container
                 , false);
         mBinding.setViewModel(mViewModel);
+        // Upper case, so that an ISBN-10 check digit is always entered as X
+        InputFilter[] filters = mBinding.isbnEditText.getFilters();
+        filters = Arrays.copyOf(filters, filters.length + 1);
+        filters[filters.length - 1] = new InputFilter.AllCaps();
+        mBinding.isbnEditText.setFilters(filters);
         mBinding.isbnEditText.addTextChangedListener(mIsbnTextWatcher);
         mBinding.scanImageButton.setOnClickListener(mScanClickLister);
+        mBinding.continuousScanButton.setOnClickListener(mContinuousScanClickListener);
+        mBinding.shelfPhotoImageButton.setOnClickListener(mShelfPhotoClickListener);
         return mBinding.getRoot();
     }
 
@@ -178,9 +238,30 @@ public class BookAdditionFragment extends Fragment {
      * @see #onActivityResult(int, int, Intent)
      */
     public void scanIsbnCode() {
-        IntentIntegrator.forSupportFragment(this)
-                .setDesiredBarcodeFormats(IntentIntegrator.ONE_D_CODE_TYPES)
-                .initiateScan();
+        startActivityForResult(new Intent(getActivity(), IsbnScanActivity.class)
+                , REQUEST_SCAN_ISBN);
+    }
+
+    /**
+     * Asks the camera application to take a full resolution photo of several
+     * books, which is delivered to this {@code Fragment} as a result. Every
+     * book whose barcode appears in the photo is added.
+     *
+     * @see #onActivityResult(int, int, Intent)
+     */
+    public void takeShelfPhoto() {
+        Intent photoIntent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
+        File photoDir = getActivity().getExternalCacheDir();
+        if (photoDir == null
+                || photoIntent.resolveActivity(getActivity().getPackageManager()) == null) {
+            Log.w(LOG_TAG, "Unable to take shelf photos.");
+            return;
+        }
+        // Each photo gets its own file, since the last one may still be scanned
+        File photoFile = new File(photoDir, "shelf_" + System.currentTimeMillis() + ".jpg");
+        mShelfPhotoUri = Uri.fromFile(photoFile);
+        photoIntent.putExtra(MediaStore.EXTRA_OUTPUT, mShelfPhotoUri);
+        startActivityForResult(photoIntent, REQUEST_SHELF_PHOTO);
     }
 
     /**
@@ -188,24 +269,28 @@ public class BookAdditionFragment extends Fragment {
      * the user (the current value of ).
      */
     private void requestBookAddition() {
-        Book book = new Book();
-        book.setId(Long.parseLong(mViewModel.getIsbn()));
-        Intent bookIntent = new Intent(getActivity(), BookService.class);
-        bookIntent.putExtra(BookService.EXTRA_BOOK, Parcels.wrap(book));
-        bookIntent.setAction(BookService.ACTION_FETCH_BOOK);
-        getActivity().startService(bookIntent);
+        BookService.requestFetch(getActivity(), Long.parseLong(mViewModel.getIsbn()));
     }
 
 
     @Override
     public void onActivityResult(int requestCode, int resultCode, Intent data) {
-        IntentResult scanResult =
-                IntentIntegrator.parseActivityResult(requestCode, resultCode, data);
-        if (scanResult == null) {
+        if (requestCode == REQUEST_SHELF_PHOTO) {
+            if (resultCode == Activity.RESULT_OK && mShelfPhotoUri != null) {
+                BookService.requestShelfPhotoScan(getActivity(), mShelfPhotoUri);
+            }
+            mShelfPhotoUri = null;
+            return;
+        }
+        if (requestCode != REQUEST_SCAN_ISBN) {
+            super.onActivityResult(requestCode, resultCode, data);
+            return;
+        }
+        if (resultCode != Activity.RESULT_OK || data == null) {
             Log.w(LOG_TAG, "No scanned barcode resuts received.");
             return;
         }
-        String scannedCode = scanResult.getContents();
+        String scannedCode = data.getStringExtra(IsbnScanActivity.EXTRA_ISBN);
         mBinding.isbnEditText.setText(scannedCode);
     }
 
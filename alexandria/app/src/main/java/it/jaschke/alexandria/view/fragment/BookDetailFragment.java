@@ -19,14 +19,14 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 
-import org.parceler.Parcels;
-
 import it.jaschke.alexandria.R;
+import it.jaschke.alexandria.data.BookCache;
 import it.jaschke.alexandria.databinding.BookDetailFragmentBinding;
 import it.jaschke.alexandria.model.domain.Book;
 import it.jaschke.alexandria.model.view.BookDetailViewModel;
 
 import static it.jaschke.alexandria.data.BookContract.BookEntry;
+import static it.jaschke.alexandria.data.BookContract.buildCachedUri;
 import static it.jaschke.alexandria.model.view.BookDetailViewModel.BookAuthorQuery;
 import static it.jaschke.alexandria.model.view.BookDetailViewModel.BookCategoryQuery;
 import static it.jaschke.alexandria.model.view.BookDetailViewModel.BookDetailQuery;
@@ -35,7 +35,9 @@ import static it.jaschke.alexandria.model.view.BookDetailViewModel.BookDetailQue
 /**
  * Displays detailed information for a given {@link Book}. New instances of
  * this class must be created with the factory method
- * {@link #newInstance(Book)}.
+ * {@link #newInstance(long)}. Only the book's id is kept in the
+ * {@link Fragment}'s arguments and state, its data is taken from the
+ * {@link BookCache} when available and loaded from the {@code ContentProvider}.
  *
  * @author Jesús Adolfo García Pasquel
  */
@@ -70,16 +72,11 @@ public class BookDetailFragment extends Fragment {
     private static final int BOOK_CATEGORY_LOADER_ID = 924922;
 
     /**
-     * Key used to access the {@link Book} specified as argument at creation
-     * time.
-     * @see #newInstance(Book)
-     */
-    private static final String ARG_BOOK = "EXTRA_BOOK";
-
-    /**
-     * Key used to save and retrieve the serialized {@link #mViewModel}.
+     * Key used to access the id of the {@link Book} specified as argument at
+     * creation time.
+     * @see #newInstance(long)
      */
-    private static final String STATE_VIEW_MODEL = "state_view_model";
+    private static final String ARG_BOOK_ID = "EXTRA_BOOK_ID";
 
     /**
      * Provides data and behaviour to the {@link BookDetailFragment}.
@@ -101,12 +98,13 @@ public class BookDetailFragment extends Fragment {
      * Creates a new instance of {@link BookDetailFragment} for the specified
      * book. You must use this factory method to create new instances.
      *
-     * @param book the {@link Book} for which the details will be displayed.
+     * @param bookId the id (ISBN-13) of the {@link Book} for which the
+     *     details will be displayed.
      * @return A new instance of {@link BookDetailFragment}.
      */
-    public static BookDetailFragment newInstance(Book book) {
+    public static BookDetailFragment newInstance(long bookId) {
         Bundle args = new Bundle();
-        args.putParcelable(ARG_BOOK, Parcels.wrap(book));
+        args.putLong(ARG_BOOK_ID, bookId);
         BookDetailFragment fragment = new BookDetailFragment();
         fragment.setArguments(args);
         return fragment;
@@ -119,27 +117,15 @@ public class BookDetailFragment extends Fragment {
         if (getArguments() == null) {
             throw new IllegalStateException("No book specified as Fragment argument.");
         }
-        this.restoreState(savedInstanceState);
-    }
-
-    /**
-     * Loads the previous state, stored in the {@link Bundle} passed as argument,
-     * into the {@link BookDetailFragment}. {@link #mViewModel} in particular.
-     * If the argument is {@code null}, nothing is done.
-     *
-     * @param savedInstanceState the {@link BookDetailFragment}'s previous state.
-     */
-    private void restoreState(Bundle savedInstanceState) {
-        if (savedInstanceState == null) {
-            return;
-        }
-        mViewModel = Parcels.unwrap(savedInstanceState.getParcelable(STATE_VIEW_MODEL));
     }
 
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putParcelable(STATE_VIEW_MODEL, Parcels.wrap(mViewModel));
+        // The id is in the arguments, the data is kept in the cache only
+        if (mViewModel != null) {
+            BookCache.getInstance().put(mViewModel.getBook());
+        }
     }
 
     @Override
@@ -169,14 +155,20 @@ public class BookDetailFragment extends Fragment {
     }
 
     /**
-     * Returns a new {@link BookDetailViewModel} based on the book data passed
-     * in the {@link Fragment}'s arguments.
+     * Returns a new {@link BookDetailViewModel} for the book whose id was
+     * passed in the {@link Fragment}'s arguments. Uses the book's data in
+     * the {@link BookCache} if available.
      *
-     * @return a new {@link BookDetailViewModel} based on the movie data passed
-     *     in the {@link Fragment}'s arguments.
+     * @return a new {@link BookDetailViewModel} for the book whose id was
+     *     passed in the {@link Fragment}'s arguments.
      */
     private BookDetailViewModel newViewModel() {
-        Book book = Parcels.unwrap(getArguments().getParcelable(ARG_BOOK));
+        final long bookId = getArguments().getLong(ARG_BOOK_ID);
+        Book book = BookCache.getInstance().get(bookId);
+        if (book == null) {
+            book = new Book();
+            book.setId(bookId);
+        }
         BookDetailViewModel viewModel = new BookDetailViewModel();
         viewModel.setBook(book);
         return viewModel;
@@ -237,7 +229,7 @@ public class BookDetailFragment extends Fragment {
         @Override
         public Loader<Cursor> onCreateLoader(int id, Bundle args) {
             return new CursorLoader(BookDetailFragment.this.getActivity()
-                    , BookEntry.buildBookUri(mViewModel.getBook().getId())
+                    , buildCachedUri(BookEntry.buildBookUri(mViewModel.getBook().getId()))
                     , BookDetailQuery.PROJECTION
                     , null
                     , null
@@ -247,6 +239,7 @@ public class BookDetailFragment extends Fragment {
         @Override
         public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
             mViewModel.setBookData(data);
+            BookCache.getInstance().put(mViewModel.getBook());
             // Set the share intent, if the provider has already been loaded
             if (mShareActionProvider != null) {
                 mShareActionProvider.setShareIntent(getShareBookTitleIntent());
@@ -270,7 +263,7 @@ public class BookDetailFragment extends Fragment {
         @Override
         public Loader<Cursor> onCreateLoader(int id, Bundle args) {
             return new CursorLoader(BookDetailFragment.this.getActivity()
-                    , BookEntry.buildBookAuthorsUri(mViewModel.getBook().getId())
+                    , buildCachedUri(BookEntry.buildBookAuthorsUri(mViewModel.getBook().getId()))
                     , BookAuthorQuery.PROJECTION
                     , null
                     , null
@@ -280,6 +273,7 @@ public class BookDetailFragment extends Fragment {
         @Override
         public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
             mViewModel.setBookAuthorData(data);
+            BookCache.getInstance().put(mViewModel.getBook());
         }
 
         @Override
@@ -299,7 +293,7 @@ public class BookDetailFragment extends Fragment {
         @Override
         public Loader<Cursor> onCreateLoader(int id, Bundle args) {
             return new CursorLoader(BookDetailFragment.this.getActivity()
-                    , BookEntry.buildBookCategoriesUri(mViewModel.getBook().getId())
+                    , buildCachedUri(BookEntry.buildBookCategoriesUri(mViewModel.getBook().getId()))
                     , BookCategoryQuery.PROJECTION
                     , null
                     , null
@@ -309,6 +303,7 @@ public class BookDetailFragment extends Fragment {
         @Override
         public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
             mViewModel.setBookCategoryData(data);
+            BookCache.getInstance().put(mViewModel.getBook());
         }
 
         @Override
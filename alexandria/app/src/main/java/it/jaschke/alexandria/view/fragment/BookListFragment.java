@@ -8,17 +8,21 @@ import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
 
-import org.parceler.Parcels;
-
 import de.greenrobot.event.EventBus;
 import it.jaschke.alexandria.R;
+import it.jaschke.alexandria.data.BookContract;
 import it.jaschke.alexandria.databinding.BookListFragmentBinding;
+import it.jaschke.alexandria.model.event.FacetSelectionEvent;
 import it.jaschke.alexandria.model.event.SearchStringChangeEvent;
 import it.jaschke.alexandria.model.view.BookListViewModel;
+import it.jaschke.alexandria.util.StartupTrace;
 import it.jaschke.alexandria.view.adapter.BookListAdapter;
 
 /**
@@ -41,9 +45,35 @@ public class BookListFragment extends Fragment implements LoaderManager.LoaderCa
     private static final int BOOK_LIST_LOADER_ID = 527669;
 
     /**
-     * Key used to save and retrieve the serialized {@link #mViewModel}.
+     * Key used to save and retrieve the position of the selected book.
+     */
+    private static final String STATE_SELECTED_POSITION = "state_selected_position";
+
+    /**
+     * Key used to save and retrieve the search string.
+     */
+    private static final String STATE_SEARCH_STRING = "state_search_string";
+
+    /**
+     * Key used to save and retrieve if the search is exact.
+     */
+    private static final String STATE_EXACT_SEARCH = "state_exact_search";
+
+    /**
+     * Key used to save and retrieve the selected facet.
      */
-    private static final String STATE_VIEW_MODEL = "state_view_model";
+    private static final String STATE_FACET = "state_facet";
+
+    /**
+     * Key used to save and retrieve the name selected in the facet.
+     */
+    private static final String STATE_FACET_NAME = "state_facet_name";
+
+    /**
+     * Indicates if the list of books has been loaded since the process started.
+     * Used to measure the first load.
+     */
+    private static boolean sFirstLoadFinished;
 
     /**
      * Binds the view to the view model.
@@ -69,9 +99,18 @@ public class BookListFragment extends Fragment implements LoaderManager.LoaderCa
      */
     private final View.OnClickListener mSearchClickLister = (view) -> updateBookList();
 
+    /**
+     * Lists all the books again when the selected facet is cleared.
+     *
+     * @see #onEvent(FacetSelectionEvent)
+     */
+    private final View.OnClickListener mClearFacetClickListener = (view) -> onEvent(
+            new FacetSelectionEvent(mViewModel.getFacet(), null));
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        setHasOptionsMenu(true);
         restoreState(savedInstanceState);
         if (mViewModel == null) {
             mViewModel = new BookListViewModel();
@@ -89,13 +128,23 @@ public class BookListFragment extends Fragment implements LoaderManager.LoaderCa
         if (savedInstanceState == null) {
             return;
         }
-        mViewModel = Parcels.unwrap(savedInstanceState.getParcelable(STATE_VIEW_MODEL));
+        mViewModel = new BookListViewModel();
+        mViewModel.setSelectedPosition(savedInstanceState.getInt(STATE_SELECTED_POSITION
+                , AdapterView.INVALID_POSITION));
+        mViewModel.setSearchString(savedInstanceState.getString(STATE_SEARCH_STRING));
+        mViewModel.setExactSearch(savedInstanceState.getBoolean(STATE_EXACT_SEARCH));
+        mViewModel.setFacet(savedInstanceState.getString(STATE_FACET));
+        mViewModel.setFacetName(savedInstanceState.getString(STATE_FACET_NAME));
     }
 
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putParcelable(STATE_VIEW_MODEL, Parcels.wrap(mViewModel));
+        outState.putInt(STATE_SELECTED_POSITION, mViewModel.getSelectedPosition());
+        outState.putString(STATE_SEARCH_STRING, mViewModel.getSearchString());
+        outState.putBoolean(STATE_EXACT_SEARCH, mViewModel.isExactSearch());
+        outState.putString(STATE_FACET, mViewModel.getFacet());
+        outState.putString(STATE_FACET_NAME, mViewModel.getFacetName());
     }
 
     @Override
@@ -119,9 +168,53 @@ public class BookListFragment extends Fragment implements LoaderManager.LoaderCa
         mBinding.searchEditText.addTextChangedListener(
                 mViewModel.getSearchStringWatcher());
         mBinding.searchImageButton.setOnClickListener(mSearchClickLister);
+        mBinding.clearFacetButton.setOnClickListener(mClearFacetClickListener);
+        updateFacetBar();
         return mBinding.getRoot();
     }
 
+    /**
+     * Shows the author or category the books listed are limited to, if
+     * any, with the button that lists all the books again.
+     */
+    private void updateFacetBar() {
+        if (!mViewModel.isFacetSelected()) {
+            mBinding.facetBar.setVisibility(View.GONE);
+            return;
+        }
+        mBinding.facetLabelTextView.setText(getString(
+                BookContract.QUERY_PARAMETER_AUTHOR.equals(mViewModel.getFacet())
+                        ? R.string.book_list_facet_author
+                        : R.string.book_list_facet_category
+                , mViewModel.getFacetName()));
+        mBinding.facetBar.setVisibility(View.VISIBLE);
+    }
+
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        inflater.inflate(R.menu.book_list, menu);
+    }
+
+    @Override
+    public void onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.menu_item_exact_search).setChecked(mViewModel.isExactSearch());
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.menu_item_exact_search:
+                mViewModel.setExactSearch(!item.isChecked());
+                item.setChecked(mViewModel.isExactSearch());
+                if (mViewModel.isSearching()) {
+                    updateBookList();
+                }
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
     @Override
     public void onResume() {
         EventBus.getDefault().register(this);
@@ -157,22 +250,45 @@ public class BookListFragment extends Fragment implements LoaderManager.LoaderCa
         updateBookList();
     }
 
+    /**
+     * Limits the books listed to those of the author or category selected,
+     * or lists all of them again if the facet was cleared.
+     *
+     * @param event facet selection.
+     * @see #updateBookList()
+     */
+    public void onEvent(FacetSelectionEvent event) {
+        mViewModel.setFacet(event.getFacet());
+        mViewModel.setFacetName(event.getName());
+        updateFacetBar();
+        updateBookList();
+    }
+
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        if (!sFirstLoadFinished) {
+            StartupTrace.mark("BookListFragment first load started");
+        }
         return new CursorLoader(getActivity()
                 , mViewModel.getBookListQueryUri()
                 , mViewModel.getBookListQueryProjection()
                 , mViewModel.getBookListQuerySelection()
                 , mViewModel.getBookListQuerySelectionArguments()
-                , null);
+                , mViewModel.getBookListQuerySortOrder());
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        if (!sFirstLoadFinished) {
+            sFirstLoadFinished = true;
+            StartupTrace.mark("BookListFragment first load finished");
+        }
         Cursor oldCursor = mBookListAdapter.swapCursor(data);
         if (oldCursor != null) {
             oldCursor.close();
         }
+        // Search results are ranked, the sections of the titles make no sense
+        mBinding.bookListView.setFastScrollEnabled(!mViewModel.isFuzzySearching());
 
         // Scroll to the last selected item if reloading after an event
         // that causes the first item to be shown (e.g. configuration change).
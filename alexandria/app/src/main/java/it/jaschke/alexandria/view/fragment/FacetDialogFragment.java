@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.view.fragment;
+
+import android.app.Dialog;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v4.app.DialogFragment;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
+import android.support.v7.app.AlertDialog;
+
+import de.greenrobot.event.EventBus;
+import it.jaschke.alexandria.R;
+import it.jaschke.alexandria.data.BookContract;
+import it.jaschke.alexandria.model.event.FacetSelectionEvent;
+import it.jaschke.alexandria.view.adapter.FacetListAdapter;
+
+import static it.jaschke.alexandria.data.BookContract.AuthorFacetEntry;
+import static it.jaschke.alexandria.data.BookContract.CategoryFacetEntry;
+
+/**
+ * Lists the names of a facet of the books, the authors or the categories,
+ * with their number of books, and publishes a {@link FacetSelectionEvent}
+ * when one is tapped, so that the book list shows only its books. New
+ * instances of this class must be created with the factory method
+ * {@link #newInstance(String)}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class FacetDialogFragment extends DialogFragment
+        implements LoaderManager.LoaderCallbacks<Cursor> {
+
+    /**
+     * Identifies the {@link Loader} that retrieves the facet.
+     */
+    private static final int FACET_LOADER_ID = 527670;
+
+    /**
+     * Key of the facet listed in the {@code Fragment}'s arguments.
+     *
+     * @see #newInstance(String)
+     */
+    private static final String ARG_FACET = "EXTRA_FACET";
+
+    /**
+     * Adapter that provides the {@code View}s for presenting each name.
+     */
+    private FacetListAdapter mAdapter;
+
+    /**
+     * Creates a new instance of {@link FacetDialogFragment}.
+     *
+     * @param facet the facet listed,
+     *     {@link BookContract#QUERY_PARAMETER_AUTHOR} or
+     *     {@link BookContract#QUERY_PARAMETER_CATEGORY}.
+     * @return a new instance of {@link FacetDialogFragment}.
+     */
+    public static FacetDialogFragment newInstance(String facet) {
+        Bundle args = new Bundle();
+        args.putString(ARG_FACET, facet);
+        FacetDialogFragment fragment = new FacetDialogFragment();
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    /**
+     * Returns the facet listed.
+     *
+     * @return {@link BookContract#QUERY_PARAMETER_AUTHOR} or
+     *     {@link BookContract#QUERY_PARAMETER_CATEGORY}.
+     */
+    private String getFacet() {
+        return getArguments().getString(ARG_FACET);
+    }
+
+    /**
+     * Indicates if the facet listed is the authors'.
+     *
+     * @return {@code true} for the authors, {@code false} for the categories.
+     */
+    private boolean isAuthorFacet() {
+        return BookContract.QUERY_PARAMETER_AUTHOR.equals(getFacet());
+    }
+
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        mAdapter = new FacetListAdapter(getActivity(), null, 0);
+        return new AlertDialog.Builder(getActivity())
+                .setTitle(isAuthorFacet()
+                        ? R.string.title_facet_authors : R.string.title_facet_categories)
+                .setAdapter(mAdapter, (dialog, position) -> {
+                    String name = mAdapter.getName(position);
+                    if (name != null) {
+                        EventBus.getDefault().post(new FacetSelectionEvent(getFacet(), name));
+                    }
+                })
+                .create();
+    }
+
+    @Override
+    public void onActivityCreated(Bundle savedInstanceState) {
+        super.onActivityCreated(savedInstanceState);
+        getLoaderManager().initLoader(FACET_LOADER_ID, null, this);
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        Uri uri = isAuthorFacet()
+                ? AuthorFacetEntry.CONTENT_URI : CategoryFacetEntry.CONTENT_URI;
+        return new CursorLoader(getActivity()
+                , uri
+                , FacetListAdapter.PROJECTION_FACET_LIST
+                , null // selection
+                , null // selectionArgs
+                , null); // sortOrder, by name
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        mAdapter.swapCursor(data);
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        mAdapter.swapCursor(null);
+    }
+
+}
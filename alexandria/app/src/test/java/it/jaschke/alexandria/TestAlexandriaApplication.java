@@ -0,0 +1,33 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria;
+
+import android.app.Application;
+
+import it.jaschke.alexandria.util.MainThreadWatchdog;
+
+/**
+ * The application of the tests run with Robolectric, which uses it instead
+ * of {@link AlexandriaApplication} as it is named after it. It does not
+ * install the {@link MainThreadWatchdog}, whose checks and stack traces
+ * would be measured by the benchmarks and are meaningless outside a device.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class TestAlexandriaApplication extends Application {
+
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.backup;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link LibraryWriter} and {@link LibraryReader}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class LibraryBackupTest {
+
+    /**
+     * Number of books in the large library, as many as the format must handle
+     * on low memory devices.
+     */
+    private static final int LARGE_LIBRARY_SIZE = 100000;
+
+    /**
+     * ISBN-13 of the first book of the sample libraries.
+     */
+    private static final long FIRST_ISBN = 9780000000000L;
+
+    /**
+     * Fills the record with the data of a sample book.
+     *
+     * @param book the record to fill.
+     * @param index the index of the book in the sample library.
+     * @return the record.
+     */
+    private static BookRecord sampleBook(BookRecord book, int index) {
+        book.clear();
+        book.setId(FIRST_ISBN + index);
+        book.setTitle("Título " + index);
+        book.setSubtitle(index % 2 == 0 ? null : "Subtitle " + index);
+        book.setDescription("Description of the book number " + index + ", ✓.");
+        book.setCoverUrl("http://books.google.com/books/content?id=" + index);
+        book.getAuthors().add("Author " + index);
+        book.getAuthors().add("Co-author " + index);
+        book.getCategories().add("Category " + (index % 10));
+        book.setModifiedAt(FIRST_ISBN + index);
+        book.setDeletedAt(index % 3 == 0 ? FIRST_ISBN : 0L);
+        return book;
+    }
+
+    /**
+     * Writes a sample library.
+     *
+     * @param output where the backup is written.
+     * @param size the number of books in the library.
+     * @throws IOException if the library cannot be written.
+     */
+    private static void writeLibrary(OutputStream output, int size) throws IOException {
+        BookRecord book = new BookRecord();
+        try (LibraryWriter writer = new LibraryWriter(output)) {
+            for (int i = 0; i < size; i++) {
+                writer.writeBook(sampleBook(book, i));
+            }
+            writer.finish();
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BookRecord book = new BookRecord();
+        byte[] cover = {1, 2, 3, (byte) 0xff};
+        try (LibraryWriter writer = new LibraryWriter(output)) {
+            writer.writeBook(sampleBook(book, 0));
+            sampleBook(book, 1).setCover(cover);
+            writer.writeBook(book);
+            book.clear();
+            book.setId(FIRST_ISBN);
+            book.setTitle("Only a title");
+            writer.writeBook(book);
+            writer.finish();
+        }
+
+        BookRecord read = new BookRecord();
+        BookRecord expected = new BookRecord();
+        try (LibraryReader reader = new LibraryReader(
+                new ByteArrayInputStream(output.toByteArray()))) {
+            for (int i = 0; i < 2; i++) {
+                assertTrue(reader.readBook(read));
+                sampleBook(expected, i);
+                assertEquals(expected.getId(), read.getId());
+                assertEquals(expected.getTitle(), read.getTitle());
+                assertEquals(expected.getSubtitle(), read.getSubtitle());
+                assertEquals(expected.getDescription(), read.getDescription());
+                assertEquals(expected.getCoverUrl(), read.getCoverUrl());
+                assertEquals(expected.getAuthors(), read.getAuthors());
+                assertEquals(expected.getCategories(), read.getCategories());
+                assertEquals(expected.getModifiedAt(), read.getModifiedAt());
+                assertEquals(expected.getDeletedAt(), read.getDeletedAt());
+            }
+            assertArrayEquals(cover, read.getCover());
+            assertTrue(reader.readBook(read));
+            assertEquals("Only a title", read.getTitle());
+            assertNull(read.getSubtitle());
+            assertNull(read.getCover());
+            assertTrue(read.getAuthors().isEmpty());
+            assertFalse(reader.readBook(read));
+            assertFalse(reader.readBook(read));
+            assertEquals(3, reader.getBookCount());
+        }
+    }
+
+    @Test
+    public void testLargeLibraryIsStreamed() throws Exception {
+        // The backup goes through a pipe, so it is never held whole in memory
+        PipedInputStream input = new PipedInputStream();
+        PipedOutputStream output = new PipedOutputStream(input);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> writing = executor.submit(() -> {
+                writeLibrary(output, LARGE_LIBRARY_SIZE);
+                return null;
+            });
+            BookRecord book = new BookRecord();
+            try (LibraryReader reader = new LibraryReader(input)) {
+                long expectedId = FIRST_ISBN;
+                while (reader.readBook(book)) {
+                    assertEquals(expectedId++, book.getId());
+                }
+                assertEquals(LARGE_LIBRARY_SIZE, reader.getBookCount());
+            }
+            writing.get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRejectsOtherFiles() throws Exception {
+        try {
+            new LibraryReader(new ByteArrayInputStream("Not a backup".getBytes("UTF-8")));
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testRejectsNewerVersions() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writeLibrary(output, 1);
+        byte[] bytes = output.toByteArray();
+        // The version follows the four bytes of the magic number
+        bytes[4] = (byte) (LibraryFormat.VERSION + 1);
+        try {
+            new LibraryReader(new ByteArrayInputStream(bytes));
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testReadsVersion1() throws Exception {
+        // Written field by field, as the first version of the format did
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(output);
+        header.writeInt(LibraryFormat.MAGIC);
+        header.writeByte(1);
+        DataOutputStream records = new DataOutputStream(new GZIPOutputStream(output));
+        records.writeByte(LibraryFormat.TAG_BOOK);
+        records.writeLong(FIRST_ISBN);
+        records.writeInt(1);
+        records.writeBytes("T");
+        for (int i = 0; i < 3; i++) {
+            records.writeInt(LibraryFormat.NULL_LENGTH);
+        }
+        records.writeInt(0);
+        records.writeInt(0);
+        records.writeInt(LibraryFormat.NULL_LENGTH);
+        records.writeByte(LibraryFormat.TAG_END);
+        records.writeInt(1);
+        records.close();
+
+        BookRecord book = new BookRecord();
+        book.setModifiedAt(FIRST_ISBN);
+        try (LibraryReader reader = new LibraryReader(
+                new ByteArrayInputStream(output.toByteArray()))) {
+            assertTrue(reader.readBook(book));
+            assertEquals(FIRST_ISBN, book.getId());
+            assertEquals("T", book.getTitle());
+            assertEquals(0L, book.getModifiedAt());
+            assertEquals(0L, book.getDeletedAt());
+            assertFalse(reader.readBook(book));
+        }
+    }
+
+    @Test
+    public void testDetectsTruncatedBackups() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BookRecord book = new BookRecord();
+        LibraryWriter writer = new LibraryWriter(output);
+        writer.writeBook(sampleBook(book, 0));
+        // Not finished, as if the export was interrupted
+        writer.close();
+        try (LibraryReader reader = new LibraryReader(
+                new ByteArrayInputStream(output.toByteArray()))) {
+            assertTrue(reader.readBook(book));
+            reader.readBook(book);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+        byte[] bytes = Arrays.copyOf(output.toByteArray(), output.size() / 2);
+        try (LibraryReader reader = new LibraryReader(new ByteArrayInputStream(bytes))) {
+            reader.readBook(book);
+            reader.readBook(book);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+}
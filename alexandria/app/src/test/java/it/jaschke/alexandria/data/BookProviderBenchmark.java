@@ -0,0 +1,423 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import it.jaschke.alexandria.BuildConfig;
+import it.jaschke.alexandria.model.view.BookDetailViewModel;
+import it.jaschke.alexandria.model.view.BookListViewModel;
+import it.jaschke.alexandria.util.BenchmarkReport;
+import it.jaschke.alexandria.util.Latencies;
+import it.jaschke.alexandria.view.adapter.BookListAdapter;
+
+import static it.jaschke.alexandria.data.BookContract.AuthorEntry;
+import static it.jaschke.alexandria.data.BookContract.BookEntry;
+import static it.jaschke.alexandria.data.BookContract.CategoryEntry;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the throughput and latency of {@link BookProvider} on the JVM,
+ * on the SQLite provided by Robolectric, with libraries of 1k, 10k and 100k
+ * books: bulk inserts (as done by the library import), single inserts (as
+ * done for each book fetched), the list of books, searches and the queries of
+ * the detail view. Only the scales listed in the {@code benchmark.scales}
+ * system property are run, so that {@code ./gradlew test} stays fast; pass
+ * {@code -PbenchmarkScales=1000,10000,100000} to run them all. The results
+ * are written by {@link BenchmarkReport}, so runs can be compared when the
+ * schema or the provider change. A run fails if the 95th percentile of the
+ * fuzzy searches is over {@link #FUZZY_SEARCH_BUDGET_MICROS}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class BookProviderBenchmark {
+
+    /**
+     * Name of the system property with the comma separated scales to run.
+     */
+    private static final String PROPERTY_SCALES = "benchmark.scales";
+
+    /**
+     * Scales run when {@link #PROPERTY_SCALES} is not set.
+     */
+    private static final String DEFAULT_SCALES = "1000";
+
+    /**
+     * The smallest scale, in books.
+     */
+    private static final int SCALE_1K = 1000;
+
+    /**
+     * The medium scale, in books.
+     */
+    private static final int SCALE_10K = 10000;
+
+    /**
+     * The largest scale, in books.
+     */
+    private static final int SCALE_100K = 100000;
+
+    /**
+     * ISBN-13 of the first book inserted, the rest follow it.
+     */
+    private static final long FIRST_ISBN = 9780000000000L;
+
+    /**
+     * Books inserted per batch, as many as the library import writes at once.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Number of authors of each book in the library.
+     */
+    private static final int AUTHORS_PER_BOOK = 2;
+
+    /**
+     * Number of books inserted one at a time.
+     */
+    private static final int SINGLE_INSERTS = 200;
+
+    /**
+     * Number of times the whole list of books is read.
+     */
+    private static final int LIST_QUERIES = 10;
+
+    /**
+     * Number of searches performed.
+     */
+    private static final int SEARCHES = 50;
+
+    /**
+     * Maximum 95th percentile of the latency of the fuzzy searches, in
+     * microseconds, with libraries of up to {@link #SCALE_100K} books. The
+     * book list searches as the user types, so each search must answer
+     * well before the next key is pressed.
+     */
+    private static final double FUZZY_SEARCH_BUDGET_MICROS = 100000d;
+
+    /**
+     * Number of books whose details are read.
+     */
+    private static final int DETAIL_QUERIES = 500;
+
+    /**
+     * Number of untimed operations performed before each measurement, so the
+     * JIT compiler and the SQLite page cache warm up.
+     */
+    private static final int WARM_UP = 3;
+
+    /**
+     * Seed of the generated books and queries, so runs are comparable.
+     */
+    private static final long SEED = 42L;
+
+    /**
+     * Words the titles, subtitles, descriptions and searches are made of.
+     */
+    private static final String[] WORDS = {"android", "patterns", "history"
+            , "introduction", "modern", "java", "systems", "design", "guide"
+            , "practical", "theory", "art", "science", "programming", "data"
+            , "networks", "algorithms", "complete", "essential", "world"};
+
+    /**
+     * Misspelled {@link #WORDS}, searched for by the fuzzy searches.
+     */
+    private static final String[] TYPOS = {"andriod", "pattrens", "histroy"
+            , "introdcution", "scince", "sytsems", "praticcal", "programing"
+            , "netwroks", "algoritms", "esential", "compelte"};
+
+    /**
+     * Words in a title.
+     */
+    private static final int TITLE_WORDS = 3;
+
+    /**
+     * Words in a description, about a thousand characters.
+     */
+    private static final int DESCRIPTION_WORDS = 120;
+
+    /**
+     * The provider measured.
+     */
+    private BookProvider mProvider;
+
+    /**
+     * Generates the books and picks the queries.
+     */
+    private Random mRandom;
+
+    /**
+     * Where the results are written.
+     */
+    private final BenchmarkReport mReport = new BenchmarkReport("BookProviderBenchmark");
+
+    /**
+     * Creates the provider on a new database.
+     */
+    @Before
+    public void setUp() {
+        ProviderInfo info = new ProviderInfo();
+        info.authority = BookContract.CONTENT_AUTHORITY;
+        mProvider = new BookProvider();
+        mProvider.attachInfo(RuntimeEnvironment.application, info);
+        mRandom = new Random(SEED);
+    }
+
+    @Test
+    public void benchmark1k() throws Exception {
+        run(SCALE_1K);
+    }
+
+    @Test
+    public void benchmark10k() throws Exception {
+        run(SCALE_10K);
+    }
+
+    @Test
+    public void benchmark100k() throws Exception {
+        run(SCALE_100K);
+    }
+
+    /**
+     * Fills the library with the number of books and measures every
+     * operation, if the scale is enabled.
+     *
+     * @param books the number of books in the library.
+     * @throws Exception if the provider fails.
+     */
+    private void run(int books) throws Exception {
+        Assume.assumeTrue(Arrays.asList(System.getProperty(PROPERTY_SCALES, DEFAULT_SCALES)
+                .split(",")).contains(Integer.toString(books)));
+
+        Latencies bulk = new Latencies(books / BATCH_SIZE);
+        for (int first = 0; first < books; first += BATCH_SIZE) {
+            ArrayList<ContentProviderOperation> batch = new ArrayList<>();
+            for (int i = first; i < first + BATCH_SIZE; i++) {
+                addBookOperations(batch, FIRST_ISBN + i);
+            }
+            final long start = System.nanoTime();
+            mProvider.applyBatch(batch);
+            bulk.add(System.nanoTime() - start);
+        }
+        report(books, "bulk_insert", bulk, BATCH_SIZE);
+
+        Latencies single = new Latencies(SINGLE_INSERTS);
+        for (int i = 0; i < SINGLE_INSERTS; i++) {
+            ContentValues values = buildBook(FIRST_ISBN + books + i);
+            final long start = System.nanoTime();
+            mProvider.insert(BookEntry.CONTENT_URI, values);
+            single.add(System.nanoTime() - start);
+        }
+        report(books, "insert", single, 1);
+        final int total = books + SINGLE_INSERTS;
+
+        Latencies list = new Latencies(LIST_QUERIES);
+        for (int i = -WARM_UP; i < LIST_QUERIES; i++) {
+            final long start = System.nanoTime();
+            final int rows = readAll(mProvider.query(BookEntry.CONTENT_URI
+                    , BookListAdapter.PROJECTION_BOOK_LIST, null, null, null));
+            if (i >= 0) {
+                list.add(System.nanoTime() - start);
+            }
+            assertEquals(total, rows);
+        }
+        report(books, "list_query", list, 1);
+
+        Latencies search = new Latencies(SEARCHES);
+        BookListViewModel viewModel = new BookListViewModel();
+        // The exact search, by LIKE on the title and subtitle, measured as before the fuzzy one
+        viewModel.setExactSearch(true);
+        for (int i = -WARM_UP; i < SEARCHES; i++) {
+            viewModel.setSearchString(WORDS[mRandom.nextInt(WORDS.length)]);
+            final long start = System.nanoTime();
+            final int rows = readAll(mProvider.query(viewModel.getBookListQueryUri()
+                    , viewModel.getBookListQueryProjection()
+                    , viewModel.getBookListQuerySelection()
+                    , viewModel.getBookListQuerySelectionArguments()
+                    , null));
+            if (i >= 0) {
+                search.add(System.nanoTime() - start);
+            }
+            assertTrue(rows > 0);
+        }
+        report(books, "search", search, 1);
+
+        Latencies fuzzySearch = new Latencies(SEARCHES);
+        viewModel.setExactSearch(false);
+        for (int i = -WARM_UP; i < SEARCHES; i++) {
+            viewModel.setSearchString(TYPOS[mRandom.nextInt(TYPOS.length)] + " "
+                    + WORDS[mRandom.nextInt(WORDS.length)]);
+            final long start = System.nanoTime();
+            final int rows = readAll(mProvider.query(viewModel.getBookListQueryUri()
+                    , viewModel.getBookListQueryProjection()
+                    , viewModel.getBookListQuerySelection()
+                    , viewModel.getBookListQuerySelectionArguments()
+                    , viewModel.getBookListQuerySortOrder()));
+            if (i >= 0) {
+                fuzzySearch.add(System.nanoTime() - start);
+            }
+            assertTrue(rows > 0);
+        }
+        report(books, "fuzzy_search", fuzzySearch, 1);
+
+        Latencies detail = new Latencies(DETAIL_QUERIES);
+        for (int i = -WARM_UP; i < DETAIL_QUERIES; i++) {
+            final long id = FIRST_ISBN + mRandom.nextInt(books);
+            final long start = System.nanoTime();
+            final int rows = readAll(mProvider.query(BookEntry.buildBookUri(id)
+                    , BookDetailViewModel.BookDetailQuery.PROJECTION, null, null, null))
+                    + readAll(mProvider.query(BookEntry.buildBookAuthorsUri(id)
+                    , BookDetailViewModel.BookAuthorQuery.PROJECTION, null, null, null))
+                    + readAll(mProvider.query(BookEntry.buildBookCategoriesUri(id)
+                    , BookDetailViewModel.BookCategoryQuery.PROJECTION, null, null, null));
+            if (i >= 0) {
+                detail.add(System.nanoTime() - start);
+            }
+            // The book, its authors and its category
+            assertEquals(1 + AUTHORS_PER_BOOK + 1, rows);
+        }
+        report(books, "detail_query", detail, 1);
+
+        // Checked last, so that every operation is reported even if over budget
+        final double fuzzySearchP95 = fuzzySearch.getPercentileMicros(Latencies.P95);
+        assertTrue("fuzzy_search p95 of " + fuzzySearchP95 + " us is over the budget of "
+                + FUZZY_SEARCH_BUDGET_MICROS + " us"
+                , fuzzySearchP95 <= FUZZY_SEARCH_BUDGET_MICROS);
+    }
+
+    /**
+     * Adds the operations that insert a book, its author and its category to
+     * the batch, as the library import does.
+     *
+     * @param batch the batch.
+     * @param isbn the book's ISBN-13.
+     */
+    private void addBookOperations(ArrayList<ContentProviderOperation> batch, long isbn) {
+        batch.add(ContentProviderOperation.newInsert(BookEntry.CONTENT_URI)
+                .withValues(buildBook(isbn)).build());
+        for (int i = 0; i < AUTHORS_PER_BOOK; i++) {
+            batch.add(ContentProviderOperation.newInsert(AuthorEntry.CONTENT_URI)
+                    .withValue(AuthorEntry.COLUMN_BOOK_ID, isbn)
+                    .withValue(AuthorEntry.COLUMN_NAME, buildText(2) + " " + i)
+                    .build());
+        }
+        batch.add(ContentProviderOperation.newInsert(CategoryEntry.CONTENT_URI)
+                .withValue(CategoryEntry.COLUMN_BOOK_ID, isbn)
+                .withValue(CategoryEntry.COLUMN_NAME, buildText(1))
+                .build());
+    }
+
+    /**
+     * Returns the values of a generated book.
+     *
+     * @param isbn the book's ISBN-13.
+     * @return the values of the book.
+     */
+    private ContentValues buildBook(long isbn) {
+        ContentValues values = new ContentValues();
+        values.put(BookEntry._ID, isbn);
+        values.put(BookEntry.COLUMN_TITLE, buildText(TITLE_WORDS));
+        if (mRandom.nextBoolean()) {
+            values.put(BookEntry.COLUMN_SUBTITLE, buildText(TITLE_WORDS));
+        }
+        values.put(BookEntry.COLUMN_DESCRIPTION, buildText(DESCRIPTION_WORDS));
+        values.put(BookEntry.COLUMN_COVER_IMAGE_URL
+                , "http://books.google.com/books/content?id=" + isbn);
+        values.put(BookEntry.COLUMN_FETCHED_AT, System.currentTimeMillis());
+        return values;
+    }
+
+    /**
+     * Returns a text of random words.
+     *
+     * @param words the number of words.
+     * @return the text.
+     */
+    private String buildText(int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[mRandom.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads every column of every row of the cursor, as binding them would,
+     * and closes it.
+     *
+     * @param cursor the result of a query.
+     * @return the number of rows read.
+     */
+    private static int readAll(Cursor cursor) {
+        try {
+            int rows = 0;
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    cursor.getString(i);
+                }
+                rows++;
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Prints the result of an operation and appends it to the report.
+     *
+     * @param books the number of books in the library.
+     * @param operation the name of the operation.
+     * @param latencies the latencies measured.
+     * @param booksPerOperation the books written or read by each operation,
+     *     used to compute the throughput in books per second.
+     * @throws IOException if the results cannot be written.
+     */
+    private void report(int books
+            , String operation
+            , Latencies latencies
+            , int booksPerOperation) throws IOException {
+        latencies.addTo(mReport.newResult()
+                .put("books", books)
+                .put("operation", operation))
+                .put("books_per_second", latencies.getOpsPerSecond() * booksPerOperation)
+                .write();
+    }
+
+}
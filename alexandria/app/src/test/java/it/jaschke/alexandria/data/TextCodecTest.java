@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.data;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link TextCodec}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class TextCodecTest {
+
+    /**
+     * A typical book description.
+     */
+    private static final String DESCRIPTION = "Presents a guide to artificial"
+            + " intelligence, covering such topics as intelligent agents,"
+            + " problem-solving, logical agents, planning, uncertainty, learning,"
+            + " and robotics. ";
+
+    /**
+     * Number of times the description is repeated to build a long one.
+     */
+    private static final int REPETITIONS = 20;
+
+    @Test
+    public void testRoundTrip() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < REPETITIONS; i++) {
+            text.append(DESCRIPTION).append("Édition ").append(i).append(" — ");
+        }
+        byte[] compressed = TextCodec.compress(text.toString());
+        assertNotNull(compressed);
+        assertTrue(compressed.length < text.length());
+        assertEquals(text.toString(), TextCodec.decompress(compressed));
+    }
+
+    @Test
+    public void testShortTextsAreNotCompressed() {
+        assertNull(TextCodec.compress(null));
+        assertNull(TextCodec.compress(""));
+        assertNull(TextCodec.compress(DESCRIPTION));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidData() {
+        TextCodec.decompress(new byte[] {1, 2, 3, 4});
+    }
+
+}
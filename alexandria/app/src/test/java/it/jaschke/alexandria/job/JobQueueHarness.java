@@ -0,0 +1,202 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.job;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A {@link JobQueue} for the tests, whose jobs only record that they ran.
+ * The jobs with {@link #ACTION_BLOCK} block until {@link #release()} is
+ * called, and those with {@link #ACTION_FAIL} throw.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class JobQueueHarness {
+
+    /**
+     * Action of the jobs that fetch a book.
+     */
+    public static final String ACTION_FETCH = "fetch";
+
+    /**
+     * Action of the jobs that block until {@link #release()} is called.
+     */
+    public static final String ACTION_BLOCK = "block";
+
+    /**
+     * Action of the jobs that fail.
+     */
+    public static final String ACTION_FAIL = "fail";
+
+    /**
+     * Maximum time the jobs block and the tests wait for them, in seconds.
+     */
+    public static final long TIMEOUT_SECONDS = 10L;
+
+    /**
+     * Stores the jobs of the queue.
+     */
+    private final JobStore mStore;
+
+    /**
+     * The jobs run, in the order they started.
+     */
+    private final List<Job> mStarted = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Number of jobs running.
+     */
+    private final AtomicInteger mRunningCount = new AtomicInteger();
+
+    /**
+     * Maximum number of jobs running at the same time.
+     */
+    private final AtomicInteger mMaxRunningCount = new AtomicInteger();
+
+    /**
+     * Releases the blocked jobs.
+     */
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+
+    /**
+     * The queue.
+     */
+    private final JobQueue mQueue;
+
+    /**
+     * Creates a new {@link JobQueueHarness}, with a queue that is not
+     * restored from the store.
+     *
+     * @param store stores the jobs of the queue.
+     * @param workers runs the jobs.
+     */
+    public JobQueueHarness(JobStore store, ExecutorService workers) {
+        mStore = store;
+        mQueue = new JobQueue(store, this::runJob, new JobQueue.Listener() {
+            @Override
+            public void onJobFinished(Job job, RuntimeException error) {
+                // Nothing to do
+            }
+
+            @Override
+            public void onIdle() {
+                // Nothing to do
+            }
+        }, workers);
+    }
+
+    public JobQueue getQueue() {
+        return mQueue;
+    }
+
+    /**
+     * Returns the jobs run, in the order they started. Iterating over them
+     * requires synchronizing on the list.
+     *
+     * @return the jobs run.
+     */
+    public List<Job> getStarted() {
+        return mStarted;
+    }
+
+    public int getMaxRunningCount() {
+        return mMaxRunningCount.get();
+    }
+
+    /**
+     * Releases the jobs blocked, and those that block afterwards.
+     */
+    public void release() {
+        mRelease.countDown();
+    }
+
+    /**
+     * Shuts the queue down, so that no more jobs start, and then releases
+     * the jobs blocked. Those jobs remain stored.
+     */
+    public void shutdown() {
+        mQueue.shutdown();
+        release();
+    }
+
+    /**
+     * Runs a job of the tests.
+     *
+     * @param job the job.
+     */
+    private void runJob(Job job) {
+        mStarted.add(job);
+        final int running = mRunningCount.incrementAndGet();
+        mMaxRunningCount.accumulateAndGet(running, Math::max);
+        try {
+            if (ACTION_BLOCK.equals(job.getAction())) {
+                mRelease.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } else if (ACTION_FAIL.equals(job.getAction())) {
+                throw new IllegalStateException("Failed on purpose");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            mRunningCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Waits until the queue is idle and every job stored is removed.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitIdle() throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (!(mQueue.isIdle() && mStore.loadAll().isEmpty())) {
+            assertTrue("Not idle in time", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Waits until the job that fetches the book starts.
+     *
+     * @param isbn the book's ISBN-13.
+     * @param timeoutMillis maximum time to wait, in milliseconds.
+     * @return {@code true} if the job started in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitStart(long isbn, long timeoutMillis) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (System.nanoTime() < deadline) {
+            synchronized (mStarted) {
+                for (Job job : mStarted) {
+                    if (job.getIsbn() == isbn && ACTION_FETCH.equals(job.getAction())) {
+                        return true;
+                    }
+                }
+            }
+            Thread.sleep(1);
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.job;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static it.jaschke.alexandria.job.JobQueueHarness.ACTION_BLOCK;
+import static it.jaschke.alexandria.job.JobQueueHarness.ACTION_FAIL;
+import static it.jaschke.alexandria.job.JobQueueHarness.ACTION_FETCH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link JobQueue}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class JobQueueTest {
+
+    /**
+     * Number of jobs of a large bulk import.
+     */
+    private static final int BULK_IMPORT_SIZE = 5000;
+
+    /**
+     * Maximum time an interactive fetch may wait, in milliseconds.
+     */
+    private static final long INTERACTIVE_DEADLINE_MILLIS = 1000L;
+
+    /**
+     * ISBN-13 of the first book of the tests.
+     */
+    private static final long FIRST_ISBN = 9780000000000L;
+
+    /**
+     * Stores the jobs in memory.
+     */
+    private MemoryJobStore mStore;
+
+    /**
+     * Runs the queue tested.
+     */
+    private JobQueueHarness mHarness;
+
+    /**
+     * The queue tested.
+     */
+    private JobQueue mQueue;
+
+    /**
+     * The jobs run, in the order they started.
+     */
+    private List<Job> mStarted;
+
+    @Before
+    public void setUp() {
+        mStore = new MemoryJobStore();
+    }
+
+    @After
+    public void tearDown() {
+        if (mHarness != null) {
+            mHarness.shutdown();
+        }
+    }
+
+    /**
+     * Creates the queue tested.
+     *
+     * @param workers runs the jobs.
+     */
+    private void createQueue(ExecutorService workers) {
+        mHarness = new JobQueueHarness(mStore, workers);
+        mQueue = mHarness.getQueue();
+        mStarted = mHarness.getStarted();
+    }
+
+    @Test
+    public void testInteractiveFetchDoesNotWaitForBulkImport() throws Exception {
+        createQueue(Executors.newFixedThreadPool(JobQueue.getMaxRunning()));
+        for (int i = 0; i < BULK_IMPORT_SIZE; i++) {
+            mQueue.enqueue(new Job(JobQueue.LANE_BULK_IMPORT, ACTION_BLOCK, FIRST_ISBN + i, null));
+        }
+        mQueue.enqueue(new Job(JobQueue.LANE_BACKGROUND_REFRESH, ACTION_BLOCK, 0L, null));
+        final long scannedIsbn = FIRST_ISBN - 1;
+        mQueue.enqueue(new Job(JobQueue.LANE_INTERACTIVE_FETCH, ACTION_FETCH, scannedIsbn, null));
+        assertTrue(mHarness.awaitStart(scannedIsbn, INTERACTIVE_DEADLINE_MILLIS));
+        assertTrue(mQueue.isBusyAbove(JobQueue.LANE_BACKGROUND_REFRESH));
+        mHarness.release();
+        mHarness.awaitIdle();
+        assertEquals(BULK_IMPORT_SIZE + 2, mStarted.size());
+    }
+
+    @Test
+    public void testHigherPriorityLanesStartFirst() throws Exception {
+        List<Job> jobs = new ArrayList<>();
+        for (int lane = JobQueue.LANE_COUNT - 1; lane >= 0; lane--) {
+            jobs.add(new Job(lane, ACTION_FETCH, FIRST_ISBN + lane, null));
+        }
+        mStore.insert(jobs);
+        createQueue(Executors.newSingleThreadExecutor());
+        mQueue.restore();
+        mHarness.awaitIdle();
+        assertEquals(JobQueue.LANE_COUNT, mStarted.size());
+        for (int lane = 0; lane < JobQueue.LANE_COUNT; lane++) {
+            assertEquals(lane, mStarted.get(lane).getLane());
+        }
+    }
+
+    @Test
+    public void testLanesRunAtMostTheirLimit() throws Exception {
+        createQueue(Executors.newFixedThreadPool(JobQueue.getMaxRunning()));
+        for (int i = 0; i < JobQueue.getMaxRunning(); i++) {
+            mQueue.enqueue(new Job(JobQueue.LANE_BULK_IMPORT, ACTION_BLOCK, FIRST_ISBN + i, null));
+        }
+        Thread.sleep(INTERACTIVE_DEADLINE_MILLIS / 10);
+        assertEquals(1, mStarted.size());
+        mHarness.release();
+        mHarness.awaitIdle();
+        assertEquals(1, mHarness.getMaxRunningCount());
+    }
+
+    @Test
+    public void testStoredJobsRunOnceRestored() throws Exception {
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < BULK_IMPORT_SIZE; i++) {
+            jobs.add(new Job(JobQueue.LANE_BULK_IMPORT, ACTION_FETCH, FIRST_ISBN + i, null));
+        }
+        mStore.insert(jobs);
+        createQueue(Executors.newFixedThreadPool(JobQueue.getMaxRunning()));
+        mQueue.restore();
+        mHarness.awaitIdle();
+        assertEquals(BULK_IMPORT_SIZE, mStarted.size());
+        for (int i = 0; i < BULK_IMPORT_SIZE; i++) {
+            assertEquals(FIRST_ISBN + i, mStarted.get(i).getIsbn());
+        }
+    }
+
+    @Test
+    public void testUnfinishedJobsRemainStoredAfterShutdown() throws Exception {
+        createQueue(Executors.newFixedThreadPool(JobQueue.getMaxRunning()));
+        mQueue.enqueue(new Job(JobQueue.LANE_BULK_IMPORT, ACTION_BLOCK, FIRST_ISBN, null));
+        mQueue.enqueue(new Job(JobQueue.LANE_BULK_IMPORT, ACTION_FETCH, FIRST_ISBN + 1, null));
+        while (mStarted.isEmpty()) {
+            Thread.sleep(1);
+        }
+        mHarness.shutdown();
+        assertEquals(2, mStore.size());
+    }
+
+    @Test
+    public void testCancelRemovesWaitingJobsAndFlagsRunningOnes() throws Exception {
+        createQueue(Executors.newFixedThreadPool(JobQueue.getMaxRunning()));
+        for (int i = 0; i < BULK_IMPORT_SIZE; i++) {
+            mQueue.enqueue(new Job(JobQueue.LANE_BULK_IMPORT, ACTION_BLOCK, FIRST_ISBN + i, null));
+        }
+        while (mStarted.isEmpty()) {
+            Thread.sleep(1);
+        }
+        mQueue.cancel(JobQueue.LANE_BULK_IMPORT);
+        awaitIdleOrRelease();
+        assertEquals(1, mStarted.size());
+        assertTrue(mStarted.get(0).isCancelled());
+    }
+
+    /**
+     * Waits until only the running job is left in the store, releases it and
+     * waits until the queue is idle.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void awaitIdleOrRelease() throws InterruptedException {
+        while (mStore.size() > 1) {
+            Thread.sleep(1);
+        }
+        mHarness.release();
+        mHarness.awaitIdle();
+    }
+
+    @Test
+    public void testSameWorkIsPromotedInsteadOfDuplicated() throws Exception {
+        createQueue(Executors.newFixedThreadPool(JobQueue.getMaxRunning()));
+        mQueue.enqueue(new Job(JobQueue.LANE_BULK_IMPORT, ACTION_BLOCK, 0L, null));
+        final long isbn = FIRST_ISBN;
+        mQueue.enqueue(new Job(JobQueue.LANE_BULK_IMPORT, ACTION_FETCH, isbn, null));
+        mQueue.enqueue(new Job(JobQueue.LANE_INTERACTIVE_FETCH, ACTION_FETCH, isbn, null));
+        assertTrue(mHarness.awaitStart(isbn, INTERACTIVE_DEADLINE_MILLIS));
+        mHarness.release();
+        mHarness.awaitIdle();
+        int fetchCount = 0;
+        for (Job job : mStarted) {
+            if (ACTION_FETCH.equals(job.getAction())) {
+                fetchCount++;
+                assertEquals(JobQueue.LANE_INTERACTIVE_FETCH, job.getLane());
+            }
+        }
+        assertEquals(1, fetchCount);
+    }
+
+    @Test
+    public void testFailedJobsAreRemoved() throws Exception {
+        createQueue(Executors.newFixedThreadPool(JobQueue.getMaxRunning()));
+        mQueue.enqueue(new Job(JobQueue.LANE_INTERACTIVE_FETCH, ACTION_FAIL, FIRST_ISBN, null));
+        mQueue.enqueue(new Job(JobQueue.LANE_INTERACTIVE_FETCH, ACTION_FETCH, FIRST_ISBN, null));
+        mHarness.awaitIdle();
+        assertEquals(2, mStarted.size());
+        assertFalse(mQueue.isBusyAbove(JobQueue.LANE_COUNT));
+    }
+
+    /**
+     * Stores the jobs in memory, in the order they are inserted.
+     */
+    private static final class MemoryJobStore implements JobStore {
+
+        /**
+         * The jobs stored, by id.
+         */
+        private final Map<Long, Job> mJobs = new LinkedHashMap<>();
+
+        /**
+         * The last id assigned.
+         */
+        private long mLastId;
+
+        @Override
+        public synchronized List<Job> loadAll() {
+            List<Job> jobs = new ArrayList<>();
+            for (Job job : mJobs.values()) {
+                jobs.add(new Job(job.getId(), job.getLane(), job.getAction()
+                        , job.getIsbn(), job.getData()));
+            }
+            return jobs;
+        }
+
+        @Override
+        public synchronized long[] insert(List<Job> jobs) {
+            long[] ids = new long[jobs.size()];
+            for (int i = 0; i < ids.length; i++) {
+                Job job = jobs.get(i);
+                mLastId++;
+                mJobs.put(mLastId, new Job(mLastId, job.getLane(), job.getAction()
+                        , job.getIsbn(), job.getData()));
+                ids[i] = mLastId;
+            }
+            return ids;
+        }
+
+        @Override
+        public synchronized void updateLane(long id, int lane) {
+            Job job = mJobs.get(id);
+            mJobs.put(id, new Job(id, lane, job.getAction(), job.getIsbn(), job.getData()));
+        }
+
+        @Override
+        public synchronized void delete(long id) {
+            mJobs.remove(id);
+        }
+
+        /**
+         * Returns the number of jobs stored.
+         *
+         * @return the number of jobs stored.
+         */
+        synchronized int size() {
+            return mJobs.size();
+        }
+
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.common.HybridBinarizer;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the time spent decoding a camera frame by {@link IsbnFrameDecoder},
+ * compared to decoding the whole frame trying every 1D format, which is what
+ * the scanner does when asked for {@code IntentIntegrator.ONE_D_CODE_TYPES}.
+ * Frames with and without a barcode are measured, since the scanner spends
+ * most of its time on frames where the barcode is not readable yet. The
+ * median latency per frame is printed to the standard output.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class IsbnFrameDecoderBenchmark {
+
+    /**
+     * Width of the frames, in pixels, that of a 1080p preview.
+     */
+    private static final int FRAME_WIDTH = 1920;
+
+    /**
+     * Height of the frames, in pixels, that of a 1080p preview.
+     */
+    private static final int FRAME_HEIGHT = 1080;
+
+    /**
+     * Number of frames decoded before measuring, so the JIT compiler kicks in.
+     */
+    private static final int WARM_UP_FRAMES = 500;
+
+    /**
+     * Number of frames measured.
+     */
+    private static final int MEASURED_FRAMES = 200;
+
+    /**
+     * Seed of the noise in the frame without barcode, so runs are comparable.
+     */
+    private static final long NOISE_SEED = 42L;
+
+    /**
+     * Nanoseconds in a microsecond.
+     */
+    private static final double NANOS_PER_MICRO = 1000d;
+
+    /**
+     * Something that decodes a frame.
+     */
+    private interface FrameDecoder {
+
+        /**
+         * Decodes the frame.
+         *
+         * @param frame the frame.
+         * @return the decoded text or {@code null} if nothing was found.
+         */
+        String decode(LuminanceSource frame);
+    }
+
+    /**
+     * Decodes the whole frame trying every 1D format.
+     */
+    private static final class AllOneDFormatsDecoder implements FrameDecoder {
+
+        /**
+         * The reader, restricted to the 1D formats.
+         */
+        private final MultiFormatReader mReader = new MultiFormatReader();
+
+        /**
+         * Creates a new {@link AllOneDFormatsDecoder}.
+         */
+        AllOneDFormatsDecoder() {
+            Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+            hints.put(DecodeHintType.POSSIBLE_FORMATS, Arrays.asList(BarcodeFormat.UPC_A
+                    , BarcodeFormat.UPC_E, BarcodeFormat.EAN_8, BarcodeFormat.EAN_13
+                    , BarcodeFormat.RSS_14, BarcodeFormat.CODE_39, BarcodeFormat.CODE_93
+                    , BarcodeFormat.CODE_128, BarcodeFormat.ITF, BarcodeFormat.RSS_EXPANDED));
+            mReader.setHints(hints);
+        }
+
+        @Override
+        public String decode(LuminanceSource frame) {
+            try {
+                return mReader.decodeWithState(
+                        new BinaryBitmap(new HybridBinarizer(frame))).getText();
+            } catch (ReaderException e) {
+                return null;
+            } finally {
+                mReader.reset();
+            }
+        }
+    }
+
+    /**
+     * Returns the median time spent decoding the frame, in microseconds.
+     *
+     * @param decoder the decoder measured.
+     * @param frame the frame decoded.
+     * @param expected the text that must be decoded, possibly {@code null}.
+     * @return the median time spent decoding the frame, in microseconds.
+     */
+    private static double measure(FrameDecoder decoder, LuminanceSource frame, String expected) {
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            assertEquals(expected, decoder.decode(frame));
+        }
+        long[] nanos = new long[MEASURED_FRAMES];
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            final long start = System.nanoTime();
+            decoder.decode(frame);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[MEASURED_FRAMES / 2] / NANOS_PER_MICRO;
+    }
+
+    /**
+     * Measures both decoders on the frame and prints the results.
+     *
+     * @param name describes the frame.
+     * @param frame the frame decoded.
+     * @param expected the text that must be decoded by the baseline,
+     *     possibly {@code null}.
+     * @param expectedIsbn the text that must be decoded by
+     *     {@link IsbnFrameDecoder}, possibly {@code null}.
+     */
+    private static void compare(String name
+            , LuminanceSource frame
+            , String expected
+            , String expectedIsbn) {
+        IsbnFrameDecoder isbnDecoder = new IsbnFrameDecoder();
+        final double baseline = measure(new AllOneDFormatsDecoder(), frame, expected);
+        final double restricted = measure((f) -> {
+            com.google.zxing.Result result = isbnDecoder.decode(f);
+            return result != null ? result.getText() : null;
+        }, frame, expectedIsbn);
+        System.out.println(String.format(Locale.US
+                , "%s: all 1D formats, whole frame %.0f us; EAN-13 region of interest %.0f us"
+                , name, baseline, restricted));
+    }
+
+    @Test
+    public void benchmarkFrameWithIsbn() throws Exception {
+        final String isbn = "9780306406157";
+        compare("ISBN-13", IsbnFrameDecoderTest.centredFrame(FRAME_WIDTH, FRAME_HEIGHT, isbn)
+                , isbn, isbn);
+    }
+
+    @Test
+    public void benchmarkFrameWithoutBarcode() throws Exception {
+        // Random texture, so the binarizer does not give up right away
+        byte[] noise = new byte[FRAME_WIDTH * FRAME_HEIGHT];
+        new Random(NOISE_SEED).nextBytes(noise);
+        compare("No barcode", new LuminancePlaneSource(noise, FRAME_WIDTH, FRAME_HEIGHT)
+                , null, null);
+    }
+
+    @Test
+    public void benchmarkFrameWithOtherEan13() throws Exception {
+        final String code = "5901234123457";
+        compare("EAN-13 without Bookland prefix"
+                , IsbnFrameDecoderTest.centredFrame(FRAME_WIDTH, FRAME_HEIGHT, code)
+                , code, null);
+    }
+
+}
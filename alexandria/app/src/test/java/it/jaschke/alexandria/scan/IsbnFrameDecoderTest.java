@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.scan;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link IsbnFrameDecoder} against sample camera frames.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class IsbnFrameDecoderTest {
+
+    /**
+     * ISBN-13 drawn on the sample frames.
+     */
+    private static final String ISBN = "9780306406157";
+
+    /**
+     * The decoder under test.
+     */
+    private IsbnFrameDecoder mDecoder;
+
+    @Before
+    public void setUp() {
+        mDecoder = new IsbnFrameDecoder();
+    }
+
+    /**
+     * Creates a frame with the barcode drawn in its centre.
+     *
+     * @param width the frame's width, in pixels.
+     * @param height the frame's height, in pixels.
+     * @param code the EAN-13 number drawn.
+     * @return the frame.
+     * @throws Exception if the barcode cannot be drawn.
+     */
+    static LuminanceSource centredFrame(int width, int height, String code) throws Exception {
+        SampleImage image = new SampleImage(width, height).drawBarcode(code
+                , (width - SampleImage.BARCODE_WIDTH) / 2
+                , (height - SampleImage.BARCODE_HEIGHT) / 2
+                , false);
+        return new LuminancePlaneSource(image.getLuminances(), width, height);
+    }
+
+    @Test
+    public void testDecodesCentredIsbn() throws Exception {
+        Result result = mDecoder.decode(centredFrame(640, 480, ISBN));
+        assertNotNull(result);
+        assertEquals(ISBN, result.getText());
+    }
+
+    @Test
+    public void testDecodesDownsampledFrame() throws Exception {
+        LuminanceSource frame = centredFrame(1920, 1080, ISBN);
+        LuminanceSource region = mDecoder.toRegionOfInterest(frame);
+        assertTrue(region.getWidth() <= IsbnFrameDecoder.DEFAULT_MAX_REGION_WIDTH);
+        Result result = mDecoder.decode(frame);
+        assertNotNull(result);
+        assertEquals(ISBN, result.getText());
+    }
+
+    @Test
+    public void testRejectsCodesThatAreNotIsbn() throws Exception {
+        assertNull(mDecoder.decode(centredFrame(640, 480, "5901234123457")));
+    }
+
+    @Test
+    public void testIgnoresBarcodesOutsideRegionOfInterest() throws Exception {
+        SampleImage image = new SampleImage(640, 480).drawBarcode(ISBN, 150, 0, false);
+        assertNull(mDecoder.decode(new LuminancePlaneSource(image.getLuminances(), 640, 480)));
+    }
+
+    @Test
+    public void testEmptyFrame() throws Exception {
+        assertNull(mDecoder.decode(new LuminancePlaneSource(new byte[640 * 480], 640, 480)));
+    }
+
+}
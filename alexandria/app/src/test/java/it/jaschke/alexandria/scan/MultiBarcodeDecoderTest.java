@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.scan;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link MultiBarcodeDecoder} against sample shelf photos.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class MultiBarcodeDecoderTest {
+
+    /**
+     * Length of the side of the tiles used in the tests, in pixels.
+     */
+    private static final int TILE_SIZE = 800;
+
+    /**
+     * Overlap between the tiles used in the tests, in pixels.
+     */
+    private static final int TILE_OVERLAP = 400;
+
+    /**
+     * ISBN-13 numbers drawn on the sample images.
+     */
+    private static final String[] ISBNS = {
+        "9780306406157", "9780262033848", "9780131103627", "9780201633610"
+        , "9781617294945", "9780596009205", "9791032305690", "9780134685991"
+    };
+
+    /**
+     * Runs the decoding of the tiles.
+     */
+    private ExecutorService mExecutor;
+
+    /**
+     * The decoder under test.
+     */
+    private MultiBarcodeDecoder mDecoder;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        mDecoder = new MultiBarcodeDecoder(mExecutor, TILE_SIZE, TILE_OVERLAP);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Decodes the image with the decoder under test.
+     *
+     * @param image the image to decode.
+     * @return the ISBN-13 numbers found.
+     * @throws InterruptedException if interrupted while decoding.
+     */
+    private List<String> decode(SampleImage image) throws InterruptedException {
+        return mDecoder.decode(image.getLuminances(), image.getWidth(), image.getHeight());
+    }
+
+    @Test
+    public void testDecodesEveryBookOnAShelf() throws Exception {
+        SampleImage image = new SampleImage(2400, 1200);
+        for (int i = 0; i < ISBNS.length; i++) {
+            image.drawBarcode(ISBNS[i], 150 + (i % 4) * 550, 200 + (i / 4) * 600, false);
+        }
+        List<String> isbns = decode(image);
+        assertEquals(new HashSet<>(Arrays.asList(ISBNS)), new HashSet<>(isbns));
+        assertEquals("Each book must be reported once", ISBNS.length, isbns.size());
+    }
+
+    @Test
+    public void testDecodesVerticalBarcodesOnSpines() throws Exception {
+        SampleImage image = new SampleImage(1600, 800);
+        for (int i = 0; i < 4; i++) {
+            image.drawBarcode(ISBNS[i], 100 + i * 400, 200, true);
+        }
+        assertEquals(new HashSet<>(Arrays.asList(ISBNS).subList(0, 4))
+                , new HashSet<>(decode(image)));
+    }
+
+    @Test
+    public void testDecodesBarcodeAcrossTileBoundary() throws Exception {
+        SampleImage image = new SampleImage(1600, 600);
+        // The first tile ends at 800, the second starts at 400
+        image.drawBarcode(ISBNS[0], TILE_SIZE - SampleImage.BARCODE_WIDTH / 2, 200, false);
+        assertEquals(Collections.singletonList(ISBNS[0]), decode(image));
+    }
+
+    @Test
+    public void testIgnoresCodesThatAreNotIsbn() throws Exception {
+        SampleImage image = new SampleImage(1200, 600)
+                .drawBarcode("5901234123457", 100, 200, false)
+                .drawBarcode(ISBNS[1], 700, 200, false);
+        assertEquals(Collections.singletonList(ISBNS[1]), decode(image));
+    }
+
+    @Test
+    public void testEmptyImage() throws Exception {
+        assertTrue(decode(new SampleImage(1000, 1000)).isEmpty());
+    }
+
+    @Test
+    public void testToLuminances() {
+        int[] pixels = {0xffffffff, 0xff000000, 0xff00ff00};
+        byte[] luminances = new byte[pixels.length + 1];
+        MultiBarcodeDecoder.toLuminances(pixels, pixels.length, luminances, 1);
+        assertEquals((byte) 0xff, luminances[1]);
+        assertEquals(0, luminances[2]);
+        assertEquals((byte) 0x7f, luminances[3]);
+    }
+
+}
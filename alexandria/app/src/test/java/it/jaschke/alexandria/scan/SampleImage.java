@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.scan;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.oned.EAN13Writer;
+
+import java.util.Arrays;
+
+/**
+ * Greyscale image used to build the sample shelf photos decoded by the tests.
+ * Barcodes are drawn black on a white background, optionally rotated.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+final class SampleImage {
+
+    /**
+     * Value of white pixels.
+     */
+    private static final byte WHITE = (byte) 0xff;
+
+    /**
+     * Value of black pixels.
+     */
+    private static final byte BLACK = 0;
+
+    /**
+     * Width of the barcodes drawn, in pixels, including the quiet zones.
+     */
+    static final int BARCODE_WIDTH = 339;
+
+    /**
+     * Height of the barcodes drawn, in pixels.
+     */
+    static final int BARCODE_HEIGHT = 120;
+
+    /**
+     * The luminance values, one byte per pixel, row by row.
+     */
+    private final byte[] mLuminances;
+
+    /**
+     * The image's width, in pixels.
+     */
+    private final int mWidth;
+
+    /**
+     * The image's height, in pixels.
+     */
+    private final int mHeight;
+
+    /**
+     * Creates a new white {@link SampleImage}.
+     *
+     * @param width the image's width, in pixels.
+     * @param height the image's height, in pixels.
+     */
+    SampleImage(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mLuminances = new byte[width * height];
+        Arrays.fill(mLuminances, WHITE);
+    }
+
+    /**
+     * Draws an EAN-13 barcode with its top left corner at the specified
+     * position.
+     *
+     * @param code the EAN-13 number.
+     * @param left horizontal position of the barcode, in pixels.
+     * @param top vertical position of the barcode, in pixels.
+     * @param vertical if {@code true} the barcode is rotated 90 degrees, so
+     *     its bars are horizontal.
+     * @return this image.
+     * @throws WriterException if the code is not a valid EAN-13 number.
+     */
+    SampleImage drawBarcode(String code, int left, int top, boolean vertical)
+            throws WriterException {
+        BitMatrix matrix = new EAN13Writer().encode(code, BarcodeFormat.EAN_13
+                , BARCODE_WIDTH, BARCODE_HEIGHT);
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                final int imageX = vertical ? left + y : left + x;
+                final int imageY = vertical ? top + x : top + y;
+                mLuminances[imageY * mWidth + imageX] = matrix.get(x, y) ? BLACK : WHITE;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the luminance values, one byte per pixel, row by row.
+     *
+     * @return the luminance values.
+     */
+    byte[] getLuminances() {
+        return mLuminances;
+    }
+
+    /**
+     * Returns the image's width, in pixels.
+     *
+     * @return the image's width, in pixels.
+     */
+    int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Returns the image's height, in pixels.
+     *
+     * @return the image's height, in pixels.
+     */
+    int getHeight() {
+        return mHeight;
+    }
+
+}
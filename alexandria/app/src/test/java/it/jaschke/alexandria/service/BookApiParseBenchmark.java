@@ -0,0 +1,308 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.service;
+
+import android.content.ContentValues;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import it.jaschke.alexandria.BuildConfig;
+import it.jaschke.alexandria.data.BookContract.BookEntry;
+import it.jaschke.alexandria.util.BenchmarkReport;
+import it.jaschke.alexandria.util.Latencies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Measures the parsing of the responses of the Google Books API and their
+ * mapping to the values written to the {@code ContentProvider}, the work done
+ * by {@link BookService} for each book fetched. Responses of three sizes
+ * are measured: the smallest possible, a typical one and a huge one. Those
+ * checked in are synthetic, written by hand in the API's format, and are
+ * replaced by real ones with {@code scripts/capture_book_responses.sh}.
+ * Each parser measured reports its throughput, latency percentiles and the
+ * memory it allocates per response through {@link BenchmarkReport}. New
+ * parsers are compared by adding them to {@link #PARSERS}.
+ * <p>
+ * The responses are parsed in batches, timed as a whole, so that reading
+ * the clock does not add to the time of small responses; the percentiles
+ * are those of the mean time per response of each batch. Every result is
+ * consumed into a checked sum, so that the compiler cannot skip the work.
+ * The memory allocated is estimated from the heap used before and after
+ * the batches during which no garbage was collected, with the standard
+ * management API only.
+ * </p>
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class BookApiParseBenchmark {
+
+    /**
+     * ISBN-13 of the book in the responses.
+     */
+    private static final long ISBN = 9780137903955L;
+
+    /**
+     * Bytes of responses parsed in each measurement, so that small responses
+     * are parsed enough times to be measured and huge ones do not take long.
+     */
+    private static final int BYTES_PER_MEASUREMENT = 16 * 1024 * 1024;
+
+    /**
+     * Bytes of responses parsed in each batch, so that each batch takes long
+     * enough to be timed as a whole and allocates enough for the estimate
+     * of the memory allocated to be meaningful.
+     */
+    private static final int BYTES_PER_BATCH = 128 * 1024;
+
+    /**
+     * Minimum number of responses parsed in each measurement.
+     */
+    private static final int MIN_ITERATIONS = 200;
+
+    /**
+     * Maximum number of responses parsed in each measurement.
+     */
+    private static final int MAX_ITERATIONS = 50000;
+
+    /**
+     * Bytes in a megabyte.
+     */
+    private static final double BYTES_PER_MEGABYTE = 1024d * 1024d;
+
+    /**
+     * Nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9d;
+
+    /**
+     * Size of the buffer used to read the responses, in bytes.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Parses a response and maps it to the values of the book's row.
+     */
+    private interface Parser {
+
+        /**
+         * Parses the response.
+         *
+         * @param isbn the book's ISBN-13.
+         * @param body the body of the response.
+         * @return the values of the book's row.
+         * @throws JSONException if the response is not valid.
+         */
+        ContentValues parse(long isbn, String body) throws JSONException;
+    }
+
+    /**
+     * The parsers measured, by name. The first one is the one in use.
+     */
+    private static final Map<String, Parser> PARSERS = new LinkedHashMap<>();
+
+    static {
+        PARSERS.put("org_json_dom", (isbn, body) ->
+                BookService.toContentValues(BookApi.parse(isbn, body), null, 0L));
+    }
+
+    /**
+     * Where the results are written.
+     */
+    private final BenchmarkReport mReport = new BenchmarkReport("BookApiParseBenchmark");
+
+    @Test
+    public void benchmarkSmallResponse() throws Exception {
+        compare("small");
+    }
+
+    @Test
+    public void benchmarkTypicalResponse() throws Exception {
+        compare("typical");
+    }
+
+    @Test
+    public void benchmarkHugeResponse() throws Exception {
+        compare("huge");
+    }
+
+    /**
+     * Measures every parser on a response of the corpus. Every parser must
+     * map the response to the same values as the one in use.
+     *
+     * @param corpus the name of the response, {@code books-<corpus>.json}.
+     * @throws Exception if the response cannot be read or parsed.
+     */
+    private void compare(String corpus) throws Exception {
+        final String body = readResponse("books-" + corpus + ".json");
+        final int iterations = Math.max(MIN_ITERATIONS
+                , Math.min(MAX_ITERATIONS, BYTES_PER_MEASUREMENT / body.length()));
+        final int batchSize = Math.max(1, Math.min(iterations, BYTES_PER_BATCH / body.length()));
+        ContentValues expected = null;
+        for (Map.Entry<String, Parser> entry : PARSERS.entrySet()) {
+            ContentValues values = entry.getValue().parse(ISBN, body);
+            if (expected == null) {
+                expected = values;
+                assertFalse(values.getAsString(BookEntry.COLUMN_TITLE).isEmpty());
+            }
+            assertEquals(expected, values);
+            measure(corpus, entry.getKey(), entry.getValue(), body
+                    , iterations / batchSize, batchSize);
+        }
+    }
+
+    /**
+     * Measures a parser on a response and reports the results.
+     *
+     * @param corpus the name of the response.
+     * @param name the name of the parser.
+     * @param parser the parser.
+     * @param body the response.
+     * @param batches the number of batches measured.
+     * @param batchSize the number of times the response is parsed in each
+     *     batch.
+     * @throws Exception if the response cannot be parsed.
+     */
+    private void measure(String corpus
+            , String name
+            , Parser parser
+            , String body
+            , int batches
+            , int batchSize) throws Exception {
+        final long checksum = consume(parser.parse(ISBN, body));
+        long sum = 0L;
+        // Warm up, so the JIT compiler kicks in
+        for (int i = 0; i < batches * batchSize; i++) {
+            sum += consume(parser.parse(ISBN, body));
+        }
+        Latencies latencies = new Latencies(batches);
+        long allocated = 0L;
+        long allocatingNanos = 0L;
+        int allocatingBatches = 0;
+        for (int batch = 0; batch < batches; batch++) {
+            final long collections = getCollectionCount();
+            final long usedBefore = getUsedHeap();
+            final long start = System.nanoTime();
+            for (int i = 0; i < batchSize; i++) {
+                sum += consume(parser.parse(ISBN, body));
+            }
+            final long nanos = System.nanoTime() - start;
+            final long usedAfter = getUsedHeap();
+            latencies.add(nanos / batchSize);
+            if (getCollectionCount() == collections) {
+                allocated += usedAfter - usedBefore;
+                allocatingNanos += nanos;
+                allocatingBatches++;
+            }
+        }
+        assertEquals(checksum * 2 * batches * batchSize, sum);
+        BenchmarkReport.Result result = latencies.addTo(mReport.newResult()
+                .put("corpus", corpus)
+                .put("parser", name)
+                .put("response_bytes", body.length())
+                .put("batch_size", batchSize))
+                .put("allocation_batches", allocatingBatches);
+        if (allocatingBatches > 0) {
+            result.put("allocated_bytes_per_response"
+                    , allocated / ((long) allocatingBatches * batchSize))
+                    .put("allocation_mb_per_second", allocated / BYTES_PER_MEGABYTE
+                            / (allocatingNanos / NANOS_PER_SECOND));
+        }
+        result.write();
+    }
+
+    /**
+     * Reduces the values a response was mapped to to a number that depends
+     * on them, so that they must be computed, without allocating.
+     *
+     * @param values the values of the book's row.
+     * @return a number that depends on the values.
+     */
+    private static long consume(ContentValues values) {
+        return values.size()
+                + StringUtils.length(values.getAsString(BookEntry.COLUMN_TITLE))
+                + StringUtils.length(values.getAsString(BookEntry.COLUMN_SUBTITLE))
+                + StringUtils.length(values.getAsString(BookEntry.COLUMN_DESCRIPTION))
+                + StringUtils.length(values.getAsString(BookEntry.COLUMN_COVER_IMAGE_URL));
+    }
+
+    /**
+     * Returns the number of garbage collections since the JVM started.
+     *
+     * @return the number of garbage collections.
+     */
+    private static long getCollectionCount() {
+        long count = 0L;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += collector.getCollectionCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the bytes of the heap in use, including the garbage not yet
+     * collected.
+     *
+     * @return the bytes of the heap in use.
+     */
+    private static long getUsedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Reads a recorded response.
+     *
+     * @param name the name of the resource, relative to this class.
+     * @return the response.
+     * @throws IOException if the response cannot be read.
+     */
+    private static String readResponse(String name) throws IOException {
+        InputStream in = BookApiParseBenchmark.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("Missing response " + name);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+}
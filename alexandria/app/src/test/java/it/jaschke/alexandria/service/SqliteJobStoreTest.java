@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import it.jaschke.alexandria.BuildConfig;
+import it.jaschke.alexandria.job.Job;
+import it.jaschke.alexandria.job.JobQueue;
+import it.jaschke.alexandria.job.JobQueueHarness;
+
+import static it.jaschke.alexandria.job.JobQueueHarness.ACTION_BLOCK;
+import static it.jaschke.alexandria.job.JobQueueHarness.ACTION_FETCH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link SqliteJobStore}, alone and as the store of a
+ * {@link JobQueue}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SqliteJobStoreTest {
+
+    /**
+     * Number of jobs of a large bulk import.
+     */
+    private static final int BULK_IMPORT_SIZE = 5000;
+
+    /**
+     * Maximum time an interactive fetch may wait, in milliseconds.
+     */
+    private static final long INTERACTIVE_DEADLINE_MILLIS = 1000L;
+
+    /**
+     * Time between the checks of the jobs stored, in milliseconds.
+     */
+    private static final long POLL_INTERVAL_MILLIS = 10L;
+
+    /**
+     * ISBN-13 of the first book of the tests.
+     */
+    private static final long FIRST_ISBN = 9780000000000L;
+
+    /**
+     * The store tested.
+     */
+    private SqliteJobStore mStore;
+
+    /**
+     * Runs a queue that uses the store, if any.
+     */
+    private JobQueueHarness mHarness;
+
+    @Before
+    public void setUp() {
+        mStore = new SqliteJobStore(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        if (mHarness != null) {
+            mHarness.shutdown();
+        }
+        mStore.close();
+    }
+
+    /**
+     * Creates a queue that uses the store, and enqueues the jobs of a large
+     * bulk import, which block until released.
+     */
+    private void startBulkImport() {
+        mHarness = new JobQueueHarness(mStore
+                , Executors.newFixedThreadPool(JobQueue.getMaxRunning()));
+        for (int i = 0; i < BULK_IMPORT_SIZE; i++) {
+            mHarness.getQueue().enqueue(new Job(JobQueue.LANE_BULK_IMPORT, ACTION_BLOCK
+                    , FIRST_ISBN + i, null));
+        }
+    }
+
+    @Test
+    public void testStoresJobsUntilDeleted() {
+        final long[] ids = mStore.insert(Arrays.asList(
+                new Job(JobQueue.LANE_BULK_IMPORT, BookService.ACTION_FETCH_BOOK, FIRST_ISBN, null)
+                , new Job(JobQueue.LANE_DELETE, BookService.ACTION_DELETE_BOOK, FIRST_ISBN, "1")));
+        assertEquals(2, ids.length);
+        assertTrue(ids[0] < ids[1]);
+        mStore.updateLane(ids[0], JobQueue.LANE_INTERACTIVE_FETCH);
+        List<Job> jobs = mStore.loadAll();
+        assertEquals(2, jobs.size());
+        assertEquals(ids[0], jobs.get(0).getId());
+        assertEquals(JobQueue.LANE_INTERACTIVE_FETCH, jobs.get(0).getLane());
+        assertEquals(BookService.ACTION_FETCH_BOOK, jobs.get(0).getAction());
+        assertEquals(FIRST_ISBN, jobs.get(0).getIsbn());
+        assertEquals("1", jobs.get(1).getData());
+        mStore.delete(ids[0]);
+        jobs = mStore.loadAll();
+        assertEquals(1, jobs.size());
+        assertEquals(ids[1], jobs.get(0).getId());
+    }
+
+    @Test
+    public void testInteractiveFetchDoesNotWaitForStoringBulkImport() throws Exception {
+        startBulkImport();
+        final long scannedIsbn = FIRST_ISBN - 1;
+        mHarness.getQueue().enqueue(new Job(JobQueue.LANE_INTERACTIVE_FETCH, ACTION_FETCH
+                , scannedIsbn, null));
+        assertTrue(mHarness.awaitStart(scannedIsbn, INTERACTIVE_DEADLINE_MILLIS));
+    }
+
+    @Test
+    public void testUnfinishedJobsRemainStoredAfterShutdown() throws Exception {
+        startBulkImport();
+        final long deadline = System.nanoTime()
+                + TimeUnit.SECONDS.toNanos(JobQueueHarness.TIMEOUT_SECONDS);
+        while (mStore.loadAll().size() < BULK_IMPORT_SIZE) {
+            assertTrue("Not stored in time", System.nanoTime() < deadline);
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+        mHarness.shutdown();
+        mStore.close();
+        mStore = new SqliteJobStore(RuntimeEnvironment.application);
+        List<Job> jobs = mStore.loadAll();
+        assertEquals(BULK_IMPORT_SIZE, jobs.size());
+        for (int i = 0; i < BULK_IMPORT_SIZE; i++) {
+            assertEquals(FIRST_ISBN + i, jobs.get(i).getIsbn());
+        }
+    }
+
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.service;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.database.DatabaseErrorHandler;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+
+import it.jaschke.alexandria.BuildConfig;
+import it.jaschke.alexandria.data.BookContract;
+import it.jaschke.alexandria.data.BookProvider;
+import it.jaschke.alexandria.job.Job;
+import it.jaschke.alexandria.job.JobQueue;
+import it.jaschke.alexandria.job.JobQueueHarness;
+import it.jaschke.alexandria.sync.StandInSyncServer;
+import it.jaschke.alexandria.sync.SyncClient;
+
+import static it.jaschke.alexandria.data.BookContract.AuthorEntry;
+import static it.jaschke.alexandria.data.BookContract.BookEntry;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link SyncEngine} against the {@link StandInSyncServer}, with two
+ * devices that sync the same library. Each device has its own
+ * {@link BookProvider}, database and stored sync position.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class SyncEngineTest {
+
+    /**
+     * ISBN-13 of the first book of the tests.
+     */
+    private static final long FIRST_ISBN = 9780000000000L;
+
+    /**
+     * Modification time of the books when they are added.
+     */
+    private static final long MODIFIED_AT = 1444000000000L;
+
+    /**
+     * The server the devices sync with.
+     */
+    private StandInSyncServer mServer;
+
+    /**
+     * The queue of the sync jobs, always idle.
+     */
+    private JobQueue mQueue;
+
+    /**
+     * The first device.
+     */
+    private Device mFirst;
+
+    /**
+     * The second device.
+     */
+    private Device mSecond;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new StandInSyncServer();
+        mQueue = new JobQueueHarness(new SqliteJobStore(RuntimeEnvironment.application)
+                , Executors.newSingleThreadExecutor()).getQueue();
+        mFirst = new Device("first");
+        mSecond = new Device("second");
+    }
+
+    @After
+    public void tearDown() {
+        mQueue.shutdown();
+        mServer.close();
+    }
+
+    @Test
+    public void testBooksAddedOnOneDeviceReachTheOther() throws Exception {
+        mFirst.addBook(0, "Title", MODIFIED_AT);
+        assertEquals(1, mFirst.sync());
+        assertEquals(1, mSecond.sync());
+        assertEquals("Title", mSecond.getTitle(0));
+        assertEquals("Author 0", mSecond.getAuthor(0));
+        assertEquals(MODIFIED_AT, mServer.getBook(FIRST_ISBN).getModifiedAt());
+    }
+
+    @Test
+    public void testConcurrentEditNewerWins() throws Exception {
+        mFirst.addBook(0, "Title", MODIFIED_AT);
+        mFirst.sync();
+        mSecond.sync();
+
+        // Both devices edit the book before syncing, the second one later
+        mFirst.editBook(0, "First edit", MODIFIED_AT + 1);
+        mSecond.editBook(0, "Second edit", MODIFIED_AT + 2);
+        assertEquals(1, mFirst.sync());
+        // Downloads the older edit, which is ignored, and uploads the newer one
+        assertEquals(1, mSecond.sync());
+        assertEquals(1, mFirst.sync());
+
+        assertEquals("Second edit", mFirst.getTitle(0));
+        assertEquals("Second edit", mSecond.getTitle(0));
+        assertEquals("Second edit", mServer.getBook(FIRST_ISBN).getTitle());
+        assertEquals(MODIFIED_AT + 2, mFirst.getModifiedAt(0));
+    }
+
+    @Test
+    public void testDeleteRacingEdit() throws Exception {
+        mFirst.addBook(0, "Deleted later", MODIFIED_AT);
+        mFirst.addBook(1, "Edited later", MODIFIED_AT);
+        mFirst.sync();
+        mSecond.sync();
+
+        // The first device edits one book and deletes the other
+        mFirst.editBook(0, "Edited", MODIFIED_AT + 1);
+        mFirst.deleteBook(1, MODIFIED_AT + 1);
+        // The second device does the opposite, later
+        mSecond.deleteBook(0, MODIFIED_AT + 2);
+        mSecond.editBook(1, "Edited again", MODIFIED_AT + 2);
+        mFirst.sync();
+        mSecond.sync();
+        mFirst.sync();
+
+        for (Device device : new Device[] {mFirst, mSecond}) {
+            assertTrue(device.isDeleted(0));
+            assertFalse(device.isDeleted(1));
+            assertEquals("Edited again", device.getTitle(1));
+        }
+        assertEquals(MODIFIED_AT + 2, mServer.getBook(FIRST_ISBN).getDeletedAt());
+        assertEquals(0L, mServer.getBook(FIRST_ISBN + 1).getDeletedAt());
+    }
+
+    @Test
+    public void testBooksDeletedElsewhereAreNotAdded() throws Exception {
+        mFirst.addBook(0, "Title", MODIFIED_AT);
+        mFirst.deleteBook(0, MODIFIED_AT + 1);
+        assertEquals(1, mFirst.sync());
+        assertEquals(0, mSecond.sync());
+        assertNull(mSecond.getTitle(0));
+        assertNotNull(mServer.getBook(FIRST_ISBN));
+    }
+
+    @Test
+    public void testSecondSyncTransfersNothing() throws Exception {
+        mFirst.addBook(0, "Title", MODIFIED_AT);
+        mSecond.addBook(1, "Other title", MODIFIED_AT);
+        mFirst.sync();
+        mSecond.sync();
+        mFirst.sync();
+        final long seq = mServer.getSeq();
+        final int requestCount = mServer.getRequestCount();
+
+        // Downloading marks the books as synced, they are not uploaded back
+        assertEquals(0, mFirst.sync());
+        assertEquals(0, mSecond.sync());
+        assertEquals(seq, mServer.getSeq());
+        // A single download each, of nothing newer than the local books
+        assertEquals(requestCount + 2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void testSyncsInBatches() throws Exception {
+        final int size = SyncEngine.BATCH_SIZE * 2 + 1;
+        for (int i = 0; i < size; i++) {
+            mFirst.addBook(i, "Title " + i, MODIFIED_AT + i);
+        }
+        // An empty download and three uploads
+        assertEquals(size, mFirst.sync());
+        assertEquals(1 + 3, mServer.getRequestCount());
+        // Three downloads, nothing to upload
+        assertEquals(size, mSecond.sync());
+        assertEquals(1 + 3 + 3, mServer.getRequestCount());
+        for (int i = 0; i < size; i++) {
+            assertEquals("Title " + i, mSecond.getTitle(i));
+        }
+        // The position reached is stored
+        assertEquals(mServer.getSeq(), mSecond.getSharedPreferences(
+                SyncEngine.PREFERENCES_NAME, Context.MODE_PRIVATE)
+                .getLong(SyncEngine.KEY_SERVER_SEQ, 0L));
+    }
+
+    /**
+     * A device with its own {@link BookProvider}, database and preferences,
+     * whose names are prefixed with the device's name.
+     */
+    private final class Device extends ContextWrapper {
+
+        /**
+         * Prefixes the names of the device's files.
+         */
+        private final String mName;
+
+        /**
+         * The device's provider.
+         */
+        private final BookProvider mProvider;
+
+        /**
+         * Creates a new {@link Device}.
+         *
+         * @param name the device's name.
+         */
+        Device(String name) {
+            super(RuntimeEnvironment.application);
+            mName = name;
+            ProviderInfo info = new ProviderInfo();
+            info.authority = BookContract.CONTENT_AUTHORITY;
+            mProvider = new BookProvider();
+            mProvider.attachInfo(this, info);
+        }
+
+        @Override
+        public Context getApplicationContext() {
+            return this;
+        }
+
+        @Override
+        public SQLiteDatabase openOrCreateDatabase(String name
+                , int mode
+                , SQLiteDatabase.CursorFactory factory) {
+            return super.openOrCreateDatabase(mName + "-" + name, mode, factory);
+        }
+
+        @Override
+        public SQLiteDatabase openOrCreateDatabase(String name
+                , int mode
+                , SQLiteDatabase.CursorFactory factory
+                , DatabaseErrorHandler errorHandler) {
+            return super.openOrCreateDatabase(mName + "-" + name, mode, factory, errorHandler);
+        }
+
+        @Override
+        public File getDatabasePath(String name) {
+            return super.getDatabasePath(mName + "-" + name);
+        }
+
+        @Override
+        public SharedPreferences getSharedPreferences(String name, int mode) {
+            return super.getSharedPreferences(mName + "-" + name, mode);
+        }
+
+        /**
+         * Syncs the device's library, with the content resolver routed to
+         * the device's provider.
+         *
+         * @return what {@link SyncEngine#sync()} returns.
+         */
+        int sync() {
+            ShadowContentResolver.registerProvider(BookContract.CONTENT_AUTHORITY, mProvider);
+            Job job = new Job(JobQueue.LANE_BACKGROUND_REFRESH
+                    , BookService.ACTION_SYNC_LIBRARY, 0L, null);
+            return new SyncEngine(this, job, mQueue, new SyncClient(mServer.getUrl())).sync();
+        }
+
+        /**
+         * Adds a book with an author.
+         *
+         * @param index the index of the book.
+         * @param title the book's title.
+         * @param modifiedAt when the book was added.
+         */
+        void addBook(int index, String title, long modifiedAt) {
+            ContentValues values = new ContentValues();
+            values.put(BookEntry._ID, FIRST_ISBN + index);
+            values.put(BookEntry.COLUMN_TITLE, title);
+            values.put(BookEntry.COLUMN_MODIFIED_AT, modifiedAt);
+            mProvider.insert(BookEntry.CONTENT_URI, values);
+            values = new ContentValues();
+            values.put(AuthorEntry.COLUMN_BOOK_ID, FIRST_ISBN + index);
+            values.put(AuthorEntry.COLUMN_NAME, "Author " + index);
+            mProvider.insert(AuthorEntry.CONTENT_URI, values);
+        }
+
+        /**
+         * Changes the title of a book.
+         *
+         * @param index the index of the book.
+         * @param title the book's new title.
+         * @param modifiedAt when the book was edited.
+         */
+        void editBook(int index, String title, long modifiedAt) {
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_TITLE, title);
+            values.put(BookEntry.COLUMN_MODIFIED_AT, modifiedAt);
+            update(index, values);
+        }
+
+        /**
+         * Deletes a book, keeping its tombstone.
+         *
+         * @param index the index of the book.
+         * @param modifiedAt when the book was deleted.
+         */
+        void deleteBook(int index, long modifiedAt) {
+            ContentValues values = new ContentValues();
+            values.put(BookEntry.COLUMN_DELETED_AT, modifiedAt);
+            values.put(BookEntry.COLUMN_MODIFIED_AT, modifiedAt);
+            update(index, values);
+        }
+
+        /**
+         * Updates a book.
+         *
+         * @param index the index of the book.
+         * @param values the new values of the book.
+         */
+        private void update(int index, ContentValues values) {
+            mProvider.update(BookEntry.CONTENT_URI, values, BookEntry._ID + " = ?"
+                    , new String[] {Long.toString(FIRST_ISBN + index)});
+        }
+
+        /**
+         * Returns the title of a book, deleted or not.
+         *
+         * @param index the index of the book.
+         * @return the book's title, or {@code null} if it is not in the library.
+         */
+        String getTitle(int index) {
+            return readBook(index, BookEntry.COLUMN_TITLE);
+        }
+
+        /**
+         * Returns when a book, deleted or not, was last modified.
+         *
+         * @param index the index of the book.
+         * @return the book's modification time.
+         */
+        long getModifiedAt(int index) {
+            return Long.parseLong(readBook(index, BookEntry.COLUMN_MODIFIED_AT));
+        }
+
+        /**
+         * Indicates if a book is deleted.
+         *
+         * @param index the index of the book.
+         * @return {@code true} if the book is deleted.
+         */
+        boolean isDeleted(int index) {
+            return readBook(index, BookEntry.COLUMN_DELETED_AT) != null;
+        }
+
+        /**
+         * Returns the only author of a book.
+         *
+         * @param index the index of the book.
+         * @return the author's name, or {@code null} if the book has none.
+         */
+        String getAuthor(int index) {
+            Cursor cursor = mProvider.query(BookEntry.buildBookAuthorsUri(FIRST_ISBN + index)
+                    , new String[] {AuthorEntry.COLUMN_NAME}, null, null, null);
+            try {
+                return cursor.moveToFirst() ? cursor.getString(0) : null;
+            } finally {
+                cursor.close();
+            }
+        }
+
+        /**
+         * Reads a column of a book, deleted or not.
+         *
+         * @param index the index of the book.
+         * @param column the column read.
+         * @return the value of the column, or {@code null} if the book is not
+         *     in the library.
+         */
+        private String readBook(int index, String column) {
+            Cursor cursor = mProvider.query(
+                    BookContract.buildIncludeDeletedUri(BookEntry.CONTENT_URI)
+                    , new String[] {column}, BookEntry._ID + " = ?"
+                    , new String[] {Long.toString(FIRST_ISBN + index)}, null);
+            try {
+                return cursor.moveToFirst() ? cursor.getString(0) : null;
+            } finally {
+                cursor.close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.sync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.jaschke.alexandria.backup.BookRecord;
+import it.jaschke.alexandria.backup.LibraryReader;
+import it.jaschke.alexandria.backup.LibraryWriter;
+
+/**
+ * A sync server that keeps the books in memory, listening on a free port of
+ * the loopback interface, for the tests of the sync. Implements the
+ * protocol described in {@link SyncClient}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class StandInSyncServer implements Closeable {
+
+    /**
+     * Serves the requests.
+     */
+    private final HttpServer mServer;
+
+    /**
+     * The last version of each book, by id.
+     */
+    private final Map<Long, Entry> mBooks = new HashMap<>();
+
+    /**
+     * Sequence number of the last version accepted.
+     */
+    private long mSeq;
+
+    /**
+     * Number of requests handled.
+     */
+    private int mRequestCount;
+
+    /**
+     * Creates a new {@link StandInSyncServer} and starts it.
+     *
+     * @throws IOException if the server cannot be started.
+     */
+    public StandInSyncServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext("/" + SyncClient.PATH_BOOKS, this::handle);
+        mServer.start();
+    }
+
+    /**
+     * Returns the URL of the server, to be passed to {@link SyncClient}.
+     *
+     * @return the URL of the server.
+     */
+    public String getUrl() {
+        return "http://" + mServer.getAddress().getHostString() + ":"
+                + mServer.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Returns a copy of the last version of a book.
+     *
+     * @param id the book's ISBN-13.
+     * @return the book, or {@code null} if the server does not have it.
+     */
+    public synchronized BookRecord getBook(long id) {
+        Entry entry = mBooks.get(id);
+        return entry != null ? copy(entry.mBook) : null;
+    }
+
+    /**
+     * Returns the sequence number of the last version accepted.
+     *
+     * @return the sequence number of the last version accepted.
+     */
+    public synchronized long getSeq() {
+        return mSeq;
+    }
+
+    /**
+     * Returns the number of requests handled.
+     *
+     * @return the number of requests handled.
+     */
+    public synchronized int getRequestCount() {
+        return mRequestCount;
+    }
+
+    @Override
+    public void close() {
+        mServer.stop(0);
+    }
+
+    /**
+     * Handles a request to {@link SyncClient#PATH_BOOKS}, one at a time.
+     *
+     * @param exchange the request and its response.
+     * @throws IOException if the request cannot be handled.
+     */
+    private synchronized void handle(HttpExchange exchange) throws IOException {
+        mRequestCount++;
+        try {
+            if ("POST".equals(exchange.getRequestMethod())) {
+                handleUpload(exchange);
+            } else if ("GET".equals(exchange.getRequestMethod())) {
+                handleDownload(exchange);
+            } else {
+                exchange.sendResponseHeaders(HttpURLConnection.HTTP_BAD_METHOD, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Keeps the books uploaded more recent than the version the server has.
+     *
+     * @param exchange the request and its response.
+     * @throws IOException if the books cannot be read.
+     */
+    private void handleUpload(HttpExchange exchange) throws IOException {
+        BookRecord book = new BookRecord();
+        int acceptedCount = 0;
+        LibraryReader reader = new LibraryReader(exchange.getRequestBody());
+        try {
+            while (reader.readBook(book)) {
+                Entry entry = mBooks.get(book.getId());
+                if (entry == null || book.getModifiedAt() > entry.mBook.getModifiedAt()) {
+                    mBooks.put(book.getId(), new Entry(copy(book), ++mSeq));
+                    acceptedCount++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        exchange.getResponseHeaders().set(SyncClient.HEADER_ACCEPTED
+                , Integer.toString(acceptedCount));
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, -1);
+    }
+
+    /**
+     * Sends the books accepted after the sequence number requested.
+     *
+     * @param exchange the request and its response.
+     * @throws IOException if the books cannot be sent.
+     */
+    private void handleDownload(HttpExchange exchange) throws IOException {
+        long since = 0L;
+        int limit = Integer.MAX_VALUE;
+        for (String parameter : exchange.getRequestURI().getQuery().split("&")) {
+            String[] pair = parameter.split("=", 2);
+            if (SyncClient.PARAMETER_SINCE.equals(pair[0])) {
+                since = Long.parseLong(pair[1]);
+            } else if (SyncClient.PARAMETER_LIMIT.equals(pair[0])) {
+                limit = Integer.parseInt(pair[1]);
+            }
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (Entry entry : mBooks.values()) {
+            if (entry.mSeq > since) {
+                entries.add(entry);
+            }
+        }
+        entries.sort((first, second) -> Long.compare(first.mSeq, second.mSeq));
+        final boolean more = entries.size() > limit;
+        if (more) {
+            entries = entries.subList(0, limit);
+        }
+        exchange.getResponseHeaders().set("Content-Type", SyncClient.CONTENT_TYPE);
+        exchange.getResponseHeaders().set(SyncClient.HEADER_SEQ, Long.toString(
+                entries.isEmpty() ? since : entries.get(entries.size() - 1).mSeq));
+        exchange.getResponseHeaders().set(SyncClient.HEADER_MORE, Boolean.toString(more));
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
+        LibraryWriter writer = new LibraryWriter(exchange.getResponseBody());
+        try {
+            for (Entry entry : entries) {
+                writer.writeBook(entry.mBook);
+            }
+            writer.finish();
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Returns a copy of a book, so that it can be kept after the record is
+     * reused.
+     *
+     * @param book the book to copy.
+     * @return the copy.
+     */
+    private static BookRecord copy(BookRecord book) {
+        BookRecord copy = new BookRecord();
+        copy.setId(book.getId());
+        copy.setTitle(book.getTitle());
+        copy.setSubtitle(book.getSubtitle());
+        copy.setDescription(book.getDescription());
+        copy.setCoverUrl(book.getCoverUrl());
+        copy.setCover(book.getCover());
+        copy.getAuthors().addAll(book.getAuthors());
+        copy.getCategories().addAll(book.getCategories());
+        copy.setModifiedAt(book.getModifiedAt());
+        copy.setDeletedAt(book.getDeletedAt());
+        return copy;
+    }
+
+    /**
+     * A version of a book kept by the server.
+     */
+    private static final class Entry {
+
+        /**
+         * The book.
+         */
+        private final BookRecord mBook;
+
+        /**
+         * The sequence number of the version.
+         */
+        private final long mSeq;
+
+        /**
+         * Creates a new {@link Entry}.
+         *
+         * @param book the book.
+         * @param seq the sequence number of the version.
+         */
+        Entry(BookRecord book, long seq) {
+            mBook = book;
+            mSeq = seq;
+        }
+
+    }
+
+}
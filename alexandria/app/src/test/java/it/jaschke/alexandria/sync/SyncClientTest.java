@@ -0,0 +1,246 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.sync;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import it.jaschke.alexandria.backup.BookRecord;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests {@link SyncClient} against the {@link StandInSyncServer}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class SyncClientTest {
+
+    /**
+     * ISBN-13 of the first book of the sample libraries.
+     */
+    private static final long FIRST_ISBN = 9780000000000L;
+
+    /**
+     * Modification time of the sample books.
+     */
+    private static final long MODIFIED_AT = 1444000000000L;
+
+    /**
+     * The server the client syncs with.
+     */
+    private StandInSyncServer mServer;
+
+    /**
+     * The client tested.
+     */
+    private SyncClient mClient;
+
+    /**
+     * Returns a sample book.
+     *
+     * @param index the index of the book in the sample library.
+     * @param modifiedAt when the book was modified.
+     * @param title the book's title.
+     * @return the book.
+     */
+    private static BookRecord sampleBook(int index, long modifiedAt, String title) {
+        BookRecord book = new BookRecord();
+        book.setId(FIRST_ISBN + index);
+        book.setTitle(title);
+        book.setCoverUrl("http://books.google.com/books/content?id=" + index);
+        book.getAuthors().add("Author " + index);
+        book.getCategories().add("Category " + index);
+        book.setModifiedAt(modifiedAt);
+        return book;
+    }
+
+    /**
+     * Returns a sample library.
+     *
+     * @param size the number of books in the library.
+     * @return the books of the library.
+     */
+    private static List<BookRecord> sampleLibrary(int size) {
+        List<BookRecord> books = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            books.add(sampleBook(i, MODIFIED_AT + i, "Title " + i));
+        }
+        return books;
+    }
+
+    /**
+     * Uploads all the books of a list.
+     *
+     * @param books the books to upload.
+     * @return the number of books accepted by the server.
+     * @throws IOException if the books cannot be uploaded.
+     */
+    private int upload(BookRecord... books) throws IOException {
+        return mClient.upload(Arrays.asList(books), books.length);
+    }
+
+    /**
+     * Downloads a page of books.
+     *
+     * @param since the sequence number after which books are downloaded.
+     * @param limit the maximum number of books to download.
+     * @param books where the books downloaded are added.
+     * @return the page, already closed.
+     * @throws IOException if the books cannot be downloaded.
+     */
+    private SyncClient.Page download(long since, int limit, List<BookRecord> books)
+            throws IOException {
+        try (SyncClient.Page page = mClient.download(since, limit)) {
+            BookRecord book = new BookRecord();
+            while (page.readBook(book)) {
+                books.add(book);
+                book = new BookRecord();
+            }
+            return page;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new StandInSyncServer();
+        mClient = new SyncClient(mServer.getUrl());
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        BookRecord deleted = sampleBook(1, MODIFIED_AT, "Deleted");
+        deleted.setDeletedAt(MODIFIED_AT);
+        assertEquals(2, upload(sampleBook(0, MODIFIED_AT, "Título ✓"), deleted));
+
+        List<BookRecord> books = new ArrayList<>();
+        SyncClient.Page page = download(0L, 10, books);
+        assertEquals(2, books.size());
+        assertEquals(2L, page.getSeq());
+        assertFalse(page.hasMore());
+        BookRecord book = books.get(0);
+        assertEquals(FIRST_ISBN, book.getId());
+        assertEquals("Título ✓", book.getTitle());
+        assertEquals(Collections.singletonList("Author 0"), book.getAuthors());
+        assertEquals(Collections.singletonList("Category 0"), book.getCategories());
+        assertEquals(MODIFIED_AT, book.getModifiedAt());
+        assertEquals(0L, book.getDeletedAt());
+        assertEquals(MODIFIED_AT, books.get(1).getDeletedAt());
+    }
+
+    @Test
+    public void testDownloadsOnlyChanges() throws Exception {
+        List<BookRecord> library = sampleLibrary(3);
+        assertEquals(3, mClient.upload(library, library.size()));
+        final long seq = mServer.getSeq();
+        assertEquals(1, upload(sampleBook(1, MODIFIED_AT + 10, "Changed")));
+
+        List<BookRecord> books = new ArrayList<>();
+        SyncClient.Page page = download(seq, 10, books);
+        assertEquals(1, books.size());
+        assertEquals("Changed", books.get(0).getTitle());
+        assertEquals(seq + 1, page.getSeq());
+
+        books.clear();
+        page = download(page.getSeq(), 10, books);
+        assertTrue(books.isEmpty());
+        assertEquals(seq + 1, page.getSeq());
+        assertFalse(page.hasMore());
+    }
+
+    @Test
+    public void testDownloadsInPages() throws Exception {
+        final int size = 5;
+        final int limit = 2;
+        List<BookRecord> library = sampleLibrary(size);
+        assertEquals(size, mClient.upload(library, size));
+        final int requestCount = mServer.getRequestCount();
+
+        List<BookRecord> books = new ArrayList<>();
+        long seq = 0L;
+        SyncClient.Page page;
+        do {
+            final int before = books.size();
+            page = download(seq, limit, books);
+            assertTrue(books.size() - before <= limit);
+            seq = page.getSeq();
+        } while (page.hasMore());
+        assertEquals(size, books.size());
+        for (int i = 0; i < size; i++) {
+            assertEquals(library.get(i).getId(), books.get(i).getId());
+        }
+        assertEquals((size + limit - 1) / limit, mServer.getRequestCount() - requestCount);
+    }
+
+    @Test
+    public void testLastWriterWins() throws Exception {
+        assertEquals(1, upload(sampleBook(0, MODIFIED_AT, "Second")));
+        // Modified earlier on another device, but uploaded later
+        assertEquals(0, upload(sampleBook(0, MODIFIED_AT - 1, "First")));
+        assertEquals(0, upload(sampleBook(0, MODIFIED_AT, "Same time")));
+        assertEquals("Second", mServer.getBook(FIRST_ISBN).getTitle());
+        assertEquals(1L, mServer.getSeq());
+
+        assertEquals(1, upload(sampleBook(0, MODIFIED_AT + 1, "Third")));
+        assertEquals("Third", mServer.getBook(FIRST_ISBN).getTitle());
+        List<BookRecord> books = new ArrayList<>();
+        download(0L, 10, books);
+        assertEquals(1, books.size());
+        assertEquals("Third", books.get(0).getTitle());
+    }
+
+    @Test
+    public void testUploadsOnlyTheSizeOfTheBatch() throws Exception {
+        List<BookRecord> library = sampleLibrary(3);
+        assertEquals(2, mClient.upload(library, 2));
+        assertNull(mServer.getBook(library.get(2).getId()));
+    }
+
+    @Test
+    public void testServerErrors() throws Exception {
+        mClient = new SyncClient(mServer.getUrl() + "missing");
+        try {
+            upload(sampleBook(0, MODIFIED_AT, "Title"));
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+        try {
+            mClient.download(0L, 1).close();
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the results of a benchmark in a machine readable format: each
+ * result is printed and appended, as a line of JSON, to
+ * {@code build/benchmark-results/<benchmark>.jsonl}, so that runs can be
+ * compared.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public final class BenchmarkReport {
+
+    /**
+     * Directory the results are written to, relative to the module.
+     */
+    private static final File RESULTS_DIRECTORY = new File("build/benchmark-results");
+
+    /**
+     * Name of the benchmark.
+     */
+    private final String mBenchmark;
+
+    /**
+     * File the results are appended to.
+     */
+    private final File mFile;
+
+    /**
+     * Creates a new {@link BenchmarkReport}.
+     *
+     * @param benchmark the name of the benchmark.
+     */
+    public BenchmarkReport(String benchmark) {
+        mBenchmark = benchmark;
+        mFile = new File(RESULTS_DIRECTORY, benchmark + ".jsonl");
+    }
+
+    /**
+     * Starts a new result.
+     *
+     * @return the result, to be filled and then written.
+     */
+    public Result newResult() {
+        return new Result().put("benchmark", mBenchmark);
+    }
+
+    /**
+     * Prints the result and appends it to the file of the benchmark.
+     *
+     * @param line the result, as a line of JSON.
+     * @throws IOException if the result cannot be written.
+     */
+    private void write(String line) throws IOException {
+        System.out.println(line);
+        if (!RESULTS_DIRECTORY.isDirectory() && !RESULTS_DIRECTORY.mkdirs()) {
+            throw new IOException("Could not create " + RESULTS_DIRECTORY);
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(mFile, true), "UTF-8");
+        try {
+            writer.write(line + "\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * A result of the benchmark, made of named values.
+     */
+    public final class Result {
+
+        /**
+         * The values of the result, in the order they were put.
+         */
+        private final Map<String, Object> mValues = new LinkedHashMap<>();
+
+        /**
+         * Sets a value of the result.
+         *
+         * @param name the name of the value.
+         * @param value the value, a {@link String} or a {@link Number}.
+         * @return this result.
+         */
+        public Result put(String name, Object value) {
+            mValues.put(name, value);
+            return this;
+        }
+
+        /**
+         * Prints the result and appends it to the file of the benchmark.
+         *
+         * @throws IOException if the result cannot be written.
+         */
+        public void write() throws IOException {
+            StringBuilder json = new StringBuilder("{");
+            for (Map.Entry<String, Object> entry : mValues.entrySet()) {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                json.append('"').append(entry.getKey()).append("\":");
+                final Object value = entry.getValue();
+                if (value instanceof Double || value instanceof Float) {
+                    json.append(String.format(Locale.US, "%.1f", ((Number) value).doubleValue()));
+                } else if (value instanceof Number) {
+                    json.append(value);
+                } else {
+                    json.append('"').append(value).append('"');
+                }
+            }
+            BenchmarkReport.this.write(json.append('}').toString());
+        }
+    }
+
+}
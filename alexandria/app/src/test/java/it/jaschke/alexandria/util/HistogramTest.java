@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests {@link Histogram}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class HistogramTest {
+
+    /**
+     * Nanoseconds in a millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    @Test
+    public void testBuckets() {
+        assertEquals(0, Histogram.getBucket(0L));
+        assertEquals(1, Histogram.getBucket(1L));
+        assertEquals(2, Histogram.getBucket(2L));
+        assertEquals(2, Histogram.getBucket(3L));
+        assertEquals(3, Histogram.getBucket(4L));
+        assertEquals(Histogram.BUCKET_COUNT - 1, Histogram.getBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testEmpty() {
+        Histogram histogram = new Histogram();
+        assertEquals(0L, histogram.getCount());
+        assertEquals(0L, histogram.getPercentileMillis(50));
+        assertEquals(0L, histogram.getMaxMillis());
+    }
+
+    @Test
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(3 * NANOS_PER_MILLI);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(100 * NANOS_PER_MILLI);
+        }
+        histogram.record(5000 * NANOS_PER_MILLI);
+        assertEquals(100L, histogram.getCount());
+        // Upper bounds of the buckets, [2, 4) and [64, 128)
+        assertEquals(4L, histogram.getPercentileMillis(50));
+        assertEquals(4L, histogram.getPercentileMillis(90));
+        assertEquals(128L, histogram.getPercentileMillis(99));
+        // Never more than the longest duration
+        assertEquals(5000L, histogram.getPercentileMillis(100));
+        assertEquals(5000L, histogram.getMaxMillis());
+    }
+
+    @Test
+    public void testNegativeDurations() {
+        Histogram histogram = new Histogram();
+        histogram.record(-1L);
+        assertEquals(1L, histogram.getCount());
+        assertEquals(0L, histogram.getMaxMillis());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile() {
+        new Histogram().getPercentileMillis(0);
+    }
+
+}
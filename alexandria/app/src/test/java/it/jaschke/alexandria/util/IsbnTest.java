@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link Isbn}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class IsbnTest {
+
+    @Test
+    public void testValidIsbn13() {
+        assertTrue(Isbn.isValidIsbn13("9780306406157"));
+        assertTrue(Isbn.isValidIsbn13("9791032305690"));
+        assertTrue(Isbn.isValidIsbn13(new StringBuilder("9780262033848")));
+        assertTrue(Isbn.isValidIsbn13(9780306406157L));
+        assertTrue(Isbn.isValidIsbn13(9791032305690L));
+    }
+
+    @Test
+    public void testInvalidIsbn13() {
+        assertFalse("Wrong check digit", Isbn.isValidIsbn13("9780306406158"));
+        assertFalse("Transposed digits", Isbn.isValidIsbn13("9780306406175"));
+        assertFalse("Not Bookland", Isbn.isValidIsbn13("5901234123457"));
+        assertFalse("Too short", Isbn.isValidIsbn13("978030640615"));
+        assertFalse("Not digits", Isbn.isValidIsbn13("97803064O6157"));
+        assertFalse(Isbn.isValidIsbn13((CharSequence) null));
+        assertFalse(Isbn.isValidIsbn13(9780306406158L));
+        assertFalse(Isbn.isValidIsbn13(5901234123457L));
+        assertFalse(Isbn.isValidIsbn13(306406157L));
+    }
+
+    @Test
+    public void testIsbn10() {
+        assertTrue(Isbn.isValidIsbn10("0306406152"));
+        assertTrue(Isbn.isValidIsbn10("080442957X"));
+        assertTrue(Isbn.isValidIsbn10("080442957x"));
+        assertFalse(Isbn.isValidIsbn10("0306406153"));
+        assertFalse("X is only valid as check digit", Isbn.isValidIsbn10("X306406152"));
+        assertFalse(Isbn.isValidIsbn10("030640615"));
+        assertFalse(Isbn.isValidIsbn10(null));
+    }
+
+    @Test
+    public void testToIsbn13() {
+        assertEquals("9780306406157", Isbn.toIsbn13("0306406152"));
+        assertEquals("9780306406157", Isbn.toIsbn13("0-306-40615-2"));
+        assertEquals("9780804429573", Isbn.toIsbn13("080442957X"));
+        assertEquals("9780306406157", Isbn.toIsbn13("978-0-306-40615-7"));
+        assertNull(Isbn.toIsbn13("0306406153"));
+        assertNull(Isbn.toIsbn13("9780306406158"));
+        assertNull(Isbn.toIsbn13(null));
+    }
+
+}
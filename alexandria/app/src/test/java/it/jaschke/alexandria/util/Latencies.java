@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.util;
+
+import java.util.Arrays;
+
+/**
+ * The latencies of the operations measured by a benchmark.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public final class Latencies {
+
+    /**
+     * The 95th percentile.
+     */
+    public static final int P95 = 95;
+
+    /**
+     * Nanoseconds in a microsecond.
+     */
+    private static final double NANOS_PER_MICRO = 1000d;
+
+    /**
+     * Nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9d;
+
+    /**
+     * Hundred percent, the maximum latency.
+     */
+    private static final int HUNDRED = 100;
+
+    /**
+     * The median.
+     */
+    private static final int P50 = 50;
+
+    /**
+     * The 90th percentile.
+     */
+    private static final int P90 = 90;
+
+    /**
+     * The 99th percentile.
+     */
+    private static final int P99 = 99;
+
+    /**
+     * The latency of each operation, in nanoseconds.
+     */
+    private final long[] mNanos;
+
+    /**
+     * Number of latencies added.
+     */
+    private int mCount;
+
+    /**
+     * Creates a new {@link Latencies}.
+     *
+     * @param capacity the number of operations measured.
+     */
+    public Latencies(int capacity) {
+        mNanos = new long[capacity];
+    }
+
+    /**
+     * Adds the latency of an operation.
+     *
+     * @param nanos the latency, in nanoseconds.
+     */
+    public void add(long nanos) {
+        mNanos[mCount++] = nanos;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Returns the total time spent on the operations.
+     *
+     * @return the total time, in nanoseconds.
+     */
+    public long getTotalNanos() {
+        long total = 0L;
+        for (int i = 0; i < mCount; i++) {
+            total += mNanos[i];
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of operations per second.
+     *
+     * @return the number of operations per second.
+     */
+    public double getOpsPerSecond() {
+        final long total = getTotalNanos();
+        return total > 0L ? mCount * NANOS_PER_SECOND / total : 0d;
+    }
+
+    /**
+     * Returns a percentile of the latencies, by the nearest rank method.
+     *
+     * @param percentile the percentile, from 1 to 100.
+     * @return the percentile, in microseconds.
+     */
+    public double getPercentileMicros(int percentile) {
+        long[] sorted = Arrays.copyOf(mNanos, mCount);
+        Arrays.sort(sorted);
+        final int rank = (percentile * mCount + HUNDRED - 1) / HUNDRED;
+        return sorted[Math.max(rank - 1, 0)] / NANOS_PER_MICRO;
+    }
+
+    /**
+     * Adds the number of operations, their throughput and their latency
+     * percentiles (50, 90, 95, 99 and the maximum) to a result.
+     *
+     * @param result the result of the benchmark.
+     * @return the result.
+     */
+    public BenchmarkReport.Result addTo(BenchmarkReport.Result result) {
+        return result.put("count", mCount)
+                .put("ops_per_second", getOpsPerSecond())
+                .put("p50_us", getPercentileMicros(P50))
+                .put("p90_us", getPercentileMicros(P90))
+                .put("p95_us", getPercentileMicros(P95))
+                .put("p99_us", getPercentileMicros(P99))
+                .put("max_us", getPercentileMicros(HUNDRED));
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests how {@link MainThreadWatchdog} attributes violations to call sites.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class MainThreadWatchdogTest {
+
+    @Test
+    public void testCallSiteSkipsWatchdogAndProvider() {
+        StackTraceElement[] frames = {
+                new StackTraceElement(MainThreadWatchdog.class.getName()
+                        , "checkNotMainThread", "MainThreadWatchdog.java", 10),
+                new StackTraceElement("it.jaschke.alexandria.data.BookProvider"
+                        , "query", "BookProvider.java", 20),
+                new StackTraceElement("android.content.ContentResolver"
+                        , "query", "ContentResolver.java", 30),
+                new StackTraceElement("it.jaschke.alexandria.model.view.BookDetailViewModel"
+                        , "deleteBook", "BookDetailViewModel.java", 40),
+        };
+        assertEquals(frames[3].toString(), MainThreadWatchdog.findCallSite(frames));
+    }
+
+    @Test
+    public void testCallSiteOutsideApplication() {
+        StackTraceElement[] frames = {
+                new StackTraceElement(MainThreadWatchdog.class.getName()
+                        , "checkNotMainThread", "MainThreadWatchdog.java", 10),
+                new StackTraceElement("android.os.Handler"
+                        , "dispatchMessage", "Handler.java", 20),
+        };
+        assertEquals(frames[1].toString(), MainThreadWatchdog.findCallSite(frames));
+        assertEquals("unknown", MainThreadWatchdog.findCallSite(new StackTraceElement[0]));
+    }
+
+    @Test
+    public void testMessageCallSiteWithoutHashCodes() {
+        assertEquals("Handler (android.view.Choreographer$FrameHandler) "
+                        + "android.view.Choreographer$FrameDisplayEventReceiver: 0"
+                , MainThreadWatchdog.getMessageCallSite(">>>>> Dispatching to Handler"
+                        + " (android.view.Choreographer$FrameHandler) {3a5f9c1}"
+                        + " android.view.Choreographer$FrameDisplayEventReceiver@41b2e8: 0"));
+    }
+
+}
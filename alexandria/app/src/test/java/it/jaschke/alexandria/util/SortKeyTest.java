@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.util;
+
+import org.junit.Test;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests {@link SortKey}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class SortKeyTest {
+
+    @Test
+    public void testNormalize() {
+        assertNull(SortKey.normalize(null));
+        assertEquals("Hobbit", SortKey.normalize("Hobbit"));
+        assertEquals("Hobbit", SortKey.normalize("  \"Hobbit"));
+        assertEquals("Qué tal?", SortKey.normalize("¿Qué   tal?"));
+        assertEquals("1984»", SortKey.normalize("«1984»"));
+        assertEquals("...", SortKey.normalize(" ... "));
+        // Decomposed and composed accents sort the same
+        assertEquals(SortKey.normalize("Caf\u00e9"), SortKey.normalize("Cafe\u0301"));
+    }
+
+    @Test
+    public void testKeysSortByCollator() {
+        Collator collator = Collator.getInstance(new Locale("es", "ES"));
+        List<String> titles = Arrays.asList("Ñandú", "\"Niño\"", "¡Ay!", "oso", "Árbol");
+        titles.sort((first, second) ->
+                collator.compare(SortKey.normalize(first), SortKey.normalize(second)));
+        assertEquals(Arrays.asList("Árbol", "¡Ay!", "\"Niño\"", "Ñandú", "oso"), titles);
+    }
+
+}
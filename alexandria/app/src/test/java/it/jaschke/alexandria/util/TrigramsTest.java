@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Jesús Adolfo García Pasquel
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.jaschke.alexandria.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link Trigrams}.
+ *
+ * @author Jesús Adolfo García Pasquel
+ */
+public class TrigramsTest {
+
+    @Test
+    public void testFold() {
+        assertEquals("", Trigrams.fold(null));
+        assertEquals("", Trigrams.fold(" ¿? "));
+        assertEquals("garcia marquez", Trigrams.fold("García-Márquez"));
+        assertEquals("cafe", Trigrams.fold("Café"));
+        assertEquals("el senor de los anillos 2", Trigrams.fold("  El Señor de los Anillos (2)"));
+    }
+
+    @Test
+    public void testWords() {
+        assertEquals(Arrays.asList("the", "hobbit", "or", "there", "and", "back", "again")
+                , new ArrayList<>(Trigrams.words("The Hobbit, or There and Back Again")));
+        assertEquals(Arrays.asList("tolkien"), new ArrayList<>(Trigrams.words("Tolkien tolkien")));
+        assertTrue(Trigrams.words(null).isEmpty());
+    }
+
+    @Test
+    public void testOf() {
+        assertEquals(Arrays.asList("  c", " ca", "cat", "at "), Trigrams.of("cat"));
+        assertEquals(Arrays.asList("  a", " a "), Trigrams.of("a"));
+        // Repeated trigrams are counted once
+        assertEquals(Arrays.asList("  a", " aa", "aaa", "aa "), Trigrams.of("aaaa"));
+    }
+
+    @Test
+    public void testSimilarity() {
+        assertEquals(1f, Trigrams.similarity("tolkien", "tolkien"), 0f);
+        assertEquals(0f, Trigrams.similarity("tolkien", "xyz"), 0f);
+        // Transposed letters, 4 shared of 12 trigrams
+        assertEquals(1f / 3f, Trigrams.similarity("tolkein", "tolkien"), 1e-6f);
+        assertTrue(Trigrams.similarity("tolkein", "tolkien")
+                > Trigrams.similarity("tolkein", "token"));
+        // Words being typed
+        assertEquals(Trigrams.PREFIX_SIMILARITY, Trigrams.similarity("tolk", "tolkien"), 0f);
+        assertEquals(0f, Trigrams.similarity(0, 0, 0), 0f);
+    }
+
+}
@@ -0,0 +1,38 @@
+#!/bin/bash
+#
+# Copyright 2015 Jesús Adolfo García Pasquel
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Captures the Google Books API responses parsed by BookApiParseBenchmark,
+# replacing the synthetic ones under app/src/test/resources, which were
+# written by hand with placeholder ids and etags. Needs network access.
+#
+# Usage: capture_book_responses.sh [isbn13] [search]
+#
+# The typical response is the one BookApi.download gets for the book. The
+# small one is the same, with only the fields the parser cannot do without,
+# and the huge one is the largest page of results of a search.
+
+set -e
+
+ISBN=${1:-9780137903955}
+SEARCH=${2:-intitle:artificial+intelligence}
+API=https://www.googleapis.com/books/v1/volumes
+DIR=$(dirname "$0")/../app/src/test/resources/it/jaschke/alexandria/service
+
+curl -sSf "$API?q=isbn:$ISBN" -o "$DIR/books-typical.json"
+curl -sSf "$API?q=isbn:$ISBN&fields=kind,totalItems,items(kind,id,volumeInfo/title)" \
+    -o "$DIR/books-small.json"
+curl -sSf "$API?q=$SEARCH&maxResults=40" -o "$DIR/books-huge.json"
+wc -c "$DIR"/books-*.json
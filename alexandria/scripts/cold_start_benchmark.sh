@@ -0,0 +1,60 @@
+#!/bin/bash
+#
+# Copyright 2015 Jesús Adolfo García Pasquel
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Measures the cold start time of Alexandria on the connected device.
+# The app (debug build, so StartupTrace logs its sections) must be installed.
+#
+# Usage: cold_start_benchmark.sh [runs] [max_total_time_ms]
+#
+# Prints one CSV line per run with the times reported by "am start -W" and
+# the median total time at the end. Exits with status 1 if the median is
+# above max_total_time_ms, when specified, so it can be used in CI.
+
+set -e
+
+RUNS=${1:-10}
+MAX_TOTAL_TIME=${2:-}
+PACKAGE=it.jaschke.alexandria
+ACTIVITY=$PACKAGE/.view.activity.MainActivity
+LOG_TAG=AlexandriaStartup
+
+echo "run,this_time_ms,total_time_ms,wait_time_ms"
+TOTALS=()
+for RUN in $(seq 1 "$RUNS"); do
+    adb shell am force-stop $PACKAGE
+    # Let the device settle, so runs do not affect each other
+    sleep 2
+    adb logcat -c
+    OUTPUT=$(adb shell am start -W -n $ACTIVITY | tr -d '\r')
+    THIS_TIME=$(echo "$OUTPUT" | awk -F': ' '/^ThisTime/ {print $2}')
+    TOTAL_TIME=$(echo "$OUTPUT" | awk -F': ' '/^TotalTime/ {print $2}')
+    WAIT_TIME=$(echo "$OUTPUT" | awk -F': ' '/^WaitTime/ {print $2}')
+    echo "$RUN,$THIS_TIME,$TOTAL_TIME,$WAIT_TIME"
+    TOTALS+=("$TOTAL_TIME")
+done
+
+# The sections of the last run, as logged by StartupTrace
+sleep 2
+echo
+adb logcat -d -s $LOG_TAG:D | grep -v '^-'
+
+MEDIAN=$(printf '%s\n' "${TOTALS[@]}" | sort -n | awk '{a[NR]=$1} END {print a[int((NR + 1) / 2)]}')
+echo
+echo "median_total_time_ms,$MEDIAN"
+if [ -n "$MAX_TOTAL_TIME" ] && [ "$MEDIAN" -gt "$MAX_TOTAL_TIME" ]; then
+    echo "Median cold start time above target of $MAX_TOTAL_TIME ms" >&2
+    exit 1
+fi